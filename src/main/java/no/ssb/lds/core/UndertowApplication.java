@@ -7,6 +7,7 @@ import graphql.schema.idl.SchemaParser;
 import graphql.schema.idl.TypeDefinitionRegistry;
 import io.undertow.Handlers;
 import io.undertow.Undertow;
+import io.undertow.UndertowOptions;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.handlers.PathHandler;
 import io.undertow.server.handlers.ResponseCodeHandler;
@@ -20,15 +21,25 @@ import no.ssb.lds.api.search.SearchIndex;
 import no.ssb.lds.api.specification.Specification;
 import no.ssb.lds.core.accesslog.Slf4jAccessLogReceiver;
 import no.ssb.lds.core.controller.CORSHandler;
+import no.ssb.lds.core.controller.DocumentCacheStatisticsHandler;
 import no.ssb.lds.core.controller.HealthCheckHandler;
 import no.ssb.lds.core.controller.NamespaceController;
+import no.ssb.lds.core.controller.SagaStatisticsHandler;
+import no.ssb.lds.core.controller.SearchIndexStatisticsHandler;
+import no.ssb.lds.core.controller.TxLogStatisticsHandler;
+import no.ssb.lds.core.domain.SerializedDocumentCache;
+import no.ssb.lds.core.persistence.CachingRxJsonPersistence;
+import no.ssb.lds.core.persistence.DocumentCache;
 import no.ssb.lds.core.persistence.PersistenceConfigurator;
+import no.ssb.lds.core.restore.RestoreSettings;
 import no.ssb.lds.core.saga.SagaExecutionCoordinator;
 import no.ssb.lds.core.saga.SagaRecoveryTrigger;
 import no.ssb.lds.core.saga.SagaRepository;
+import no.ssb.lds.core.saga.SagaThreadPools;
 import no.ssb.lds.core.saga.SagasObserver;
 import no.ssb.lds.core.schema.JsonSchema;
 import no.ssb.lds.core.schema.JsonSchema04Builder;
+import no.ssb.lds.core.search.AsyncSearchIndex;
 import no.ssb.lds.core.search.SearchIndexConfigurator;
 import no.ssb.lds.core.specification.JsonSchemaBasedSpecification;
 import no.ssb.lds.core.specification.SpecificationJsonSchemaBuilder;
@@ -53,6 +64,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.net.URL;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -63,17 +75,14 @@ import java.util.Optional;
 import java.util.ServiceLoader;
 import java.util.Set;
 import java.util.TreeMap;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -95,6 +104,7 @@ public class UndertowApplication {
     private final SelectableThreadPoolExectutor sagaThreadPool;
     private final SagaRecoveryTrigger sagaRecoveryTrigger;
     private final TxlogRawdataPool txlogRawdataPool;
+    private final SearchIndex searchIndex;
 
     UndertowApplication(Specification specification, RxJsonPersistence persistence, SagaExecutionCoordinator sec,
                         SagaRepository sagaRepository, SagasObserver sagasObserver, SagaRecoveryTrigger sagaRecoveryTrigger, String host, int port,
@@ -112,6 +122,7 @@ public class UndertowApplication {
         this.sagaLogPool = sagaLogPool;
         this.sagaThreadPool = sagaThreadPool;
         this.txlogRawdataPool = txlogRawdataPool;
+        this.searchIndex = searchIndex;
 
         LOG.info("Initializing Http handlers ...");
 
@@ -168,6 +179,15 @@ public class UndertowApplication {
         ResponseCodeHandler aliveHandler = new ResponseCodeHandler(StatusCodes.OK);
         pathHandler.addExactPath(HealthCheckHandler.HEALTH_READY_PATH, aliveHandler);
         pathHandler.addExactPath(HealthCheckHandler.PING_PATH, aliveHandler);
+        if (persistence instanceof CachingRxJsonPersistence) {
+            DocumentCache documentCache = ((CachingRxJsonPersistence) persistence).getDocumentCache();
+            pathHandler.addExactPath(DocumentCacheStatisticsHandler.PATH, new DocumentCacheStatisticsHandler(documentCache));
+        }
+        pathHandler.addExactPath(SagaStatisticsHandler.PATH, new SagaStatisticsHandler(sec));
+        pathHandler.addExactPath(TxLogStatisticsHandler.PATH, new TxLogStatisticsHandler(txlogRawdataPool));
+        if (searchIndex instanceof AsyncSearchIndex) {
+            pathHandler.addExactPath(SearchIndexStatisticsHandler.PATH, new SearchIndexStatisticsHandler((AsyncSearchIndex) searchIndex));
+        }
         pathHandler.addPrefixPath("/", namespaceController);
 
         HttpHandler httpHandler = pathHandler;
@@ -203,10 +223,16 @@ public class UndertowApplication {
 
         LOG.info("Initializing Undertow ...");
 
-        this.server = Undertow.builder()
+        Undertow.Builder builder = Undertow.builder()
                 .addHttpListener(port, host)
-                .setHandler(corsHandler)
-                .build();
+                .setHandler(corsHandler);
+        ofNullable(configuration.evaluateToString("http.io-threads")).filter(s -> !s.isBlank())
+                .map(Integer::valueOf).ifPresent(builder::setIoThreads);
+        ofNullable(configuration.evaluateToString("http.worker-threads")).filter(s -> !s.isBlank())
+                .map(Integer::valueOf).ifPresent(builder::setWorkerThreads);
+        ofNullable(configuration.evaluateToString("http.max-entity-size")).filter(s -> !s.isBlank())
+                .map(Long::valueOf).ifPresent(maxEntitySize -> builder.setServerOption(UndertowOptions.MAX_ENTITY_SIZE, maxEntitySize));
+        this.server = builder.build();
     }
 
     private static TypeDefinitionRegistry parseSchemaFile(File graphQLFile) {
@@ -235,57 +261,26 @@ public class UndertowApplication {
 
         LOG.info("Initializing specification ...");
 
-        JsonSchemaBasedSpecification specification;
-
-        Optional<String> graphQLSchemaPath = ofNullable(configuration.evaluateToString("graphql.schema"))
-                .map(path -> path.isEmpty() ? null : path);
-
-        if (graphQLSchemaPath.isPresent()) {
-            File graphQLFile = new File(graphQLSchemaPath.get());
-
-            LOG.info("Using GraphQL file: {}", graphQLFile.toString());
-
-            TypeDefinitionRegistry definitionRegistry = parseSchemaFile(graphQLFile);
-
-            GraphQLSchema schema;
-            final String providerId = configuration.evaluateToString("persistence.provider");
-
-            if ("neo4j".equals(providerId)) {
-
-                LOG.info("Transforming GraphQL schema to conform with GRANDstack compatible Neo4j modelling for Specification purposes");
-                schema = GraphQLNeo4jTBVSchemas.schemaOf(GraphQLNeo4jTBVLanguage.transformRegistry(definitionRegistry, false)).transform(builder -> {
-                    builder.additionalDirectives(Set.of(
-                            DomainDirective.INSTANCE,
-                            LinkDirective.INSTANCE,
-                            ReverseLinkDirective.INSTANCE
-                    ));
-                });
-
-            } else {
+        JsonSchemaBasedSpecification specification = initializeSpecification(configuration);
 
-                LOG.info("Using GraphQL schema as defined directly in SDL file for Specification purposes");
-                schema = GraphQLSchemaBuilder.parseSchema(definitionRegistry);
-            }
-
-            GraphQLToJsonConverter graphQLToJsonConverter = new GraphQLToJsonConverter(definitionRegistry, schema);
-            LinkedHashMap<String, JSONObject> jsonMap = graphQLToJsonConverter.createSpecification(schema);
-
-            if (LOG.isTraceEnabled()) {
-                jsonMap.entrySet().forEach(entry -> LOG.trace("JSON SCHEMA for type '{}': {}", entry.getKey(), entry.getValue().toString()));
-            }
+        LOG.info("Initializing primary persistence ...");
 
-            specification = createJsonSpecification(definitionRegistry, schema, jsonMap);
+        RxJsonPersistence persistence = PersistenceConfigurator.configurePersistence(configuration, specification);
 
-        } else {
-            String schemaConfigStr = configuration.evaluateToString("specification.schema");
-            String[] specificationSchema = ("".equals(schemaConfigStr) ? new String[0] : schemaConfigStr.split(","));
-            LOG.info("Creating specification using json-schema: {}", schemaConfigStr);
-            specification = JsonSchemaBasedSpecification.create(null, null, specificationSchema);
+        DocumentCache documentCache = null;
+        if (configuration.evaluateToBoolean("persistence.cache.enabled")) {
+            LOG.info("Initializing document cache ...");
+            documentCache = new DocumentCache(Long.parseLong(configuration.evaluateToString("persistence.cache.max-size-bytes")));
+            persistence = new CachingRxJsonPersistence(persistence, documentCache);
         }
 
-        LOG.info("Initializing primary persistence ...");
-
-        RxJsonPersistence persistence = PersistenceConfigurator.configurePersistence(configuration, specification);
+        SerializedDocumentCache responseCache = null;
+        if (configuration.evaluateToBoolean("http.response-cache.enabled")) {
+            LOG.info("Initializing serialized document cache ...");
+            responseCache = new SerializedDocumentCache(
+                    Long.parseLong(configuration.evaluateToString("http.response-cache.max-size-bytes")),
+                    configuration.evaluateToInt("http.response-cache.page-size"));
+        }
 
         LOG.info("Initializing saga-log pool ...");
 
@@ -294,10 +289,22 @@ public class UndertowApplication {
         SagaRepository.Builder sagaRepositoryBuilder = new SagaRepository.Builder()
                 .specification(specification)
                 .persistence(persistence);
+        if (documentCache != null) {
+            sagaRepositoryBuilder.invalidationListener(documentCache);
+        }
+        if (responseCache != null) {
+            sagaRepositoryBuilder.invalidationListener(responseCache);
+        }
 
         LOG.info("Initializing search-index ...");
 
         SearchIndex searchIndex = SearchIndexConfigurator.configureSearchIndex(configuration);
+        if (searchIndex != null && configuration.evaluateToBoolean("search.index.async.enabled")) {
+            searchIndex = new AsyncSearchIndex(searchIndex,
+                    configuration.evaluateToInt("search.index.async.queue-capacity"),
+                    configuration.evaluateToInt("search.index.async.batch-size"),
+                    configuration.evaluateToInt("search.index.async.max-retries"));
+        }
         if (searchIndex != null) {
             sagaRepositoryBuilder.indexer(searchIndex);
         }
@@ -309,6 +316,11 @@ public class UndertowApplication {
         String defaultSource = ofNullable(configuration.evaluateToString("txlog.default-source")).filter(s -> !s.isBlank()).orElse("default");
         String txLogTopicPrefix = ofNullable(configuration.evaluateToString("txlog.rawdata.topic-prefix")).map(String::trim).orElse("");
         TxlogRawdataPool txlogRawdataPool = new TxlogRawdataPool(txLogClient, splitSources, defaultSource, txLogTopicPrefix);
+        if (configuration.evaluateToBoolean("txlog.batch.enabled")) {
+            txlogRawdataPool.enableBatching(configuration.evaluateToInt("txlog.batch.max-size"),
+                    configuration.evaluateToInt("txlog.batch.linger-ms"));
+        }
+        txlogRawdataPool.seedLastPosition(defaultSource);
         sagaRepositoryBuilder.txLogRawdataPool(txlogRawdataPool);
 
         LOG.info("Initializing saga repository ...");
@@ -321,29 +333,14 @@ public class UndertowApplication {
 
         LOG.info("Initializing saga thread-pool ...");
 
-        final AtomicLong nextWorkerId = new AtomicLong(1);
-        int sagaThreadPoolQueueCapacity = configuration.evaluateToInt("saga.threadpool.queue.capacity");
-        int sagaThreadPoolCoreSize = configuration.evaluateToInt("saga.threadpool.core");
-        if (sagaThreadPoolQueueCapacity >= sagaThreadPoolCoreSize) {
-            LOG.warn("Configuration: saga.threadpool.core ({}) must be greater than saga.threadpool.queue.capacity ({}) in order to avoid potential deadlocks.",
-                    sagaThreadPoolCoreSize, sagaThreadPoolQueueCapacity);
-        }
-        SelectableThreadPoolExectutor sagaThreadPool = new SelectableThreadPoolExectutor(
-                sagaThreadPoolCoreSize, configuration.evaluateToInt("saga.threadpool.max"),
-                configuration.evaluateToInt("saga.threadpool.keepalive.seconds"), TimeUnit.SECONDS,
-                new ArrayBlockingQueue<>(sagaThreadPoolQueueCapacity),
-                runnable -> {
-                    Thread thread = new Thread(runnable);
-                    thread.setName("sec-" + nextWorkerId.getAndIncrement());
-                    thread.setUncaughtExceptionHandler((t, e) -> {
-                        System.err.println("Uncaught exception in thread " + thread.getName());
-                        e.printStackTrace();
-                    });
-                    return thread;
-                },
-                new ThreadPoolExecutor.AbortPolicy()
-        );
+        SelectableThreadPoolExectutor sagaThreadPool = SagaThreadPools.create(
+                SagaThreadPools.Mode.of(configuration.evaluateToString("saga.executor")),
+                configuration.evaluateToInt("saga.threadpool.core"),
+                configuration.evaluateToInt("saga.threadpool.max"),
+                configuration.evaluateToInt("saga.threadpool.keepalive.seconds"),
+                configuration.evaluateToInt("saga.threadpool.queue.capacity"));
         int numberOfSagaLogs = configuration.evaluateToInt("saga.number-of-logs");
+        int executionsPerSagaLog = configuration.evaluateToInt("saga.executions-per-log");
 
         boolean sagaCommandsEnabled = configuration.evaluateToBoolean("saga.commands.enabled");
 
@@ -354,7 +351,18 @@ public class UndertowApplication {
 
         LOG.info("Initializing saga-execution-coordinator ...");
 
-        SagaExecutionCoordinator sec = new SagaExecutionCoordinator(sagaLogPool, numberOfSagaLogs, sagaRepository, sagasObserver, sagaThreadPool, sagaCommandsEnabled, recoveryThreadPool);
+        SagaExecutionCoordinator sec = new SagaExecutionCoordinator(sagaLogPool, numberOfSagaLogs, executionsPerSagaLog, sagaRepository, sagasObserver, sagaThreadPool, sagaCommandsEnabled, recoveryThreadPool);
+        int sagaLogTruncateBatchSize = configuration.evaluateToInt("saga.log.truncate.batch-size");
+        if (sagaLogTruncateBatchSize > 1) {
+            sec.enableBatchedSagaLogTruncation(sagaLogTruncateBatchSize, configuration.evaluateToInt("saga.log.truncate.interval-ms"), recoveryThreadPool);
+        }
+        sec.limitPendingHandoffs(configuration.evaluateToInt("saga.handoff.queue.capacity"));
+        if (configuration.evaluateToBoolean("saga.concurrency.adaptive")) {
+            sec.getConcurrencyLimiter().adapt(configuration.evaluateToInt("saga.concurrency.min-limit"), configuration.evaluateToInt("saga.concurrency.initial-limit"));
+        }
+        if (configuration.evaluateToBoolean("saga.group-commit.enabled")) {
+            sec.enableGroupCommit(configuration.evaluateToInt("saga.group-commit.max-size"), configuration.evaluateToInt("saga.group-commit.linger-ms"));
+        }
 
         HystrixThreadPoolProperties.Setter().withMaximumSize(50); // TODO Configure Hystrix properly
 
@@ -377,7 +385,12 @@ public class UndertowApplication {
                 persistence,
                 sec,
                 sagaRepository,
-                txlogRawdataPool
+                txlogRawdataPool,
+                responseCache,
+                new RestoreSettings(
+                        configuration.evaluateToInt("restore.partitions"),
+                        configuration.evaluateToInt("restore.bulk.transaction-size"),
+                        Paths.get(configuration.evaluateToString("restore.bulk.checkpoint-directory")))
         );
 
         String host = configuration.evaluateToString("http.host");
@@ -387,6 +400,58 @@ public class UndertowApplication {
                 searchIndex, configuration, txlogRawdataPool);
     }
 
+    public static JsonSchemaBasedSpecification initializeSpecification(DynamicConfiguration configuration) {
+        JsonSchemaBasedSpecification specification;
+
+        Optional<String> graphQLSchemaPath = ofNullable(configuration.evaluateToString("graphql.schema"))
+                .map(path -> path.isEmpty() ? null : path);
+
+        if (graphQLSchemaPath.isPresent()) {
+            File graphQLFile = new File(graphQLSchemaPath.get());
+
+            LOG.info("Using GraphQL file: {}", graphQLFile.toString());
+
+            TypeDefinitionRegistry definitionRegistry = parseSchemaFile(graphQLFile);
+
+            GraphQLSchema schema;
+            final String providerId = configuration.evaluateToString("persistence.provider");
+
+            if ("neo4j".equals(providerId)) {
+
+                LOG.info("Transforming GraphQL schema to conform with GRANDstack compatible Neo4j modelling for Specification purposes");
+                schema = GraphQLNeo4jTBVSchemas.schemaOf(GraphQLNeo4jTBVLanguage.transformRegistry(definitionRegistry, false)).transform(builder -> {
+                    builder.additionalDirectives(Set.of(
+                            DomainDirective.INSTANCE,
+                            LinkDirective.INSTANCE,
+                            ReverseLinkDirective.INSTANCE
+                    ));
+                });
+
+            } else {
+
+                LOG.info("Using GraphQL schema as defined directly in SDL file for Specification purposes");
+                schema = GraphQLSchemaBuilder.parseSchema(definitionRegistry);
+            }
+
+            GraphQLToJsonConverter graphQLToJsonConverter = new GraphQLToJsonConverter(definitionRegistry, schema);
+            LinkedHashMap<String, JSONObject> jsonMap = graphQLToJsonConverter.createSpecification(schema);
+
+            if (LOG.isTraceEnabled()) {
+                jsonMap.entrySet().forEach(entry -> LOG.trace("JSON SCHEMA for type '{}': {}", entry.getKey(), entry.getValue().toString()));
+            }
+
+            specification = createJsonSpecification(definitionRegistry, schema, jsonMap);
+
+        } else {
+            String schemaConfigStr = configuration.evaluateToString("specification.schema");
+            String[] specificationSchema = ("".equals(schemaConfigStr) ? new String[0] : schemaConfigStr.split(","));
+            LOG.info("Creating specification using json-schema: {}", schemaConfigStr);
+            specification = JsonSchemaBasedSpecification.create(null, null, specificationSchema);
+        }
+
+        return specification;
+    }
+
     private static JsonSchemaBasedSpecification createJsonSpecification(TypeDefinitionRegistry typeDefinitionRegistry, GraphQLSchema graphQlSchema, LinkedHashMap<String, JSONObject> jsonMap) {
         JsonSchemaBasedSpecification jsonSchemaBasedSpecification = null;
         Set<Map.Entry<String, JSONObject>> entries = jsonMap.entrySet();
@@ -536,6 +601,7 @@ public class UndertowApplication {
         }));
         futures.add(CompletableFuture.runAsync(() -> {
             try {
+                txlogRawdataPool.close();
                 txlogRawdataPool.getClient().close();
                 LOG.debug("Transaction log (rawdata client) was shutdown");
             } catch (Error | RuntimeException e) {
@@ -548,6 +614,12 @@ public class UndertowApplication {
             sagasObserver.shutdown();
             LOG.debug("SagaObserver was shutdown");
         }));
+        if (searchIndex instanceof AsyncSearchIndex) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                ((AsyncSearchIndex) searchIndex).close();
+                LOG.debug("Search-index writer was shutdown");
+            }));
+        }
         if (sagaRecoveryTrigger != null) {
             futures.add(CompletableFuture.runAsync(sagaRecoveryTrigger::stop));
             LOG.debug("SagaRecoveryTrigger was shutdown");
@@ -621,4 +693,8 @@ public class UndertowApplication {
     public TxlogRawdataPool getTxlogRawdataPool() {
         return txlogRawdataPool;
     }
+
+    public SearchIndex getSearchIndex() {
+        return searchIndex;
+    }
 }
@@ -6,11 +6,13 @@ import io.undertow.util.Headers;
 import io.undertow.util.StatusCodes;
 import no.ssb.lds.api.persistence.reactivex.RxJsonPersistence;
 import no.ssb.lds.api.specification.Specification;
+import no.ssb.lds.core.domain.SerializedDocumentCache;
 import no.ssb.lds.core.domain.embedded.EmbeddedResourceHandler;
 import no.ssb.lds.core.domain.managed.ManagedResourceHandler;
 import no.ssb.lds.core.domain.reference.ReferenceResourceHandler;
 import no.ssb.lds.core.domain.resource.ResourceContext;
 import no.ssb.lds.core.domain.resource.ResourceException;
+import no.ssb.lds.core.domain.resource.ResourceRouter;
 import no.ssb.lds.core.saga.SagaExecutionCoordinator;
 import no.ssb.lds.core.saga.SagaRepository;
 import no.ssb.lds.core.schema.SchemaRepository;
@@ -35,21 +37,31 @@ class DataController implements HttpHandler {
     final RxJsonPersistence persistence;
     final SagaExecutionCoordinator sec;
     final SagaRepository sagaRepository;
+    final ResourceRouter resourceRouter;
 
-    DataController(Specification specification, SchemaRepository schemaRepository, RxJsonPersistence persistence, SagaExecutionCoordinator sec, SagaRepository sagaRepository) {
+    final ReferenceResourceHandler referenceResourceHandler;
+    final ManagedResourceHandler managedResourceHandler;
+    final EmbeddedResourceHandler embeddedResourceHandler;
+
+    DataController(Specification specification, SchemaRepository schemaRepository, RxJsonPersistence persistence, SagaExecutionCoordinator sec, SagaRepository sagaRepository, SerializedDocumentCache responseCache) {
         this.specification = specification;
         this.schemaRepository = schemaRepository;
         this.persistence = persistence;
         this.sec = sec;
         this.sagaRepository = sagaRepository;
+        this.resourceRouter = ResourceRouter.create(specification);
+        this.referenceResourceHandler = new ReferenceResourceHandler(persistence, specification, sec, sagaRepository);
+        this.managedResourceHandler = new ManagedResourceHandler(persistence, specification, schemaRepository, sec, sagaRepository, responseCache);
+        this.embeddedResourceHandler = new EmbeddedResourceHandler(persistence, specification, schemaRepository, sec, sagaRepository);
     }
 
     @Override
     public void handleRequest(HttpServerExchange exchange) throws Exception {
-        if (exchange.isInIoThread()) {
-            exchange.dispatch(this);
-            return;
-        }
+        /*
+         * NOTE: Resource handlers complete the exchange asynchronously. Blocking persistence reads, parsing and
+         * validation of request bodies and streaming are dispatched to the worker pool by the handlers, and saga
+         * execution does not hold any http thread.
+         */
 
         ResourceContext resourceContext;
         try {
@@ -76,7 +88,7 @@ class DataController implements HttpHandler {
                 }
                 timestamp.withZoneSameInstant(ZoneId.of("Etc/UTC"));
             }
-            resourceContext = ResourceContext.createResourceContext(specification, exchange.getRelativePath(), timestamp);
+            resourceContext = resourceRouter.resolve(exchange.getRelativePath(), timestamp);
         } catch (ResourceException e) {
             exchange.setStatusCode(StatusCodes.BAD_REQUEST);
             exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "text/plain");
@@ -84,22 +96,24 @@ class DataController implements HttpHandler {
             return;
         }
 
+        exchange.putAttachment(ResourceContext.ATTACHMENT_KEY, resourceContext);
+
         /*
          * NOTE: Must check reference before embedded, because ref is also an embedded resource.
          */
 
         if (resourceContext.isReference()) {
-            new ReferenceResourceHandler(persistence, specification, resourceContext, sec, sagaRepository).handleRequest(exchange);
+            referenceResourceHandler.handleRequest(exchange);
             return;
         }
 
         if (resourceContext.isManaged()) {
-            new ManagedResourceHandler(persistence, specification, schemaRepository, resourceContext, sec, sagaRepository).handleRequest(exchange);
+            managedResourceHandler.handleRequest(exchange);
             return;
         }
 
         if (resourceContext.isEmbedded()) {
-            new EmbeddedResourceHandler(persistence, specification, schemaRepository, resourceContext, sec, sagaRepository).handleRequest(exchange);
+            embeddedResourceHandler.handleRequest(exchange);
             return;
         }
 
@@ -0,0 +1,37 @@
+package no.ssb.lds.core.controller;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import no.ssb.lds.api.persistence.json.JsonTools;
+import no.ssb.lds.core.persistence.DocumentCache;
+
+import java.util.Objects;
+
+/**
+ * Handler exposes the hit, miss, eviction and invalidation counters of the document cache.
+ */
+public class DocumentCacheStatisticsHandler implements HttpHandler {
+
+    public static final String PATH = "/statistics/document-cache";
+
+    private final DocumentCache documentCache;
+
+    public DocumentCacheStatisticsHandler(DocumentCache documentCache) {
+        this.documentCache = Objects.requireNonNull(documentCache);
+    }
+
+    @Override
+    public void handleRequest(HttpServerExchange exchange) {
+        ObjectNode statistics = JsonTools.mapper.createObjectNode();
+        statistics.put("hits", documentCache.getHitCount());
+        statistics.put("misses", documentCache.getMissCount());
+        statistics.put("evictions", documentCache.getEvictionCount());
+        statistics.put("invalidations", documentCache.getInvalidationCount());
+        statistics.put("size", documentCache.getSize());
+        statistics.put("weight", documentCache.getWeight());
+        exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/json; charset=utf-8");
+        exchange.getResponseSender().send(JsonTools.toJson(statistics));
+    }
+}
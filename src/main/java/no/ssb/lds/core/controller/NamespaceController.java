@@ -5,9 +5,12 @@ import io.undertow.server.HttpServerExchange;
 import io.undertow.util.Headers;
 import no.ssb.lds.api.persistence.reactivex.RxJsonPersistence;
 import no.ssb.lds.api.specification.Specification;
+import no.ssb.lds.core.domain.SerializedDocumentCache;
 import no.ssb.lds.core.domain.batch.BatchOperationHandler;
+import no.ssb.lds.core.restore.CompactionHandler;
 import no.ssb.lds.core.restore.RestoreContextBySource;
 import no.ssb.lds.core.restore.RestoreHandler;
+import no.ssb.lds.core.restore.RestoreSettings;
 import no.ssb.lds.core.saga.SagaExecutionCoordinator;
 import no.ssb.lds.core.saga.SagaRepository;
 import no.ssb.lds.core.schema.SchemaRepository;
@@ -29,9 +32,16 @@ public class NamespaceController implements HttpHandler {
     private final TxlogRawdataPool txLogPool;
     private final RestoreContextBySource restoreContextBySource;
 
+    private final DataController dataController;
+    private final BatchOperationHandler batchOperationHandler;
+    private final SourceHandler sourceHandler;
+    private final RestoreHandler restoreHandler;
+    private final CompactionHandler compactionHandler;
+
     public NamespaceController(String namespaceDefault, Specification specification, SchemaRepository schemaRepository,
                                RxJsonPersistence persistence, SagaExecutionCoordinator sec,
-                               SagaRepository sagaRepository, TxlogRawdataPool txLogPool) {
+                               SagaRepository sagaRepository, TxlogRawdataPool txLogPool,
+                               SerializedDocumentCache responseCache, RestoreSettings restoreSettings) {
         this.specification = specification;
         this.schemaRepository = schemaRepository;
         this.persistence = persistence;
@@ -43,6 +53,11 @@ public class NamespaceController implements HttpHandler {
         this.defaultNamespace = namespaceDefault;
         this.sec = sec;
         this.restoreContextBySource = new RestoreContextBySource();
+        this.dataController = new DataController(specification, schemaRepository, persistence, sec, sagaRepository, responseCache);
+        this.batchOperationHandler = new BatchOperationHandler(specification, schemaRepository, persistence, sec, sagaRepository);
+        this.sourceHandler = new SourceHandler(txLogPool);
+        this.restoreHandler = new RestoreHandler(restoreContextBySource, txLogPool, sec, persistence, specification, restoreSettings);
+        this.compactionHandler = new CompactionHandler(txLogPool);
     }
 
     @Override
@@ -70,22 +85,27 @@ public class NamespaceController implements HttpHandler {
         }
 
         if (requestPath.startsWith(defaultNamespace)) {
-            new DataController(specification, schemaRepository, persistence, sec, sagaRepository).handleRequest(exchange);
+            dataController.handleRequest(exchange);
             return;
         }
 
         if (requestPath.startsWith("/batch" + defaultNamespace)) {
-            new BatchOperationHandler(specification, schemaRepository, persistence, sec, sagaRepository).handleRequest(exchange);
+            batchOperationHandler.handleRequest(exchange);
             return;
         }
 
         if (requestPath.startsWith("/source/")) {
-            new SourceHandler(txLogPool).handleRequest(exchange);
+            sourceHandler.handleRequest(exchange);
             return;
         }
 
         if (requestPath.startsWith("/restore/")) {
-            new RestoreHandler(restoreContextBySource, txLogPool, sec).handleRequest(exchange);
+            restoreHandler.handleRequest(exchange);
+            return;
+        }
+
+        if (requestPath.startsWith("/compact/")) {
+            compactionHandler.handleRequest(exchange);
             return;
         }
 
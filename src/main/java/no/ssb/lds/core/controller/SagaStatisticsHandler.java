@@ -0,0 +1,40 @@
+package no.ssb.lds.core.controller;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import no.ssb.lds.api.persistence.json.JsonTools;
+import no.ssb.lds.core.saga.SagaConcurrencyLimiter;
+import no.ssb.lds.core.saga.SagaExecutionCoordinator;
+
+import java.util.Objects;
+
+/**
+ * Handler exposes the concurrency limit of saga executions and the saga-log counters of the coordinator.
+ */
+public class SagaStatisticsHandler implements HttpHandler {
+
+    public static final String PATH = "/statistics/saga";
+
+    private final SagaExecutionCoordinator sec;
+
+    public SagaStatisticsHandler(SagaExecutionCoordinator sec) {
+        this.sec = Objects.requireNonNull(sec);
+    }
+
+    @Override
+    public void handleRequest(HttpServerExchange exchange) {
+        SagaConcurrencyLimiter limiter = sec.getConcurrencyLimiter();
+        ObjectNode statistics = JsonTools.mapper.createObjectNode();
+        statistics.put("adaptive", limiter.isAdaptive());
+        statistics.put("limit", limiter.getLimit());
+        statistics.put("max-limit", limiter.getMaxLimit());
+        statistics.put("in-flight", limiter.getInFlight());
+        statistics.put("rejections", limiter.getRejectionCount());
+        statistics.put("saga-log-scans", sec.getSagaLogScanCount());
+        statistics.put("saga-log-truncations", sec.getSagaLogTruncationCount());
+        exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/json; charset=utf-8");
+        exchange.getResponseSender().send(JsonTools.toJson(statistics));
+    }
+}
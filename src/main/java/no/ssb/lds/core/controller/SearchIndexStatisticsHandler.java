@@ -0,0 +1,36 @@
+package no.ssb.lds.core.controller;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import no.ssb.lds.api.persistence.json.JsonTools;
+import no.ssb.lds.core.search.AsyncSearchIndex;
+
+import java.util.Objects;
+
+/**
+ * Handler exposes the lag and the write counters of the asynchronous search-index writer.
+ */
+public class SearchIndexStatisticsHandler implements HttpHandler {
+
+    public static final String PATH = "/statistics/search-index";
+
+    private final AsyncSearchIndex searchIndex;
+
+    public SearchIndexStatisticsHandler(AsyncSearchIndex searchIndex) {
+        this.searchIndex = Objects.requireNonNull(searchIndex);
+    }
+
+    @Override
+    public void handleRequest(HttpServerExchange exchange) {
+        ObjectNode statistics = JsonTools.mapper.createObjectNode();
+        statistics.put("lag-ms", searchIndex.getLagMillis());
+        statistics.put("pending", searchIndex.getPendingCount());
+        statistics.put("written", searchIndex.getWrittenCount());
+        statistics.put("retries", searchIndex.getRetryCount());
+        statistics.put("failed", searchIndex.getFailedCount());
+        exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/json; charset=utf-8");
+        exchange.getResponseSender().send(JsonTools.toJson(statistics));
+    }
+}
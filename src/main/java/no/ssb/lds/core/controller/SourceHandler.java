@@ -1,23 +1,27 @@
 package no.ssb.lds.core.controller;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.node.NullNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import de.huxhorn.sulky.ulid.ULID;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.util.Headers;
 import no.ssb.lds.api.persistence.json.JsonTools;
-import no.ssb.lds.core.txlog.TxLogTools;
+import no.ssb.lds.core.domain.AsyncExchange;
+import no.ssb.lds.core.txlog.TxLogPosition;
 import no.ssb.lds.core.txlog.TxlogRawdataPool;
-import no.ssb.rawdata.api.RawdataMessage;
 
 import java.nio.charset.StandardCharsets;
-
-import static java.util.Optional.ofNullable;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 public class SourceHandler implements HttpHandler {
 
+    static final long DEFAULT_WAIT_TIMEOUT_MS = 30000;
+    static final long MAX_WAIT_TIMEOUT_MS = 120000;
+
     private final TxlogRawdataPool txLogPool;
+    private final GetHandler getHandler = new GetHandler();
 
     public SourceHandler(TxlogRawdataPool txLogPool) {
         this.txLogPool = txLogPool;
@@ -26,7 +30,7 @@ public class SourceHandler implements HttpHandler {
     @Override
     public void handleRequest(HttpServerExchange exchange) throws Exception {
         if (exchange.getRequestMethod().equalToString("get")) {
-            new GetHandler().handleRequest(exchange);
+            getHandler.handleRequest(exchange);
             return;
         }
 
@@ -35,30 +39,77 @@ public class SourceHandler implements HttpHandler {
         exchange.getResponseSender().send("Unsupported source method: " + exchange.getRequestMethod());
     }
 
+    /**
+     * Responds with the last position of the tx-log of the source. With an "after" tx-id the response is held until
+     * the position is after that tx-id or until "timeoutMs" has passed, whichever comes first; the position is then
+     * returned as it is, so that callers can tell a timeout from a lastTxId that did not change. A source that has
+     * not been written or seeded is answered immediately, as its position is not tracked.
+     */
     private class GetHandler implements HttpHandler {
         public void handleRequest(HttpServerExchange exchange) throws Exception {
-            if (exchange.isInIoThread()) {
-                exchange.dispatch(this);
-                return;
-            }
-
             String source = exchange.getRequestPath().substring("/source/".length());
-            RawdataMessage lastMessage = txLogPool.getLastMessage(source);
-            if (lastMessage == null) {
-                exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/json; charset=utf-8");
-                ObjectNode result = JsonTools.mapper.createObjectNode();
-                result.putNull("lastSourceId");
-                exchange.getResponseSender().send(JsonTools.toJson(result), StandardCharsets.UTF_8);
+
+            ULID.Value after;
+            long timeoutMs;
+            try {
+                String afterParam = queryParam(exchange, "after");
+                after = afterParam == null ? null : ULID.parseULID(afterParam);
+                String timeoutParam = queryParam(exchange, "timeoutMs");
+                timeoutMs = timeoutParam == null ? DEFAULT_WAIT_TIMEOUT_MS : Math.min(Long.parseLong(timeoutParam), MAX_WAIT_TIMEOUT_MS);
+            } catch (IllegalArgumentException e) {
+                exchange.setStatusCode(400);
+                exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "text/plain");
+                exchange.getResponseSender().send("Bad query parameter: " + e.getMessage());
                 return;
             }
 
-            JsonNode meta = TxLogTools.toJson(lastMessage.get("meta"));
-            JsonNode sourceIdTextNode = ofNullable(meta.get("sourceId")).orElse(NullNode.getInstance());
-            ObjectNode result = JsonTools.mapper.createObjectNode();
-            result.set("lastSourceId", sourceIdTextNode);
+            // the first request for a source reads its last position from the tx-log, so leave the io-thread
+            exchange.dispatch(exchange.getConnection().getWorker(), () -> {
+                CompletableFuture<TxLogPosition> future;
+                try {
+                    if (after == null) {
+                        sendPosition(exchange, txLogPool.getLastPosition(source));
+                        return;
+                    }
+                    future = txLogPool.awaitPositionAfter(source, after);
+                } catch (Throwable t) {
+                    AsyncExchange.sendError(exchange, t);
+                    return;
+                }
+                if (!future.isDone()) {
+                    future.completeOnTimeout(null, timeoutMs, TimeUnit.MILLISECONDS);
+                }
+                future.handle((position, throwable) -> {
+                    if (throwable != null) {
+                        AsyncExchange.sendError(exchange, throwable);
+                        return null;
+                    }
+                    try {
+                        sendPosition(exchange, position != null ? position : txLogPool.getLastPosition(source));
+                    } catch (Throwable t) {
+                        AsyncExchange.sendError(exchange, t);
+                    }
+                    return null;
+                });
+            });
+        }
 
+        private void sendPosition(HttpServerExchange exchange, TxLogPosition position) {
+            ObjectNode result = JsonTools.mapper.createObjectNode();
+            if (position == null) {
+                result.putNull("lastSourceId");
+                result.putNull("lastTxId");
+            } else {
+                result.put("lastSourceId", position.getSourceId());
+                result.put("lastTxId", position.getTxId().toString());
+            }
             exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/json; charset=utf-8");
             exchange.getResponseSender().send(JsonTools.toJson(result), StandardCharsets.UTF_8);
         }
+
+        private String queryParam(HttpServerExchange exchange, String name) {
+            Deque<String> values = exchange.getQueryParameters().get(name);
+            return values == null ? null : values.peekFirst();
+        }
     }
 }
@@ -0,0 +1,47 @@
+package no.ssb.lds.core.controller;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import no.ssb.lds.api.persistence.json.JsonTools;
+import no.ssb.lds.core.txlog.TxlogRawdataPool;
+import no.ssb.lds.core.utils.Histogram;
+
+import java.util.Objects;
+
+/**
+ * Handler exposes the histograms of the number of entries per tx-log publish and of the publish latency.
+ */
+public class TxLogStatisticsHandler implements HttpHandler {
+
+    public static final String PATH = "/statistics/txlog";
+
+    private final TxlogRawdataPool pool;
+
+    public TxLogStatisticsHandler(TxlogRawdataPool pool) {
+        this.pool = Objects.requireNonNull(pool);
+    }
+
+    @Override
+    public void handleRequest(HttpServerExchange exchange) {
+        ObjectNode statistics = JsonTools.mapper.createObjectNode();
+        statistics.set("publish-batch-size", toJson(pool.getPublishBatchSizes()));
+        statistics.set("publish-latency-us", toJson(pool.getPublishLatenciesMicros()));
+        exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/json; charset=utf-8");
+        exchange.getResponseSender().send(JsonTools.toJson(statistics));
+    }
+
+    static ObjectNode toJson(Histogram histogram) {
+        ObjectNode node = JsonTools.mapper.createObjectNode();
+        node.put("count", histogram.getCount());
+        node.put("sum", histogram.getSum());
+        node.put("max", histogram.getMax());
+        ObjectNode buckets = node.putObject("buckets");
+        long[] counts = histogram.getBucketCounts();
+        for (int i = 0; i < counts.length; i++) {
+            buckets.put("le-" + Histogram.getBucketUpperBound(i), counts[i]);
+        }
+        return node;
+    }
+}
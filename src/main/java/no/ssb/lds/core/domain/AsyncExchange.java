@@ -0,0 +1,140 @@
+package no.ssb.lds.core.domain;
+
+import io.reactivex.Maybe;
+import io.undertow.io.Receiver;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import io.undertow.util.StatusCodes;
+import no.ssb.lds.core.saga.SagaHandoffRejectedException;
+import no.ssb.saga.execution.SagaHandoffResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Helpers that let resource handlers compose persistence and saga results without pinning a thread for the
+ * duration of the request. The exchange is kept open by dispatching it and is completed from whichever thread
+ * delivers the result. Persistence reads are blocking and hold a worker thread while they run, but a request does
+ * not hold a thread while its saga waits for capacity or executes.
+ */
+public class AsyncExchange {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncExchange.class);
+
+    /**
+     * Create the maybe and subscribe to it on a worker thread, and resume the exchange when it completes. The
+     * persistence providers block while reading, so neither the transaction nor the read may run on an io-thread,
+     * where one slow read would stall every connection served by that thread. Errors, including errors thrown by the
+     * callbacks, are sent to the client as 500 Internal Server Error.
+     */
+    public static <T> void subscribe(HttpServerExchange exchange, Supplier<Maybe<T>> maybe, Consumer<T> onSuccess, Runnable onEmpty) {
+        exchange.dispatch(exchange.getConnection().getWorker(), () -> {
+            Maybe<T> source;
+            try {
+                source = maybe.get();
+            } catch (Throwable t) {
+                sendError(exchange, t);
+                return;
+            }
+            source.subscribe(
+                    value -> {
+                        try {
+                            onSuccess.accept(value);
+                        } catch (Throwable t) {
+                            sendError(exchange, t);
+                        }
+                    },
+                    throwable -> sendError(exchange, throwable),
+                    () -> {
+                        try {
+                            onEmpty.run();
+                        } catch (Throwable t) {
+                            sendError(exchange, t);
+                        }
+                    }
+            );
+        });
+    }
+
+    /**
+     * Receive the full request body and handle it on a worker thread. Parsing and validating a body, which may be as
+     * large as http.max-entity-size, must not run on an io-thread, where it would stall every connection served by
+     * that thread. Errors thrown by the handler are sent to the client as 500 Internal Server Error.
+     */
+    public static void receiveFullBytes(HttpServerExchange exchange, Receiver.FullBytesCallback onBody, Receiver.ErrorCallback onError) {
+        exchange.getRequestReceiver().receiveFullBytes(
+                (httpServerExchange, body) -> httpServerExchange.dispatch(httpServerExchange.getConnection().getWorker(), () -> {
+                    try {
+                        onBody.handle(httpServerExchange, body);
+                    } catch (Throwable t) {
+                        sendError(httpServerExchange, t);
+                    }
+                }),
+                onError);
+    }
+
+    /**
+     * Perform the saga handoff on a worker thread and resume the exchange when the handoff future completes. The
+     * worker thread is only held while the saga is being started or queued, not while it waits for saga capacity or
+     * executes, and the result is sent from the thread that completes the future.
+     */
+    public static void handoff(HttpServerExchange exchange, Supplier<CompletableFuture<SagaHandoffResult>> handoff, Consumer<SagaHandoffResult> onResult) {
+        exchange.dispatch(exchange.getConnection().getWorker(), () -> {
+            CompletableFuture<SagaHandoffResult> future;
+            try {
+                future = handoff.get();
+            } catch (Throwable t) {
+                sendError(exchange, t);
+                return;
+            }
+            future.handle((result, throwable) -> {
+                if (throwable != null) {
+                    sendError(exchange, throwable);
+                    return null;
+                }
+                try {
+                    onResult.accept(result);
+                } catch (Throwable t) {
+                    sendError(exchange, t);
+                }
+                return null;
+            });
+        });
+    }
+
+    /**
+     * Send the error as 500 Internal Server Error, or as 503 Service Unavailable if the saga handoff was rejected
+     * because too many handoffs are waiting to start.
+     */
+    public static void sendError(HttpServerExchange exchange, Throwable t) {
+        Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+        boolean rejected = cause instanceof SagaHandoffRejectedException;
+        if (rejected) {
+            LOG.debug("", cause);
+        } else {
+            LOG.warn("", t);
+        }
+        if (exchange.isResponseStarted()) {
+            exchange.endExchange();
+            return;
+        }
+        if (rejected) {
+            exchange.setStatusCode(StatusCodes.SERVICE_UNAVAILABLE);
+            exchange.getResponseHeaders().put(Headers.RETRY_AFTER, "1");
+        } else {
+            exchange.setStatusCode(StatusCodes.INTERNAL_SERVER_ERROR);
+        }
+        exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "text/plain");
+        exchange.getResponseSender().send("Error: " + (rejected ? cause : t).getMessage());
+    }
+
+    public static void sendSagaExecutionId(HttpServerExchange exchange, int statusCode, SagaHandoffResult handoffResult) {
+        exchange.setStatusCode(statusCode);
+        exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/json");
+        exchange.getResponseSender().send("{\"saga-execution-id\":\"" + handoffResult.getExecutionId() + "\"}");
+    }
+}
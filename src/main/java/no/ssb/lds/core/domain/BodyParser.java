@@ -1,33 +1,104 @@
 package no.ssb.lds.core.domain;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.RequestTooBigException;
+import io.undertow.util.HeaderValues;
+import io.undertow.util.Headers;
+import io.undertow.util.StatusCodes;
 import org.apache.tika.mime.MediaType;
 import org.msgpack.jackson.dataformat.MessagePackFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
 
+import static java.util.Optional.ofNullable;
+
+/**
+ * Parses request bodies directly from bytes or from the request input-stream. Bodies are never decoded into strings,
+ * which would double the memory used for large documents and corrupt binary formats such as MessagePack.
+ */
 public class BodyParser {
 
+    private static final Logger LOG = LoggerFactory.getLogger(BodyParser.class);
+
     static final ObjectMapper jsonMapper = new ObjectMapper();
     static final ObjectMapper msgPackMapper = new ObjectMapper(new MessagePackFactory());
 
-    public static JsonNode deserializeBody(String contentType, String requestBody) {
+    /**
+     * @return the content-type of the request, defaults to application/json when the header is missing.
+     */
+    public static String contentType(HttpServerExchange exchange) {
+        return ofNullable(exchange.getRequestHeaders().get(Headers.CONTENT_TYPE))
+                .map(HeaderValues::getFirst).orElse("application/json");
+    }
+
+    /**
+     * @return the parsed body, or null if the body is empty.
+     */
+    public static JsonNode deserializeBody(String contentType, byte[] requestBody) {
+        if (requestBody.length == 0) {
+            return null;
+        }
         try {
-            // deserialize request data
-            MediaType type = MediaType.parse(contentType);
-            JsonNode requestData;
-            if ("application".equals(type.getType()) && "json".equals(type.getSubtype())) {
-                requestData = jsonMapper.readTree(requestBody);
-            } else if ("application".equals(type.getType())
-                    && ("msgpack".equals(type.getSubtype()) || "x-msgpack".equals(type.getSubtype()))) {
-                requestData = msgPackMapper.readTree(requestBody);
-            } else {
-                throw new IllegalArgumentException("Unsupported Content-Type: " + contentType);
-            }
-            return requestData;
+            return emptyToNull(mapperFor(contentType).readTree(requestBody));
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * Parse the body while it is being read from the stream. The stream is not closed.
+     *
+     * @return the parsed body, or null if the body is empty.
+     * @throws IOException if the body could not be read or parsed, see {@link #sendBodyError}
+     */
+    public static JsonNode deserializeBody(String contentType, InputStream requestBody) throws IOException {
+        return emptyToNull(mapperFor(contentType).readTree(requestBody));
+    }
+
+    private static ObjectMapper mapperFor(String contentType) {
+        MediaType type = MediaType.parse(contentType);
+        if (type != null && "application".equals(type.getType())) {
+            if ("json".equals(type.getSubtype())) {
+                return jsonMapper;
+            }
+            if ("msgpack".equals(type.getSubtype()) || "x-msgpack".equals(type.getSubtype())) {
+                return msgPackMapper;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported Content-Type: " + contentType);
+    }
+
+    private static JsonNode emptyToNull(JsonNode node) {
+        return node == null || node.isMissingNode() ? null : node;
+    }
+
+    /**
+     * Respond to a failure while receiving or parsing a request body. Bodies larger than the configured
+     * http.max-entity-size are rejected with 413, unsupported content-types with 415, unparseable bodies with 400, and
+     * other failures with 500.
+     */
+    public static void sendBodyError(HttpServerExchange exchange, String messagePrefix, Throwable e) {
+        Throwable cause = e instanceof RuntimeException && e.getCause() instanceof IOException ? e.getCause() : e;
+        if (cause instanceof RequestTooBigException) {
+            LOG.debug("Request body too large: {} {}", exchange.getRequestMethod(), exchange.getRequestPath());
+            exchange.setStatusCode(StatusCodes.REQUEST_ENTITY_TOO_LARGE);
+            exchange.setPersistent(false);
+        } else if (cause instanceof IllegalArgumentException) {
+            exchange.setStatusCode(StatusCodes.UNSUPPORTED_MEDIA_TYPE);
+        } else if (cause instanceof JsonProcessingException) {
+            LOG.debug("Unable to parse request body: {}", cause.getMessage());
+            exchange.setStatusCode(StatusCodes.BAD_REQUEST);
+        } else {
+            LOG.warn("", e);
+            exchange.setStatusCode(StatusCodes.INTERNAL_SERVER_ERROR);
+        }
+        exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "text/plain");
+        exchange.getResponseSender().send(messagePrefix + cause.getMessage());
+    }
 }
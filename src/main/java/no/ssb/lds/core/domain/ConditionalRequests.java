@@ -0,0 +1,54 @@
+package no.ssb.lds.core.domain;
+
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.DateUtils;
+import io.undertow.util.ETag;
+import io.undertow.util.ETagUtils;
+import io.undertow.util.Headers;
+import io.undertow.util.StatusCodes;
+import no.ssb.lds.api.persistence.DocumentKey;
+
+import java.time.Instant;
+import java.util.Date;
+
+/**
+ * Validators for resources that are read from a single managed document. The version timestamp of the document key
+ * identifies the content of the document, and is exposed as a weak ETag (the same version can be encoded in several
+ * response formats) and as Last-Modified.
+ */
+public class ConditionalRequests {
+
+    public static ETag etag(DocumentKey key) {
+        return new ETag(true, key.timestamp().toInstant().toString());
+    }
+
+    /**
+     * Add ETag and Last-Modified headers for the document version, and evaluate If-None-Match, or If-Modified-Since
+     * when there is no If-None-Match, against it.
+     *
+     * @return true if the exchange has been completed with 304 Not Modified and nothing more should be sent.
+     */
+    public static boolean handleNotModified(HttpServerExchange exchange, DocumentKey key) {
+        ETag etag = etag(key);
+        Instant version = key.timestamp().toInstant();
+        Date lastModified = Date.from(version);
+        exchange.getResponseHeaders().put(Headers.ETAG, etag.toString());
+        exchange.getResponseHeaders().put(Headers.LAST_MODIFIED, DateUtils.toDateString(lastModified));
+        boolean modified;
+        if (exchange.getRequestHeaders().contains(Headers.IF_NONE_MATCH)) {
+            modified = ETagUtils.handleIfNoneMatch(exchange, etag, true);
+        } else {
+            modified = DateUtils.handleIfModifiedSince(exchange, lastModified);
+        }
+        if (modified) {
+            return false;
+        }
+        exchange.setStatusCode(StatusCodes.NOT_MODIFIED);
+        exchange.endExchange();
+        return true;
+    }
+
+    public static boolean isHead(HttpServerExchange exchange) {
+        return exchange.getRequestMethod().equalToString("head");
+    }
+}
@@ -0,0 +1,87 @@
+package no.ssb.lds.core.domain;
+
+import io.undertow.connector.ByteBufferPool;
+import io.undertow.connector.PooledByteBuffer;
+import io.undertow.io.IoCallback;
+import io.undertow.io.Sender;
+import io.undertow.server.HttpServerExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Output-stream that writes into buffers allocated from an Undertow buffer-pool, so that a serialized response does
+ * not need to be copied into a byte-array or string before it is sent. The buffers must either be sent, or released
+ * if the response is abandoned.
+ */
+class PooledByteBufferOutputStream extends OutputStream {
+
+    private final ByteBufferPool pool;
+    private final List<PooledByteBuffer> buffers = new ArrayList<>();
+    private ByteBuffer current;
+
+    PooledByteBufferOutputStream(ByteBufferPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public void write(int b) {
+        ensureRemaining();
+        current.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        while (len > 0) {
+            ensureRemaining();
+            int n = Math.min(len, current.remaining());
+            current.put(b, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    private void ensureRemaining() {
+        if (current == null || !current.hasRemaining()) {
+            PooledByteBuffer pooled = pool.allocate();
+            buffers.add(pooled);
+            current = pooled.getBuffer();
+            current.clear();
+        }
+    }
+
+    /**
+     * Send the written buffers as the complete response and end the exchange.
+     */
+    void send(HttpServerExchange exchange) {
+        ByteBuffer[] data = new ByteBuffer[buffers.size()];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = buffers.get(i).getBuffer();
+            data[i].flip();
+        }
+        exchange.getResponseSender().send(data, new IoCallback() {
+            @Override
+            public void onComplete(HttpServerExchange exchange, Sender sender) {
+                release();
+                IoCallback.END_EXCHANGE.onComplete(exchange, sender);
+            }
+
+            @Override
+            public void onException(HttpServerExchange exchange, Sender sender, IOException exception) {
+                release();
+                IoCallback.END_EXCHANGE.onException(exchange, sender, exception);
+            }
+        });
+    }
+
+    void release() {
+        for (PooledByteBuffer buffer : buffers) {
+            buffer.close();
+        }
+        buffers.clear();
+        current = null;
+    }
+}
@@ -0,0 +1,123 @@
+package no.ssb.lds.core.domain;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.HeaderValues;
+import io.undertow.util.Headers;
+import no.ssb.lds.api.persistence.json.JsonTools;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * The encodings that resource and graphql responses can be serialized to, selected from the Accept header of the
+ * request. Json is used when the client does not ask for a supported binary encoding.
+ */
+public enum ResponseFormat {
+
+    JSON("application/json; charset=utf-8", JsonTools.mapper),
+    MSGPACK("application/msgpack", BodyParser.msgPackMapper);
+
+    private final String contentType;
+    private final ObjectMapper mapper;
+
+    ResponseFormat(String contentType, ObjectMapper mapper) {
+        this.contentType = contentType;
+        this.mapper = mapper;
+    }
+
+    /**
+     * Select the response format with the highest quality in the Accept header of the request, and mark the response
+     * as varying by Accept. Media-ranges that are not supported are ignored, and wildcards select json.
+     */
+    public static ResponseFormat negotiate(HttpServerExchange exchange) {
+        exchange.getResponseHeaders().put(Headers.VARY, Headers.ACCEPT_STRING);
+        HeaderValues accept = exchange.getRequestHeaders().get(Headers.ACCEPT);
+        if (accept == null) {
+            return JSON;
+        }
+        ResponseFormat selected = null;
+        float selectedQuality = 0;
+        for (int i = 0; i < accept.size(); i++) {
+            for (String mediaRange : accept.get(i).split(",")) {
+                String[] parts = mediaRange.split(";");
+                ResponseFormat format = of(parts[0].trim().toLowerCase());
+                if (format == null) {
+                    continue;
+                }
+                float quality = quality(parts);
+                if (quality > selectedQuality) {
+                    selected = format;
+                    selectedQuality = quality;
+                }
+            }
+        }
+        return selected == null ? JSON : selected;
+    }
+
+    private static ResponseFormat of(String mediaType) {
+        switch (mediaType) {
+            case "application/msgpack":
+            case "application/x-msgpack":
+                return MSGPACK;
+            case "application/json":
+            case "application/*":
+            case "*/*":
+                return JSON;
+            default:
+                return null;
+        }
+    }
+
+    private static float quality(String[] mediaRangeParts) {
+        for (int i = 1; i < mediaRangeParts.length; i++) {
+            String parameter = mediaRangeParts[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Float.parseFloat(parameter.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public JsonGenerator createGenerator(OutputStream out) throws IOException {
+        return mapper.getFactory().createGenerator(out);
+    }
+
+    public byte[] serialize(JsonNode node) {
+        try {
+            return mapper.writeValueAsBytes(node);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Serialize the node into buffers from the connection buffer-pool and send them as the complete response. The
+     * buffers are returned to the pool when the response has been written.
+     */
+    public void send(HttpServerExchange exchange, JsonNode node) {
+        PooledByteBufferOutputStream out = new PooledByteBufferOutputStream(exchange.getConnection().getByteBufferPool());
+        try (JsonGenerator generator = createGenerator(out)) {
+            generator.writeTree(node);
+        } catch (IOException e) {
+            out.release();
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            out.release();
+            throw e;
+        }
+        exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, contentType);
+        out.send(exchange);
+    }
+}
@@ -0,0 +1,317 @@
+package no.ssb.lds.core.domain;
+
+import io.undertow.io.IoCallback;
+import io.undertow.io.Sender;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import no.ssb.lds.api.persistence.DocumentKey;
+import no.ssb.lds.api.persistence.json.JsonDocument;
+import no.ssb.lds.core.persistence.DocumentGenerations;
+import no.ssb.lds.core.persistence.DocumentInvalidationListener;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of serialized managed document responses, keyed by document and response format. The bytes are held outside
+ * of the heap in fixed-size pages of pre-allocated direct buffers, and are written to the connection directly from
+ * those pages, so that hot documents are neither serialized nor copied when they are sent.
+ * <p>
+ * Least-recently used entries are evicted when there are not enough free pages for a new entry. An entry that is
+ * evicted or invalidated while it is being sent keeps its pages until the send completes.
+ */
+public class SerializedDocumentCache implements DocumentInvalidationListener {
+
+    private final int pageSize;
+    private final int pagesPerArena;
+    private final ByteBuffer[] arenas;
+    private final int[] freePages;
+    private int freePageCount;
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(1024, 0.75f, true);
+    private final DocumentGenerations generations = new DocumentGenerations();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param maxSizeBytes the off-heap memory to allocate for the cache, rounded down to a whole number of pages.
+     * @param pageSize     the size of the pages that serialized documents are split in.
+     */
+    public SerializedDocumentCache(long maxSizeBytes, int pageSize) {
+        if (pageSize <= 0 || maxSizeBytes < pageSize) {
+            throw new IllegalArgumentException("The cache must have room for at least one page of " + pageSize + " bytes");
+        }
+        long pageCount = maxSizeBytes / pageSize;
+        if (pageCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many pages, use a larger page size: " + pageCount);
+        }
+        this.pageSize = pageSize;
+        this.pagesPerArena = Integer.MAX_VALUE / pageSize;
+        this.freePages = new int[(int) pageCount];
+        this.arenas = new ByteBuffer[(int) ((pageCount + pagesPerArena - 1) / pagesPerArena)];
+        for (int i = 0; i < arenas.length; i++) {
+            long pages = Math.min(pagesPerArena, pageCount - (long) i * pagesPerArena);
+            arenas[i] = ByteBuffer.allocateDirect((int) (pages * pageSize));
+        }
+        for (int i = 0; i < freePages.length; i++) {
+            freePages[i] = freePages.length - 1 - i;
+        }
+        this.freePageCount = freePages.length;
+    }
+
+    /**
+     * Capture the invalidation generations of a document before it is read from persistence.
+     */
+    public DocumentGenerations.Stamp stamp(String namespace, String entity, String id) {
+        return generations.stamp(namespace, entity, id);
+    }
+
+    /**
+     * Send the document in the response format as the complete response, from the cache if it holds the version of
+     * the document, and otherwise by serializing the document and caching the result.
+     *
+     * @param stamp the stamp that was taken before the document was read.
+     */
+    public void send(HttpServerExchange exchange, DocumentGenerations.Stamp stamp, JsonDocument document, ResponseFormat format) {
+        exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, format.getContentType());
+        Entry entry = acquire(document.key(), format);
+        if (entry == null) {
+            byte[] bytes = format.serialize(document.jackson());
+            entry = put(stamp, document.key(), format, bytes);
+            if (entry == null) {
+                exchange.getResponseSender().send(ByteBuffer.wrap(bytes), IoCallback.END_EXCHANGE);
+                return;
+            }
+        }
+        final Entry acquired = entry;
+        exchange.getResponseSender().send(buffers(acquired), new IoCallback() {
+            @Override
+            public void onComplete(HttpServerExchange exchange, Sender sender) {
+                release(acquired);
+                IoCallback.END_EXCHANGE.onComplete(exchange, sender);
+            }
+
+            @Override
+            public void onException(HttpServerExchange exchange, Sender sender, IOException exception) {
+                release(acquired);
+                IoCallback.END_EXCHANGE.onException(exchange, sender, exception);
+            }
+        });
+    }
+
+    /**
+     * @return the entry of the document version, retained for the caller, or null if it is not cached.
+     */
+    Entry acquire(DocumentKey documentKey, ResponseFormat format) {
+        Key key = new Key(documentKey.namespace(), documentKey.entity(), documentKey.id(), format);
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && !generations.isCurrent(entry.stamp)) {
+                remove(key);
+                entry = null;
+            }
+            if (entry == null || !entry.version.equals(documentKey.timestamp().toInstant())) {
+                misses.increment();
+                return null;
+            }
+            entry.references.incrementAndGet();
+            hits.increment();
+            return entry;
+        }
+    }
+
+    /**
+     * Copy the serialized document into the cache.
+     *
+     * @return the new entry, retained for the caller, or null if the document was invalidated since the stamp was
+     * taken or there is no room for it.
+     */
+    Entry put(DocumentGenerations.Stamp stamp, DocumentKey documentKey, ResponseFormat format, byte[] bytes) {
+        int pageCount = Math.max(1, (bytes.length + pageSize - 1) / pageSize);
+        if (pageCount > freePages.length) {
+            return null;
+        }
+        int[] pages = allocatePages(pageCount);
+        if (pages == null) {
+            return null;
+        }
+        for (int i = 0; i < pages.length; i++) {
+            ByteBuffer page = page(pages[i]);
+            int offset = i * pageSize;
+            page.put(bytes, offset, Math.min(pageSize, bytes.length - offset));
+        }
+        Entry entry = new Entry(stamp, documentKey.timestamp().toInstant(), pages, bytes.length);
+        Key key = new Key(documentKey.namespace(), documentKey.entity(), documentKey.id(), format);
+        synchronized (this) {
+            if (!generations.isCurrent(stamp)) {
+                freePages(pages);
+                return null;
+            }
+            remove(key);
+            entries.put(key, entry);
+            entry.references.incrementAndGet();
+            return entry;
+        }
+    }
+
+    void release(Entry entry) {
+        if (entry.references.decrementAndGet() == 0) {
+            synchronized (this) {
+                freePages(entry.pages);
+            }
+        }
+    }
+
+    ByteBuffer[] buffers(Entry entry) {
+        ByteBuffer[] buffers = new ByteBuffer[entry.pages.length];
+        for (int i = 0; i < buffers.length; i++) {
+            ByteBuffer page = page(entry.pages[i]);
+            page.limit(Math.min(pageSize, entry.length - i * pageSize));
+            buffers[i] = page;
+        }
+        return buffers;
+    }
+
+    /**
+     * @return an independent view of the page, positioned at its start.
+     */
+    private ByteBuffer page(int page) {
+        ByteBuffer arena = arenas[page / pagesPerArena].duplicate();
+        int offset = (page % pagesPerArena) * pageSize;
+        arena.limit(offset + pageSize).position(offset);
+        return arena.slice();
+    }
+
+    private synchronized int[] allocatePages(int pageCount) {
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (freePageCount < pageCount && eldest.hasNext()) {
+            Entry evicted = eldest.next();
+            eldest.remove();
+            evictions.increment();
+            release(evicted);
+        }
+        if (freePageCount < pageCount) {
+            // the remaining pages are held by responses that are being sent
+            return null;
+        }
+        int[] pages = new int[pageCount];
+        for (int i = 0; i < pageCount; i++) {
+            pages[i] = freePages[--freePageCount];
+        }
+        return pages;
+    }
+
+    private void freePages(int[] pages) {
+        for (int page : pages) {
+            freePages[freePageCount++] = page;
+        }
+    }
+
+    private void remove(Key key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            release(removed);
+        }
+    }
+
+    @Override
+    public void invalidate(String namespace, String entity, String id) {
+        generations.invalidate(namespace, entity, id);
+        synchronized (this) {
+            for (ResponseFormat format : ResponseFormat.values()) {
+                remove(new Key(namespace, entity, id, format));
+            }
+        }
+        invalidations.increment();
+    }
+
+    /**
+     * Invalidate all documents of the entity. The entries are removed lazily, when they are read or evicted.
+     */
+    @Override
+    public void invalidateEntity(String namespace, String entity) {
+        generations.invalidateEntity(namespace, entity);
+        invalidations.increment();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    public synchronized long getSize() {
+        return entries.size();
+    }
+
+    /**
+     * @return the number of bytes in pages that are in use, either by cached entries or by responses being sent.
+     */
+    public synchronized long getUsedBytes() {
+        return (long) (freePages.length - freePageCount) * pageSize;
+    }
+
+    static class Entry {
+        final DocumentGenerations.Stamp stamp;
+        final Instant version;
+        final int[] pages;
+        final int length;
+        // one reference is held by the cache while the entry is cached, and one by each response being sent
+        final AtomicInteger references = new AtomicInteger(1);
+
+        Entry(DocumentGenerations.Stamp stamp, Instant version, int[] pages, int length) {
+            this.stamp = stamp;
+            this.version = version;
+            this.pages = pages;
+            this.length = length;
+        }
+    }
+
+    static class Key {
+        final String namespace;
+        final String entity;
+        final String id;
+        final ResponseFormat format;
+        final int hash;
+
+        Key(String namespace, String entity, String id, ResponseFormat format) {
+            this.namespace = namespace;
+            this.entity = entity;
+            this.id = id;
+            this.format = format;
+            this.hash = Objects.hash(namespace, entity, id, format);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return hash == key.hash && format == key.format && namespace.equals(key.namespace) && entity.equals(key.entity) && id.equals(key.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -5,16 +5,14 @@ import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
-import io.undertow.util.HeaderMap;
-import io.undertow.util.HeaderValues;
 import io.undertow.util.Headers;
 import io.undertow.util.StatusCodes;
-import no.ssb.concurrent.futureselector.SelectableFuture;
 import no.ssb.lds.api.persistence.Transaction;
 import no.ssb.lds.api.persistence.batch.Batch;
 import no.ssb.lds.api.persistence.json.JsonTools;
 import no.ssb.lds.api.persistence.reactivex.RxJsonPersistence;
 import no.ssb.lds.api.specification.Specification;
+import no.ssb.lds.core.domain.AsyncExchange;
 import no.ssb.lds.core.domain.BodyParser;
 import no.ssb.lds.core.saga.SagaCommands;
 import no.ssb.lds.core.saga.SagaExecutionCoordinator;
@@ -22,12 +20,11 @@ import no.ssb.lds.core.saga.SagaInput;
 import no.ssb.lds.core.saga.SagaRepository;
 import no.ssb.lds.core.schema.SchemaRepository;
 import no.ssb.saga.api.Saga;
-import no.ssb.saga.execution.SagaHandoffResult;
 import no.ssb.saga.execution.adapter.AdapterLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Deque;
 import java.util.LinkedHashMap;
@@ -72,75 +69,70 @@ public class BatchOperationHandler implements HttpHandler {
     }
 
     private void put(HttpServerExchange exchange) {
-        exchange.getRequestReceiver().receiveFullString(
-                (httpServerExchange, requestBody) -> {
-                    // check if we received an empty payload
-                    if ("".equals(requestBody)) {
-                        LOG.error("Received empty payload for: {}", exchange.getRequestPath());
-                        exchange.setStatusCode(400);
-                        exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "text/plain");
-                        exchange.getResponseSender().send("Payload was empty!");
-                        return;
-                    }
-
-                    String contentType = ofNullable(exchange.getRequestHeaders().get(Headers.CONTENT_TYPE))
-                            .map(HeaderValues::getFirst).orElse("application/json");
-                    JsonNode requestData = BodyParser.deserializeBody(contentType, requestBody);
-
-                    if (LOG.isTraceEnabled()) {
-                        LOG.trace("{} {}{}\n{}", exchange.getRequestMethod(), exchange.getRequestPath(), exchange.getQueryString().isBlank() ? "" : "?" + exchange.getQueryString(), requestBody);
-                    }
-
-                    String namespace = exchange.getRequestPath().substring("/batch/".length());
-                    if (namespace.contains("/")) {
-                        namespace = namespace.substring(0, namespace.indexOf("/"));
-                    }
-
-                    Batch batch = resolveBatch(requestData);
+        // batches can be large, parse them while reading from the request stream on this worker thread
+        JsonNode requestData;
+        exchange.startBlocking();
+        try {
+            requestData = BodyParser.deserializeBody(BodyParser.contentType(exchange), exchange.getInputStream());
+        } catch (IOException | RuntimeException e) {
+            BodyParser.sendBodyError(exchange, "Error: ", e);
+            return;
+        }
 
-                    if (batch.groups().isEmpty()) {
-                        exchange.setStatusCode(StatusCodes.OK);
-                        exchange.endExchange();
-                    }
+        // check if we received an empty payload
+        if (requestData == null) {
+            LOG.error("Received empty payload for: {}", exchange.getRequestPath());
+            exchange.setStatusCode(400);
+            exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "text/plain");
+            exchange.getResponseSender().send("Payload was empty!");
+            return;
+        }
 
-                    // True if defined and no false values.
-                    Map<String, Deque<String>> parameters = exchange.getQueryParameters();
-                    boolean sync = parameters.getOrDefault("sync", new LinkedList<>())
-                            .stream().noneMatch("false"::equalsIgnoreCase);
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("{} {}{}\n{}", exchange.getRequestMethod(), exchange.getRequestPath(), exchange.getQueryString().isBlank() ? "" : "?" + exchange.getQueryString(), requestData);
+        }
 
-                    boolean noTxLogging = ofNullable(exchange.getQueryParameters().get("notxlog"))
-                            .map(Deque::peekFirst)
-                            .map(Boolean::valueOf)
-                            .orElse(Boolean.FALSE);
-                    Saga saga = sagaRepository.get(noTxLogging ?
-                            SagaRepository.SAGA_BATCH_NO_TX_LOG :
-                            SagaRepository.SAGA_BATCH);
+        String namespace = exchange.getRequestPath().substring("/batch/".length());
+        if (namespace.contains("/")) {
+            namespace = namespace.substring(0, namespace.indexOf("/"));
+        }
 
-                    String source = ofNullable(exchange.getQueryParameters().get("source")).map(Deque::peekFirst).orElse(null);
-                    String sourceId = ofNullable(exchange.getQueryParameters().get("sourceId")).map(Deque::peekFirst).orElse(null);
+        Batch batch = resolveBatch(requestData);
 
-                    AdapterLoader adapterLoader = sagaRepository.getAdapterLoader();
-                    SagaInput sagaInput = new SagaInput(sec.generateTxId(), "PUT", "TODO", namespace, source, sourceId, batch.getBatchNode());
-                    SelectableFuture<SagaHandoffResult> handoff = sec.handoff(sync, adapterLoader, saga, sagaInput, SagaCommands.getSagaAdminParameterCommands(exchange));
-                    SagaHandoffResult handoffResult = handoff.join();
+        if (batch.groups().isEmpty()) {
+            exchange.setStatusCode(StatusCodes.OK);
+            exchange.endExchange();
+            return;
+        }
 
-                    HeaderMap responseHeaders = exchange.getResponseHeaders();
+        // True if defined and no false values.
+        Map<String, Deque<String>> parameters = exchange.getQueryParameters();
+        boolean sync = parameters.getOrDefault("sync", new LinkedList<>())
+                .stream().noneMatch("false"::equalsIgnoreCase);
+
+        boolean noTxLogging = ofNullable(exchange.getQueryParameters().get("notxlog"))
+                .map(Deque::peekFirst)
+                .map(Boolean::valueOf)
+                .orElse(Boolean.FALSE);
+        Saga saga = sagaRepository.get(noTxLogging ?
+                SagaRepository.SAGA_BATCH_NO_TX_LOG :
+                SagaRepository.SAGA_BATCH);
+
+        String source = ofNullable(exchange.getQueryParameters().get("source")).map(Deque::peekFirst).orElse(null);
+        String sourceId = ofNullable(exchange.getQueryParameters().get("sourceId")).map(Deque::peekFirst).orElse(null);
+
+        AdapterLoader adapterLoader = sagaRepository.getAdapterLoader();
+        SagaInput sagaInput = new SagaInput(sec.generateTxId(), "PUT", "TODO", namespace, source, sourceId, batch.getBatchNode());
+        AsyncExchange.handoff(exchange,
+                () -> sec.handoffAsync(sync, adapterLoader, saga, sagaInput, SagaCommands.getSagaAdminParameterCommands(exchange)),
+                handoffResult -> {
                     if (sync) {
                         exchange.setStatusCode(StatusCodes.OK);
                         exchange.endExchange();
                     } else {
-                        exchange.setStatusCode(StatusCodes.ACCEPTED);
-                        responseHeaders.put(Headers.CONTENT_TYPE, "application/json");
-                        exchange.getResponseSender().send("{\"saga-execution-id\":\"" + handoffResult.getExecutionId() + "\"}");
+                        AsyncExchange.sendSagaExecutionId(exchange, StatusCodes.ACCEPTED, handoffResult);
                     }
-                },
-                (exchange1, e) -> {
-                    exchange.setStatusCode(StatusCodes.INTERNAL_SERVER_ERROR);
-                    exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "text/plain");
-                    exchange.getResponseSender().send("Error: " + e.getMessage());
-                    LOG.warn("", e);
-                },
-                StandardCharsets.UTF_8);
+                });
     }
 
     private Batch resolveBatch(JsonNode requestData) {
@@ -1,17 +1,18 @@
 package no.ssb.lds.core.domain.embedded;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import io.reactivex.Maybe;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
-import io.undertow.util.HeaderValues;
 import io.undertow.util.Headers;
-import no.ssb.concurrent.futureselector.SelectableFuture;
 import no.ssb.lds.api.persistence.Transaction;
 import no.ssb.lds.api.persistence.json.JsonDocument;
-import no.ssb.lds.api.persistence.json.JsonTools;
 import no.ssb.lds.api.persistence.reactivex.RxJsonPersistence;
 import no.ssb.lds.api.specification.Specification;
+import no.ssb.lds.core.domain.AsyncExchange;
 import no.ssb.lds.core.domain.BodyParser;
+import no.ssb.lds.core.domain.ConditionalRequests;
+import no.ssb.lds.core.domain.ResponseFormat;
 import no.ssb.lds.core.domain.resource.ResourceContext;
 import no.ssb.lds.core.domain.resource.ResourceElement;
 import no.ssb.lds.core.saga.SagaCommands;
@@ -22,12 +23,10 @@ import no.ssb.lds.core.schema.SchemaRepository;
 import no.ssb.lds.core.validation.LinkedDocumentValidationException;
 import no.ssb.lds.core.validation.LinkedDocumentValidator;
 import no.ssb.saga.api.Saga;
-import no.ssb.saga.execution.SagaHandoffResult;
 import no.ssb.saga.execution.adapter.AdapterLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.nio.charset.StandardCharsets;
 import java.util.Deque;
 import java.util.LinkedList;
 
@@ -40,30 +39,31 @@ public class EmbeddedResourceHandler implements HttpHandler {
 
     private final Specification specification;
     private final SchemaRepository schemaRepository;
-    private final ResourceContext resourceContext;
     private final SagaExecutionCoordinator sec;
     private final RxJsonPersistence persistence;
     private final SagaRepository sagaRepository;
+    private final LinkedDocumentValidator validator;
 
-    public EmbeddedResourceHandler(RxJsonPersistence persistence, Specification specification, SchemaRepository schemaRepository, ResourceContext resourceContext, SagaExecutionCoordinator sec, SagaRepository sagaRepository) {
+    public EmbeddedResourceHandler(RxJsonPersistence persistence, Specification specification, SchemaRepository schemaRepository, SagaExecutionCoordinator sec, SagaRepository sagaRepository) {
         this.persistence = persistence;
         this.specification = specification;
         this.schemaRepository = schemaRepository;
-        this.resourceContext = resourceContext;
         this.sec = sec;
         this.sagaRepository = sagaRepository;
+        this.validator = new LinkedDocumentValidator(specification, schemaRepository);
     }
 
     @Override
     public void handleRequest(HttpServerExchange exchange) {
-        if (exchange.getRequestMethod().equalToString("get")) {
-            getEmbedded(exchange);
+        ResourceContext resourceContext = exchange.getAttachment(ResourceContext.ATTACHMENT_KEY);
+        if (exchange.getRequestMethod().equalToString("get") || ConditionalRequests.isHead(exchange)) {
+            getEmbedded(exchange, resourceContext);
         } else if (exchange.getRequestMethod().equalToString("put")) {
-            putEmbedded(exchange);
+            putEmbedded(exchange, resourceContext);
         } else if (exchange.getRequestMethod().equalToString("post")) {
-            putEmbedded(exchange);
+            putEmbedded(exchange, resourceContext);
         } else if (exchange.getRequestMethod().equalToString("delete")) {
-            deleteEmbedded(exchange);
+            deleteEmbedded(exchange, resourceContext);
         } else {
             exchange.setStatusCode(400);
             exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "text/plain");
@@ -71,156 +71,136 @@ public class EmbeddedResourceHandler implements HttpHandler {
         }
     }
 
-    private void getEmbedded(HttpServerExchange exchange) {
+    private void getEmbedded(HttpServerExchange exchange, ResourceContext resourceContext) {
         ResourceElement topLevelElement = resourceContext.getFirstElement();
 
-        JsonNode jsonNode;
-        try (Transaction tx = persistence.createTransaction(true)) {
-            JsonDocument jsonDocument = persistence.readDocument(tx, resourceContext.getTimestamp(), resourceContext.getNamespace(), topLevelElement.name(), topLevelElement.id()).blockingGet();
-            jsonNode = ofNullable(jsonDocument).map(JsonDocument::jackson).orElse(null);
-        }
-
-        if (jsonNode == null) {
+        ResponseFormat format = ResponseFormat.negotiate(exchange);
+        AsyncExchange.subscribe(exchange, () -> {
+            Transaction tx = persistence.createTransaction(true);
+            return persistence.readDocument(tx, resourceContext.getTimestamp(), resourceContext.getNamespace(), topLevelElement.name(), topLevelElement.id())
+                    .filter(jsonDocument -> !jsonDocument.deleted())
+                    .doFinally(tx::close);
+        }, jsonDocument -> {
+            if (ConditionalRequests.handleNotModified(exchange, jsonDocument.key())) {
+                return;
+            }
+            if (ConditionalRequests.isHead(exchange)) {
+                exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, format.getContentType());
+                exchange.endExchange();
+                return;
+            }
+            // TODO consistent API independent of sub-tree json type. i.e. figure out whether we should always wrap
+            // TODO result in a json-array?
+            JsonNode subTreeRoot = resourceContext.subTree(jsonDocument.jackson());
+            JsonNode result;
+            if (subTreeRoot == null) {
+                result = mapper.createArrayNode().addNull();
+            } else if (subTreeRoot.isContainerNode()) {
+                result = subTreeRoot;
+            } else {
+                // wrap simple values in json array.
+                result = mapper.createArrayNode().add(subTreeRoot);
+            }
+            format.send(exchange, result);
+        }, () -> {
             exchange.setStatusCode(404);
-            return;
-        }
+            exchange.endExchange();
+        });
+    }
 
-        // TODO consistent API independent of sub-tree json type. i.e. figure out whether we should always wrap
-        // TODO result in a json-array?
-        JsonNode subTreeRoot = resourceContext.subTree(jsonNode);
-        String result;
-        if (subTreeRoot == null) {
-            result = "[null]";
-        } else if (subTreeRoot.isContainerNode()) {
-            result = JsonTools.toJson(subTreeRoot);
-        } else {
-            // wrap simple values in json array.
-            result = JsonTools.toJson(mapper.createArrayNode().add(subTreeRoot));
-        }
-        exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/json; charset=utf-8");
-        exchange.getResponseSender().send(result, StandardCharsets.UTF_8);
+    private Maybe<JsonNode> readManagedDocument(ResourceContext resourceContext, String managedDomain, String managedDocumentId) {
+        Transaction tx = persistence.createTransaction(true);
+        return persistence.readDocument(tx, resourceContext.getTimestamp(), resourceContext.getNamespace(), managedDomain, managedDocumentId)
+                .map(JsonDocument::jackson)
+                .doFinally(tx::close);
     }
 
-    private void putEmbedded(HttpServerExchange exchange) {
-        exchange.getRequestReceiver().receiveFullString(
+    private void putEmbedded(HttpServerExchange exchange, ResourceContext resourceContext) {
+        AsyncExchange.receiveFullBytes(exchange,
                 (httpServerExchange, message) -> {
                     ResourceElement topLevelElement = resourceContext.getFirstElement();
                     String namespace = resourceContext.getNamespace();
                     String managedDomain = topLevelElement.name();
                     String managedDocumentId = topLevelElement.id();
 
-                    JsonNode managedDocument;
-                    try (Transaction tx = persistence.createTransaction(true)) {
-                        JsonDocument jsonDocument = persistence.readDocument(tx, resourceContext.getTimestamp(), namespace, managedDomain, managedDocumentId).blockingGet();
-                        managedDocument = ofNullable(jsonDocument).map(JsonDocument::jackson).orElse(null);
-                    }
-
-                    if (managedDocument == null) {
-                        exchange.setStatusCode(404);
+                    JsonNode embeddedJson;
+                    try {
+                        embeddedJson = BodyParser.deserializeBody(BodyParser.contentType(exchange), message);
+                    } catch (RuntimeException e) {
+                        BodyParser.sendBodyError(exchange, "Error putting embedded resource: ", e);
                         return;
                     }
-
-                    String contentType = ofNullable(exchange.getRequestHeaders().get(Headers.CONTENT_TYPE))
-                            .map(HeaderValues::getFirst).orElse("application/json");
-                    JsonNode embeddedJson = BodyParser.deserializeBody(contentType, message);
-
-                    if (LOG.isTraceEnabled()) {
-                        LOG.trace("{} {}\n{}", exchange.getRequestMethod(), exchange.getRequestPath(), message);
-                    }
-
-                    mergeJson(resourceContext, managedDocument, embeddedJson);
-
-                    try {
-                        LinkedDocumentValidator validator = new LinkedDocumentValidator(specification, schemaRepository);
-                        // TODO avoid serialization and de-serialization due to using both jackson and org.json
-                        validator.validate(managedDomain, JsonTools.toJson(managedDocument));
-                    } catch (LinkedDocumentValidationException ve) {
-                        LOG.debug("Schema validation error: {}", ve.getMessage());
+                    if (embeddedJson == null) {
                         exchange.setStatusCode(400);
                         exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "text/plain");
-                        exchange.getResponseSender().send("Schema validation error: " + ve.getMessage());
+                        exchange.getResponseSender().send("Payload was empty!");
                         return;
                     }
 
-                    boolean sync = exchange.getQueryParameters().getOrDefault("sync", new LinkedList()).stream().anyMatch(s -> "true".equalsIgnoreCase((String) s));
-
-                    boolean noTxLogging = ofNullable(exchange.getQueryParameters().get("notxlog"))
-                            .map(Deque::peekFirst)
-                            .map(Boolean::valueOf)
-                            .orElse(Boolean.FALSE);
-                    Saga saga = sagaRepository.get(noTxLogging ?
-                            SagaRepository.SAGA_CREATE_OR_UPDATE_MANAGED_RESOURCE_NO_TX_LOG :
-                            SagaRepository.SAGA_CREATE_OR_UPDATE_MANAGED_RESOURCE);
-
-                    String source = ofNullable(exchange.getQueryParameters().get("source")).map(Deque::peekFirst).orElse(null);
-                    String sourceId = ofNullable(exchange.getQueryParameters().get("sourceId")).map(Deque::peekFirst).orElse(null);
-
-                    AdapterLoader adapterLoader = sagaRepository.getAdapterLoader();
-                    SagaInput sagaInput = new SagaInput(sec.generateTxId(), "PUT", "TODO", namespace, managedDomain, managedDocumentId, resourceContext.getTimestamp(), source, sourceId, managedDocument);
-                    SelectableFuture<SagaHandoffResult> handoff = sec.handoff(sync, adapterLoader, saga, sagaInput, SagaCommands.getSagaAdminParameterCommands(httpServerExchange));
-                    SagaHandoffResult handoffResult = handoff.join();
+                    if (LOG.isTraceEnabled()) {
+                        LOG.trace("{} {}\n{}", exchange.getRequestMethod(), exchange.getRequestPath(), embeddedJson);
+                    }
 
-                    exchange.setStatusCode(200);
-                    exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/json");
-                    exchange.getResponseSender().send("{\"saga-execution-id\":\"" + handoffResult.getExecutionId() + "\"}");
-                },
-                (exchange1, e) -> {
-                    exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "text/plain");
-                    exchange.getResponseSender().send("Error putting embedded resource: " + e.getMessage());
-                    LOG.warn("", e);
+                    AsyncExchange.subscribe(exchange, () -> readManagedDocument(resourceContext, managedDomain, managedDocumentId), managedDocument -> {
+                        mergeJson(resourceContext, managedDocument, embeddedJson);
+
+                        try {
+                            validator.validate(managedDomain, managedDocument);
+                        } catch (LinkedDocumentValidationException ve) {
+                            LOG.debug("Schema validation error: {}", ve.getMessage());
+                            exchange.setStatusCode(400);
+                            exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "text/plain");
+                            exchange.getResponseSender().send("Schema validation error: " + ve.getMessage());
+                            return;
+                        }
+
+                        handoffManagedDocument(exchange, resourceContext, namespace, managedDomain, managedDocumentId, managedDocument);
+                    }, () -> {
+                        exchange.setStatusCode(404);
+                        exchange.endExchange();
+                    });
                 },
-                StandardCharsets.UTF_8);
+                (exchange1, e) -> BodyParser.sendBodyError(exchange, "Error putting embedded resource: ", e));
     }
 
-    private void deleteEmbedded(HttpServerExchange exchange) {
-        exchange.getRequestReceiver().receiveFullString(
+    private void deleteEmbedded(HttpServerExchange exchange, ResourceContext resourceContext) {
+        AsyncExchange.receiveFullBytes(exchange,
                 (httpServerExchange, message) -> {
                     ResourceElement topLevelElement = resourceContext.getFirstElement();
                     String namespace = resourceContext.getNamespace();
                     String managedDomain = topLevelElement.name();
                     String managedDocumentId = topLevelElement.id();
 
-                    JsonNode rootNode;
-                    try (Transaction tx = persistence.createTransaction(true)) {
-                        JsonDocument jsonDocument = persistence.readDocument(tx, resourceContext.getTimestamp(), namespace, managedDomain, managedDocumentId).blockingGet();
-                        rootNode = ofNullable(jsonDocument).map(JsonDocument::jackson).orElse(null);
-                    }
-
-                    if (rootNode == null) {
+                    AsyncExchange.subscribe(exchange, () -> readManagedDocument(resourceContext, managedDomain, managedDocumentId), rootNode -> {
+                        mergeJson(resourceContext, rootNode, null);
+                        handoffManagedDocument(exchange, resourceContext, namespace, managedDomain, managedDocumentId, rootNode);
+                    }, () -> {
                         exchange.setStatusCode(404);
-                        return;
-                    }
-
-                    mergeJson(resourceContext, rootNode, null);
-
-                    boolean sync = exchange.getQueryParameters().getOrDefault("sync", new LinkedList()).stream().anyMatch(s -> "true".equalsIgnoreCase((String) s));
-
-                    boolean noTxLogging = ofNullable(exchange.getQueryParameters().get("notxlog"))
-                            .map(Deque::peekFirst)
-                            .map(Boolean::valueOf)
-                            .orElse(Boolean.FALSE);
-                    Saga saga = sagaRepository.get(noTxLogging ?
-                            SagaRepository.SAGA_CREATE_OR_UPDATE_MANAGED_RESOURCE_NO_TX_LOG :
-                            SagaRepository.SAGA_CREATE_OR_UPDATE_MANAGED_RESOURCE);
-
-                    String source = ofNullable(exchange.getQueryParameters().get("source")).map(Deque::peekFirst).orElse(null);
-                    String sourceId = ofNullable(exchange.getQueryParameters().get("sourceId")).map(Deque::peekFirst).orElse(null);
-
-                    AdapterLoader adapterLoader = sagaRepository.getAdapterLoader();
-                    SagaInput sagaInput = new SagaInput(sec.generateTxId(), "PUT", "TODO", namespace, managedDomain, managedDocumentId, resourceContext.getTimestamp(), source, sourceId, rootNode);
-                    SelectableFuture<SagaHandoffResult> handoff = sec.handoff(sync, adapterLoader, saga, sagaInput, SagaCommands.getSagaAdminParameterCommands(httpServerExchange));
-                    SagaHandoffResult handoffResult = handoff.join();
-
-                    exchange.setStatusCode(200);
-                    exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/json");
-                    exchange.getResponseSender().send("{\"saga-execution-id\":\"" + handoffResult.getExecutionId() + "\"}");
-                },
-                (exchange1, e) -> {
-                    exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "text/plain");
-                    exchange.getResponseSender().send("Error deleting embedded resource: " + e.getMessage());
-                    LOG.warn("", e);
+                        exchange.endExchange();
+                    });
                 },
-                StandardCharsets.UTF_8);
+                (exchange1, e) -> BodyParser.sendBodyError(exchange, "Error deleting embedded resource: ", e));
+    }
+
+    private void handoffManagedDocument(HttpServerExchange exchange, ResourceContext resourceContext, String namespace, String managedDomain, String managedDocumentId, JsonNode managedDocument) {
+        boolean sync = exchange.getQueryParameters().getOrDefault("sync", new LinkedList<>()).stream().anyMatch(s -> "true".equalsIgnoreCase(s));
+
+        boolean noTxLogging = ofNullable(exchange.getQueryParameters().get("notxlog"))
+                .map(Deque::peekFirst)
+                .map(Boolean::valueOf)
+                .orElse(Boolean.FALSE);
+        Saga saga = sagaRepository.get(noTxLogging ?
+                SagaRepository.SAGA_CREATE_OR_UPDATE_MANAGED_RESOURCE_NO_TX_LOG :
+                SagaRepository.SAGA_CREATE_OR_UPDATE_MANAGED_RESOURCE);
+
+        String source = ofNullable(exchange.getQueryParameters().get("source")).map(Deque::peekFirst).orElse(null);
+        String sourceId = ofNullable(exchange.getQueryParameters().get("sourceId")).map(Deque::peekFirst).orElse(null);
+
+        AdapterLoader adapterLoader = sagaRepository.getAdapterLoader();
+        SagaInput sagaInput = new SagaInput(sec.generateTxId(), "PUT", "TODO", namespace, managedDomain, managedDocumentId, resourceContext.getTimestamp(), source, sourceId, managedDocument);
+        AsyncExchange.handoff(exchange,
+                () -> sec.handoffAsync(sync, adapterLoader, saga, sagaInput, SagaCommands.getSagaAdminParameterCommands(exchange)),
+                handoffResult -> AsyncExchange.sendSagaExecutionId(exchange, 200, handoffResult));
     }
 
     public boolean mergeJson(ResourceContext resourceContext, JsonNode documentRootNode, JsonNode subTree) {
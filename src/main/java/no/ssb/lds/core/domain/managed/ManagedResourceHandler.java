@@ -1,25 +1,25 @@
 package no.ssb.lds.core.domain.managed;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.reactivex.Flowable;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
-import io.undertow.util.HeaderMap;
-import io.undertow.util.HeaderValues;
 import io.undertow.util.Headers;
 import io.undertow.util.StatusCodes;
-import no.ssb.concurrent.futureselector.SelectableFuture;
 import no.ssb.lds.api.persistence.Transaction;
 import no.ssb.lds.api.persistence.json.JsonDocument;
-import no.ssb.lds.api.persistence.json.JsonTools;
 import no.ssb.lds.api.persistence.reactivex.Range;
 import no.ssb.lds.api.persistence.reactivex.RxJsonPersistence;
 import no.ssb.lds.api.specification.Specification;
+import no.ssb.lds.core.domain.AsyncExchange;
 import no.ssb.lds.core.domain.BodyParser;
+import no.ssb.lds.core.domain.ConditionalRequests;
+import no.ssb.lds.core.domain.ResponseFormat;
+import no.ssb.lds.core.domain.SerializedDocumentCache;
 import no.ssb.lds.core.domain.resource.ResourceContext;
 import no.ssb.lds.core.domain.resource.ResourceElement;
+import no.ssb.lds.core.persistence.DocumentGenerations;
 import no.ssb.lds.core.saga.SagaCommands;
 import no.ssb.lds.core.saga.SagaExecutionCoordinator;
 import no.ssb.lds.core.saga.SagaInput;
@@ -28,49 +28,64 @@ import no.ssb.lds.core.schema.SchemaRepository;
 import no.ssb.lds.core.validation.LinkedDocumentValidationException;
 import no.ssb.lds.core.validation.LinkedDocumentValidator;
 import no.ssb.saga.api.Saga;
-import no.ssb.saga.execution.SagaHandoffResult;
 import no.ssb.saga.execution.adapter.AdapterLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Deque;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 
 import static java.util.Optional.ofNullable;
-import static no.ssb.lds.api.persistence.json.JsonTools.mapper;
 
 public class ManagedResourceHandler implements HttpHandler {
 
     private static final Logger LOG = LoggerFactory.getLogger(ManagedResourceHandler.class);
 
+    static final int STREAM_BUFFER_SIZE = 64;
+
     private final RxJsonPersistence persistence;
     private final Specification specification;
     private final SchemaRepository schemaRepository;
-    private final ResourceContext resourceContext;
     private final SagaExecutionCoordinator sec;
     private final SagaRepository sagaRepository;
+    private final LinkedDocumentValidator validator;
+    private final SerializedDocumentCache responseCache;
 
-    public ManagedResourceHandler(RxJsonPersistence persistence, Specification specification, SchemaRepository schemaRepository, ResourceContext resourceContext, SagaExecutionCoordinator sec, SagaRepository sagaRepository) {
+    /**
+     * @param responseCache cache of serialized documents, or null to serialize every response.
+     */
+    public ManagedResourceHandler(RxJsonPersistence persistence, Specification specification, SchemaRepository schemaRepository, SagaExecutionCoordinator sec, SagaRepository sagaRepository, SerializedDocumentCache responseCache) {
         this.persistence = persistence;
         this.specification = specification;
         this.schemaRepository = schemaRepository;
-        this.resourceContext = resourceContext;
         this.sec = sec;
         this.sagaRepository = sagaRepository;
+        this.validator = new LinkedDocumentValidator(specification, schemaRepository);
+        this.responseCache = responseCache;
     }
 
     @Override
     public void handleRequest(HttpServerExchange exchange) {
-        if (exchange.getRequestMethod().equalToString("get")) {
-            getManaged(exchange);
+        ResourceContext resourceContext = exchange.getAttachment(ResourceContext.ATTACHMENT_KEY);
+        if (exchange.getRequestMethod().equalToString("get") || ConditionalRequests.isHead(exchange)) {
+            getManaged(exchange, resourceContext);
         } else if (exchange.getRequestMethod().equalToString("put")) {
-            putManaged(exchange);
+            putManaged(exchange, resourceContext);
         } else if (exchange.getRequestMethod().equalToString("post")) {
-            putManaged(exchange);
+            putManaged(exchange, resourceContext);
         } else if (exchange.getRequestMethod().equalToString("delete")) {
-            deleteManaged(exchange);
+            deleteManaged(exchange, resourceContext);
         } else {
             exchange.setStatusCode(400);
             exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "text/plain");
@@ -78,68 +93,300 @@ public class ManagedResourceHandler implements HttpHandler {
         }
     }
 
-    private void getManaged(HttpServerExchange exchange) {
+    private void getManaged(HttpServerExchange exchange, ResourceContext resourceContext) {
         ResourceElement topLevelElement = resourceContext.getFirstElement();
 
         boolean isManagedList = topLevelElement.id() == null;
 
-        exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/json; charset=utf-8");
-
         if (isManagedList && exchange.getQueryParameters().containsKey("schema")) {
+            exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/json; charset=utf-8");
             String jsonSchema = schemaRepository.getJsonSchema().getSchemaJson(resourceContext.getFirstElement().name());
             exchange.getResponseSender().send(jsonSchema, StandardCharsets.UTF_8);
             return;
         }
 
+        ResponseFormat format = ResponseFormat.negotiate(exchange);
+
+        if (!isManagedList && !exchange.getQueryParameters().containsKey("timeline")) {
+            getManagedDocument(exchange, resourceContext, topLevelElement, format);
+            return;
+        }
+
+        if (isManagedList && ConditionalRequests.isHead(exchange)) {
+            // the managed list always exists, there is no need to read it
+            exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, format.getContentType());
+            exchange.endExchange();
+            return;
+        }
+
+        if (exchange.isInIoThread()) {
+            // lists and timelines are streamed using blocking writes to the exchange output-stream
+            exchange.dispatch(this);
+            return;
+        }
+
         try (Transaction tx = persistence.createTransaction(true)) {
             if (isManagedList) {
-                Iterable<JsonDocument> documents = persistence.readDocuments(tx, resourceContext.getTimestamp(), resourceContext.getNamespace(), topLevelElement.name(), Range.unbounded()).blockingIterable();
-                ArrayNode output = mapper.createArrayNode();
-                for (JsonDocument jsonDocument : documents) {
-                    if (jsonDocument.deleted()) {
-                        continue;
-                    }
-                    output.add(jsonDocument.jackson());
-                }
-                exchange.getResponseSender().send(JsonTools.toJson(output), StandardCharsets.UTF_8);
+                getManagedList(exchange, resourceContext, tx, topLevelElement, format);
             } else {
-                if (exchange.getQueryParameters().containsKey("timeline")) {
-                    ArrayNode output = mapper.createArrayNode();
-                    // TODO Support pagination or time-range based query parameters
-                    Flowable<JsonDocument> jsonDocumentFlowable = persistence.readDocumentVersions(tx, resourceContext.getNamespace(), topLevelElement.name(), topLevelElement.id(), Range.unbounded());
-                    for (JsonDocument jsonDocument : jsonDocumentFlowable.blockingIterable()) {
-                        ObjectNode timeVersionedInstance = output.addObject();
-                        timeVersionedInstance.put("version", jsonDocument.key().timestamp().toString());
-                        timeVersionedInstance.set("document", jsonDocument.jackson());
-                    }
-                    if (output.size() == 0) {
-                        exchange.setStatusCode(StatusCodes.NOT_FOUND).endExchange();
-                        return;
-                    }
-                    exchange.getResponseSender().send(JsonTools.toJson(output), StandardCharsets.UTF_8);
-                } else {
-                    JsonDocument jsonDocument = persistence.readDocument(tx, resourceContext.getTimestamp(), resourceContext.getNamespace(), topLevelElement.name(), topLevelElement.id()).blockingGet();
-                    if (jsonDocument != null && !jsonDocument.deleted()) {
-                        exchange.getResponseSender().send(JsonTools.toJson(jsonDocument.jackson()), StandardCharsets.UTF_8);
-                    } else {
-                        exchange.setStatusCode(StatusCodes.NOT_FOUND);
-                    }
-                }
+                getManagedTimeline(exchange, resourceContext, tx, topLevelElement, format);
             }
         }
         exchange.endExchange();
     }
 
-    private void putManaged(HttpServerExchange exchange) {
+    private void getManagedList(HttpServerExchange exchange, ResourceContext resourceContext, Transaction tx, ResourceElement topLevelElement, ResponseFormat format) {
+        Range<String> range;
+        try {
+            range = getManagedListRange(exchange.getQueryParameters());
+        } catch (IllegalArgumentException e) {
+            exchange.setStatusCode(StatusCodes.BAD_REQUEST);
+            exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "text/plain");
+            exchange.getResponseSender().send(e.getMessage());
+            return;
+        }
+        Flowable<JsonDocument> documents;
+        if (range.isLimited()) {
+            // a page is bounded by limit, collect it in order to know the cursors before the headers are sent
+            List<JsonDocument> page = readLivePage(tx, resourceContext, topLevelElement.name(), range);
+            addPaginationLinks(exchange, resourceContext, tx, topLevelElement.name(), page);
+            documents = Flowable.fromIterable(page);
+        } else {
+            documents = persistence.readDocuments(tx, resourceContext.getTimestamp(), resourceContext.getNamespace(), topLevelElement.name(), range)
+                    .filter(jsonDocument -> !jsonDocument.deleted());
+        }
+        streamArray(exchange, format, documents, (generator, jsonDocument) -> generator.writeTree(jsonDocument.jackson()));
+    }
+
+    /**
+     * The persistence applies the limit before deleted documents are filtered out, so the range is read again from
+     * the last id that was read until the page is full of live documents or the range is exhausted.
+     */
+    private List<JsonDocument> readLivePage(Transaction tx, ResourceContext resourceContext, String managedDomain, Range<String> range) {
+        int limit = range.getLimit();
+        String after = range.getAfter();
+        String before = range.getBefore();
+        List<JsonDocument> page = new ArrayList<>(limit);
+        Range<String> next = range;
+        while (true) {
+            List<JsonDocument> documents = persistence.readDocuments(tx, resourceContext.getTimestamp(), resourceContext.getNamespace(), managedDomain, next)
+                    .toList().blockingGet();
+            for (JsonDocument jsonDocument : documents) {
+                if (!jsonDocument.deleted()) {
+                    page.add(jsonDocument);
+                }
+            }
+            if (page.size() >= limit || documents.size() < next.getLimit()) {
+                break;
+            }
+            if (range.isBackward()) {
+                before = documents.stream().map(jsonDocument -> jsonDocument.key().id()).min(Comparator.naturalOrder()).orElseThrow();
+                next = Range.lastBetween(limit - page.size(), after, before);
+            } else {
+                after = documents.stream().map(jsonDocument -> jsonDocument.key().id()).max(Comparator.naturalOrder()).orElseThrow();
+                next = Range.firstBetween(limit - page.size(), after, before);
+            }
+        }
+        if (range.isBackward()) {
+            page.sort(Comparator.comparing(jsonDocument -> jsonDocument.key().id()));
+        }
+        return page;
+    }
+
+    private void getManagedTimeline(HttpServerExchange exchange, ResourceContext resourceContext, Transaction tx, ResourceElement topLevelElement, ResponseFormat format) {
+        Range<ZonedDateTime> range;
+        try {
+            range = getTimelineRange(exchange.getQueryParameters());
+        } catch (IllegalArgumentException e) {
+            exchange.setStatusCode(StatusCodes.BAD_REQUEST);
+            exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "text/plain");
+            exchange.getResponseSender().send(e.getMessage());
+            return;
+        }
+        Flowable<JsonDocument> versions = persistence.readDocumentVersions(tx, resourceContext.getNamespace(), topLevelElement.name(), topLevelElement.id(), range);
+        if (range.isLimited()) {
+            List<JsonDocument> page = versions.toList().blockingGet();
+            if (page.size() == range.getLimit()) {
+                ZonedDateTime lastVersion = page.get(page.size() - 1).key().timestamp();
+                exchange.getResponseHeaders().put(Headers.LINK, String.format("<%s?timeline&limit=%d&after=%s%s>; rel=\"next\"",
+                        exchange.getRequestPath(), range.getLimit(), URLEncoder.encode(lastVersion.toString(), StandardCharsets.UTF_8),
+                        ofNullable(exchange.getQueryParameters().get("to")).map(Deque::peekFirst)
+                                .map(to -> "&to=" + URLEncoder.encode(to, StandardCharsets.UTF_8)).orElse("")));
+            }
+            versions = Flowable.fromIterable(page);
+        }
+        Iterator<JsonDocument> iterator = versions.blockingIterable(STREAM_BUFFER_SIZE).iterator();
+        if (!iterator.hasNext() && !hasTimelineParameters(exchange.getQueryParameters())) {
+            exchange.setStatusCode(StatusCodes.NOT_FOUND).endExchange();
+            return;
+        }
+        streamArray(exchange, format, iterator, (generator, jsonDocument) -> {
+            generator.writeStartObject();
+            generator.writeStringField("version", jsonDocument.key().timestamp().toString());
+            generator.writeFieldName("document");
+            generator.writeTree(jsonDocument.jackson());
+            generator.writeEndObject();
+        });
+    }
+
+    private void getManagedDocument(HttpServerExchange exchange, ResourceContext resourceContext, ResourceElement topLevelElement, ResponseFormat format) {
+        DocumentGenerations.Stamp stamp = responseCache == null ? null : responseCache.stamp(resourceContext.getNamespace(), topLevelElement.name(), topLevelElement.id());
+        AsyncExchange.subscribe(exchange, () -> {
+            Transaction tx = persistence.createTransaction(true);
+            return persistence.readDocument(tx, resourceContext.getTimestamp(), resourceContext.getNamespace(), topLevelElement.name(), topLevelElement.id())
+                    .doFinally(tx::close);
+        }, jsonDocument -> {
+            if (jsonDocument.deleted()) {
+                exchange.setStatusCode(StatusCodes.NOT_FOUND);
+                exchange.endExchange();
+                return;
+            }
+            if (ConditionalRequests.handleNotModified(exchange, jsonDocument.key())) {
+                return;
+            }
+            if (ConditionalRequests.isHead(exchange)) {
+                exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, format.getContentType());
+                exchange.endExchange();
+                return;
+            }
+            if (responseCache != null) {
+                responseCache.send(exchange, stamp, jsonDocument, format);
+            } else {
+                format.send(exchange, jsonDocument.jackson());
+            }
+        }, () -> {
+            exchange.setStatusCode(StatusCodes.NOT_FOUND);
+            exchange.endExchange();
+        });
+    }
+
+    static Range<String> getManagedListRange(Map<String, Deque<String>> parameters) {
+        Integer limit = ofNullable(parameters.get("limit")).map(Deque::peekFirst).map(ManagedResourceHandler::parseLimit).orElse(null);
+        String after = ofNullable(parameters.get("after")).map(Deque::peekFirst).filter(s -> !s.isEmpty()).orElse(null);
+        String before = ofNullable(parameters.get("before")).map(Deque::peekFirst).filter(s -> !s.isEmpty()).orElse(null);
+        if (limit == null) {
+            return after == null && before == null ? Range.unbounded() : Range.between(after, before);
+        }
+        if (before != null && after == null) {
+            // paging backwards from the cursor
+            return Range.lastBetween(limit, null, before);
+        }
+        return Range.firstBetween(limit, after, before);
+    }
+
+    /**
+     * The timeline range is bounded by the 'from' (inclusive) and 'to' (exclusive) versions. The 'after' cursor is
+     * the last version of the previous page and takes precedence over 'from'.
+     */
+    static Range<ZonedDateTime> getTimelineRange(Map<String, Deque<String>> parameters) {
+        Integer limit = ofNullable(parameters.get("limit")).map(Deque::peekFirst).map(ManagedResourceHandler::parseLimit).orElse(null);
+        ZonedDateTime from = ofNullable(parameters.get("from")).map(Deque::peekFirst).map(v -> parseVersion("from", v)).orElse(null);
+        ZonedDateTime to = ofNullable(parameters.get("to")).map(Deque::peekFirst).map(v -> parseVersion("to", v)).orElse(null);
+        ZonedDateTime after = ofNullable(parameters.get("after")).map(Deque::peekFirst).map(v -> parseVersion("after", v)).orElse(null);
+        if (after == null && from != null) {
+            after = from.minusNanos(1);
+        }
+        if (limit == null) {
+            return after == null && to == null ? Range.unbounded() : Range.between(after, to);
+        }
+        return Range.firstBetween(limit, after, to);
+    }
+
+    private static boolean hasTimelineParameters(Map<String, Deque<String>> parameters) {
+        return parameters.containsKey("from") || parameters.containsKey("to") || parameters.containsKey("after");
+    }
+
+    private static ZonedDateTime parseVersion(String parameterName, String value) {
+        if (value.isEmpty()) {
+            return null;
+        }
+        try {
+            return ZonedDateTime.parse(value); // ISO-8601
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("The '" + parameterName + "' query-parameter must follow the ISO-8601 standard. Example of a valid formatted timestamp is '2018-12-06T11:05:31.000+01:00'");
+        }
+    }
+
+    private static int parseLimit(String value) {
+        int limit;
+        try {
+            limit = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The 'limit' query-parameter must be a number: " + value);
+        }
+        if (limit <= 0) {
+            throw new IllegalArgumentException("The 'limit' query-parameter must be positive: " + value);
+        }
+        return limit;
+    }
+
+    private void addPaginationLinks(HttpServerExchange exchange, ResourceContext resourceContext, Transaction tx, String managedDomain, List<JsonDocument> page) {
+        if (page.isEmpty()) {
+            return;
+        }
+        Map<String, Deque<String>> parameters = exchange.getQueryParameters();
+        String limit = parameters.get("limit").peekFirst();
+        // the bounds of the requested range are kept, so that following the links stays within it
+        String after = ofNullable(parameters.get("after")).map(Deque::peekFirst).filter(s -> !s.isEmpty()).orElse(null);
+        String before = ofNullable(parameters.get("before")).map(Deque::peekFirst).filter(s -> !s.isEmpty()).orElse(null);
+        String firstId = page.get(0).key().id();
+        String lastId = page.get(page.size() - 1).key().id();
+        List<String> links = new ArrayList<>(2);
+        if (persistence.hasNext(tx, resourceContext.getTimestamp(), resourceContext.getNamespace(), managedDomain, lastId).blockingGet()) {
+            links.add(String.format("<%s?limit=%s&after=%s%s>; rel=\"next\"", exchange.getRequestPath(), limit,
+                    URLEncoder.encode(lastId, StandardCharsets.UTF_8), cursorParameter("before", before)));
+        }
+        if (persistence.hasPrevious(tx, resourceContext.getTimestamp(), resourceContext.getNamespace(), managedDomain, firstId).blockingGet()) {
+            links.add(String.format("<%s?limit=%s&before=%s%s>; rel=\"prev\"", exchange.getRequestPath(), limit,
+                    URLEncoder.encode(firstId, StandardCharsets.UTF_8), cursorParameter("after", after)));
+        }
+        if (!links.isEmpty()) {
+            exchange.getResponseHeaders().put(Headers.LINK, String.join(", ", links));
+        }
+    }
+
+    private static String cursorParameter(String name, String value) {
+        return value == null ? "" : "&" + name + "=" + URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write the elements of the flowable as an array in the response format directly to the exchange output-stream.
+     * The response is sent using chunked transfer-encoding, and at most STREAM_BUFFER_SIZE elements are requested
+     * ahead of what has been written to the socket.
+     */
+    private <T> void streamArray(HttpServerExchange exchange, ResponseFormat format, Flowable<T> elements, JsonElementWriter<T> elementWriter) {
+        streamArray(exchange, format, elements.blockingIterable(STREAM_BUFFER_SIZE).iterator(), elementWriter);
+    }
+
+    private <T> void streamArray(HttpServerExchange exchange, ResponseFormat format, Iterator<T> elements, JsonElementWriter<T> elementWriter) {
+        exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, format.getContentType());
+        exchange.startBlocking();
+        try (JsonGenerator generator = format.createGenerator(exchange.getOutputStream())) {
+            generator.writeStartArray();
+            while (elements.hasNext()) {
+                elementWriter.write(generator, elements.next());
+            }
+            generator.writeEndArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @FunctionalInterface
+    interface JsonElementWriter<T> {
+        void write(JsonGenerator generator, T element) throws IOException;
+    }
+
+    private void putManaged(HttpServerExchange exchange, ResourceContext resourceContext) {
         ResourceElement topLevelElement = resourceContext.getFirstElement();
         String namespace = resourceContext.getNamespace();
         String managedDomain = topLevelElement.name();
         String managedDocumentId = topLevelElement.id();
 
-        exchange.getRequestReceiver().receiveFullString(
+        AsyncExchange.receiveFullBytes(exchange,
                 (httpServerExchange, requestBody) -> {
                     // check if we received an empty payload
-                    if ("".equals(requestBody)) {
+                    if (requestBody.length == 0) {
                         LOG.error("Received empty payload for: {}", exchange.getRequestPath());
                         exchange.setStatusCode(400);
                         exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "text/plain");
@@ -155,17 +402,27 @@ public class ManagedResourceHandler implements HttpHandler {
                         return;
                     }
 
-                    String contentType = ofNullable(exchange.getRequestHeaders().get(Headers.CONTENT_TYPE))
-                            .map(HeaderValues::getFirst).orElse("application/json");
-                    JsonNode requestData = BodyParser.deserializeBody(contentType, requestBody);
+                    JsonNode requestData;
+                    try {
+                        requestData = BodyParser.deserializeBody(BodyParser.contentType(exchange), requestBody);
+                    } catch (RuntimeException e) {
+                        BodyParser.sendBodyError(exchange, "Error: ", e);
+                        return;
+                    }
+                    if (requestData == null) {
+                        // body with only whitespace
+                        exchange.setStatusCode(400);
+                        exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "text/plain");
+                        exchange.getResponseSender().send("Payload was empty!");
+                        return;
+                    }
 
                     if (LOG.isTraceEnabled()) {
-                        LOG.trace("{} {}\n{}", exchange.getRequestMethod(), exchange.getRequestPath(), requestBody);
+                        LOG.trace("{} {}\n{}", exchange.getRequestMethod(), exchange.getRequestPath(), requestData);
                     }
 
                     try {
-                        LinkedDocumentValidator validator = new LinkedDocumentValidator(specification, schemaRepository);
-                        validator.validate(managedDomain, requestBody);
+                        validator.validate(managedDomain, requestData);
                     } catch (LinkedDocumentValidationException ve) {
                         LOG.debug("Schema validation error: {}", ve.getMessage());
                         exchange.setStatusCode(400);
@@ -192,23 +449,14 @@ public class ManagedResourceHandler implements HttpHandler {
 
                     AdapterLoader adapterLoader = sagaRepository.getAdapterLoader();
                     SagaInput sagaInput = new SagaInput(sec.generateTxId(), "PUT", "TODO", namespace, managedDomain, managedDocumentId, resourceContext.getTimestamp(), source, sourceId, requestData);
-                    SelectableFuture<SagaHandoffResult> handoff = sec.handoff(sync, adapterLoader, saga, sagaInput, SagaCommands.getSagaAdminParameterCommands(httpServerExchange));
-                    SagaHandoffResult handoffResult = handoff.join();
-
-                    exchange.setStatusCode(StatusCodes.CREATED);
-                    exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/json");
-                    exchange.getResponseSender().send("{\"saga-execution-id\":\"" + handoffResult.getExecutionId() + "\"}");
+                    AsyncExchange.handoff(exchange,
+                            () -> sec.handoffAsync(sync, adapterLoader, saga, sagaInput, SagaCommands.getSagaAdminParameterCommands(httpServerExchange)),
+                            handoffResult -> AsyncExchange.sendSagaExecutionId(exchange, StatusCodes.CREATED, handoffResult));
                 },
-                (exchange1, e) -> {
-                    exchange.setStatusCode(StatusCodes.INTERNAL_SERVER_ERROR);
-                    exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "text/plain");
-                    exchange.getResponseSender().send("Error: " + e.getMessage());
-                    LOG.warn("", e);
-                },
-                StandardCharsets.UTF_8);
+                (exchange1, e) -> BodyParser.sendBodyError(exchange, "Error: ", e));
     }
 
-    private void deleteManaged(HttpServerExchange exchange) {
+    private void deleteManaged(HttpServerExchange exchange, ResourceContext resourceContext) {
         ResourceElement topLevelElement = resourceContext.getFirstElement();
         String managedDomain = topLevelElement.name();
 
@@ -230,20 +478,18 @@ public class ManagedResourceHandler implements HttpHandler {
 
         AdapterLoader adapterLoader = sagaRepository.getAdapterLoader();
         SagaInput sagaInput = new SagaInput(sec.generateTxId(), "DELETE", "TODO", resourceContext.getNamespace(), managedDomain, topLevelElement.id(), resourceContext.getTimestamp(), source, sourceId, null);
-        SelectableFuture<SagaHandoffResult> handoff = sec.handoff(sync, adapterLoader, saga, sagaInput, SagaCommands.getSagaAdminParameterCommands(exchange));
-        SagaHandoffResult handoffResult = handoff.join();
-
-        HeaderMap responseHeaders = exchange.getResponseHeaders();
-        if (sync) {
-            // Workaround https://bugs.openjdk.java.net/browse/JDK-8211437
-            // 204 MUST come with a content-size of 0.
-            responseHeaders.add(Headers.CONTENT_LENGTH, 0);
-            exchange.setStatusCode(StatusCodes.NO_CONTENT);
-            exchange.endExchange();
-        } else {
-            exchange.setStatusCode(StatusCodes.ACCEPTED);
-            responseHeaders.put(Headers.CONTENT_TYPE, "application/json");
-            exchange.getResponseSender().send("{\"saga-execution-id\":\"" + handoffResult.getExecutionId() + "\"}");
-        }
+        AsyncExchange.handoff(exchange,
+                () -> sec.handoffAsync(sync, adapterLoader, saga, sagaInput, SagaCommands.getSagaAdminParameterCommands(exchange)),
+                handoffResult -> {
+                    if (sync) {
+                        // Workaround https://bugs.openjdk.java.net/browse/JDK-8211437
+                        // 204 MUST come with a content-size of 0.
+                        exchange.getResponseHeaders().add(Headers.CONTENT_LENGTH, 0);
+                        exchange.setStatusCode(StatusCodes.NO_CONTENT);
+                        exchange.endExchange();
+                    } else {
+                        AsyncExchange.sendSagaExecutionId(exchange, StatusCodes.ACCEPTED, handoffResult);
+                    }
+                });
     }
 }
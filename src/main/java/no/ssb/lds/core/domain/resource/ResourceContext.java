@@ -3,6 +3,7 @@ package no.ssb.lds.core.domain.resource;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.undertow.util.AttachmentKey;
 import no.ssb.lds.api.specification.Specification;
 import no.ssb.lds.api.specification.SpecificationElement;
 import no.ssb.lds.api.specification.SpecificationElementType;
@@ -20,6 +21,11 @@ import static java.util.Optional.ofNullable;
  */
 public class ResourceContext {
 
+    /**
+     * The resource-context of the current request, attached to the exchange by the data-controller.
+     */
+    public static final AttachmentKey<ResourceContext> ATTACHMENT_KEY = AttachmentKey.create(ResourceContext.class);
+
     public static ResourceContext createResourceContext(Specification specification, String requestPath, ZonedDateTime timestamp) throws ResourceException {
         SpecificationElement specificationRootElement = specification.getRootElement();
         String[] pathParts = requestPath.substring(1).split("/");
@@ -98,7 +104,7 @@ public class ResourceContext {
     private final ResourceType resourcetype;
     private final ZonedDateTime timestamp;
 
-    private ResourceContext(String namespace, ResourceElement firstElement, ZonedDateTime timestamp) {
+    ResourceContext(String namespace, ResourceElement firstElement, ZonedDateTime timestamp) {
         this.namespace = namespace;
         this.firstElement = firstElement;
         this.resourcetype = getResourceType(firstElement);
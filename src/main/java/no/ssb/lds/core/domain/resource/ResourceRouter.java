@@ -0,0 +1,157 @@
+package no.ssb.lds.core.domain.resource;
+
+import no.ssb.lds.api.specification.Specification;
+import no.ssb.lds.api.specification.SpecificationElement;
+import no.ssb.lds.api.specification.SpecificationElementType;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resolves request paths to resource-contexts using a routing trie that is compiled once from the specification.
+ * Resolution is a single scan of the request path that produces the same resource-context, and fails with the same
+ * errors, as {@link ResourceContext#createResourceContext(Specification, String, ZonedDateTime)}.
+ */
+public class ResourceRouter {
+
+    public static ResourceRouter create(Specification specification) {
+        Map<SpecificationElement, Route> routeByElement = new IdentityHashMap<>();
+        Map<String, Route> managedRoutes = new HashMap<>();
+        for (Map.Entry<String, SpecificationElement> entry : specification.getRootElement().getProperties().entrySet()) {
+            managedRoutes.put(entry.getKey(), compile(entry.getValue(), routeByElement));
+        }
+        return new ResourceRouter(Collections.unmodifiableMap(managedRoutes));
+    }
+
+    private static Route compile(SpecificationElement element, Map<SpecificationElement, Route> routeByElement) {
+        Route route = routeByElement.get(element);
+        if (route != null) {
+            // element is already compiled or being compiled higher up in a recursive specification
+            return route;
+        }
+        boolean reference = SpecificationElementType.REF.equals(element.getSpecificationElementType());
+        Map<String, SpecificationElement> properties = element.getProperties();
+        Map<String, Route> children = properties == null || properties.isEmpty() ? Collections.emptyMap() : new HashMap<>(properties.size() * 2);
+        route = new Route(element, reference, reference ? element.getRefTypes() : Collections.emptySet(), children);
+        routeByElement.put(element, route);
+        if (properties != null && !properties.isEmpty()) {
+            for (Map.Entry<String, SpecificationElement> entry : properties.entrySet()) {
+                children.put(entry.getKey(), compile(entry.getValue(), routeByElement));
+            }
+        }
+        return route;
+    }
+
+    private final Map<String, Route> managedRoutes;
+
+    private ResourceRouter(Map<String, Route> managedRoutes) {
+        this.managedRoutes = managedRoutes;
+    }
+
+    public ResourceContext resolve(String requestPath, ZonedDateTime timestamp) throws ResourceException {
+        // trailing slashes do not form path elements
+        int end = requestPath.length();
+        while (end > 1 && requestPath.charAt(end - 1) == '/') {
+            end--;
+        }
+        int namespaceEnd = segmentEnd(requestPath, 1, end);
+        if (end <= 1 || namespaceEnd >= end) {
+            throw new ResourceException("Not a valid resource. The resource path must contain at least namespace, name, and id of managed resource");
+        }
+        String namespace = segment(requestPath, 1, namespaceEnd);
+        int managedResourceNameEnd = segmentEnd(requestPath, namespaceEnd + 1, end);
+        String managedResourceName = segment(requestPath, namespaceEnd + 1, managedResourceNameEnd);
+        Route managedRoute = managedRoutes.get(managedResourceName);
+        if (managedRoute == null) {
+            throw new ResourceException("Not a managed resource name: \"" + managedResourceName + "\"");
+        }
+        String managedResourceId = null;
+        ResourceElement secondElement = null;
+        if (managedResourceNameEnd < end) {
+            int managedResourceIdEnd = segmentEnd(requestPath, managedResourceNameEnd + 1, end);
+            managedResourceId = segment(requestPath, managedResourceNameEnd + 1, managedResourceIdEnd);
+            if (managedResourceId.trim().isEmpty()) {
+                throw new ResourceException("Managed resource id cannot be empty.");
+            }
+            secondElement = navigate(managedRoute, requestPath, managedResourceIdEnd, end);
+        }
+        ResourceElement firstElement = new ResourceElement(managedRoute.element, managedResourceName, managedResourceId, secondElement);
+        return new ResourceContext(namespace, firstElement, timestamp);
+    }
+
+    /**
+     * @param position the index of the slash preceding the next path element, or end if there are no more elements
+     */
+    private static ResourceElement navigate(Route parent, String path, int position, int end) {
+        if (position >= end) {
+            // managed or embedded resource
+            return null;
+        }
+        int elementEnd = segmentEnd(path, position + 1, end);
+        String pathElement = segment(path, position + 1, elementEnd);
+        Route matched = parent.children.get(pathElement);
+        if (matched == null) {
+            throw new ResourceException("Not a valid path element: \"" + pathElement + "\"");
+        }
+        if (!matched.reference) {
+            return new ResourceElement(matched.element, pathElement, null, navigate(matched, path, elementEnd, end));
+        }
+        if (elementEnd >= end) {
+            // embedded resource with linked-data value(s)
+            return new ResourceElement(matched.element, pathElement, null, null);
+        }
+        int linkedManagedDomainEnd = segmentEnd(path, elementEnd + 1, end);
+        if (linkedManagedDomainEnd >= end) {
+            throw new ResourceException("Reference resource path-element: \"" + pathElement + "\" must be part of pattern ending like: \"/" + pathElement + "/<managed-domain>/<id>\"");
+        }
+        int linkedResourceIdEnd = segmentEnd(path, linkedManagedDomainEnd + 1, end);
+        if (linkedResourceIdEnd < end) {
+            throw new ResourceException("Resource path cannot navigate through REF property: \"" + pathElement + "\"");
+        }
+        // linked-data resource
+        String linkedManagedDomain = segment(path, elementEnd + 1, linkedManagedDomainEnd);
+        if (!matched.refTypes.contains(linkedManagedDomain)) {
+            throw new ResourceException("Reference resource does not support link to managed-domain \"" + linkedManagedDomain + "\". Must be one of: " + matched.refTypes);
+        }
+        String linkedResourceId = segment(path, linkedManagedDomainEnd + 1, linkedResourceIdEnd);
+        return new ResourceElement(matched.element, pathElement, "/" + linkedManagedDomain + "/" + linkedResourceId, null);
+    }
+
+    private static int segmentEnd(String path, int start, int end) {
+        int i = start;
+        while (i < end && path.charAt(i) != '/') {
+            i++;
+        }
+        return i;
+    }
+
+    private static String segment(String path, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = path.charAt(i);
+            if (c == '%' || c == '+') {
+                return URLDecoder.decode(path.substring(start, end), StandardCharsets.UTF_8);
+            }
+        }
+        return path.substring(start, end);
+    }
+
+    private static class Route {
+        final SpecificationElement element;
+        final boolean reference;
+        final Set<String> refTypes;
+        final Map<String, Route> children;
+
+        Route(SpecificationElement element, boolean reference, Set<String> refTypes, Map<String, Route> children) {
+            this.element = element;
+            this.reference = reference;
+            this.refTypes = refTypes;
+            this.children = children;
+        }
+    }
+}
@@ -8,6 +8,7 @@ import no.ssb.lds.api.specification.Specification;
 import no.ssb.saga.api.SagaNode;
 import no.ssb.saga.execution.adapter.Adapter;
 
+import java.util.List;
 import java.util.Map;
 
 public class BatchSagaAdapter extends Adapter<JsonNode> {
@@ -16,11 +17,13 @@ public class BatchSagaAdapter extends Adapter<JsonNode> {
 
     private final RxJsonPersistence persistence;
     private final Specification specification;
+    private final List<DocumentInvalidationListener> invalidationListeners;
 
-    public BatchSagaAdapter(RxJsonPersistence persistence, Specification specification) {
+    public BatchSagaAdapter(RxJsonPersistence persistence, Specification specification, List<DocumentInvalidationListener> invalidationListeners) {
         super(JsonNode.class, NAME);
         this.persistence = persistence;
         this.specification = specification;
+        this.invalidationListeners = invalidationListeners;
     }
 
     @Override
@@ -48,6 +51,12 @@ public class BatchSagaAdapter extends Adapter<JsonNode> {
                     ).blockingAwait();
                 }
             }
+        } finally {
+            for (Batch.Group group : batch.groups()) {
+                for (DocumentInvalidationListener listener : invalidationListeners) {
+                    listener.invalidateEntity(input.get("namespace").textValue(), group.type());
+                }
+            }
         }
         return null;
     }
@@ -0,0 +1,175 @@
+package no.ssb.lds.core.persistence;
+
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
+import io.reactivex.Single;
+import no.ssb.lds.api.json.JsonNavigationPath;
+import no.ssb.lds.api.persistence.PersistenceDeletePolicy;
+import no.ssb.lds.api.persistence.PersistenceException;
+import no.ssb.lds.api.persistence.Transaction;
+import no.ssb.lds.api.persistence.batch.Batch;
+import no.ssb.lds.api.persistence.json.JsonDocument;
+import no.ssb.lds.api.persistence.reactivex.Range;
+import no.ssb.lds.api.persistence.reactivex.RxJsonPersistence;
+import no.ssb.lds.api.specification.Specification;
+
+import java.time.ZonedDateTime;
+import java.util.Optional;
+
+/**
+ * Persistence decorator that serves single document reads from a {@link DocumentCache}. On a miss the document that
+ * is valid at the snapshot is read together with the timestamp of its next version, which bounds the snapshots that
+ * the cached version can answer. All other operations are delegated.
+ * <p>
+ * Writes through this decorator invalidate the cache when they complete, and the saga adapters invalidate again when
+ * their transaction has been committed.
+ */
+public class CachingRxJsonPersistence implements RxJsonPersistence {
+
+    private final RxJsonPersistence delegate;
+    private final DocumentCache cache;
+
+    public CachingRxJsonPersistence(RxJsonPersistence delegate, DocumentCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    public RxJsonPersistence getDelegate() {
+        return delegate;
+    }
+
+    public DocumentCache getDocumentCache() {
+        return cache;
+    }
+
+    @Override
+    public Maybe<JsonDocument> readDocument(Transaction tx, ZonedDateTime snapshot, String ns, String entityName, String id) {
+        DocumentCache.Entry entry = cache.get(ns, entityName, id, snapshot);
+        if (entry != null) {
+            return entry.getDocument() == null ? Maybe.empty() : Maybe.just(copyOf(entry.getDocument()));
+        }
+        DocumentGenerations.Stamp stamp = cache.stamp(ns, entityName, id);
+        return delegate.readDocument(tx, snapshot, ns, entityName, id)
+                .map(Optional::of)
+                .toSingle(Optional.empty())
+                .flatMap(document -> delegate.readDocumentVersions(tx, ns, entityName, id, Range.firstBetween(1, snapshot, null))
+                        .firstElement()
+                        .map(next -> Optional.of(next.key().timestamp()))
+                        .toSingle(Optional.empty())
+                        .map(nextVersion -> {
+                            cache.put(stamp, document.map(CachingRxJsonPersistence::copyOf).orElse(null), nextVersion.orElse(null));
+                            return document;
+                        }))
+                .flatMapMaybe(document -> document.map(Maybe::just).orElseGet(Maybe::empty));
+    }
+
+    /**
+     * Callers are free to modify the documents they read, so the cache never hands out the instances it holds.
+     */
+    private static JsonDocument copyOf(JsonDocument document) {
+        if (document.deleted() || document.jackson() == null) {
+            return document;
+        }
+        return new JsonDocument(document.key(), document.jackson().deepCopy());
+    }
+
+    @Override
+    public Flowable<JsonDocument> readDocuments(Transaction tx, ZonedDateTime snapshot, String ns, String entityName, Range<String> range) {
+        return delegate.readDocuments(tx, snapshot, ns, entityName, range);
+    }
+
+    @Override
+    public Flowable<JsonDocument> readDocumentVersions(Transaction tx, String ns, String entityName, String id, Range<ZonedDateTime> range) {
+        return delegate.readDocumentVersions(tx, ns, entityName, id, range);
+    }
+
+    @Override
+    public Flowable<JsonDocument> readTargetDocuments(Transaction tx, ZonedDateTime snapshot, String ns, String sourceEntityName, String sourceId, JsonNavigationPath relationPath, String targetEntityName, Range<String> range) {
+        return delegate.readTargetDocuments(tx, snapshot, ns, sourceEntityName, sourceId, relationPath, targetEntityName, range);
+    }
+
+    @Override
+    public Flowable<JsonDocument> readSourceDocuments(Transaction tx, ZonedDateTime snapshot, String ns, String targetEntityName, String targetId, JsonNavigationPath relationPath, String sourceEntityName, Range<String> range) {
+        return delegate.readSourceDocuments(tx, snapshot, ns, targetEntityName, targetId, relationPath, sourceEntityName, range);
+    }
+
+    @Override
+    public Completable createOrOverwrite(Transaction tx, JsonDocument document, Specification specification) {
+        return delegate.createOrOverwrite(tx, document, specification)
+                .doOnTerminate(() -> cache.invalidate(document.key().namespace(), document.key().entity(), document.key().id()));
+    }
+
+    @Override
+    public Completable createOrOverwrite(Transaction tx, Flowable<JsonDocument> documentFlowable, Specification specification) {
+        return delegate.createOrOverwrite(tx, documentFlowable.doOnNext(document ->
+                cache.invalidate(document.key().namespace(), document.key().entity(), document.key().id())), specification);
+    }
+
+    @Override
+    public Completable putBatchGroup(Transaction tx, Batch.PutGroup group, String namespace, Specification specification) {
+        return delegate.putBatchGroup(tx, group, namespace, specification)
+                .doOnTerminate(() -> cache.invalidateEntity(namespace, group.type()));
+    }
+
+    @Override
+    public Completable deleteBatchGroup(Transaction tx, Batch.DeleteGroup group, String namespace, Specification specification) {
+        return delegate.deleteBatchGroup(tx, group, namespace, specification)
+                .doOnTerminate(() -> cache.invalidateEntity(namespace, group.type()));
+    }
+
+    @Override
+    public Completable deleteDocument(Transaction tx, String ns, String entityName, String id, ZonedDateTime version, PersistenceDeletePolicy policy) {
+        return delegate.deleteDocument(tx, ns, entityName, id, version, policy)
+                .doOnTerminate(() -> cache.invalidate(ns, entityName, id));
+    }
+
+    @Override
+    public Completable deleteAllDocumentVersions(Transaction tx, String ns, String entity, String id, PersistenceDeletePolicy policy) {
+        return delegate.deleteAllDocumentVersions(tx, ns, entity, id, policy)
+                .doOnTerminate(() -> cache.invalidate(ns, entity, id));
+    }
+
+    @Override
+    public Completable deleteAllEntities(Transaction tx, String namespace, String entity, Specification specification) {
+        return delegate.deleteAllEntities(tx, namespace, entity, specification)
+                .doOnTerminate(() -> cache.invalidateEntity(namespace, entity));
+    }
+
+    @Override
+    public Completable markDocumentDeleted(Transaction transaction, String ns, String entityName, String id, ZonedDateTime version, PersistenceDeletePolicy policy) {
+        return delegate.markDocumentDeleted(transaction, ns, entityName, id, version, policy)
+                .doOnTerminate(() -> cache.invalidate(ns, entityName, id));
+    }
+
+    @Override
+    public Single<Boolean> hasPrevious(Transaction tx, ZonedDateTime snapshot, String ns, String entityName, String id) {
+        return delegate.hasPrevious(tx, snapshot, ns, entityName, id);
+    }
+
+    @Override
+    public Single<Boolean> hasNext(Transaction tx, ZonedDateTime snapshot, String ns, String entityName, String id) {
+        return delegate.hasNext(tx, snapshot, ns, entityName, id);
+    }
+
+    @Override
+    public Transaction createTransaction(boolean readOnly) throws PersistenceException {
+        return delegate.createTransaction(readOnly);
+    }
+
+    @Override
+    public Flowable<JsonDocument> findDocument(Transaction tx, ZonedDateTime snapshot, String namespace, String entityName, JsonNavigationPath path, String value, Range<String> range) {
+        return delegate.findDocument(tx, snapshot, namespace, entityName, path, value, range);
+    }
+
+    @Override
+    public <T> T getInstance(Class<T> clazz) {
+        return delegate.getInstance(clazz);
+    }
+
+    @Override
+    public void close() throws PersistenceException {
+        cache.clear();
+        delegate.close();
+    }
+}
@@ -0,0 +1,292 @@
+package no.ssb.lds.core.persistence;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import no.ssb.lds.api.persistence.json.JsonDocument;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of managed documents keyed by namespace, entity and id. Each entry holds the version of the document
+ * that was read together with its validity interval, i.e. from the version timestamp until the timestamp of the next
+ * version, so that reads at any snapshot within the interval are served from the cache. Absent documents are cached
+ * as entries without a document.
+ * <p>
+ * The cache is split in segments that each evict least-recently used entries when the estimated size of their entries
+ * exceeds their share of the maximum size. Writers invalidate single documents or whole entities after their changes
+ * are committed. Entries are stamped with invalidation generations when the read that populates them starts, so that
+ * a read that races with a write can never populate the cache with the version that was overwritten.
+ */
+public class DocumentCache implements DocumentInvalidationListener {
+
+    private static final int SEGMENTS = 16;
+    private static final int ENTRY_OVERHEAD = 160;
+
+    private final long maxSegmentWeight;
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final DocumentGenerations generations = new DocumentGenerations();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param maxWeight the maximum estimated size in bytes of the cached documents.
+     */
+    public DocumentCache(long maxWeight) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("maxWeight must be positive: " + maxWeight);
+        }
+        this.maxSegmentWeight = Math.max(1, maxWeight / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * @return the entry that is valid at the snapshot, or null if there is no such entry.
+     */
+    public Entry get(String namespace, String entity, String id, ZonedDateTime snapshot) {
+        Key key = new Key(namespace, entity, id);
+        Segment segment = segmentFor(key);
+        Entry entry;
+        synchronized (segment) {
+            entry = segment.entries.get(key);
+            if (entry != null && !generations.isCurrent(entry.stamp)) {
+                segment.remove(key);
+                entry = null;
+            }
+        }
+        if (entry == null || !entry.isValidAt(snapshot.toInstant())) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry;
+    }
+
+    /**
+     * Capture the invalidation generations of a document before it is read from persistence.
+     */
+    public DocumentGenerations.Stamp stamp(String namespace, String entity, String id) {
+        return generations.stamp(namespace, entity, id);
+    }
+
+    /**
+     * Cache the result of a read that started when the stamp was taken. The result is discarded if the document was
+     * invalidated since.
+     *
+     * @param document  the document that was read, or null if the document was absent.
+     * @param validTo   the timestamp of the next version of the document, or null if there is no later version.
+     */
+    public void put(DocumentGenerations.Stamp stamp, JsonDocument document, ZonedDateTime validTo) {
+        Key key = new Key(stamp.namespace(), stamp.entity(), stamp.id());
+        Instant validFrom = document == null ? null : document.key().timestamp().toInstant();
+        Entry entry = new Entry(document, validFrom, validTo == null ? null : validTo.toInstant(), stamp, weigh(key, document));
+        if (entry.weight > maxSegmentWeight) {
+            return;
+        }
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            if (!generations.isCurrent(stamp)) {
+                return;
+            }
+            segment.put(key, entry);
+            Iterator<Entry> eldest = segment.entries.values().iterator();
+            while (segment.weight > maxSegmentWeight && eldest.hasNext()) {
+                Entry evicted = eldest.next();
+                eldest.remove();
+                segment.weight -= evicted.weight;
+                evictions.increment();
+            }
+        }
+    }
+
+    @Override
+    public void invalidate(String namespace, String entity, String id) {
+        Key key = new Key(namespace, entity, id);
+        generations.invalidate(namespace, entity, id);
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.remove(key);
+        }
+        invalidations.increment();
+    }
+
+    /**
+     * Invalidate all documents of the entity. The entries are removed lazily, when they are read or evicted.
+     */
+    @Override
+    public void invalidateEntity(String namespace, String entity) {
+        generations.invalidateEntity(namespace, entity);
+        invalidations.increment();
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.entries.clear();
+                segment.weight = 0;
+            }
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    public long getSize() {
+        long size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.entries.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return the estimated size in bytes of the cached documents.
+     */
+    public long getWeight() {
+        long weight = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                weight += segment.weight;
+            }
+        }
+        return weight;
+    }
+
+    private Segment segmentFor(Key key) {
+        int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    static int weigh(Key key, JsonDocument document) {
+        int weight = ENTRY_OVERHEAD + 2 * (key.namespace.length() + key.entity.length() + key.id.length());
+        if (document != null && document.jackson() != null) {
+            weight += weigh(document.jackson());
+        }
+        return weight;
+    }
+
+    /**
+     * A rough estimate of the heap used by a json tree.
+     */
+    static int weigh(JsonNode node) {
+        if (node.isObject()) {
+            int weight = 64;
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                weight += 48 + 2 * field.getKey().length() + weigh(field.getValue());
+            }
+            return weight;
+        }
+        if (node.isArray()) {
+            int weight = 48;
+            for (int i = 0; i < node.size(); i++) {
+                weight += 8 + weigh(node.get(i));
+            }
+            return weight;
+        }
+        if (node.isTextual()) {
+            return 56 + 2 * node.textValue().length();
+        }
+        return 24;
+    }
+
+    public static class Entry {
+        private final JsonDocument document;
+        private final Instant validFrom;
+        private final Instant validTo;
+        private final DocumentGenerations.Stamp stamp;
+        private final int weight;
+
+        Entry(JsonDocument document, Instant validFrom, Instant validTo, DocumentGenerations.Stamp stamp, int weight) {
+            this.document = document;
+            this.validFrom = validFrom;
+            this.validTo = validTo;
+            this.stamp = stamp;
+            this.weight = weight;
+        }
+
+        /**
+         * @return the cached document, or null if the document was absent. The document is shared and must not be
+         * modified.
+         */
+        public JsonDocument getDocument() {
+            return document;
+        }
+
+        boolean isValidAt(Instant snapshot) {
+            return (validFrom == null || !snapshot.isBefore(validFrom)) && (validTo == null || snapshot.isBefore(validTo));
+        }
+    }
+
+    static class Key {
+        final String namespace;
+        final String entity;
+        final String id;
+        final int hash;
+
+        Key(String namespace, String entity, String id) {
+            this.namespace = namespace;
+            this.entity = entity;
+            this.id = id;
+            this.hash = Objects.hash(namespace, entity, id);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return hash == key.hash && namespace.equals(key.namespace) && entity.equals(key.entity) && id.equals(key.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static class Segment {
+        final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+        long weight;
+
+        void put(Key key, Entry entry) {
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                weight -= previous.weight;
+            }
+            weight += entry.weight;
+        }
+
+        void remove(Key key) {
+            Entry removed = entries.remove(key);
+            if (removed != null) {
+                weight -= removed.weight;
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package no.ssb.lds.core.persistence;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Invalidation generations of documents, used by caches to detect that a document was written while it was being read.
+ * A stamp is taken before the document is read, and the result of the read may only be cached if the stamp is still
+ * current. Documents are hashed to a fixed number of stripes, so invalidating one document occasionally invalidates
+ * others in the same stripe as well.
+ */
+public class DocumentGenerations {
+
+    private static final int STRIPES = 4096;
+
+    private final Map<String, AtomicLong> generationByEntity = new ConcurrentHashMap<>();
+    private final AtomicLongArray documentGenerations = new AtomicLongArray(STRIPES);
+
+    public Stamp stamp(String namespace, String entity, String id) {
+        int stripe = stripe(namespace, entity, id);
+        return new Stamp(namespace, entity, id, entityGeneration(namespace, entity).get(), documentGenerations.get(stripe));
+    }
+
+    public boolean isCurrent(Stamp stamp) {
+        return entityGeneration(stamp.namespace, stamp.entity).get() == stamp.entityGeneration
+                && documentGenerations.get(stripe(stamp.namespace, stamp.entity, stamp.id)) == stamp.documentGeneration;
+    }
+
+    public void invalidate(String namespace, String entity, String id) {
+        documentGenerations.incrementAndGet(stripe(namespace, entity, id));
+    }
+
+    public void invalidateEntity(String namespace, String entity) {
+        entityGeneration(namespace, entity).incrementAndGet();
+    }
+
+    private AtomicLong entityGeneration(String namespace, String entity) {
+        return generationByEntity.computeIfAbsent(namespace + "/" + entity, k -> new AtomicLong());
+    }
+
+    private static int stripe(String namespace, String entity, String id) {
+        return Objects.hash(namespace, entity, id) & (STRIPES - 1);
+    }
+
+    public static class Stamp {
+        private final String namespace;
+        private final String entity;
+        private final String id;
+        private final long entityGeneration;
+        private final long documentGeneration;
+
+        Stamp(String namespace, String entity, String id, long entityGeneration, long documentGeneration) {
+            this.namespace = namespace;
+            this.entity = entity;
+            this.id = id;
+            this.entityGeneration = entityGeneration;
+            this.documentGeneration = documentGeneration;
+        }
+
+        public String namespace() {
+            return namespace;
+        }
+
+        public String entity() {
+            return entity;
+        }
+
+        public String id() {
+            return id;
+        }
+    }
+}
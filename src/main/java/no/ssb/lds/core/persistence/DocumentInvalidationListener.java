@@ -0,0 +1,15 @@
+package no.ssb.lds.core.persistence;
+
+/**
+ * Notified by the persistence saga adapters when documents have been written, after the transaction of the write has
+ * been closed.
+ */
+public interface DocumentInvalidationListener {
+
+    void invalidate(String namespace, String entity, String id);
+
+    /**
+     * Invalidate all documents of the entity, used when the documents that were written are not known individually.
+     */
+    void invalidateEntity(String namespace, String entity);
+}
@@ -12,6 +12,7 @@ import no.ssb.saga.execution.adapter.Adapter;
 
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
 import java.util.Map;
 
 public class PersistenceCreateOrOverwriteSagaAdapter extends Adapter<JsonNode> {
@@ -20,11 +21,13 @@ public class PersistenceCreateOrOverwriteSagaAdapter extends Adapter<JsonNode> {
 
     private final RxJsonPersistence persistence;
     private final Specification specification;
+    private final List<DocumentInvalidationListener> invalidationListeners;
 
-    public PersistenceCreateOrOverwriteSagaAdapter(RxJsonPersistence persistence, Specification specification) {
+    public PersistenceCreateOrOverwriteSagaAdapter(RxJsonPersistence persistence, Specification specification, List<DocumentInvalidationListener> invalidationListeners) {
         super(JsonNode.class, NAME);
         this.persistence = persistence;
         this.specification = specification;
+        this.invalidationListeners = invalidationListeners;
     }
 
     @Override
@@ -32,10 +35,17 @@ public class PersistenceCreateOrOverwriteSagaAdapter extends Adapter<JsonNode> {
         JsonNode input = (JsonNode) sagaInput;
         String versionStr = input.get("version").textValue();
         ZonedDateTime version = ZonedDateTime.parse(versionStr, DateTimeFormatter.ISO_ZONED_DATE_TIME);
+        String namespace = input.get("namespace").textValue();
+        String entity = input.get("entity").textValue();
+        String id = input.get("id").textValue();
         try (Transaction tx = persistence.createTransaction(false)) {
-            persistence.createOrOverwrite(tx, new JsonDocument(new DocumentKey(input.get("namespace").textValue(), input.get("entity").textValue(), input.get("id").textValue(), version), input.get("data")), specification).blockingAwait();
+            persistence.createOrOverwrite(tx, new JsonDocument(new DocumentKey(namespace, entity, id, version), input.get("data")), specification).blockingAwait();
         } catch (Throwable t) {
             throw new AbortSagaException("Unable to write data using persistence.", t);
+        } finally {
+            for (DocumentInvalidationListener listener : invalidationListeners) {
+                listener.invalidate(namespace, entity, id);
+            }
         }
         return null;
     }
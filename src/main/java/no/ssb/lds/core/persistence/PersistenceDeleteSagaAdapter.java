@@ -9,6 +9,7 @@ import no.ssb.saga.execution.adapter.Adapter;
 
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
 import java.util.Map;
 
 public class PersistenceDeleteSagaAdapter extends Adapter<JsonNode> {
@@ -16,10 +17,12 @@ public class PersistenceDeleteSagaAdapter extends Adapter<JsonNode> {
     public static final String NAME = "Persistence-Delete";
 
     private final RxJsonPersistence persistence;
+    private final List<DocumentInvalidationListener> invalidationListeners;
 
-    public PersistenceDeleteSagaAdapter(RxJsonPersistence persistence) {
+    public PersistenceDeleteSagaAdapter(RxJsonPersistence persistence, List<DocumentInvalidationListener> invalidationListeners) {
         super(JsonNode.class, NAME);
         this.persistence = persistence;
+        this.invalidationListeners = invalidationListeners;
     }
 
     @Override
@@ -27,15 +30,22 @@ public class PersistenceDeleteSagaAdapter extends Adapter<JsonNode> {
         JsonNode input = (JsonNode) sagaInput;
         String versionStr = input.get("version").textValue();
         ZonedDateTime version = ZonedDateTime.parse(versionStr, DateTimeFormatter.ISO_ZONED_DATE_TIME);
+        String namespace = input.get("namespace").textValue();
+        String entity = input.get("entity").textValue();
+        String id = input.get("id").textValue();
         try (Transaction tx = persistence.createTransaction(false)) {
             persistence.markDocumentDeleted(
                     tx,
-                    input.get("namespace").textValue(),
-                    input.get("entity").textValue(),
-                    input.get("id").textValue(),
+                    namespace,
+                    entity,
+                    id,
                     version,
                     PersistenceDeletePolicy.FAIL_IF_INCOMING_LINKS
             ).blockingAwait();
+        } finally {
+            for (DocumentInvalidationListener listener : invalidationListeners) {
+                listener.invalidate(namespace, entity, id);
+            }
         }
         return null;
     }
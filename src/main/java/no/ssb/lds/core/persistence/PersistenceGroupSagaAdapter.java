@@ -0,0 +1,130 @@
+package no.ssb.lds.core.persistence;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import no.ssb.lds.api.persistence.DocumentKey;
+import no.ssb.lds.api.persistence.PersistenceDeletePolicy;
+import no.ssb.lds.api.persistence.Transaction;
+import no.ssb.lds.api.persistence.json.JsonDocument;
+import no.ssb.lds.api.persistence.json.JsonTools;
+import no.ssb.lds.api.persistence.reactivex.RxJsonPersistence;
+import no.ssb.lds.api.specification.Specification;
+import no.ssb.lds.core.saga.GroupSagaOutcomes;
+import no.ssb.lds.core.saga.SagaInput;
+import no.ssb.saga.api.SagaNode;
+import no.ssb.saga.execution.adapter.AbortSagaException;
+import no.ssb.saga.execution.adapter.Adapter;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes all members of a group saga in one persistence transaction. Members are applied in order, so that later
+ * writes of the same document win as they would have with one saga per write.
+ * <p>
+ * Persistence is the first node of the group saga. When a member cannot be written the transaction is cancelled, the
+ * member is left out and the remaining members are written again in a new transaction. The members that were left
+ * out are the output of this node, so that the tx-log and search-index nodes that follow, also when executed by
+ * saga recovery, only write the members that were written here. Failures that cannot be attributed to one member
+ * abort the whole group.
+ */
+public class PersistenceGroupSagaAdapter extends Adapter<JsonNode> {
+
+    public static final String NAME = "Persistence-Group";
+
+    private static final String FAILED_MEMBERS = "failed";
+
+    private final RxJsonPersistence persistence;
+    private final Specification specification;
+    private final List<DocumentInvalidationListener> invalidationListeners;
+    private final GroupSagaOutcomes outcomes;
+
+    public PersistenceGroupSagaAdapter(RxJsonPersistence persistence, Specification specification, List<DocumentInvalidationListener> invalidationListeners, GroupSagaOutcomes outcomes) {
+        super(JsonNode.class, NAME);
+        this.persistence = persistence;
+        this.specification = specification;
+        this.invalidationListeners = invalidationListeners;
+        this.outcomes = outcomes;
+    }
+
+    /**
+     * @return the members of the group that were written by the persistence node, given the outputs of the nodes that
+     * the calling node depends on.
+     */
+    public static List<SagaInput> writtenMembers(SagaInput groupInput, Map<SagaNode, Object> dependeesOutput) {
+        Set<String> failedTxIds = new HashSet<>();
+        for (Map.Entry<SagaNode, Object> entry : dependeesOutput.entrySet()) {
+            if (entry.getValue() instanceof JsonNode && NAME.equals(entry.getKey().adapter)) {
+                ((JsonNode) entry.getValue()).path(FAILED_MEMBERS).forEach(txId -> failedTxIds.add(txId.textValue()));
+            }
+        }
+        List<SagaInput> written = new ArrayList<>();
+        for (SagaInput member : groupInput.group()) {
+            if (!failedTxIds.contains(member.txId())) {
+                written.add(member);
+            }
+        }
+        return written;
+    }
+
+    @Override
+    public JsonNode executeAction(SagaNode sagaNode, Object sagaInput, Map<SagaNode, Object> dependeesOutput) {
+        SagaInput groupInput = new SagaInput((JsonNode) sagaInput);
+        List<SagaInput> members = groupInput.group();
+        List<SagaInput> remaining = new ArrayList<>(members);
+        ObjectNode output = JsonTools.mapper.createObjectNode();
+        ArrayNode failed = output.putArray(FAILED_MEMBERS);
+        try {
+            while (!remaining.isEmpty()) {
+                Transaction tx = persistence.createTransaction(false);
+                SagaInput current = null;
+                try {
+                    for (SagaInput member : remaining) {
+                        current = member;
+                        write(tx, member);
+                    }
+                    current = null;
+                    tx.commit().join();
+                    break;
+                } catch (Throwable t) {
+                    cancel(tx, t);
+                    if (current == null) {
+                        throw new AbortSagaException("Unable to write group using persistence.", t);
+                    }
+                    failed.add(current.txId());
+                    outcomes.memberFailed(groupInput.txId(), current, t);
+                    remaining.remove(current);
+                }
+            }
+        } finally {
+            for (SagaInput member : members) {
+                for (DocumentInvalidationListener listener : invalidationListeners) {
+                    listener.invalidate(member.namespace(), member.entity(), member.resourceId());
+                }
+            }
+        }
+        return output;
+    }
+
+    protected void write(Transaction tx, SagaInput member) {
+        if ("DELETE".equalsIgnoreCase(member.method())) {
+            persistence.markDocumentDeleted(tx, member.namespace(), member.entity(), member.resourceId(), member.version(),
+                    PersistenceDeletePolicy.FAIL_IF_INCOMING_LINKS).blockingAwait();
+        } else {
+            DocumentKey key = new DocumentKey(member.namespace(), member.entity(), member.resourceId(), member.version());
+            persistence.createOrOverwrite(tx, new JsonDocument(key, member.data()), specification).blockingAwait();
+        }
+    }
+
+    private static void cancel(Transaction tx, Throwable cause) {
+        try {
+            tx.cancel().join();
+        } catch (Throwable t) {
+            cause.addSuppressed(t);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package no.ssb.lds.core.restore;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import no.ssb.lds.api.persistence.json.JsonTools;
+import no.ssb.lds.core.txlog.TxLogCompactor;
+import no.ssb.lds.core.txlog.TxLogSnapshot;
+import no.ssb.lds.core.txlog.TxlogRawdataPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.Optional.ofNullable;
+
+/**
+ * Starts a compaction of the tx-log of a source into a snapshot with POST /compact/{source}?versions=N, and reports
+ * the progress of the compaction, or the latest snapshot when none is running, with GET /compact/{source}.
+ */
+public class CompactionHandler implements HttpHandler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CompactionHandler.class);
+
+    private final TxlogRawdataPool txLogPool;
+    private final Map<String, Compaction> compactionBySource = new ConcurrentHashMap<>();
+
+    public CompactionHandler(TxlogRawdataPool txLogPool) {
+        this.txLogPool = txLogPool;
+    }
+
+    @Override
+    public void handleRequest(HttpServerExchange exchange) throws Exception {
+        if (exchange.isInIoThread()) {
+            exchange.dispatch(this);
+            return;
+        }
+        String source = exchange.getRequestPath().substring("/compact/".length());
+        if (exchange.getRequestMethod().equalToString("post")) {
+            int versions = ofNullable(exchange.getQueryParameters().get("versions"))
+                    .map(Deque::peek)
+                    .map(Integer::valueOf)
+                    .orElse(1);
+            compactionBySource.compute(source, (s, running) -> running != null && !running.done ?
+                    running : new Compaction(new TxLogCompactor(txLogPool, s, versions)).start());
+        } else if (!exchange.getRequestMethod().equalToString("get")) {
+            exchange.setStatusCode(400);
+            exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "text/plain");
+            exchange.getResponseSender().send("Unsupported compact method: " + exchange.getRequestMethod());
+            return;
+        }
+        exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/json; charset=utf-8");
+        exchange.getResponseSender().send(JsonTools.toJson(serializeState(source)), StandardCharsets.UTF_8);
+    }
+
+    private ObjectNode serializeState(String source) {
+        ObjectNode state = JsonTools.mapper.createObjectNode();
+        state.put("source", source);
+        Compaction compaction = compactionBySource.get(source);
+        if (compaction != null) {
+            state.put("done", compaction.done);
+            state.put("failed", compaction.failed);
+            state.put("entriesScanned", compaction.compactor.getEntriesScanned());
+            state.put("entriesWritten", compaction.compactor.getEntriesWritten());
+        }
+        TxLogSnapshot snapshot = compaction != null && compaction.done ? compaction.snapshot : TxLogSnapshot.latest(txLogPool, source);
+        if (snapshot != null) {
+            state.put("snapshotTopic", snapshot.getTopic());
+            state.put("snapshotCoversTxId", snapshot.getCoversTxId().toString());
+        }
+        return state;
+    }
+
+    static class Compaction implements Runnable {
+        final TxLogCompactor compactor;
+        volatile TxLogSnapshot snapshot;
+        volatile boolean done;
+        volatile boolean failed;
+
+        Compaction(TxLogCompactor compactor) {
+            this.compactor = compactor;
+        }
+
+        Compaction start() {
+            Thread thread = new Thread(this, "compact-" + compactor.getSource());
+            thread.setDaemon(true);
+            thread.start();
+            return this;
+        }
+
+        @Override
+        public void run() {
+            try {
+                snapshot = compactor.compact();
+            } catch (Throwable t) {
+                LOG.error("Compaction of tx-log of source " + compactor.getSource() + " failed", t);
+                failed = true;
+            } finally {
+                done = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package no.ssb.lds.core.restore;
+
+import de.huxhorn.sulky.ulid.ULID;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * The tx-id of the last tx-log entry that a bulk import of a source has applied, kept in a file so that an interrupted
+ * import can resume after it. The file is replaced atomically, so it always holds a complete tx-id.
+ */
+class RestoreCheckpoint {
+
+    private final Path file;
+
+    RestoreCheckpoint(Path directory, String source) {
+        this.file = directory.resolve(source.replaceAll("[^A-Za-z0-9._-]", "_") + ".checkpoint");
+    }
+
+    /**
+     * @return the tx-id of the last applied entry, or null if there is no checkpoint.
+     */
+    ULID.Value read() {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            return ULID.parseULID(new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void write(ULID.Value txId) {
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(tmp, txId.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void delete() {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    Path getFile() {
+        return file;
+    }
+}
@@ -1,37 +1,80 @@
 package no.ssb.lds.core.restore;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import de.huxhorn.sulky.ulid.ULID;
 import no.ssb.concurrent.futureselector.SelectableFuture;
+import no.ssb.lds.api.persistence.Transaction;
+import no.ssb.lds.api.persistence.batch.Batch;
 import no.ssb.lds.api.persistence.json.JsonTools;
+import no.ssb.lds.api.persistence.reactivex.RxJsonPersistence;
+import no.ssb.lds.api.specification.Specification;
 import no.ssb.lds.core.saga.SagaExecutionCoordinator;
 import no.ssb.lds.core.saga.SagaInput;
 import no.ssb.lds.core.saga.SagaRepository;
-import no.ssb.lds.core.txlog.TxLogTools;
+import no.ssb.lds.core.txlog.TxLogEntry;
+import no.ssb.lds.core.txlog.TxLogSnapshot;
 import no.ssb.lds.core.txlog.TxlogRawdataPool;
-import no.ssb.rawdata.api.RawdataConsumer;
 import no.ssb.rawdata.api.RawdataMessage;
 import no.ssb.saga.api.Saga;
 import no.ssb.saga.execution.SagaHandoffResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static java.util.Optional.ofNullable;
 
+/**
+ * Restores the documents of a source by replaying its tx-log. A reader thread reads ahead from the tx-log and
+ * partitions the entries by entity and id across a number of partition workers, so that the entries of a document
+ * are restored in tx-log order while different documents are restored in parallel. A delete, or an entry without a
+ * document key, is a barrier: it is restored when all earlier entries have been restored, and later entries wait for
+ * it, since a delete fails if other documents still link to the document.
+ * <p>
+ * The low-watermark is the tx-id up to which all entries have been restored, and is where a restore that was stopped
+ * can be resumed from.
+ * <p>
+ * A bulk import is meant for building a fresh store, and writes the documents to persistence directly instead of with
+ * sagas. Consecutive puts and deletes of the same type are collected into batch groups, which are written with
+ * {@link RxJsonPersistence#putBatchGroup} and {@link RxJsonPersistence#deleteBatchGroup} in transactions of many
+ * entries. The tx-id of the last entry of each transaction is written to a checkpoint, and a bulk import without a
+ * from tx-id resumes after the checkpoint. The checkpoint is removed when the import completes. A bulk import does
+ * not update the search-index.
+ * <p>
+ * Either kind of restore can start from the latest {@link TxLogSnapshot} of the source, and then only replays the
+ * tx-log after the tx-id that the snapshot covers.
+ */
 public class RestoreContext {
 
     private static final Logger LOG = LoggerFactory.getLogger(RestoreContext.class);
 
+    static final int READ_AHEAD_PER_PARTITION = 1024;
+
+    private static final Item END = new Item(null, null, null, 0, null);
+
     private final SagaExecutionCoordinator sec;
+    private final RxJsonPersistence persistence;
+    private final Specification specification;
 
     private final TxlogRawdataPool txLogPool;
+    private final boolean bulk;
+    private final int bulkTransactionSize;
+    private final RestoreCheckpoint checkpoint;
+    private final TxLogSnapshot snapshot;
     private final Thread workerThread;
+    private final Partition[] partitions;
     private final String source;
     private final ULID.Value fromTxId;
     private final boolean fromInclusive;
@@ -45,20 +88,51 @@ public class RestoreContext {
     private final AtomicLong messagesFailed = new AtomicLong();
     private final AtomicLong messagesIgnored = new AtomicLong();
 
-    public RestoreContext(SagaExecutionCoordinator sec, TxlogRawdataPool txLogPool, String source, ULID.Value fromTxId, boolean fromInclusive, ULID.Value toTxId, boolean toInclusive) {
+    // the entries that have been dispatched and are not yet restored, by dispatch sequence
+    private final ConcurrentSkipListMap<Long, Item> pending = new ConcurrentSkipListMap<>();
+    private volatile ULID.Value lastDispatchedTxId;
+    private volatile ULID.Value firstTxId;
+    private volatile long startedNanos;
+    private volatile long stoppedNanos;
+
+    public RestoreContext(SagaExecutionCoordinator sec, RxJsonPersistence persistence, Specification specification,
+                          TxlogRawdataPool txLogPool, String source, ULID.Value fromTxId, boolean fromInclusive,
+                          ULID.Value toTxId, boolean toInclusive, RestoreSettings settings, boolean bulk,
+                          boolean fromSnapshot) {
         this.sec = sec;
+        this.persistence = persistence;
+        this.specification = specification;
         this.txLogPool = txLogPool;
         this.source = source;
-        this.fromTxId = fromTxId;
-        this.fromInclusive = fromInclusive;
+        this.bulk = bulk;
+        this.bulkTransactionSize = Math.max(1, settings.bulkTransactionSize);
+        this.checkpoint = new RestoreCheckpoint(settings.checkpointDirectory, source);
+        ULID.Value resumeAfter = bulk && fromTxId == null ? checkpoint.read() : null;
+        if (resumeAfter != null) {
+            LOG.info("Resuming bulk import of source {} after checkpoint {}", source, resumeAfter);
+            this.fromTxId = resumeAfter;
+            this.fromInclusive = false;
+        } else {
+            this.fromTxId = fromTxId;
+            this.fromInclusive = fromInclusive;
+        }
         this.toTxId = toTxId;
         this.toInclusive = toInclusive;
-        this.workerThread = new Thread(new RestoreWorker());
+        this.snapshot = fromSnapshot ? TxLogSnapshot.latest(txLogPool, source) : null;
+        this.workerThread = new Thread(bulk ? new BulkImportWorker() : new RestoreWorker(), "restore-" + source);
+        this.partitions = new Partition[bulk ? 0 : Math.max(1, settings.partitions)];
+        for (int i = 0; i < partitions.length; i++) {
+            partitions[i] = new Partition(i);
+        }
         this.lastMessage = txLogPool.getLastMessage(source);
     }
 
     RestoreContext restore() {
         if (hasStarted.compareAndSet(false, true)) {
+            startedNanos = System.nanoTime();
+            for (Partition partition : partitions) {
+                partition.thread.start();
+            }
             workerThread.start();
         }
         return this;
@@ -67,6 +141,9 @@ public class RestoreContext {
     void stop() {
         stopped.set(true);
         workerThread.interrupt();
+        for (Partition partition : partitions) {
+            partition.thread.interrupt();
+        }
     }
 
     boolean hasStarted() {
@@ -77,11 +154,19 @@ public class RestoreContext {
         return done.get();
     }
 
+    /**
+     * @return the tx-id up to and including which all entries have been restored, or null if none have.
+     */
+    ULID.Value lowWatermark() {
+        Map.Entry<Long, Item> oldestPending = pending.firstEntry();
+        return oldestPending == null ? lastDispatchedTxId : oldestPending.getValue().previousTxId;
+    }
+
     class RestoreWorker implements Runnable {
         @Override
         public void run() {
-            final String topic = txLogPool.topicOf(source);
-            try (RawdataConsumer consumer = txLogPool.getClient().consumer(topic, fromTxId, fromInclusive)) {
+            try (TxLogSegmentReader consumer = new TxLogSegmentReader(txLogPool, source, fromTxId, fromInclusive, snapshot)) {
+                long sequence = 0;
                 while (!stopped.get()) {
                     RawdataMessage message;
                     try {
@@ -98,50 +183,327 @@ public class RestoreContext {
                     if (toTxId != null) {
                         int comparison = message.ulid().compareTo(toTxId);
                         if (comparison > 0 || (!toInclusive && (comparison == 0))) {
-                            return; // past upper bound set by client
+                            break; // past upper bound set by client
                         }
                     }
                     int comparisonWithLastMessage = message.ulid().compareTo(lastMessage.ulid());
                     if (comparisonWithLastMessage > 0) {
-                        return; // past upper bound decided by lastMessage read at start of restore
+                        break; // past upper bound decided by lastMessage read at start of restore
+                    }
+                    if (firstTxId == null) {
+                        firstTxId = message.ulid();
                     }
+                    // the payload is only decoded by the partition that restores the entry
+                    TxLogEntry entry = TxLogEntry.of(message);
                     Saga saga;
-                    SagaInput sagaInput = TxLogTools.txEntryToSagaInput(message);
-                    if ("DELETE".equalsIgnoreCase(sagaInput.method())) {
+                    boolean barrier;
+                    if ("DELETE".equalsIgnoreCase(entry.method())) {
                         saga = sec.getSagaRepository().get(SagaRepository.SAGA_DELETE_MANAGED_RESOURCE_NO_TX_LOG);
-                    } else if ("PUT".equalsIgnoreCase(sagaInput.method())) {
+                        barrier = true;
+                    } else if ("PUT".equalsIgnoreCase(entry.method())) {
                         saga = sec.getSagaRepository().get(SagaRepository.SAGA_CREATE_OR_UPDATE_MANAGED_RESOURCE_NO_TX_LOG);
+                        barrier = entry.entity() == null || entry.resourceId() == null;
                     } else {
-                        LOG.warn("IGNORING message in txlog: ulid={}, method={}, entity={}, id={}, version={}", message.ulid().toString(), sagaInput.method(), sagaInput.entity(), sagaInput.resourceId(), sagaInput.versionAsString());
+                        LOG.warn("IGNORING message in txlog: ulid={}, method={}, entity={}, id={}, version={}", message.ulid().toString(), entry.method(), entry.entity(), entry.resourceId(), entry.versionAsString());
                         messagesIgnored.incrementAndGet();
+                        if (pending.isEmpty()) {
+                            lastDispatchedTxId = message.ulid();
+                        }
                         if (comparisonWithLastMessage == 0) {
-                            return; // finished processing lastMessage
+                            break; // finished processing lastMessage
                         }
                         continue;
                     }
-                    SelectableFuture<SagaHandoffResult> handoff = sec.handoff(true, sec.getSagaRepository().getAdapterLoader(), saga, sagaInput, Collections.emptyMap());
-                    SagaHandoffResult handoffResult = handoff.join();
-                    if (handoffResult.isSuccess()) {
-                        messagesRestored.incrementAndGet();
-                    } else {
-                        LOG.error(String.format("FAILED to process message: ulid=%s, method=%s, entity=%s, id=%s, version=%s", message.ulid().toString(), sagaInput.method(), sagaInput.entity(), sagaInput.resourceId(), sagaInput.versionAsString()), handoffResult.getFailureCause());
-                        messagesFailed.incrementAndGet();
+                    Item item = new Item(message.ulid(), entry, saga, ++sequence, lastDispatchedTxId);
+                    if (barrier) {
+                        awaitRestored();
+                    }
+                    dispatch(item);
+                    if (barrier) {
+                        awaitRestored();
                     }
                     if (comparisonWithLastMessage == 0) {
-                        return; // finished processing lastMessage
+                        break; // finished processing lastMessage
                     }
                 }
+                if (!stopped.get()) {
+                    for (Partition partition : partitions) {
+                        partition.queue.put(END);
+                    }
+                    for (Partition partition : partitions) {
+                        partition.thread.join();
+                    }
+                }
+            } catch (InterruptedException e) {
+                // stopped
             } catch (Exception e) {
                 LOG.error("", e);
             } finally {
+                for (Partition partition : partitions) {
+                    partition.thread.interrupt();
+                }
+                stoppedNanos = System.nanoTime();
                 done.set(true);
             }
         }
+
+        private void dispatch(Item item) throws InterruptedException {
+            pending.put(item.sequence, item);
+            lastDispatchedTxId = item.txId;
+            String key = item.entry.entity() + "/" + item.entry.resourceId();
+            partitions[Math.floorMod(key.hashCode(), partitions.length)].queue.put(item);
+        }
+
+        private void awaitRestored() throws InterruptedException {
+            synchronized (pending) {
+                while (!pending.isEmpty() && !stopped.get()) {
+                    pending.wait(100);
+                }
+            }
+        }
+    }
+
+    class BulkImportWorker implements Runnable {
+
+        private final List<PendingGroup> groups = new ArrayList<>();
+        private int entryCount;
+        private int messageCount;
+        private ULID.Value lastTxId;
+
+        @Override
+        public void run() {
+            try (TxLogSegmentReader consumer = new TxLogSegmentReader(txLogPool, source, fromTxId, fromInclusive, snapshot)) {
+                while (!stopped.get()) {
+                    RawdataMessage message;
+                    try {
+                        message = consumer.receive(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        continue;
+                    }
+                    if (stopped.get() || message == null) {
+                        break;
+                    }
+                    if (toTxId != null) {
+                        int comparison = message.ulid().compareTo(toTxId);
+                        if (comparison > 0 || (!toInclusive && (comparison == 0))) {
+                            break; // past upper bound set by client
+                        }
+                    }
+                    int comparisonWithLastMessage = message.ulid().compareTo(lastMessage.ulid());
+                    if (comparisonWithLastMessage > 0) {
+                        break; // past upper bound decided by lastMessage read at start of restore
+                    }
+                    if (firstTxId == null) {
+                        firstTxId = message.ulid();
+                    }
+                    add(message.ulid(), TxLogEntry.of(message));
+                    lastTxId = message.ulid();
+                    if (entryCount >= bulkTransactionSize) {
+                        write();
+                    }
+                    if (comparisonWithLastMessage == 0) {
+                        break; // finished processing lastMessage
+                    }
+                }
+                if (!stopped.get()) {
+                    write();
+                    checkpoint.delete();
+                }
+            } catch (Exception e) {
+                LOG.error(String.format("Bulk import of source %s failed, it can be resumed from checkpoint %s", source, lastDispatchedTxId), e);
+                messagesFailed.addAndGet(messageCount);
+            } finally {
+                stoppedNanos = System.nanoTime();
+                done.set(true);
+            }
+        }
+
+        private void add(ULID.Value txId, TxLogEntry entry) {
+            if (entry.isBatch()) {
+                JsonNode batch = entry.batch();
+                if (batch.isArray()) {
+                    for (JsonNode groupNode : batch) {
+                        addGroup(entry.namespace(), groupNode);
+                    }
+                } else {
+                    addGroup(entry.namespace(), batch);
+                }
+                messageCount++;
+                return;
+            }
+            String operation;
+            if ("DELETE".equalsIgnoreCase(entry.method())) {
+                operation = "delete";
+            } else if ("PUT".equalsIgnoreCase(entry.method())) {
+                operation = "put";
+            } else {
+                LOG.warn("IGNORING message in txlog: ulid={}, method={}, entity={}, id={}, version={}", txId.toString(), entry.method(), entry.entity(), entry.resourceId(), entry.versionAsString());
+                messagesIgnored.incrementAndGet();
+                return;
+            }
+            PendingGroup group = groups.isEmpty() ? null : groups.get(groups.size() - 1);
+            if (group == null || !group.accepts(entry.namespace(), operation, entry.entity())) {
+                group = new PendingGroup(entry.namespace(), operation, entry.entity());
+                groups.add(group);
+            }
+            ObjectNode entryNode = group.entries.addObject();
+            entryNode.put("id", entry.resourceId());
+            entryNode.put("timestamp", DateTimeFormatter.ISO_INSTANT.format(entry.version()));
+            if (entry.data() != null) {
+                entryNode.set("data", entry.data());
+            }
+            entryCount++;
+            messageCount++;
+        }
+
+        private void addGroup(String namespace, JsonNode groupNode) {
+            // a batch group from the tx-log is written as it is, and is never merged with other groups
+            PendingGroup group = new PendingGroup(namespace, (ObjectNode) groupNode);
+            groups.add(group);
+            entryCount += Math.max(1, group.entries.size());
+        }
+
+        /**
+         * Write the collected groups in one transaction, and checkpoint the tx-id of the last entry.
+         */
+        private void write() {
+            if (groups.isEmpty()) {
+                if (lastTxId != null) {
+                    lastDispatchedTxId = lastTxId;
+                }
+                return;
+            }
+            try (Transaction tx = persistence.createTransaction(false)) {
+                for (PendingGroup pendingGroup : groups) {
+                    Batch.Group group = new Batch(pendingGroup.node).groups().get(0);
+                    if (Batch.GroupType.DELETE == group.groupType()) {
+                        persistence.deleteBatchGroup(tx, (Batch.DeleteGroup) group, pendingGroup.namespace, specification).blockingAwait();
+                    } else if (Batch.GroupType.PUT == group.groupType()) {
+                        persistence.putBatchGroup(tx, (Batch.PutGroup) group, pendingGroup.namespace, specification).blockingAwait();
+                    }
+                }
+            }
+            checkpoint.write(lastTxId);
+            messagesRestored.addAndGet(messageCount);
+            lastDispatchedTxId = lastTxId;
+            groups.clear();
+            entryCount = 0;
+            messageCount = 0;
+        }
+    }
+
+    static class PendingGroup {
+        final String namespace;
+        final ObjectNode node;
+        final ArrayNode entries;
+        final boolean mergeable;
+
+        PendingGroup(String namespace, String operation, String type) {
+            this.namespace = namespace;
+            this.node = JsonTools.mapper.createObjectNode();
+            node.put("operation", operation);
+            node.put("type", type);
+            this.entries = node.putArray("entries");
+            this.mergeable = true;
+        }
+
+        PendingGroup(String namespace, ObjectNode node) {
+            this.namespace = namespace;
+            this.node = node;
+            this.entries = node.has("entries") ? (ArrayNode) node.get("entries") : JsonTools.mapper.createArrayNode();
+            this.mergeable = false;
+        }
+
+        boolean accepts(String namespace, String operation, String type) {
+            return mergeable && this.namespace.equals(namespace) && node.get("operation").textValue().equals(operation)
+                    && node.get("type").textValue().equals(type);
+        }
+    }
+
+    class Partition implements Runnable {
+        final int index;
+        final BlockingQueue<Item> queue = new ArrayBlockingQueue<>(READ_AHEAD_PER_PARTITION);
+        final Thread thread;
+        final AtomicLong restored = new AtomicLong();
+        volatile boolean busy;
+
+        Partition(int index) {
+            this.index = index;
+            this.thread = new Thread(this, "restore-" + source + "-" + index);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!stopped.get()) {
+                    Item item = queue.take();
+                    if (item == END) {
+                        return;
+                    }
+                    busy = true;
+                    try {
+                        restore(item);
+                    } catch (RuntimeException e) {
+                        LOG.error(String.format("FAILED to process message: ulid=%s", item.txId), e);
+                        messagesFailed.incrementAndGet();
+                    } finally {
+                        busy = false;
+                        restored.incrementAndGet();
+                        pending.remove(item.sequence);
+                        synchronized (pending) {
+                            pending.notifyAll();
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                // stopped
+            }
+        }
+
+        private void restore(Item item) {
+            SagaInput sagaInput;
+            try {
+                sagaInput = item.entry.toSagaInput();
+            } catch (RuntimeException e) {
+                LOG.error(String.format("FAILED to decode message: ulid=%s", item.txId), e);
+                messagesFailed.incrementAndGet();
+                return;
+            }
+            SelectableFuture<SagaHandoffResult> handoff = sec.handoff(true, sec.getSagaRepository().getAdapterLoader(), item.saga, sagaInput, Collections.emptyMap());
+            SagaHandoffResult handoffResult = handoff.join();
+            if (handoffResult.isSuccess()) {
+                messagesRestored.incrementAndGet();
+            } else {
+                LOG.error(String.format("FAILED to process message: ulid=%s, method=%s, entity=%s, id=%s, version=%s", item.txId.toString(), sagaInput.method(), sagaInput.entity(), sagaInput.resourceId(), sagaInput.versionAsString()), handoffResult.getFailureCause());
+                messagesFailed.incrementAndGet();
+            }
+        }
+
+        int lag() {
+            return queue.size() + (busy ? 1 : 0);
+        }
+    }
+
+    static class Item {
+        final ULID.Value txId;
+        final TxLogEntry entry;
+        final Saga saga;
+        final long sequence;
+        final ULID.Value previousTxId;
+
+        Item(ULID.Value txId, TxLogEntry entry, Saga saga, long sequence, ULID.Value previousTxId) {
+            this.txId = txId;
+            this.entry = entry;
+            this.saga = saga;
+            this.sequence = sequence;
+            this.previousTxId = previousTxId;
+        }
     }
 
     public JsonNode serializeContextState() {
         ObjectNode ctx = JsonTools.mapper.createObjectNode();
         ctx.put("source", source);
+        ctx.put("mode", bulk ? "bulk" : "saga");
         ctx.put("messagesRestored", messagesRestored.get());
         ctx.put("messagesFailed", messagesFailed.get());
         ctx.put("messagesIgnored", messagesIgnored.get());
@@ -153,9 +515,42 @@ public class RestoreContext {
         ctx.put("lastMessageTxId", ofNullable(lastMessage).map(RawdataMessage::ulid).map(ULID.Value::toString).orElse(null));
         ctx.put("hasStarted", hasStarted.get());
         ctx.put("stopped", stopped.get());
+
+        ULID.Value lowWatermark = lowWatermark();
+        ctx.put("lowWatermarkTxId", ofNullable(lowWatermark).map(ULID.Value::toString).orElse(null));
+        long processed = messagesRestored.get() + messagesFailed.get() + messagesIgnored.get();
+        double elapsedSeconds = hasStarted.get() ? ((done.get() ? stoppedNanos : System.nanoTime()) - startedNanos) / 1e9 : 0;
+        ctx.put("messagesPerSecond", elapsedSeconds > 0 ? Math.round(processed / elapsedSeconds) : 0);
+        // the progress is estimated from the timestamps of the tx-ids, since the number of entries is not known
+        ULID.Value first = firstTxId;
+        if (done.get()) {
+            ctx.put("etaSeconds", 0);
+        } else if (first != null && lowWatermark != null && lastMessage != null
+                && lastMessage.ulid().timestamp() > first.timestamp() && lowWatermark.timestamp() > first.timestamp()) {
+            double progress = Math.min(1.0, (lowWatermark.timestamp() - first.timestamp()) / (double) (lastMessage.ulid().timestamp() - first.timestamp()));
+            ctx.put("etaSeconds", Math.round(elapsedSeconds * (1 - progress) / progress));
+        } else {
+            ctx.putNull("etaSeconds");
+        }
+
+        if (bulk) {
+            ctx.put("checkpoint", checkpoint.getFile().toString());
+        }
+        if (snapshot != null) {
+            ctx.put("snapshotTopic", snapshot.getTopic());
+            ctx.put("snapshotCoversTxId", snapshot.getCoversTxId().toString());
+        }
         ObjectNode workerThreadObject = ctx.putObject("workerThread");
         workerThreadObject.put("name", workerThread.getName());
         workerThreadObject.put("state", workerThread.getState().name());
+        ArrayNode partitionsArray = ctx.putArray("partitions");
+        for (Partition partition : partitions) {
+            ObjectNode partitionObject = partitionsArray.addObject();
+            partitionObject.put("index", partition.index);
+            partitionObject.put("restored", partition.restored.get());
+            partitionObject.put("lag", partition.lag());
+            partitionObject.put("state", partition.thread.getState().name());
+        }
         return ctx;
     }
 }
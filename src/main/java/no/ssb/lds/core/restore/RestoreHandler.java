@@ -5,6 +5,8 @@ import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.util.Headers;
 import no.ssb.lds.api.persistence.json.JsonTools;
+import no.ssb.lds.api.persistence.reactivex.RxJsonPersistence;
+import no.ssb.lds.api.specification.Specification;
 import no.ssb.lds.core.saga.SagaExecutionCoordinator;
 import no.ssb.lds.core.txlog.TxlogRawdataPool;
 
@@ -19,22 +21,31 @@ public class RestoreHandler implements HttpHandler {
     private final RestoreContextBySource restoreContextBySource;
     private final TxlogRawdataPool txLogPool;
     private final SagaExecutionCoordinator sec;
-
-    public RestoreHandler(RestoreContextBySource restoreContextBySource, TxlogRawdataPool txLogPool, SagaExecutionCoordinator sec) {
+    private final RxJsonPersistence persistence;
+    private final Specification specification;
+    private final RestoreSettings settings;
+    private final GetHandler getHandler = new GetHandler();
+    private final PostHandler postHandler = new PostHandler();
+
+    public RestoreHandler(RestoreContextBySource restoreContextBySource, TxlogRawdataPool txLogPool, SagaExecutionCoordinator sec,
+                          RxJsonPersistence persistence, Specification specification, RestoreSettings settings) {
         this.restoreContextBySource = restoreContextBySource;
         this.txLogPool = txLogPool;
         this.sec = sec;
+        this.persistence = persistence;
+        this.specification = specification;
+        this.settings = settings;
     }
 
     @Override
     public void handleRequest(HttpServerExchange exchange) throws Exception {
         if (exchange.getRequestMethod().equalToString("get")) {
-            new RestoreHandler.GetHandler().handleRequest(exchange);
+            getHandler.handleRequest(exchange);
             return;
         }
 
         if (exchange.getRequestMethod().equalToString("post")) {
-            new RestoreHandler.PostHandler().handleRequest(exchange);
+            postHandler.handleRequest(exchange);
             return;
         }
 
@@ -84,11 +95,28 @@ public class RestoreHandler implements HttpHandler {
                     .map(Boolean::valueOf)
                     .orElse(Boolean.TRUE);
 
+            int partitions = ofNullable(exchange.getQueryParameters().get("partitions"))
+                    .map(Deque::peek)
+                    .map(Integer::valueOf)
+                    .orElse(settings.partitions);
+
+            boolean bulk = ofNullable(exchange.getQueryParameters().get("mode"))
+                    .map(Deque::peek)
+                    .map("bulk"::equalsIgnoreCase)
+                    .orElse(Boolean.FALSE);
+
+            boolean fromSnapshot = ofNullable(exchange.getQueryParameters().get("snapshot"))
+                    .map(Deque::peek)
+                    .map(Boolean::valueOf)
+                    .orElse(Boolean.FALSE);
+
+            RestoreSettings requestSettings = new RestoreSettings(partitions, settings.bulkTransactionSize, settings.checkpointDirectory);
+
             String source = exchange.getRequestPath().substring("/restore/".length());
             AtomicBoolean succeeded = new AtomicBoolean();
             RestoreContext initialContext = restoreContextBySource.map.computeIfAbsent(source, s -> {
                 succeeded.set(true);
-                return new RestoreContext(sec, txLogPool, s, fromTxId, fromInclusive, toTxId, toInclusive)
+                return new RestoreContext(sec, persistence, specification, txLogPool, s, fromTxId, fromInclusive, toTxId, toInclusive, requestSettings, bulk, fromSnapshot)
                         .restore();
             });
             RestoreContext restoreContext;
@@ -100,7 +128,7 @@ public class RestoreHandler implements HttpHandler {
                     try {
                         restoreContext = restoreContextBySource.map.computeIfPresent(source, (s, oldCtx) -> {
                             if (initialContext == oldCtx) {
-                                return new RestoreContext(sec, txLogPool, s, fromTxId, fromInclusive, toTxId, toInclusive)
+                                return new RestoreContext(sec, persistence, specification, txLogPool, s, fromTxId, fromInclusive, toTxId, toInclusive, requestSettings, bulk, fromSnapshot)
                                         .restore();
                             } else {
                                 throw new ConcurrentRestoreStartException();
@@ -0,0 +1,24 @@
+package no.ssb.lds.core.restore;
+
+import java.nio.file.Path;
+
+/**
+ * Settings of tx-log restores, from the restore.* configuration.
+ */
+public class RestoreSettings {
+
+    final int partitions;
+    final int bulkTransactionSize;
+    final Path checkpointDirectory;
+
+    /**
+     * @param partitions          the number of documents that a saga restore restores in parallel.
+     * @param bulkTransactionSize the number of entries that a bulk import writes per transaction.
+     * @param checkpointDirectory the directory that bulk imports write their checkpoints to.
+     */
+    public RestoreSettings(int partitions, int bulkTransactionSize, Path checkpointDirectory) {
+        this.partitions = partitions;
+        this.bulkTransactionSize = bulkTransactionSize;
+        this.checkpointDirectory = checkpointDirectory;
+    }
+}
@@ -0,0 +1,75 @@
+package no.ssb.lds.core.restore;
+
+import de.huxhorn.sulky.ulid.ULID;
+import no.ssb.lds.core.txlog.TxLogSnapshot;
+import no.ssb.lds.core.txlog.TxlogRawdataPool;
+import no.ssb.rawdata.api.RawdataConsumer;
+import no.ssb.rawdata.api.RawdataMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the tx-log of a source, optionally starting with its latest snapshot. When the snapshot is used, the snapshot
+ * topic is read from the start position, and then the tx-log after the tx-id that the snapshot covers.
+ */
+class TxLogSegmentReader implements AutoCloseable {
+
+    private final TxlogRawdataPool txLogPool;
+    private final List<Segment> segments = new ArrayList<>();
+    private RawdataConsumer consumer;
+    private int current = -1;
+
+    TxLogSegmentReader(TxlogRawdataPool txLogPool, String source, ULID.Value fromTxId, boolean fromInclusive, TxLogSnapshot snapshot) {
+        this.txLogPool = txLogPool;
+        String topic = txLogPool.topicOf(source);
+        if (snapshot != null && (fromTxId == null || fromTxId.compareTo(snapshot.getCoversTxId()) < 0)) {
+            segments.add(new Segment(snapshot.getTopic(), fromTxId, fromInclusive));
+            segments.add(new Segment(topic, snapshot.getCoversTxId(), false));
+        } else {
+            segments.add(new Segment(topic, fromTxId, fromInclusive));
+        }
+    }
+
+    /**
+     * @return the next message, or null when the last segment has no more messages within the timeout.
+     */
+    RawdataMessage receive(int timeout, TimeUnit unit) throws Exception {
+        while (true) {
+            if (consumer == null) {
+                if (current + 1 >= segments.size()) {
+                    return null;
+                }
+                Segment segment = segments.get(++current);
+                consumer = txLogPool.getClient().consumer(segment.topic, segment.fromTxId, segment.fromInclusive);
+            }
+            RawdataMessage message = consumer.receive(timeout, unit);
+            if (message != null || current + 1 >= segments.size()) {
+                return message;
+            }
+            consumer.close();
+            consumer = null;
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (consumer != null) {
+            consumer.close();
+            consumer = null;
+        }
+    }
+
+    static class Segment {
+        final String topic;
+        final ULID.Value fromTxId;
+        final boolean fromInclusive;
+
+        Segment(String topic, ULID.Value fromTxId, boolean fromInclusive) {
+            this.topic = topic;
+            this.fromTxId = fromTxId;
+            this.fromInclusive = fromInclusive;
+        }
+    }
+}
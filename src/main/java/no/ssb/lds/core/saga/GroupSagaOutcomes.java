@@ -0,0 +1,36 @@
+package no.ssb.lds.core.saga;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The members that the persistence adapter of a group saga left out, so that the group committer can give each of
+ * them the failure of its own write. Only groups that are registered by the committer are tracked, groups executed
+ * by saga recovery are ignored.
+ */
+public class GroupSagaOutcomes {
+
+    private final Map<String, Map<String, Throwable>> failureByMemberTxIdByGroupTxId = new ConcurrentHashMap<>();
+
+    void register(String groupTxId) {
+        failureByMemberTxIdByGroupTxId.put(groupTxId, new ConcurrentHashMap<>());
+    }
+
+    /**
+     * @return the failures of the members that were left out of the group, by member tx-id, or null if the group was
+     * not registered.
+     */
+    Map<String, Throwable> remove(String groupTxId) {
+        return failureByMemberTxIdByGroupTxId.remove(groupTxId);
+    }
+
+    /**
+     * Record that a member could not be written and was left out of the group.
+     */
+    public void memberFailed(String groupTxId, SagaInput member, Throwable cause) {
+        Map<String, Throwable> failureByMemberTxId = failureByMemberTxIdByGroupTxId.get(groupTxId);
+        if (failureByMemberTxId != null) {
+            failureByMemberTxId.put(member.txId(), cause);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package no.ssb.lds.core.saga;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+
+/**
+ * Bounded queue of saga handoffs that wait for a concurrency permit. A handoff that does not fit is rejected, so that
+ * requests are pushed back on instead of holding their payload in memory for as long as the overload lasts.
+ */
+class PendingHandoffQueue {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PendingHandoffQueue.class);
+
+    private final int capacity;
+    private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong offered = new AtomicLong();
+    // number of drain calls since the draining thread last checked, non-zero while a thread is draining
+    private final AtomicInteger drainRequests = new AtomicInteger();
+    // only accessed by the draining thread, drainRequests orders successive draining threads
+    private long dequeued;
+    private long countedWaiting;
+
+    PendingHandoffQueue(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1, was " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return false if the queue is full and the handoff was not queued.
+     */
+    boolean offer(Runnable handoff) {
+        if (size.incrementAndGet() > capacity) {
+            size.decrementAndGet();
+            return false;
+        }
+        queue.add(handoff);
+        offered.incrementAndGet();
+        return true;
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Start queued handoffs on the executor for as long as a permit can be acquired for each, so that the draining
+     * thread is not held while saga executions are started. Only one thread drains at a time. A call made while
+     * another thread drains, including a call made from a handoff that is being run, makes the draining thread check
+     * the queue again instead, so the drain never recurses and a queued handoff is never left behind while a permit
+     * is available.
+     *
+     * @param countWaiting called with the number of handoffs that have to wait for a permit, each handoff is counted
+     *                     once however many times the queue is drained while it waits.
+     */
+    void drain(BooleanSupplier tryAcquirePermit, Runnable releasePermit, LongConsumer countWaiting, Executor executor) {
+        if (drainRequests.getAndIncrement() != 0) {
+            return;
+        }
+        int requests = 1;
+        do {
+            while (!queue.isEmpty()) {
+                if (!tryAcquirePermit.getAsBoolean()) {
+                    countNewlyWaiting(countWaiting);
+                    break;
+                }
+                Runnable handoff = queue.poll();
+                if (handoff == null) {
+                    releasePermit.run();
+                    break;
+                }
+                size.decrementAndGet();
+                dequeued++;
+                try {
+                    executor.execute(() -> start(handoff));
+                } catch (RejectedExecutionException e) {
+                    start(handoff); // the executor is shut down, start it on this thread rather than lose it
+                }
+            }
+            requests = drainRequests.addAndGet(-requests);
+        } while (requests != 0);
+    }
+
+    private void countNewlyWaiting(LongConsumer countWaiting) {
+        // handoffs are dequeued in the order they were offered, so the ones that wait are the last offered
+        long waitingFrom = Math.max(countedWaiting, dequeued);
+        long offeredNow = offered.get();
+        if (offeredNow > waitingFrom) {
+            countWaiting.accept(offeredNow - waitingFrom);
+            countedWaiting = offeredNow;
+        }
+    }
+
+    private static void start(Runnable handoff) {
+        try {
+            handoff.run();
+        } catch (Throwable t) {
+            LOG.error("Unexpected error while starting queued saga handoff", t);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package no.ssb.lds.core.saga;
+
+/**
+ * Limits the number of concurrent saga executions. The limit is either fixed, or adapted to the observed latency of
+ * saga executions with a gradient: the ratio between a long-term and a short-term average of the latency. While the
+ * latency is stable the limit grows by a queue allowance of about the square root of the limit, and when the backend
+ * slows down and latency rises above the long-term average by more than the tolerance the limit shrinks
+ * proportionally. The limit never exceeds the maximum, which is the number of executions that the saga-logs and
+ * thread-pool can hold.
+ */
+public class SagaConcurrencyLimiter {
+
+    static final double TOLERANCE = 1.5;
+    static final double SMOOTHING = 0.2;
+    static final int SHORT_WINDOW = 10;
+    static final int LONG_WINDOW = 600;
+
+    private final int maxLimit;
+
+    // all fields below are guarded by this
+    private boolean adaptive;
+    private int minLimit;
+    private double limit;
+    private int inFlight;
+    private long rejections;
+    private double shortLatency;
+    private double longLatency;
+    private long samples;
+
+    public SagaConcurrencyLimiter(int maxLimit) {
+        if (maxLimit < 1) {
+            throw new IllegalArgumentException("maxLimit must be at least 1, was " + maxLimit);
+        }
+        this.maxLimit = maxLimit;
+        this.minLimit = maxLimit;
+        this.limit = maxLimit;
+    }
+
+    /**
+     * Adapt the limit to the latency of saga executions, starting at initialLimit and never going below minLimit.
+     */
+    public synchronized void adapt(int minLimit, int initialLimit) {
+        this.adaptive = true;
+        this.minLimit = Math.max(1, Math.min(minLimit, maxLimit));
+        this.limit = Math.max(this.minLimit, Math.min(initialLimit, maxLimit));
+    }
+
+    /**
+     * Take a permit if the limit is not reached.
+     *
+     * @return true if a permit was taken, false if the execution must wait, which is counted as a rejection.
+     */
+    public synchronized boolean tryAcquire() {
+        if (inFlight >= getLimit()) {
+            rejections++;
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * Take a permit for a queued execution. A failure is not counted as a rejection, the queue counts each execution
+     * that has to wait with {@link #countRejections(long)}.
+     */
+    synchronized boolean tryAcquireQueued() {
+        if (inFlight >= getLimit()) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    synchronized void countRejections(long count) {
+        rejections += count;
+    }
+
+    /**
+     * Take a permit, waiting while the limit is reached.
+     */
+    public synchronized void acquire() throws InterruptedException {
+        if (tryAcquire()) {
+            return;
+        }
+        while (inFlight >= getLimit()) {
+            wait();
+        }
+        inFlight++;
+    }
+
+    /**
+     * Return a permit without a latency sample, used when the execution could not be started.
+     */
+    public synchronized void release() {
+        inFlight--;
+        notifyAll();
+    }
+
+    /**
+     * Return the permit of a completed execution and adapt the limit to its latency.
+     */
+    public synchronized void release(long latencyNanos) {
+        int inFlightAtCompletion = inFlight;
+        inFlight--;
+        if (adaptive && latencyNanos > 0) {
+            update(latencyNanos, inFlightAtCompletion);
+        }
+        notifyAll();
+    }
+
+    private void update(long latencyNanos, int inFlightAtCompletion) {
+        samples++;
+        if (samples == 1) {
+            shortLatency = latencyNanos;
+            longLatency = latencyNanos;
+            return;
+        }
+        shortLatency += (latencyNanos - shortLatency) / Math.min(samples, SHORT_WINDOW);
+        longLatency += (latencyNanos - longLatency) / Math.min(samples, LONG_WINDOW);
+        if (longLatency / shortLatency > 2) {
+            // latency has dropped a lot, let the long-term average catch up so that the limit can grow again
+            longLatency *= 0.95;
+        }
+        if (inFlightAtCompletion < limit / 2) {
+            return; // the limit is not what holds back throughput, a sample says nothing about a larger limit
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longLatency / shortLatency));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        limit = limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        limit = Math.max(minLimit, Math.min(maxLimit, limit));
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return the number of times an execution could not be started immediately because the limit was reached.
+     */
+    public synchronized long getRejectionCount() {
+        return rejections;
+    }
+
+    public synchronized boolean isAdaptive() {
+        return adaptive;
+    }
+}
@@ -24,6 +24,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -34,11 +35,14 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
@@ -50,25 +54,48 @@ public class SagaExecutionCoordinator {
 
     static final Pattern deadLetterSagaPattern = Pattern.compile("dead-saga");
 
+    static final int DEFAULT_PENDING_HANDOFF_CAPACITY = 10000;
+
     final ULID ulid = new ULID();
     final AtomicReference<ULID.Value> prevUlid = new AtomicReference<>(ulid.nextValue());
 
     final int numberOfSagaLogs;
     final SagaLogPool sagaLogPool;
     final SagaLogId deadSagaLogId;
-    final Map<SagaLogId, String> executionIdBySagaLogId = new ConcurrentHashMap<>();
+    final int executionsPerSagaLog;
+    // acquired saga-logs that can take more executions, guarded by itself
+    final List<SharedSagaLog> openSagaLogs = new ArrayList<>();
     final boolean sagaCommandsEnabled;
 
     final SagaRepository sagaRepository;
     final SagasObserver sagasObserver;
     final SelectableThreadPoolExectutor threadPool;
-    final Semaphore semaphore;
+    final SagaConcurrencyLimiter concurrencyLimiter;
+    volatile PendingHandoffQueue pendingHandoffs = new PendingHandoffQueue(DEFAULT_PENDING_HANDOFF_CAPACITY);
+    // starts queued handoffs, one thread per permit at most as every start holds a permit
+    final ExecutorService handoffStartPool = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "saga-handoff-start");
+        thread.setDaemon(true);
+        return thread;
+    });
     final ThreadPoolWatchDog threadPoolWatchDog;
     final ExecutorService recoveryThreadPool;
-
-    public SagaExecutionCoordinator(SagaLogPool sagaLogPool, int numberOfSagaLogs, SagaRepository sagaRepository, SagasObserver sagasObserver, SelectableThreadPoolExectutor threadPool, boolean sagaCommandsEnabled, ExecutorService recoveryThreadPool) {
+    volatile SagaGroupCommitter groupCommitter;
+
+    // saga-logs that this instance knows to hold no incomplete sagas, acquiring these does not need to read the log
+    final Set<SagaLogId> cleanSagaLogIds = ConcurrentHashMap.newKeySet();
+    // number of completed sagas that have not yet been truncated from each clean saga-log
+    final Map<SagaLogId, Integer> untruncatedSagasBySagaLogId = new ConcurrentHashMap<>();
+    volatile int truncateBatchSize = 1;
+    // truncates full batches off the saga execution threads, null while truncation is not batched
+    volatile ExecutorService truncationExecutor;
+    final LongAdder sagaLogScans = new LongAdder();
+    final LongAdder sagaLogTruncations = new LongAdder();
+
+    public SagaExecutionCoordinator(SagaLogPool sagaLogPool, int numberOfSagaLogs, int executionsPerSagaLog, SagaRepository sagaRepository, SagasObserver sagasObserver, SelectableThreadPoolExectutor threadPool, boolean sagaCommandsEnabled, ExecutorService recoveryThreadPool) {
         this.sagaLogPool = sagaLogPool;
         this.numberOfSagaLogs = numberOfSagaLogs;
+        this.executionsPerSagaLog = executionsPerSagaLog;
         this.sagaCommandsEnabled = sagaCommandsEnabled;
         this.recoveryThreadPool = recoveryThreadPool;
         this.deadSagaLogId = sagaLogPool.idFor(sagaLogPool.getLocalClusterInstanceId(), "dead-saga"); // do not register
@@ -85,8 +112,9 @@ public class SagaExecutionCoordinator {
         this.sagaRepository = sagaRepository;
         this.sagasObserver = sagasObserver;
         this.threadPool = threadPool;
-        int maxNumberConcurrentSagaExecutions = (threadPool.getMaximumPoolSize() + threadPool.getQueue().remainingCapacity()) / 2;
-        this.semaphore = new Semaphore(maxNumberConcurrentSagaExecutions);
+        // every saga execution holds a share of a saga-log, more permits than shares would block handoffs on saga-log acquisition
+        int maxNumberConcurrentSagaExecutions = (int) Math.min((long) numberOfSagaLogs * executionsPerSagaLog, (threadPool.getMaximumPoolSize() + threadPool.getQueue().remainingCapacity()) / 2);
+        this.concurrencyLimiter = new SagaConcurrencyLimiter(maxNumberConcurrentSagaExecutions);
         threadPoolWatchDog = new ThreadPoolWatchDog();
     }
 
@@ -94,10 +122,73 @@ public class SagaExecutionCoordinator {
         return sagaRepository;
     }
 
+    /**
+     * Start the thread-pool watchdog if the saga thread-pool is bounded, an unbounded pool cannot deadlock.
+     */
     public void startThreadpoolWatchdog() {
+        if (threadPool.getMaximumPoolSize() == Integer.MAX_VALUE) {
+            return;
+        }
         threadPoolWatchDog.start();
     }
 
+    /**
+     * Limit the number of asynchronous handoffs that may wait for a concurrency permit. Handoffs beyond the limit are
+     * failed with {@link SagaHandoffRejectedException}. Must be called before the coordinator is used.
+     */
+    public void limitPendingHandoffs(int capacity) {
+        this.pendingHandoffs = new PendingHandoffQueue(capacity);
+    }
+
+    /**
+     * @return the number of asynchronous handoffs that wait for a concurrency permit.
+     */
+    public int getPendingHandoffCount() {
+        return pendingHandoffs.size();
+    }
+
+    /**
+     * Execute concurrent single-document write sagas that are handed off asynchronously as group sagas.
+     *
+     * @param maxGroupSize the maximum number of writes in a group.
+     * @param lingerMillis how long the first write of a group waits for more writes to join it.
+     */
+    public void enableGroupCommit(int maxGroupSize, long lingerMillis) {
+        this.groupCommitter = new SagaGroupCommitter(this, maxGroupSize, lingerMillis);
+    }
+
+    /**
+     * Truncate a saga-log only after batchSize sagas have completed in it, instead of after every saga. Completed
+     * sagas are never read as incomplete, so leaving them in the log until it is truncated is safe for recovery.
+     * Logs that have completed sagas but are not reused are truncated in the background every intervalMillis.
+     */
+    public void enableBatchedSagaLogTruncation(int batchSize, long intervalMillis, ScheduledExecutorService scheduler) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be at least 1, was " + batchSize);
+        }
+        this.truncateBatchSize = batchSize;
+        this.truncationExecutor = scheduler;
+        scheduler.scheduleWithFixedDelay(this::truncateIdleSagaLogs, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the number of times a saga-log has been read to check that it is clean before it was used.
+     */
+    public long getSagaLogScanCount() {
+        return sagaLogScans.sum();
+    }
+
+    /**
+     * @return the number of times a saga-log has been truncated after sagas completed in it.
+     */
+    public long getSagaLogTruncationCount() {
+        return sagaLogTruncations.sum();
+    }
+
+    public SagaConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
     public SagaLogPool getSagaLogPool() {
         return sagaLogPool;
     }
@@ -106,38 +197,253 @@ public class SagaExecutionCoordinator {
         return threadPool;
     }
 
+    /**
+     * Start a saga execution, blocking the calling thread while the maximum number of concurrent saga executions is
+     * reached.
+     *
+     * @return a future that completes when the saga has completed if sync is true, or else when the saga has been
+     * written to the saga-log.
+     */
     public SelectableFuture<SagaHandoffResult> handoff(boolean sync, AdapterLoader adapterLoader, Saga saga, SagaInput sagaInput, Map<String, List<SagaCommand>> commandsByNodeId) {
-        String executionId = sagaInput.txId();
+        try {
+            concurrencyLimiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // set interrupt status
+            throw new RuntimeException(e);
+        }
+        SagaHandoffControl handoffControl = startPermittedSagaExecution(adapterLoader, saga, sagaInput, commandsByNodeId);
+        return sync ?
+                handoffControl.getCompletionFuture() : // full saga-execution
+                handoffControl.getHandoffFuture();     // first saga-log write
+    }
 
-        SagaLog sagaLog = acquireCleanSagaLog(c -> {
-        }, c -> {
-        });
-        executionIdBySagaLogId.compute(sagaLog.id(), (k, v) -> {
-            if (v != null) {
-                throw new RuntimeException(String.format("executionIdBySagaLogId with key %s is already associated with another executionId %s", k, v));
+    /**
+     * Start a saga execution without blocking the calling thread. The saga is queued, and started on the handoff
+     * start pool as soon as the number of concurrent saga executions is below the limit.
+     *
+     * <p>
+     * When group commit is enabled, single-document write sagas without saga commands are executed as part of a
+     * group saga, and the result is that of the group.
+     *
+     * @return a future that completes when the saga has completed if sync is true, or else when the saga has been
+     * written to the saga-log. The future is completed exceptionally if the saga could not be started.
+     */
+    public CompletableFuture<SagaHandoffResult> handoffAsync(boolean sync, AdapterLoader adapterLoader, Saga saga, SagaInput sagaInput, Map<String, List<SagaCommand>> commandsByNodeId) {
+        SagaGroupCommitter groupCommitter = this.groupCommitter;
+        if (groupCommitter != null && adapterLoader == sagaRepository.getAdapterLoader()
+                && (!sagaCommandsEnabled || commandsByNodeId.isEmpty())) {
+            String groupSagaName = SagaRepository.groupSagaOf(saga.name);
+            if (groupSagaName != null) {
+                return groupCommitter.submit(groupSagaName, sync, saga, sagaInput);
             }
-            return executionId;
+        }
+        CompletableFuture<SagaHandoffResult> result = new CompletableFuture<>();
+        enqueueHandoff(adapterLoader, saga, sagaInput, commandsByNodeId,
+                handoffControl -> {
+                    SelectableFuture<SagaHandoffResult> future = sync ?
+                            handoffControl.getCompletionFuture() : // full saga-execution
+                            handoffControl.getHandoffFuture();     // first saga-log write
+                    future.handle((r, t) -> {
+                        if (t != null) {
+                            result.completeExceptionally(t);
+                        } else {
+                            result.complete(r);
+                        }
+                        return null;
+                    });
+                },
+                result::completeExceptionally);
+        return result;
+    }
+
+    /**
+     * Queue a saga execution that is started as soon as a permit is available.
+     *
+     * @param onStarted called with the control of the saga execution once it has been started.
+     * @param onFailure called if the saga execution could not be started, with a
+     *                  {@link SagaHandoffRejectedException} if the queue is full.
+     */
+    void enqueueHandoff(AdapterLoader adapterLoader, Saga saga, SagaInput sagaInput, Map<String, List<SagaCommand>> commandsByNodeId, Consumer<SagaHandoffControl> onStarted, Consumer<Throwable> onFailure) {
+        PendingHandoffQueue pendingHandoffs = this.pendingHandoffs;
+        boolean queued = pendingHandoffs.offer(() -> {
+            SagaHandoffControl handoffControl;
+            try {
+                handoffControl = startPermittedSagaExecution(adapterLoader, saga, sagaInput, commandsByNodeId);
+            } catch (Throwable t) {
+                onFailure.accept(t);
+                return;
+            }
+            onStarted.accept(handoffControl);
         });
-        SagaExecution sagaExecution = new SagaExecution(sagaLog, threadPool, saga, adapterLoader);
+        if (!queued) {
+            onFailure.accept(new SagaHandoffRejectedException(String.format("Saga handoff rejected, %d handoffs are waiting to start", pendingHandoffs.capacity())));
+            return;
+        }
+        startPendingHandoffs();
+    }
 
-        SagaHandoffControl handoffControl = startSagaExecutionWithThrottling(sagaExecution, sagaInput, sagaLog, sagaCommandsEnabled ? commandsByNodeId : Collections.emptyMap());
+    /**
+     * Start queued handoffs for as long as there are permits available. Called after a handoff is queued and after a
+     * permit is released, so that a queued handoff is never left behind while a permit is available.
+     */
+    private void startPendingHandoffs() {
+        pendingHandoffs.drain(concurrencyLimiter::tryAcquireQueued, concurrencyLimiter::release, concurrencyLimiter::countRejections, handoffStartPool);
+    }
 
-        sagasObserver.registerSaga(handoffControl);
+    /**
+     * Start a saga execution with a permit that has already been acquired. The permit is released when the saga
+     * execution completes, or immediately if it cannot be started.
+     */
+    private SagaHandoffControl startPermittedSagaExecution(AdapterLoader adapterLoader, Saga saga, SagaInput sagaInput, Map<String, List<SagaCommand>> commandsByNodeId) {
+        String executionId = sagaInput.txId();
+
+        long startNanos = System.nanoTime();
+        AtomicBoolean permitReleased = new AtomicBoolean(false);
+        Runnable releasePermit = () -> {
+            if (permitReleased.compareAndSet(false, true)) {
+                concurrencyLimiter.release();
+                startPendingHandoffs();
+            }
+        };
+        Runnable releasePermitWithLatency = () -> {
+            if (permitReleased.compareAndSet(false, true)) {
+                concurrencyLimiter.release(System.nanoTime() - startNanos);
+                startPendingHandoffs();
+            }
+        };
+
+        SharedSagaLog sharedSagaLog;
+        try {
+            sharedSagaLog = joinSagaLog(executionId);
+        } catch (RuntimeException e) {
+            releasePermit.run();
+            throw e;
+        }
+        SagaLog sagaLog = sharedSagaLog.sagaLog;
 
-        SelectableFuture<SagaHandoffResult> completionFuture = handoffControl.getCompletionFuture();
-        SelectableFuture<SagaHandoffResult> handoffFuture = handoffControl.getHandoffFuture();
+        SagaHandoffControl handoffControl;
+        try {
+            SagaExecution sagaExecution = new SagaExecution(sagaLog, threadPool, saga, adapterLoader);
+            handoffControl = startSagaExecution(sagaExecution, sagaInput, sagaLog, sagaCommandsEnabled ? commandsByNodeId : Collections.emptyMap(), success -> {
+                // the saga-log must be available again before the permit allows another saga to start
+                leaveSagaLog(sharedSagaLog, executionId, success);
+                releasePermitWithLatency.run();
+            });
+        } catch (RuntimeException e) {
+            leaveSagaLog(sharedSagaLog, executionId, false); // the saga might have been partially written
+            releasePermit.run(); // ensure that permit is always released even when saga-execution could not be run
+            throw e;
+        }
 
-        SelectableFuture<SagaHandoffResult> future = sync ?
-                completionFuture : // full saga-execution
-                handoffFuture;     // first saga-log write
+        sagasObserver.registerSaga(handoffControl);
 
-        completionFuture.handle((v, t) -> {
-            executionIdBySagaLogId.remove(sagaLog.id());
-            sagaLogPool.release(sagaLog.id());
+        handoffControl.getCompletionFuture().handle((v, t) -> {
+            leaveSagaLog(sharedSagaLog, executionId, t == null && v.isSuccess());
             return null;
         });
 
-        return future;
+        return handoffControl;
+    }
+
+    /**
+     * Join an open saga-log that can take another execution, or else acquire a clean saga-log from the pool.
+     */
+    private SharedSagaLog joinSagaLog(String executionId) {
+        synchronized (openSagaLogs) {
+            for (SharedSagaLog sharedSagaLog : openSagaLogs) {
+                if (acceptsExecution(sharedSagaLog)) {
+                    sharedSagaLog.join(executionId);
+                    return sharedSagaLog;
+                }
+            }
+        }
+        SharedSagaLog sharedSagaLog = new SharedSagaLog(acquireCleanSagaLog(c -> {
+        }, c -> {
+        }));
+        synchronized (openSagaLogs) {
+            sharedSagaLog.join(executionId);
+            if (acceptsExecution(sharedSagaLog)) {
+                openSagaLogs.add(sharedSagaLog);
+            }
+        }
+        return sharedSagaLog;
+    }
+
+    /**
+     * A saga-log stops taking executions when it has taken its share since it was acquired, so that it becomes idle
+     * and can be truncated even when the coordinator is never idle.
+     */
+    private boolean acceptsExecution(SharedSagaLog sharedSagaLog) {
+        return !sharedSagaLog.failed
+                && sharedSagaLog.executionIds.size() < executionsPerSagaLog
+                && sharedSagaLog.started < Math.max(executionsPerSagaLog, truncateBatchSize);
+    }
+
+    /**
+     * Leave the shared saga-log when an execution has completed, or could not be started. The saga-log is released
+     * to the pool when its last execution leaves. Only then is it truncated, so truncation never removes entries of
+     * running executions, and a log with a failed execution is left for recovery.
+     */
+    private void leaveSagaLog(SharedSagaLog sharedSagaLog, String executionId, boolean success) {
+        synchronized (openSagaLogs) {
+            if (!sharedSagaLog.executionIds.remove(executionId)) {
+                return; // already left
+            }
+            if (success) {
+                sharedSagaLog.completed++;
+            } else {
+                sharedSagaLog.failed = true;
+            }
+            if (!sharedSagaLog.executionIds.isEmpty()) {
+                return;
+            }
+            openSagaLogs.remove(sharedSagaLog);
+        }
+        SagaLogId logId = sharedSagaLog.sagaLog.id();
+        boolean release = true;
+        try {
+            if (sharedSagaLog.failed) {
+                // the failed saga must be left for recovery, so the log can not be truncated until it is clean again
+                cleanSagaLogIds.remove(logId);
+                untruncatedSagasBySagaLogId.remove(logId);
+            } else if (untruncatedSagasBySagaLogId.merge(logId, sharedSagaLog.completed, Integer::sum) >= truncateBatchSize) {
+                release = !truncateInBackground(sharedSagaLog.sagaLog);
+                if (release) {
+                    truncate(sharedSagaLog.sagaLog);
+                }
+            }
+        } finally {
+            if (release) {
+                sagaLogPool.release(logId);
+            }
+        }
+    }
+
+    /**
+     * Truncate the acquired saga-log on the truncation executor, which releases it when the truncate has finished. The
+     * log stays acquired while it is being truncated, so it is not handed out to new saga executions until then.
+     *
+     * @return false if truncation is not batched or the executor is shut down, and the caller must truncate.
+     */
+    private boolean truncateInBackground(SagaLog sagaLog) {
+        ExecutorService truncationExecutor = this.truncationExecutor;
+        if (truncationExecutor == null) {
+            return false;
+        }
+        try {
+            truncationExecutor.execute(() -> {
+                try {
+                    truncate(sagaLog);
+                } catch (Throwable t) {
+                    LOG.warn(String.format("Unable to truncate saga-log %s", sagaLog.id()), t);
+                } finally {
+                    sagaLogPool.release(sagaLog.id());
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
     }
 
     public ULID.Value generateTxId() {
@@ -168,7 +474,12 @@ public class SagaExecutionCoordinator {
         if (deadLetterSagaPattern.matcher(sagaLog.id().getLogName()).matches()) {
             throw new RuntimeException("Dead-letter-saga acquired unintentionally");
         }
+        if (cleanSagaLogIds.contains(sagaLog.id())) {
+            return sagaLog; // this instance has only completed sagas in sagaLog since it was last known to be clean
+        }
+        sagaLogScans.increment();
         if (!sagaLog.readIncompleteSagas().anyMatch(e -> true)) {
+            cleanSagaLogIds.add(sagaLog.id());
             return sagaLog; // sagaLog is empty, all is well
         }
 
@@ -230,63 +541,77 @@ public class SagaExecutionCoordinator {
         return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).thenCompose(v -> from.truncate());
     }
 
-    private SagaHandoffControl startSagaExecutionWithThrottling(SagaExecution sagaExecution, SagaInput sagaInput, SagaLog sagaLog, Map<String, List<SagaCommand>> commandsByNodeId) {
-        SagaHandoffControl handoffControl;
-        try {
-            semaphore.acquire();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt(); // set interrupt status
-            throw new RuntimeException(e);
-        }
-        AtomicBoolean permitReleased = new AtomicBoolean(false);
-        try {
-            String executionId = sagaInput.txId();
-            handoffControl = sagaExecution.executeSaga(executionId, sagaInput.asJsonNode(), false,
-                    r -> {
-                        if (r.isSuccess()) {
-                            sagaLog.truncate().join();
-                        }
-                        if (permitReleased.compareAndSet(false, true)) {
-                            semaphore.release();
-                        }
-                    },
-                    sagaExecutionTraversalContext -> {
-                        List<SagaCommand> commands = commandsByNodeId.get(sagaExecutionTraversalContext.getNode().id);
-                        if (commands == null) {
-                            return;
-                        }
-                        for (SagaCommand command : commands) {
-                            String cmd = command.getCommand();
-                            if ("failBefore".equalsIgnoreCase(cmd)) {
-                                throw new RuntimeException(String.format("failBefore saga command. nodeId: %s, sagalog-id: %s, executionId: %s", sagaExecutionTraversalContext.getNode().id, sagaLog.id(), executionId));
-                            }
-                        }
-                    },
-                    sagaExecutionTraversalContext -> {
-                        List<SagaCommand> commands = commandsByNodeId.get(sagaExecutionTraversalContext.getNode().id);
-                        if (commands == null) {
-                            return;
+    private SagaHandoffControl startSagaExecution(SagaExecution sagaExecution, SagaInput sagaInput, SagaLog sagaLog, Map<String, List<SagaCommand>> commandsByNodeId, Consumer<Boolean> onCompletion) {
+        String executionId = sagaInput.txId();
+        return sagaExecution.executeSaga(executionId, sagaInput.asJsonNode(), false,
+                r -> onCompletion.accept(r.isSuccess()),
+                sagaExecutionTraversalContext -> {
+                    List<SagaCommand> commands = commandsByNodeId.get(sagaExecutionTraversalContext.getNode().id);
+                    if (commands == null) {
+                        return;
+                    }
+                    for (SagaCommand command : commands) {
+                        String cmd = command.getCommand();
+                        if ("failBefore".equalsIgnoreCase(cmd)) {
+                            throw new RuntimeException(String.format("failBefore saga command. nodeId: %s, sagalog-id: %s, executionId: %s", sagaExecutionTraversalContext.getNode().id, sagaLog.id(), executionId));
                         }
-                        for (SagaCommand command : commands) {
-                            String cmd = command.getCommand();
-                            if ("failAfter".equalsIgnoreCase(cmd)) {
-                                throw new RuntimeException(String.format("failAfter saga command. nodeId: %s, sagalog-id: %s, executionId: %s", sagaExecutionTraversalContext.getNode().id, sagaLog.id(), executionId));
-                            }
+                    }
+                },
+                sagaExecutionTraversalContext -> {
+                    List<SagaCommand> commands = commandsByNodeId.get(sagaExecutionTraversalContext.getNode().id);
+                    if (commands == null) {
+                        return;
+                    }
+                    for (SagaCommand command : commands) {
+                        String cmd = command.getCommand();
+                        if ("failAfter".equalsIgnoreCase(cmd)) {
+                            throw new RuntimeException(String.format("failAfter saga command. nodeId: %s, sagalog-id: %s, executionId: %s", sagaExecutionTraversalContext.getNode().id, sagaLog.id(), executionId));
                         }
                     }
-            );
-            // permit will be released by sagaPermitReleaseThread
-        } catch (RuntimeException e) {
-            if (permitReleased.compareAndSet(false, true)) {
-                semaphore.release(); // ensure that permit is always released even when saga-execution could not be run
+                }
+        );
+    }
+
+    private void truncate(SagaLog sagaLog) {
+        sagaLog.truncate().join();
+        sagaLogTruncations.increment();
+        untruncatedSagasBySagaLogId.remove(sagaLog.id());
+    }
+
+    /**
+     * Truncate the saga-logs that have completed sagas and are not in use.
+     */
+    void truncateIdleSagaLogs() {
+        SagaLogOwner owner = new SagaLogOwner("Thread::" + Thread.currentThread().getName());
+        for (SagaLogId logId : untruncatedSagasBySagaLogId.keySet()) {
+            SagaLog sagaLog;
+            try {
+                sagaLog = sagaLogPool.tryTakeOwnership(owner, logId);
+            } catch (SagaLogBusyException | SagaLogAlreadyAquiredByOtherOwnerException e) {
+                continue; // in use, the owner will truncate it when the batch is full
+            }
+            if (sagaLog == null) {
+                continue;
+            }
+            try {
+                if (cleanSagaLogIds.contains(logId) && untruncatedSagasBySagaLogId.containsKey(logId)) {
+                    truncate(sagaLog);
+                }
+            } catch (Throwable t) {
+                LOG.warn(String.format("Unable to truncate saga-log %s", logId), t);
+            } finally {
+                sagaLogPool.release(logId);
             }
-            throw e;
         }
-        return handoffControl;
     }
 
     public void shutdown() {
         threadPoolWatchDog.shutdown();
+        handoffStartPool.shutdown();
+        SagaGroupCommitter groupCommitter = this.groupCommitter;
+        if (groupCommitter != null) {
+            groupCommitter.shutdown();
+        }
     }
 
     public CompletableFuture<Void> completeLocalIncompleteSagas(ExecutorService executorService) {
@@ -449,6 +774,30 @@ public class SagaExecutionCoordinator {
         return recoveryThreadPool;
     }
 
+    /**
+     * A saga-log that holds the interleaved entries of the concurrent executions that have joined it. The entries of
+     * completed executions are left in the log until it is truncated, and are never read as incomplete by recovery.
+     */
+    static class SharedSagaLog {
+        final SagaLog sagaLog;
+        // all fields below are guarded by openSagaLogs
+        final Set<String> executionIds = new HashSet<>();
+        int started;
+        int completed;
+        boolean failed;
+
+        SharedSagaLog(SagaLog sagaLog) {
+            this.sagaLog = sagaLog;
+        }
+
+        void join(String executionId) {
+            if (!executionIds.add(executionId)) {
+                throw new RuntimeException(String.format("Saga-log %s is already associated with executionId %s", sagaLog.id(), executionId));
+            }
+            started++;
+        }
+    }
+
     /**
      * Regulary controls thread-pool to see if it is deadlocked, i.e. all threads are occupied in saga-traversal or
      * otherwise waiting for more available saga threadpool workers.
@@ -0,0 +1,168 @@
+package no.ssb.lds.core.saga;
+
+import no.ssb.concurrent.futureselector.SelectableFuture;
+import no.ssb.saga.api.Saga;
+import no.ssb.saga.execution.SagaHandoffResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Collects single-document write sagas that are handed off within a short linger window, and executes them as one
+ * group saga with one saga-log, one tx-log publish and one persistence transaction. A group is started when the
+ * linger window of its first member has passed, or as soon as it is full.
+ * <p>
+ * Every member is completed with the result of the group saga, and so gets the execution-id of the group.
+ * Asynchronous members are completed when the group has been handed off, synchronous members when it has completed.
+ * A member that the persistence adapter could not write is left out of the group, and its caller gets the failure.
+ * <p>
+ * A group saga that fails is left in the saga-log and completed by forward recovery, as a single-document saga is,
+ * so its synchronous members get the failure of the group and are not executed again.
+ */
+class SagaGroupCommitter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SagaGroupCommitter.class);
+
+    private final SagaExecutionCoordinator sec;
+    private final int maxGroupSize;
+    private final long lingerNanos;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "saga-group-commit");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // guarded by this
+    private final Map<String, List<Member>> pendingByGroupSagaName = new HashMap<>();
+
+    SagaGroupCommitter(SagaExecutionCoordinator sec, int maxGroupSize, long lingerMillis) {
+        if (maxGroupSize < 1) {
+            throw new IllegalArgumentException("maxGroupSize must be at least 1, was " + maxGroupSize);
+        }
+        this.sec = sec;
+        this.maxGroupSize = maxGroupSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+    }
+
+    CompletableFuture<SagaHandoffResult> submit(String groupSagaName, boolean sync, Saga saga, SagaInput sagaInput) {
+        Member member = new Member(sync, saga, sagaInput);
+        List<Member> full = null;
+        synchronized (this) {
+            List<Member> pending = pendingByGroupSagaName.computeIfAbsent(groupSagaName, k -> new ArrayList<>());
+            pending.add(member);
+            if (pending.size() >= maxGroupSize) {
+                pendingByGroupSagaName.remove(groupSagaName);
+                full = pending;
+            } else if (pending.size() == 1) {
+                scheduler.schedule(() -> flush(groupSagaName, pending), lingerNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        if (full != null) {
+            commit(groupSagaName, full);
+        }
+        return member.result;
+    }
+
+    private void flush(String groupSagaName, List<Member> group) {
+        synchronized (this) {
+            if (pendingByGroupSagaName.get(groupSagaName) != group) {
+                return; // already started because it was full
+            }
+            pendingByGroupSagaName.remove(groupSagaName);
+        }
+        commit(groupSagaName, group);
+    }
+
+    private void commit(String groupSagaName, List<Member> group) {
+        if (group.size() == 1) {
+            executeIndividually(group.get(0));
+            return;
+        }
+        Saga groupSaga = sec.sagaRepository.get(groupSagaName);
+        SagaInput groupInput = new SagaInput(sec.generateTxId(), group.stream().map(m -> m.sagaInput).collect(toList()));
+        GroupSagaOutcomes outcomes = sec.sagaRepository.getGroupSagaOutcomes();
+        outcomes.register(groupInput.txId());
+        sec.enqueueHandoff(sec.sagaRepository.getAdapterLoader(), groupSaga, groupInput, Collections.emptyMap(),
+                handoffControl -> {
+                    handoffControl.getHandoffFuture().handle((r, t) -> {
+                        for (Member member : group) {
+                            if (!member.sync) {
+                                member.complete(r, t);
+                            }
+                        }
+                        return null;
+                    });
+                    handoffControl.getCompletionFuture().handle((r, t) -> {
+                        Map<String, Throwable> failureByMemberTxId = outcomes.remove(groupInput.txId());
+                        for (Member member : group) {
+                            Throwable failure = failureByMemberTxId == null ? null : failureByMemberTxId.get(member.sagaInput.txId());
+                            if (failure == null) {
+                                member.complete(r, t);
+                            } else if (!member.result.completeExceptionally(failure)) {
+                                LOG.error("Asynchronous write {} was left out of group saga {}", member.sagaInput.txId(), groupInput.txId(), failure);
+                            }
+                        }
+                        return null;
+                    });
+                },
+                t -> {
+                    // the group was not started, so none of its writes have been done
+                    outcomes.remove(groupInput.txId());
+                    if (t instanceof SagaHandoffRejectedException) {
+                        group.forEach(member -> member.result.completeExceptionally(t));
+                    } else {
+                        group.forEach(this::executeIndividually);
+                    }
+                });
+    }
+
+    private void executeIndividually(Member member) {
+        sec.enqueueHandoff(sec.sagaRepository.getAdapterLoader(), member.saga, member.sagaInput, Collections.emptyMap(),
+                handoffControl -> {
+                    SelectableFuture<SagaHandoffResult> future = member.sync ?
+                            handoffControl.getCompletionFuture() :
+                            handoffControl.getHandoffFuture();
+                    future.handle((r, t) -> {
+                        member.complete(r, t);
+                        return null;
+                    });
+                },
+                member.result::completeExceptionally);
+    }
+
+    void shutdown() {
+        scheduler.shutdown();
+    }
+
+    static class Member {
+        final boolean sync;
+        final Saga saga;
+        final SagaInput sagaInput;
+        final CompletableFuture<SagaHandoffResult> result = new CompletableFuture<>();
+
+        Member(boolean sync, Saga saga, SagaInput sagaInput) {
+            this.sync = sync;
+            this.saga = saga;
+            this.sagaInput = sagaInput;
+        }
+
+        void complete(SagaHandoffResult r, Throwable t) {
+            if (t != null) {
+                result.completeExceptionally(t);
+            } else {
+                result.complete(r);
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package no.ssb.lds.core.saga;
+
+/**
+ * Thrown when a saga cannot be handed off because too many handoffs are already waiting to start.
+ */
+public class SagaHandoffRejectedException extends RuntimeException {
+
+    public SagaHandoffRejectedException(String message) {
+        super(message);
+    }
+}
@@ -1,12 +1,15 @@
 package no.ssb.lds.core.saga;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import de.huxhorn.sulky.ulid.ULID;
 import no.ssb.lds.api.persistence.json.JsonTools;
 
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 
 import static java.util.Optional.ofNullable;
 
@@ -56,6 +59,21 @@ public class SagaInput {
         this.node = node;
     }
 
+    /**
+     * Input of a group saga that writes the documents of several single-document sagas together.
+     */
+    public SagaInput(ULID.Value txId, List<SagaInput> members) {
+        ObjectNode node = JsonTools.mapper.createObjectNode();
+        node.put("txid", txId.toString());
+        node.put("method", "GROUP");
+        node.put("schema", "TODO");
+        ArrayNode group = node.putArray("group");
+        for (SagaInput member : members) {
+            group.add(member.node);
+        }
+        this.node = node;
+    }
+
     JsonNode asJsonNode() {
         return node;
     }
@@ -110,8 +128,30 @@ public class SagaInput {
         return node.get("batch");
     }
 
+    /**
+     * @return the members of a group saga, or null if this is not a group.
+     */
+    public List<SagaInput> group() {
+        JsonNode group = node.get("group");
+        if (group == null) {
+            return null;
+        }
+        List<SagaInput> members = new ArrayList<>(group.size());
+        for (JsonNode member : group) {
+            members.add(new SagaInput(member));
+        }
+        return members;
+    }
+
     @Override
     public String toString() {
+        if (node.has("group")) {
+            return "SagaInput{" +
+                    "txId='" + txId() + '\'' +
+                    ", method='" + method() + '\'' +
+                    ", group=" + group() +
+                    '}';
+        }
         if (node.has("batch")) {
             return "SagaInput{" +
                     "txId='" + txId() + '\'' +
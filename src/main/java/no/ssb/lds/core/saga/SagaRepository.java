@@ -4,16 +4,22 @@ import no.ssb.lds.api.persistence.reactivex.RxJsonPersistence;
 import no.ssb.lds.api.search.SearchIndex;
 import no.ssb.lds.api.specification.Specification;
 import no.ssb.lds.core.persistence.BatchSagaAdapter;
+import no.ssb.lds.core.persistence.DocumentInvalidationListener;
 import no.ssb.lds.core.persistence.PersistenceCreateOrOverwriteSagaAdapter;
 import no.ssb.lds.core.persistence.PersistenceDeleteSagaAdapter;
+import no.ssb.lds.core.persistence.PersistenceGroupSagaAdapter;
 import no.ssb.lds.core.search.DeleteIndexSagaAdapter;
+import no.ssb.lds.core.search.GroupIndexSagaAdapter;
 import no.ssb.lds.core.search.UpdateIndexSagaAdapter;
 import no.ssb.lds.core.txlog.AppendTxLogAdapter;
 import no.ssb.lds.core.txlog.DeleteTxLogAdapter;
+import no.ssb.lds.core.txlog.GroupTxLogAdapter;
 import no.ssb.lds.core.txlog.TxlogRawdataPool;
 import no.ssb.saga.api.Saga;
 import no.ssb.saga.execution.adapter.AdapterLoader;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -25,22 +31,29 @@ public class SagaRepository {
     public static final String SAGA_CREATE_OR_UPDATE_MANAGED_RESOURCE_NO_TX_LOG = "Create or update managed resource without writing to transaction log";
     public static final String SAGA_DELETE_MANAGED_RESOURCE = "Delete managed resource";
     public static final String SAGA_DELETE_MANAGED_RESOURCE_NO_TX_LOG = "Delete managed resource without writing to transaction log";
+    public static final String SAGA_GROUP = "Group of managed resource writes";
+    public static final String SAGA_GROUP_NO_TX_LOG = "Group of managed resource writes without writing to transaction log";
 
     final Map<String, Saga> sagaByName = new ConcurrentHashMap<>();
 
     final AdapterLoader adapterLoader;
 
-    private SagaRepository(Specification specification, RxJsonPersistence persistence, SearchIndex indexer, TxlogRawdataPool txLogPool) {
+    final GroupSagaOutcomes groupSagaOutcomes = new GroupSagaOutcomes();
+
+    private SagaRepository(Specification specification, RxJsonPersistence persistence, SearchIndex indexer, TxlogRawdataPool txLogPool, List<DocumentInvalidationListener> invalidationListeners) {
         adapterLoader = new AdapterLoader();
-        adapterLoader.register(new PersistenceCreateOrOverwriteSagaAdapter(persistence, specification));
-        adapterLoader.register(new PersistenceDeleteSagaAdapter(persistence));
+        adapterLoader.register(new PersistenceCreateOrOverwriteSagaAdapter(persistence, specification, invalidationListeners));
+        adapterLoader.register(new PersistenceDeleteSagaAdapter(persistence, invalidationListeners));
         adapterLoader.register(new AppendTxLogAdapter(txLogPool));
         adapterLoader.register(new DeleteTxLogAdapter(txLogPool));
         if (indexer != null) {
             adapterLoader.register(new UpdateIndexSagaAdapter(indexer, specification));
             adapterLoader.register(new DeleteIndexSagaAdapter(indexer, specification));
+            adapterLoader.register(new GroupIndexSagaAdapter(indexer, specification));
         }
-        adapterLoader.register(new BatchSagaAdapter(persistence, specification));
+        adapterLoader.register(new BatchSagaAdapter(persistence, specification, invalidationListeners));
+        adapterLoader.register(new PersistenceGroupSagaAdapter(persistence, specification, invalidationListeners, groupSagaOutcomes));
+        adapterLoader.register(new GroupTxLogAdapter(txLogPool));
 
         register(buildCreateOrUpdateSaga(indexer));
         register(buildCreateOrUpdateSagaWithoutTransactionLog(indexer));
@@ -48,6 +61,54 @@ public class SagaRepository {
         register(buildDeleteSagaWithoutTransactionLog(indexer));
         register(buildBatchSaga());
         register(buildBatchSagaNoTxLog());
+        register(buildGroupSaga(indexer));
+        register(buildGroupSagaWithoutTransactionLog(indexer));
+    }
+
+    /**
+     * The name of the group saga that can write the input of the given single-document saga together with other
+     * writes, or null if writes of the saga cannot be grouped.
+     */
+    public static String groupSagaOf(String sagaName) {
+        switch (sagaName) {
+            case SAGA_CREATE_OR_UPDATE_MANAGED_RESOURCE:
+            case SAGA_DELETE_MANAGED_RESOURCE:
+                return SAGA_GROUP;
+            case SAGA_CREATE_OR_UPDATE_MANAGED_RESOURCE_NO_TX_LOG:
+            case SAGA_DELETE_MANAGED_RESOURCE_NO_TX_LOG:
+                return SAGA_GROUP_NO_TX_LOG;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Persistence is written first in the group sagas, so that members it leaves out are neither published to the
+     * tx-log nor indexed.
+     */
+    private Saga buildGroupSaga(SearchIndex indexer) {
+        Saga.SagaBuilder builder = Saga.start(SAGA_GROUP)
+                .linkTo("persistence");
+        if (indexer != null) {
+            builder.id("persistence").adapter(PersistenceGroupSagaAdapter.NAME).linkTo("txlog", "search-index-group");
+            builder.id("search-index-group").adapter(GroupIndexSagaAdapter.NAME).linkToEnd();
+        } else {
+            builder.id("persistence").adapter(PersistenceGroupSagaAdapter.NAME).linkTo("txlog");
+        }
+        builder.id("txlog").adapter(GroupTxLogAdapter.NAME).linkToEnd();
+        return builder.end();
+    }
+
+    private Saga buildGroupSagaWithoutTransactionLog(SearchIndex indexer) {
+        Saga.SagaBuilder builder = Saga.start(SAGA_GROUP_NO_TX_LOG)
+                .linkTo("persistence");
+        if (indexer != null) {
+            builder.id("persistence").adapter(PersistenceGroupSagaAdapter.NAME).linkTo("search-index-group");
+            builder.id("search-index-group").adapter(GroupIndexSagaAdapter.NAME).linkToEnd();
+        } else {
+            builder.id("persistence").adapter(PersistenceGroupSagaAdapter.NAME).linkToEnd();
+        }
+        return builder.end();
     }
 
     private Saga buildBatchSaga() {
@@ -123,6 +184,10 @@ public class SagaRepository {
         return adapterLoader;
     }
 
+    public GroupSagaOutcomes getGroupSagaOutcomes() {
+        return groupSagaOutcomes;
+    }
+
     SagaRepository register(Saga saga) {
         sagaByName.put(saga.name, saga);
         return this;
@@ -138,6 +203,7 @@ public class SagaRepository {
         RxJsonPersistence persistence;
         SearchIndex indexer;
         TxlogRawdataPool txlogRawdataPool;
+        final List<DocumentInvalidationListener> invalidationListeners = new ArrayList<>();
 
         public Builder specification(Specification specification) {
             this.specification = specification;
@@ -159,8 +225,16 @@ public class SagaRepository {
             return this;
         }
 
+        /**
+         * Add a listener that is notified when the persistence sagas have written documents, typically a cache.
+         */
+        public Builder invalidationListener(DocumentInvalidationListener invalidationListener) {
+            this.invalidationListeners.add(invalidationListener);
+            return this;
+        }
+
         public SagaRepository build() {
-            return new SagaRepository(specification, persistence, indexer, txlogRawdataPool);
+            return new SagaRepository(specification, persistence, indexer, txlogRawdataPool, List.copyOf(invalidationListeners));
         }
     }
 }
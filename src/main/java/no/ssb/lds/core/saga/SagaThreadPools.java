@@ -0,0 +1,97 @@
+package no.ssb.lds.core.saga;
+
+import no.ssb.concurrent.futureselector.SelectableThreadPoolExectutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates the thread-pool that saga nodes are executed on. Saga adapters block while they write to the tx-log,
+ * persistence and search-index, and a saga node waits for the nodes it depends on, so a bounded pool can deadlock
+ * when all its threads wait for nodes that are queued. The modes are:
+ * <ul>
+ * <li>{@link Mode#POOL}: the bounded pool sized by saga.threadpool.*, guarded by the thread-pool watchdog.</li>
+ * <li>{@link Mode#ELASTIC}: a pool without a queue that starts a new thread whenever all threads are blocked, and
+ * lets idle threads beyond the core die. It cannot deadlock, and needs no sizing.</li>
+ * <li>{@link Mode#VIRTUAL}: a virtual thread for every saga node, on a runtime that has virtual threads.</li>
+ * </ul>
+ * {@link Mode#AUTO} selects virtual threads when the runtime supports them, and the elastic pool otherwise. The number
+ * of concurrent sagas is bounded by the concurrency limiter of the coordinator in all modes.
+ */
+public class SagaThreadPools {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SagaThreadPools.class);
+
+    public enum Mode {
+        AUTO, POOL, ELASTIC, VIRTUAL;
+
+        public static Mode of(String mode) {
+            return mode == null || mode.isBlank() ? AUTO : valueOf(mode.trim().toUpperCase());
+        }
+    }
+
+    public static SelectableThreadPoolExectutor create(Mode mode, int coreSize, int maxSize, int keepAliveSeconds, int queueCapacity) {
+        if (mode == Mode.AUTO) {
+            mode = virtualThreadFactory("") != null ? Mode.VIRTUAL : Mode.ELASTIC;
+        }
+        LOG.info("Saga thread-pool mode: {}", mode);
+        switch (mode) {
+            case POOL:
+                if (queueCapacity >= coreSize) {
+                    LOG.warn("Configuration: saga.threadpool.core ({}) must be greater than saga.threadpool.queue.capacity ({}) in order to avoid potential deadlocks.",
+                            coreSize, queueCapacity);
+                }
+                return new SelectableThreadPoolExectutor(coreSize, maxSize, keepAliveSeconds, TimeUnit.SECONDS,
+                        new ArrayBlockingQueue<>(queueCapacity), platformThreadFactory("sec-"), new ThreadPoolExecutor.AbortPolicy());
+            case ELASTIC:
+                return new SelectableThreadPoolExectutor(Runtime.getRuntime().availableProcessors(), Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                        new SynchronousQueue<>(), platformThreadFactory("sec-elastic-"), new ThreadPoolExecutor.AbortPolicy());
+            case VIRTUAL:
+                ThreadFactory threadFactory = virtualThreadFactory("sec-virtual-");
+                if (threadFactory == null) {
+                    throw new IllegalStateException("Virtual threads are not supported by this runtime: " + Runtime.version());
+                }
+                // virtual threads are cheap to start, the pool only reuses them for bursts of saga nodes
+                return new SelectableThreadPoolExectutor(0, Integer.MAX_VALUE, 1, TimeUnit.SECONDS,
+                        new SynchronousQueue<>(), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+            default:
+                throw new IllegalArgumentException("Unsupported saga thread-pool mode: " + mode);
+        }
+    }
+
+    private static ThreadFactory platformThreadFactory(String namePrefix) {
+        AtomicLong nextWorkerId = new AtomicLong(1);
+        return runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setName(namePrefix + nextWorkerId.getAndIncrement());
+            thread.setUncaughtExceptionHandler((t, e) -> {
+                System.err.println("Uncaught exception in thread " + thread.getName());
+                e.printStackTrace();
+            });
+            return thread;
+        };
+    }
+
+    /**
+     * @return a factory of virtual threads, or null if the runtime does not have virtual threads. Looked up by
+     * reflection as the module is compiled for a release without them.
+     */
+    static ThreadFactory virtualThreadFactory(String namePrefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            Method name = builderType.getMethod("name", String.class, long.class);
+            builder = name.invoke(builder, namePrefix, 1L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
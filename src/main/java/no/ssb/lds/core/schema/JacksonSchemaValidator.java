@@ -0,0 +1,466 @@
+package no.ssb.lds.core.schema;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.everit.json.schema.ArraySchema;
+import org.everit.json.schema.BooleanSchema;
+import org.everit.json.schema.CombinedSchema;
+import org.everit.json.schema.EmptySchema;
+import org.everit.json.schema.FalseSchema;
+import org.everit.json.schema.FormatValidator;
+import org.everit.json.schema.NotSchema;
+import org.everit.json.schema.NullSchema;
+import org.everit.json.schema.NumberSchema;
+import org.everit.json.schema.ObjectSchema;
+import org.everit.json.schema.ReferenceSchema;
+import org.everit.json.schema.Schema;
+import org.everit.json.schema.StringSchema;
+import org.everit.json.schema.ValidationException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Validates Jackson documents against a json-schema without converting them to org.json. The validator is compiled
+ * once from the everit schema model so that keyword semantics follow the schema as loaded by {@link JsonSchema04Builder}.
+ * Keywords that are rarely used in specifications, i.e. enum, const, formats, patterns and numeric limits, are
+ * delegated to everit for the individual value they apply to. Violation messages use the everit message format.
+ */
+public class JacksonSchemaValidator {
+
+    public static JacksonSchemaValidator compile(Schema schema) {
+        return new JacksonSchemaValidator(new Compiler().compile(schema));
+    }
+
+    private final Rule rule;
+
+    private JacksonSchemaValidator(Rule rule) {
+        this.rule = rule;
+    }
+
+    /**
+     * @return the violations of the document, or an empty list if the document is valid.
+     */
+    public List<String> validate(JsonNode document) {
+        Context context = new Context();
+        rule.validate(document, context);
+        return context.violations;
+    }
+
+    /**
+     * @return whether the document is valid, without rendering the violations.
+     */
+    public boolean isValid(JsonNode document) {
+        Context context = new Context();
+        context.failFast = true;
+        rule.validate(document, context);
+        return context.violations.isEmpty();
+    }
+
+    private static class Compiler {
+        final Map<Schema, RefRule> refRules = new IdentityHashMap<>();
+
+        Rule compile(Schema schema) {
+            if (schema instanceof ReferenceSchema) {
+                RefRule refRule = refRules.get(schema);
+                if (refRule == null) {
+                    // register before compiling the referred schema to support recursive schemas
+                    refRule = new RefRule();
+                    refRules.put(schema, refRule);
+                    refRule.target = compile(((ReferenceSchema) schema).getReferredSchema());
+                }
+                return refRule;
+            }
+            if (schema instanceof FalseSchema) {
+                return (node, context) -> context.violation("false schema always fails");
+            }
+            if (schema instanceof EmptySchema) {
+                return (node, context) -> {
+                };
+            }
+            if (schema instanceof ObjectSchema) {
+                return compileObject((ObjectSchema) schema);
+            }
+            if (schema instanceof ArraySchema) {
+                return compileArray((ArraySchema) schema);
+            }
+            if (schema instanceof StringSchema) {
+                return compileString((StringSchema) schema);
+            }
+            if (schema instanceof NumberSchema) {
+                return compileNumber((NumberSchema) schema);
+            }
+            if (schema instanceof BooleanSchema) {
+                return (node, context) -> {
+                    if (!node.isBoolean()) {
+                        context.violation("expected type: Boolean, found: " + typeName(node));
+                    }
+                };
+            }
+            if (schema instanceof NullSchema) {
+                return (node, context) -> {
+                    if (!node.isNull()) {
+                        context.violation("expected: null, found: " + typeName(node));
+                    }
+                };
+            }
+            if (schema instanceof CombinedSchema) {
+                return compileCombined((CombinedSchema) schema);
+            }
+            if (schema instanceof NotSchema) {
+                Rule mustNotMatch = compile(((NotSchema) schema).getMustNotMatch());
+                return (node, context) -> {
+                    if (context.matches(mustNotMatch, node)) {
+                        context.violation("subject must not be valid against schema " + schema);
+                    }
+                };
+            }
+            // enum, const, conditional and any other schema type
+            return new EveritRule(schema);
+        }
+
+        Rule compileObject(ObjectSchema schema) {
+            Map<?, ?> patternProperties = schema.getPatternProperties();
+            if ((patternProperties != null && !patternProperties.isEmpty())
+                    || !schema.getPropertyDependencies().isEmpty()
+                    || !schema.getSchemaDependencies().isEmpty()) {
+                return new EveritRule(schema);
+            }
+            boolean requiresObject = schema.requiresObject();
+            Map<String, Rule> propertyRules = new LinkedHashMap<>();
+            for (Map.Entry<String, Schema> entry : schema.getPropertySchemas().entrySet()) {
+                propertyRules.put(entry.getKey(), compile(entry.getValue()));
+            }
+            String[] required = schema.getRequiredProperties().toArray(new String[0]);
+            boolean permitsAdditionalProperties = schema.permitsAdditionalProperties();
+            Rule additionalPropertiesRule = schema.getSchemaOfAdditionalProperties() == null ? null : compile(schema.getSchemaOfAdditionalProperties());
+            Integer minProperties = schema.getMinProperties();
+            Integer maxProperties = schema.getMaxProperties();
+            return (node, context) -> {
+                if (!node.isObject()) {
+                    if (requiresObject) {
+                        context.violation("expected type: JSONObject, found: " + typeName(node));
+                    }
+                    return;
+                }
+                for (String requiredProperty : required) {
+                    if (!node.has(requiredProperty)) {
+                        context.violation("required key [" + requiredProperty + "] not found");
+                        if (context.done()) {
+                            return;
+                        }
+                    }
+                }
+                if (minProperties != null && node.size() < minProperties) {
+                    context.violation("minimum size: [" + minProperties + "], found: [" + node.size() + "]");
+                }
+                if (maxProperties != null && node.size() > maxProperties) {
+                    context.violation("maximum size: [" + maxProperties + "], found: [" + node.size() + "]");
+                }
+                Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+                while (fields.hasNext() && !context.done()) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    Rule propertyRule = propertyRules.get(field.getKey());
+                    if (propertyRule == null) {
+                        if (!permitsAdditionalProperties) {
+                            context.violation("extraneous key [" + field.getKey() + "] is not permitted");
+                            continue;
+                        }
+                        propertyRule = additionalPropertiesRule;
+                    }
+                    if (propertyRule != null) {
+                        context.push(field.getKey());
+                        propertyRule.validate(field.getValue(), context);
+                        context.pop();
+                    }
+                }
+            };
+        }
+
+        Rule compileArray(ArraySchema schema) {
+            boolean requiresArray = schema.requiresArray();
+            Rule allItemRule = schema.getAllItemSchema() == null ? null : compile(schema.getAllItemSchema());
+            List<Rule> itemRules = new ArrayList<>();
+            if (schema.getItemSchemas() != null) {
+                for (Schema itemSchema : schema.getItemSchemas()) {
+                    itemRules.add(compile(itemSchema));
+                }
+            }
+            boolean permitsAdditionalItems = schema.permitsAdditionalItems();
+            Rule additionalItemsRule = schema.getSchemaOfAdditionalItems() == null ? null : compile(schema.getSchemaOfAdditionalItems());
+            Rule containedItemRule = schema.getContainedItemSchema() == null ? null : compile(schema.getContainedItemSchema());
+            Integer minItems = schema.getMinItems();
+            Integer maxItems = schema.getMaxItems();
+            boolean uniqueItems = schema.needsUniqueItems();
+            return (node, context) -> {
+                if (!node.isArray()) {
+                    if (requiresArray) {
+                        context.violation("expected type: JSONArray, found: " + typeName(node));
+                    }
+                    return;
+                }
+                int size = node.size();
+                if (minItems != null && size < minItems) {
+                    context.violation("expected minimum item count: " + minItems + ", found: " + size);
+                }
+                if (maxItems != null && size > maxItems) {
+                    context.violation("expected maximum item count: " + maxItems + ", found: " + size);
+                }
+                if (uniqueItems) {
+                    Set<JsonNode> seen = new HashSet<>();
+                    for (int i = 0; i < size; i++) {
+                        if (!seen.add(node.get(i))) {
+                            context.violation("array items are not unique");
+                            break;
+                        }
+                    }
+                }
+                if (!permitsAdditionalItems && !itemRules.isEmpty() && size > itemRules.size()) {
+                    context.violation("expected: [" + itemRules.size() + "] array items, found: [" + size + "]");
+                }
+                for (int i = 0; i < size && !context.done(); i++) {
+                    Rule itemRule = allItemRule;
+                    if (itemRule == null && !itemRules.isEmpty()) {
+                        itemRule = i < itemRules.size() ? itemRules.get(i) : additionalItemsRule;
+                    }
+                    if (itemRule != null) {
+                        context.push(i);
+                        itemRule.validate(node.get(i), context);
+                        context.pop();
+                    }
+                }
+                if (containedItemRule != null) {
+                    boolean contained = false;
+                    for (int i = 0; i < size && !contained; i++) {
+                        contained = context.matches(containedItemRule, node.get(i));
+                    }
+                    if (!contained) {
+                        context.violation("expected at least one array item to match 'contains' schema");
+                    }
+                }
+            };
+        }
+
+        Rule compileString(StringSchema schema) {
+            boolean requiresString = schema.requireString();
+            Integer minLength = schema.getMinLength();
+            Integer maxLength = schema.getMaxLength();
+            FormatValidator formatValidator = schema.getFormatValidator();
+            boolean delegateValue = schema.getPattern() != null || (formatValidator != null && formatValidator != FormatValidator.NONE);
+            Rule valueRule = delegateValue ? new EveritRule(schema) : null;
+            return (node, context) -> {
+                if (!node.isTextual()) {
+                    if (requiresString) {
+                        context.violation("expected type: String, found: " + typeName(node));
+                    }
+                    return;
+                }
+                if (minLength != null || maxLength != null) {
+                    String value = node.textValue();
+                    int length = value.codePointCount(0, value.length());
+                    if (minLength != null && length < minLength) {
+                        context.violation("expected minLength: " + minLength + ", actual: " + length);
+                    }
+                    if (maxLength != null && length > maxLength) {
+                        context.violation("expected maxLength: " + maxLength + ", actual: " + length);
+                    }
+                }
+                if (valueRule != null) {
+                    valueRule.validate(node, context);
+                }
+            };
+        }
+
+        Rule compileNumber(NumberSchema schema) {
+            boolean requiresNumber = schema.isRequiresNumber();
+            boolean requiresInteger = schema.requiresInteger();
+            boolean delegateValue = schema.getMinimum() != null || schema.getMaximum() != null
+                    || schema.getExclusiveMinimumLimit() != null || schema.getExclusiveMaximumLimit() != null
+                    || schema.getMultipleOf() != null;
+            Rule valueRule = delegateValue ? new EveritRule(schema) : null;
+            return (node, context) -> {
+                if (!node.isNumber()) {
+                    if (requiresNumber || requiresInteger) {
+                        context.violation("expected type: " + (requiresInteger ? "Integer" : "Number") + ", found: " + typeName(node));
+                    }
+                    return;
+                }
+                if (requiresInteger && !node.isIntegralNumber()) {
+                    context.violation("expected type: Integer, found: " + typeName(node));
+                    return;
+                }
+                if (valueRule != null) {
+                    valueRule.validate(node, context);
+                }
+            };
+        }
+
+        Rule compileCombined(CombinedSchema schema) {
+            List<Rule> subRules = new ArrayList<>();
+            for (Schema subschema : schema.getSubschemas()) {
+                subRules.add(compile(subschema));
+            }
+            int total = subRules.size();
+            if (schema.getCriterion() == CombinedSchema.ALL_CRITERION) {
+                return (node, context) -> {
+                    for (int i = 0; i < total && !context.done(); i++) {
+                        subRules.get(i).validate(node, context);
+                    }
+                };
+            }
+            if (schema.getCriterion() == CombinedSchema.ANY_CRITERION) {
+                return (node, context) -> {
+                    for (int i = 0; i < total; i++) {
+                        if (context.matches(subRules.get(i), node)) {
+                            return;
+                        }
+                    }
+                    context.violation("no subschema matched out of the total " + total + " subschemas");
+                };
+            }
+            if (schema.getCriterion() == CombinedSchema.ONE_CRITERION) {
+                return (node, context) -> {
+                    int matching = 0;
+                    for (int i = 0; i < total; i++) {
+                        if (context.matches(subRules.get(i), node)) {
+                            matching++;
+                        }
+                    }
+                    if (matching != 1) {
+                        context.violation(matching + " subschemas matched instead of one");
+                    }
+                };
+            }
+            return new EveritRule(schema);
+        }
+    }
+
+    private static String typeName(JsonNode node) {
+        switch (node.getNodeType()) {
+            case OBJECT:
+                return "JSONObject";
+            case ARRAY:
+                return "JSONArray";
+            case STRING:
+                return "String";
+            case NUMBER:
+                return node.numberValue().getClass().getSimpleName();
+            case BOOLEAN:
+                return "Boolean";
+            case NULL:
+                return "null";
+            default:
+                return node.getNodeType().name();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Rule {
+        void validate(JsonNode node, Context context);
+    }
+
+    private static class RefRule implements Rule {
+        Rule target;
+
+        @Override
+        public void validate(JsonNode node, Context context) {
+            target.validate(node, context);
+        }
+    }
+
+    /**
+     * Validates the value with the everit schema. Only used for the individual values that the native rules do not
+     * cover, so the conversion to org.json is limited to those values.
+     */
+    private static class EveritRule implements Rule {
+        final Schema schema;
+
+        EveritRule(Schema schema) {
+            this.schema = schema;
+        }
+
+        @Override
+        public void validate(JsonNode node, Context context) {
+            try {
+                schema.validate(toEverit(node));
+            } catch (ValidationException e) {
+                if (context.failFast) {
+                    context.violations.add("");
+                    return;
+                }
+                String pointer = context.pointer();
+                for (String message : e.getAllMessages()) {
+                    // everit messages are relative to the validated value, i.e. start with '#'
+                    context.violations.add(message.startsWith("#") ? pointer + message.substring(1) : pointer + ": " + message);
+                }
+            }
+        }
+
+        static Object toEverit(JsonNode node) {
+            switch (node.getNodeType()) {
+                case STRING:
+                    return node.textValue();
+                case NUMBER:
+                    return node.numberValue();
+                case BOOLEAN:
+                    return node.booleanValue();
+                case NULL:
+                    return JSONObject.NULL;
+                default:
+                    return new JSONTokener(node.toString()).nextValue();
+            }
+        }
+    }
+
+    private static class Context {
+        final List<String> violations = new ArrayList<>();
+        final List<Object> path = new ArrayList<>();
+        boolean failFast;
+
+        void push(Object pathElement) {
+            path.add(pathElement);
+        }
+
+        void pop() {
+            path.remove(path.size() - 1);
+        }
+
+        boolean done() {
+            return failFast && !violations.isEmpty();
+        }
+
+        void violation(String message) {
+            if (failFast) {
+                // messages are not needed when only the outcome is of interest
+                violations.add("");
+                return;
+            }
+            violations.add(pointer() + ": " + message);
+        }
+
+        String pointer() {
+            StringBuilder sb = new StringBuilder("#");
+            for (Object pathElement : path) {
+                sb.append('/').append(pathElement);
+            }
+            return sb.toString();
+        }
+
+        /**
+         * @return whether the node is valid against the rule, without recording any violations.
+         */
+        boolean matches(Rule rule, JsonNode node) {
+            Context probe = new Context();
+            probe.failFast = true;
+            rule.validate(node, probe);
+            return probe.violations.isEmpty();
+        }
+    }
+}
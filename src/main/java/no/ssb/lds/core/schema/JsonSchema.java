@@ -12,6 +12,7 @@ public class JsonSchema {
 
     static final Pattern nonSpace = Pattern.compile("(\"[^\"]*\")|\\s");
     final Map<String, Schema> schemas = new LinkedHashMap<>();
+    final Map<String, JacksonSchemaValidator> validators = new LinkedHashMap<>();
     final Map<String, String> schemaJsonByName = new LinkedHashMap<>();
     final Map<String, JsonSchemaDefinitionElement> definitions = new LinkedHashMap<>();
 
@@ -28,6 +29,7 @@ public class JsonSchema {
 
     JsonSchema addSchema(String name, Schema schema) {
         schemas.put(name, schema);
+        validators.put(name, JacksonSchemaValidator.compile(schema));
         return this;
     }
 
@@ -35,6 +37,10 @@ public class JsonSchema {
         return schemas.get(name);
     }
 
+    public JacksonSchemaValidator getValidator(String name) {
+        return validators.get(name);
+    }
+
     JsonSchema addSchemaJson(String name, String schemaJson) {
         schemaJsonByName.put(name, nonSpace.matcher(schemaJson).replaceAll("$1"));
         return this;
@@ -0,0 +1,249 @@
+package no.ssb.lds.core.search;
+
+import io.reactivex.Completable;
+import io.reactivex.Single;
+import no.ssb.lds.api.persistence.json.JsonDocument;
+import no.ssb.lds.api.search.SearchIndex;
+import no.ssb.lds.api.search.SearchResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Search-index decorator that queues document updates and deletes, and writes them to the delegate from a background
+ * thread, so that the sagas that update the index do not wait for it. Queued operations are written in order, and
+ * consecutive updates are written together with {@link SearchIndex#createOrOverwrite(Collection)}.
+ * <p>
+ * The queue is bounded, and operations wait for room in the queue when it is full, which bounds how far the index can
+ * lag behind the writes. A batch that fails is retried with exponential backoff, and is dropped and counted as failed
+ * when the retries are exhausted. Searches are delegated directly and see the index as it is.
+ */
+public class AsyncSearchIndex implements SearchIndex, AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncSearchIndex.class);
+
+    static final long INITIAL_BACKOFF_MS = 50;
+
+    private final SearchIndex delegate;
+    private final int batchSize;
+    private final int maxRetries;
+    private final BlockingQueue<Operation> queue;
+    private final Thread writer;
+
+    private final LongAdder written = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    // enqueue time of the oldest operation in the batch being written, or 0 when idle
+    private volatile long writingSinceNanos;
+    private volatile boolean closed;
+
+    public AsyncSearchIndex(SearchIndex delegate, int queueCapacity, int batchSize, int maxRetries) {
+        this.delegate = delegate;
+        this.batchSize = batchSize;
+        this.maxRetries = maxRetries;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.writer = new Thread(this::run, "search-index-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public SearchIndex getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public Completable createOrOverwrite(JsonDocument document) {
+        return Completable.fromAction(() -> enqueue(new Operation(false, document)));
+    }
+
+    @Override
+    public Completable createOrOverwrite(Collection<JsonDocument> documents) {
+        return Completable.fromAction(() -> {
+            for (JsonDocument document : documents) {
+                enqueue(new Operation(false, document));
+            }
+        });
+    }
+
+    @Override
+    public Completable delete(JsonDocument document) {
+        return Completable.fromAction(() -> enqueue(new Operation(true, document)));
+    }
+
+    /**
+     * Delete all documents once the queued operations have been written.
+     */
+    @Override
+    public Completable deleteAll() {
+        return Completable.fromAction(() -> awaitWritten(1, TimeUnit.HOURS))
+                .andThen(delegate.deleteAll());
+    }
+
+    @Override
+    public Single<SearchResponse> search(String query, Set<String> filter, long from, long size) {
+        return delegate.search(query, filter, from, size);
+    }
+
+    private void enqueue(Operation operation) throws InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("Search-index is closed");
+        }
+        queue.put(operation);
+        enqueued.incrementAndGet();
+    }
+
+    private void run() {
+        List<Operation> batch = new ArrayList<>(batchSize);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Operation first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                writingSinceNanos = first.enqueuedNanos;
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+                writingSinceNanos = 0;
+            }
+        }
+    }
+
+    /**
+     * Write the operations in order, with each run of consecutive updates as one call to the delegate.
+     */
+    private void write(List<Operation> batch) throws InterruptedException {
+        int i = 0;
+        while (i < batch.size()) {
+            if (batch.get(i).delete) {
+                JsonDocument document = batch.get(i).document;
+                writeWithRetry(1, () -> delegate.delete(document));
+                i++;
+                continue;
+            }
+            List<JsonDocument> documents = new ArrayList<>();
+            while (i < batch.size() && !batch.get(i).delete) {
+                documents.add(batch.get(i).document);
+                i++;
+            }
+            writeWithRetry(documents.size(), () -> delegate.createOrOverwrite(documents));
+        }
+    }
+
+    private void writeWithRetry(int count, Supplier<Completable> operation) throws InterruptedException {
+        long backoffMs = INITIAL_BACKOFF_MS;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                operation.get().blockingAwait();
+                written.add(count);
+                completed.addAndGet(count);
+                return;
+            } catch (RuntimeException e) {
+                if (attempt >= maxRetries) {
+                    LOG.error(String.format("Unable to write %d operations to search-index after %d attempts, they are dropped", count, attempt + 1), e);
+                    failed.add(count);
+                    completed.addAndGet(count);
+                    return;
+                }
+                LOG.warn("Unable to write {} operations to search-index, retrying in {} ms: {}", count, backoffMs, e.getMessage());
+                retries.increment();
+                Thread.sleep(backoffMs);
+                backoffMs = Math.min(backoffMs * 2, TimeUnit.SECONDS.toMillis(10));
+            }
+        }
+    }
+
+    /**
+     * Wait until the operations that have been queued so far have been written.
+     *
+     * @return true if they were written before the timeout.
+     */
+    public boolean awaitWritten(long timeout, TimeUnit unit) throws InterruptedException {
+        long target = enqueued.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (completed.get() < target) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    /**
+     * @return the enqueue time of the oldest operation that has not been written, or 0 if none are pending.
+     */
+    private long getOldestPendingNanos() {
+        long writing = writingSinceNanos;
+        if (writing != 0) {
+            return writing;
+        }
+        Operation head = queue.peek();
+        return head == null ? 0 : head.enqueuedNanos;
+    }
+
+    /**
+     * @return how long the oldest operation that has not been written has been pending, in milliseconds.
+     */
+    public long getLagMillis() {
+        long oldest = getOldestPendingNanos();
+        return oldest == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldest);
+    }
+
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * Stop accepting operations and wait for the queued operations to be written.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static class Operation {
+        final boolean delete;
+        final JsonDocument document;
+        final long enqueuedNanos = System.nanoTime();
+
+        Operation(boolean delete, JsonDocument document) {
+            this.delete = delete;
+            this.document = document;
+        }
+    }
+}
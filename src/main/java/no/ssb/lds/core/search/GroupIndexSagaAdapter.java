@@ -0,0 +1,59 @@
+package no.ssb.lds.core.search;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import no.ssb.lds.api.persistence.DocumentKey;
+import no.ssb.lds.api.persistence.json.JsonDocument;
+import no.ssb.lds.api.search.SearchIndex;
+import no.ssb.lds.api.specification.Specification;
+import no.ssb.lds.core.persistence.PersistenceGroupSagaAdapter;
+import no.ssb.lds.core.saga.SagaInput;
+import no.ssb.saga.api.SagaNode;
+import no.ssb.saga.execution.adapter.Adapter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Updates the search-index with the writes of all members of a group saga, with consecutive updates written together.
+ * Members that the persistence node left out are not indexed.
+ */
+public class GroupIndexSagaAdapter extends Adapter<JsonNode> {
+
+    public static final String NAME = "Persistence-Index-Group";
+
+    private final SearchIndex indexer;
+    private final Specification specification;
+
+    public GroupIndexSagaAdapter(SearchIndex indexer, Specification specification) {
+        super(JsonNode.class, NAME);
+        this.indexer = indexer;
+        this.specification = specification;
+    }
+
+    @Override
+    public JsonNode executeAction(SagaNode sagaNode, Object sagaInput, Map<SagaNode, Object> dependeesOutput) {
+        List<SagaInput> members = PersistenceGroupSagaAdapter.writtenMembers(new SagaInput((JsonNode) sagaInput), dependeesOutput);
+        List<JsonDocument> updates = new ArrayList<>();
+        for (SagaInput member : members) {
+            JsonDocument document = new JsonDocument(new DocumentKey(member.namespace(), member.entity(), member.resourceId(), member.version()), member.data());
+            if ("DELETE".equalsIgnoreCase(member.method())) {
+                // updates before the delete must be indexed first, as they may be of the same document
+                flush(updates);
+                indexer.delete(document).blockingAwait();
+            } else {
+                updates.add(document);
+            }
+        }
+        flush(updates);
+        return null;
+    }
+
+    private void flush(List<JsonDocument> updates) {
+        if (updates.isEmpty()) {
+            return;
+        }
+        indexer.createOrOverwrite(new ArrayList<>(updates)).blockingAwait();
+        updates.clear();
+    }
+}
@@ -0,0 +1,377 @@
+package no.ssb.lds.core.search;
+
+import io.reactivex.Completable;
+import io.reactivex.Single;
+import no.ssb.lds.api.persistence.DocumentKey;
+import no.ssb.lds.api.persistence.flattened.FlattenedDocument;
+import no.ssb.lds.api.persistence.flattened.FlattenedDocumentLeafNode;
+import no.ssb.lds.api.persistence.json.JsonDocument;
+import no.ssb.lds.api.persistence.json.JsonToFlattenedDocument;
+import no.ssb.lds.api.search.SearchIndex;
+import no.ssb.lds.api.search.SearchResponse;
+import no.ssb.lds.api.search.SearchResult;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-process search-index that keeps an inverted index from the terms of the string values of each document to the
+ * documents that contain them. String values are split into terms on every character that is not a letter or a digit,
+ * and terms are case-folded.
+ * <p>
+ * A query matches the documents that contain all of its terms, where the last term also matches as a prefix, so that
+ * "don du" matches "Donald Duck". A query without terms matches all documents. Hits are restricted to the entities in
+ * the filter when it is not empty, and are returned in index order; only the hits of the requested page are collected.
+ * <p>
+ * Each document is indexed under an ordinal, and the postings of each term are kept as a sorted array of ordinals, so
+ * that the terms of a query are intersected by walking the shortest postings and searching the others. Searches run
+ * concurrently under a read-lock, and updates are applied one batch at a time under the write-lock.
+ */
+public class InvertedSearchIndex implements SearchIndex {
+
+    static final int FRAGMENT_CAPACITY = 8192;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // all guarded by lock
+    private final NavigableMap<String, Postings> postingsByTerm = new TreeMap<>();
+    private final Map<String, Integer> ordinalByKey = new HashMap<>();
+    private final Deque<Integer> freeOrdinals = new ArrayDeque<>();
+    private DocumentKey[] keyByOrdinal = new DocumentKey[1024];
+    private String[][] termsByOrdinal = new String[1024][];
+    private int ordinalCount;
+
+    @Override
+    public Completable createOrOverwrite(JsonDocument document) {
+        return createOrOverwrite(List.of(document));
+    }
+
+    @Override
+    public Completable createOrOverwrite(Collection<JsonDocument> collection) {
+        return Completable.fromAction(() -> {
+            // flatten and tokenize before taking the write-lock, so that searches are only held back by the update
+            List<DocumentKey> keys = new ArrayList<>(collection.size());
+            List<String[]> terms = new ArrayList<>(collection.size());
+            for (JsonDocument document : collection) {
+                DocumentKey key = document.key();
+                FlattenedDocument flattened = new JsonToFlattenedDocument(key.namespace(), key.entity(), key.id(),
+                        null, document.jackson(), FRAGMENT_CAPACITY).toDocument();
+                keys.add(flattened.key());
+                terms.add(terms(flattened));
+            }
+            lock.writeLock().lock();
+            try {
+                for (int i = 0; i < keys.size(); i++) {
+                    put(keys.get(i), terms.get(i));
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public Completable delete(JsonDocument document) {
+        return Completable.fromAction(() -> {
+            lock.writeLock().lock();
+            try {
+                remove(document.key());
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public Completable deleteAll() {
+        return Completable.fromAction(() -> {
+            lock.writeLock().lock();
+            try {
+                postingsByTerm.clear();
+                ordinalByKey.clear();
+                freeOrdinals.clear();
+                keyByOrdinal = new DocumentKey[1024];
+                termsByOrdinal = new String[1024][];
+                ordinalCount = 0;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public Single<SearchResponse> search(String query, Set<String> filter, long from, long size) {
+        return Single.fromCallable(() -> {
+            lock.readLock().lock();
+            try {
+                return doSearch(tokenize(query == null ? "" : query), filter, from, size);
+            } finally {
+                lock.readLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * @return the number of documents in the index.
+     */
+    public int getDocumentCount() {
+        lock.readLock().lock();
+        try {
+            return ordinalByKey.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of distinct terms in the index.
+     */
+    public int getTermCount() {
+        lock.readLock().lock();
+        try {
+            return postingsByTerm.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private SearchResponse doSearch(String[] queryTerms, Set<String> filter, long from, long size) {
+        boolean filtered = filter != null && !filter.isEmpty();
+        List<SearchResult> results = new ArrayList<>();
+        int hits = 0;
+
+        if (queryTerms.length == 0) {
+            for (int ordinal = 0; ordinal < ordinalCount; ordinal++) {
+                DocumentKey key = keyByOrdinal[ordinal];
+                if (key != null && (!filtered || filter.contains(key.entity()))) {
+                    collect(results, key, hits++, from, size);
+                }
+            }
+            return new SearchResponse(hits, results, from, size);
+        }
+
+        List<Postings> required = new ArrayList<>(queryTerms.length);
+        for (int i = 0; i < queryTerms.length - 1; i++) {
+            Postings postings = postingsByTerm.get(queryTerms[i]);
+            if (postings == null) {
+                return new SearchResponse(0, results, from, size);
+            }
+            required.add(postings);
+        }
+        String prefix = queryTerms[queryTerms.length - 1];
+        NavigableMap<String, Postings> prefixed = postingsByTerm.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        if (prefixed.isEmpty()) {
+            return new SearchResponse(0, results, from, size);
+        }
+        BitSet prefixOrdinals = null;
+        if (prefixed.size() == 1) {
+            required.add(prefixed.firstEntry().getValue());
+        } else {
+            prefixOrdinals = new BitSet(ordinalCount);
+            for (Postings postings : prefixed.values()) {
+                for (int i = 0; i < postings.size; i++) {
+                    prefixOrdinals.set(postings.ordinals[i]);
+                }
+            }
+        }
+        required.sort((a, b) -> Integer.compare(a.size, b.size));
+
+        if (required.isEmpty()) {
+            for (int ordinal = prefixOrdinals.nextSetBit(0); ordinal >= 0; ordinal = prefixOrdinals.nextSetBit(ordinal + 1)) {
+                DocumentKey key = keyByOrdinal[ordinal];
+                if (!filtered || filter.contains(key.entity())) {
+                    collect(results, key, hits++, from, size);
+                }
+            }
+            return new SearchResponse(hits, results, from, size);
+        }
+
+        // walk the shortest postings, and advance a cursor into each of the others as both are in ordinal order
+        Postings driver = required.get(0);
+        int[] cursors = new int[required.size()];
+        candidates:
+        for (int i = 0; i < driver.size; i++) {
+            int ordinal = driver.ordinals[i];
+            for (int p = 1; p < required.size(); p++) {
+                Postings postings = required.get(p);
+                int found = Arrays.binarySearch(postings.ordinals, cursors[p], postings.size, ordinal);
+                if (found < 0) {
+                    cursors[p] = -found - 1;
+                    if (cursors[p] == postings.size) {
+                        break candidates;
+                    }
+                    continue candidates;
+                }
+                cursors[p] = found + 1;
+            }
+            if (prefixOrdinals != null && !prefixOrdinals.get(ordinal)) {
+                continue;
+            }
+            DocumentKey key = keyByOrdinal[ordinal];
+            if (!filtered || filter.contains(key.entity())) {
+                collect(results, key, hits++, from, size);
+            }
+        }
+        return new SearchResponse(hits, results, from, size);
+    }
+
+    private static void collect(List<SearchResult> results, DocumentKey key, int hit, long from, long size) {
+        if (hit >= from && hit - from < size) {
+            results.add(new SearchResult(key));
+        }
+    }
+
+    private void put(DocumentKey key, String[] terms) {
+        String indexKey = indexKey(key);
+        Integer existing = ordinalByKey.get(indexKey);
+        if (existing != null) {
+            int ordinal = existing;
+            String[] previous = termsByOrdinal[ordinal];
+            Set<String> added = new LinkedHashSet<>(Arrays.asList(terms));
+            for (String term : previous) {
+                if (!added.remove(term)) {
+                    removePosting(term, ordinal);
+                }
+            }
+            for (String term : added) {
+                postingsByTerm.computeIfAbsent(term, t -> new Postings()).add(ordinal);
+            }
+            keyByOrdinal[ordinal] = key;
+            termsByOrdinal[ordinal] = terms;
+            return;
+        }
+        int ordinal = allocateOrdinal();
+        ordinalByKey.put(indexKey, ordinal);
+        keyByOrdinal[ordinal] = key;
+        termsByOrdinal[ordinal] = terms;
+        for (String term : terms) {
+            postingsByTerm.computeIfAbsent(term, t -> new Postings()).add(ordinal);
+        }
+    }
+
+    private void remove(DocumentKey key) {
+        Integer ordinal = ordinalByKey.remove(indexKey(key));
+        if (ordinal == null) {
+            return;
+        }
+        for (String term : termsByOrdinal[ordinal]) {
+            removePosting(term, ordinal);
+        }
+        keyByOrdinal[ordinal] = null;
+        termsByOrdinal[ordinal] = null;
+        freeOrdinals.push(ordinal);
+    }
+
+    private void removePosting(String term, int ordinal) {
+        Postings postings = postingsByTerm.get(term);
+        if (postings != null && postings.remove(ordinal) && postings.size == 0) {
+            postingsByTerm.remove(term);
+        }
+    }
+
+    private int allocateOrdinal() {
+        if (!freeOrdinals.isEmpty()) {
+            return freeOrdinals.pop();
+        }
+        if (ordinalCount == keyByOrdinal.length) {
+            keyByOrdinal = Arrays.copyOf(keyByOrdinal, ordinalCount * 2);
+            termsByOrdinal = Arrays.copyOf(termsByOrdinal, ordinalCount * 2);
+        }
+        return ordinalCount++;
+    }
+
+    private static String indexKey(DocumentKey key) {
+        return key.namespace() + "/" + key.entity() + "/" + key.id();
+    }
+
+    /**
+     * @return the distinct terms of the string values of the document.
+     */
+    static String[] terms(FlattenedDocument document) {
+        Set<String> terms = new LinkedHashSet<>();
+        for (FlattenedDocumentLeafNode leaf : document.leafNodesByPath().values()) {
+            if (leaf.value() instanceof String) {
+                tokenize((String) leaf.value(), terms);
+            }
+        }
+        return terms.toArray(new String[0]);
+    }
+
+    /**
+     * @return the distinct terms of the text, in the order they first appear.
+     */
+    static String[] tokenize(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        tokenize(text, terms);
+        return terms.toArray(new String[0]);
+    }
+
+    static void tokenize(String text, Set<String> terms) {
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean termChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (termChar && start < 0) {
+                start = i;
+            } else if (!termChar && start >= 0) {
+                terms.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+    }
+
+    /**
+     * Sorted ordinals of the documents that contain a term.
+     */
+    static class Postings {
+        int[] ordinals = new int[4];
+        int size;
+
+        void add(int ordinal) {
+            if (size == 0 || ordinals[size - 1] < ordinal) {
+                // documents that are new to the index get the next ordinal, so this is the common case
+                grow();
+                ordinals[size++] = ordinal;
+                return;
+            }
+            int found = Arrays.binarySearch(ordinals, 0, size, ordinal);
+            if (found >= 0) {
+                return;
+            }
+            int insertAt = -found - 1;
+            grow();
+            System.arraycopy(ordinals, insertAt, ordinals, insertAt + 1, size - insertAt);
+            ordinals[insertAt] = ordinal;
+            size++;
+        }
+
+        boolean remove(int ordinal) {
+            int found = Arrays.binarySearch(ordinals, 0, size, ordinal);
+            if (found < 0) {
+                return false;
+            }
+            System.arraycopy(ordinals, found + 1, ordinals, found, size - found - 1);
+            size--;
+            return true;
+        }
+
+        private void grow() {
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+            }
+        }
+    }
+}
@@ -20,7 +20,7 @@ public class TestSearchIndex implements SearchIndexProvider {
 
     @Override
     public SearchIndex getSearchIndex(Map<String, String> map) {
-        return new SimpleSearchIndex();
+        return new InvertedSearchIndex();
     }
 
 }
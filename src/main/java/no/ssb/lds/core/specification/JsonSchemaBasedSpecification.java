@@ -18,6 +18,8 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
 
@@ -77,11 +79,14 @@ public class JsonSchemaBasedSpecification implements Specification, SchemaReposi
 
     private final GraphQLSchema graphQlSchema;
 
+    private final Map<String, LinkPlan> linkPlanByManagedDomain;
+
     public JsonSchemaBasedSpecification() {
         this.jsonSchema = null;
         this.root = null;
         this.typeDefinitionRegistry = null;
         this.graphQlSchema = null;
+        this.linkPlanByManagedDomain = Collections.emptyMap();
     }
 
     public JsonSchemaBasedSpecification(JsonSchema jsonSchema, SpecificationElement root, TypeDefinitionRegistry typeDefinitionRegistry, GraphQLSchema graphQlSchema) {
@@ -89,6 +94,13 @@ public class JsonSchemaBasedSpecification implements Specification, SchemaReposi
         this.root = root;
         this.typeDefinitionRegistry = typeDefinitionRegistry;
         this.graphQlSchema = graphQlSchema;
+        Map<String, LinkPlan> linkPlans = new LinkedHashMap<>();
+        if (root != null) {
+            for (Map.Entry<String, SpecificationElement> entry : root.getProperties().entrySet()) {
+                linkPlans.put(entry.getKey(), LinkPlan.create(entry.getValue()));
+            }
+        }
+        this.linkPlanByManagedDomain = Collections.unmodifiableMap(linkPlans);
     }
 
     @Override
@@ -119,4 +131,11 @@ public class JsonSchemaBasedSpecification implements Specification, SchemaReposi
         return jsonSchema;
     }
 
+    /**
+     * @return the link plan of the managed domain, or null if the managed domain is not part of this specification.
+     */
+    public LinkPlan getLinkPlan(String managedDomain) {
+        return linkPlanByManagedDomain.get(managedDomain);
+    }
+
 }
@@ -0,0 +1,204 @@
+package no.ssb.lds.core.specification;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import no.ssb.lds.api.specification.Specification;
+import no.ssb.lds.api.specification.SpecificationElement;
+import no.ssb.lds.api.specification.SpecificationElementType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The flattened list of link (REF) properties of a managed domain. Each link holds the json path from the root of the
+ * managed document, the managed domains it may link to and whether it is an array of links. Plans are computed once
+ * per specification, see {@link JsonSchemaBasedSpecification#getLinkPlan(String)}, so that link validation and
+ * extraction do not need to traverse the specification.
+ */
+public class LinkPlan {
+
+    public static LinkPlan of(Specification specification, String managedDomain) {
+        if (specification instanceof JsonSchemaBasedSpecification) {
+            return ((JsonSchemaBasedSpecification) specification).getLinkPlan(managedDomain);
+        }
+        SpecificationElement managedDomainElement = specification.getRootElement().getProperties().get(managedDomain);
+        return managedDomainElement == null ? null : create(managedDomainElement);
+    }
+
+    public static LinkPlan create(SpecificationElement managedDomainElement) {
+        List<Link> links = new ArrayList<>();
+        collectLinks(managedDomainElement.getName(), managedDomainElement, new LinkedList<>(), Collections.newSetFromMap(new IdentityHashMap<>()), links);
+        return new LinkPlan(managedDomainElement.getName(), links);
+    }
+
+    private static void collectLinks(String managedDomain, SpecificationElement parent, LinkedList<String> path, Set<SpecificationElement> ancestors, List<Link> links) {
+        Map<String, SpecificationElement> properties = parent.getProperties();
+        if (properties == null || !ancestors.add(parent)) {
+            // no properties or recursive specification
+            return;
+        }
+        for (Map.Entry<String, SpecificationElement> entry : properties.entrySet()) {
+            SpecificationElement element = entry.getValue();
+            path.addLast(entry.getKey());
+            if (SpecificationElementType.REF == element.getSpecificationElementType()) {
+                links.add(new Link(managedDomain, path.toArray(new String[0]), element.getRefTypes(), element.getJsonTypes().contains("array")));
+            } else {
+                collectLinks(managedDomain, element, path, ancestors, links);
+            }
+            path.removeLast();
+        }
+        ancestors.remove(parent);
+    }
+
+    /**
+     * @return the managed-domain of a link on the form "/&lt;managed-domain&gt;/&lt;id&gt;", or null if the link is
+     * not on that form.
+     */
+    public static String linkedDomain(String link) {
+        if (link == null || link.length() < 2 || link.charAt(0) != '/') {
+            return null;
+        }
+        int domainEnd = link.indexOf('/', 1);
+        if (domainEnd <= 1) {
+            return null;
+        }
+        return link.substring(1, domainEnd);
+    }
+
+    /**
+     * @return the id of a link on the form "/&lt;managed-domain&gt;/&lt;id&gt;", or null if the link is not on that
+     * form. The id is everything following the managed-domain.
+     */
+    public static String linkedId(String link) {
+        if (linkedDomain(link) == null) {
+            return null;
+        }
+        return link.substring(link.indexOf('/', 1) + 1);
+    }
+
+    /**
+     * @return whether the link is on the form "/&lt;managed-domain&gt;/&lt;id&gt;" where neither managed-domain nor id
+     * are empty or contain slashes.
+     */
+    public static boolean isWellFormed(String link) {
+        if (linkedDomain(link) == null) {
+            return false;
+        }
+        int idStart = link.indexOf('/', 1) + 1;
+        return idStart < link.length() && link.indexOf('/', idStart) == -1;
+    }
+
+    private final String managedDomain;
+    private final List<Link> links;
+
+    private LinkPlan(String managedDomain, List<Link> links) {
+        this.managedDomain = managedDomain;
+        this.links = Collections.unmodifiableList(links);
+    }
+
+    public String getManagedDomain() {
+        return managedDomain;
+    }
+
+    public List<Link> getLinks() {
+        return links;
+    }
+
+    /**
+     * Visit every link value present in the document. Null values are skipped, and embedded arrays along the path
+     * are visited item by item.
+     */
+    public void forEachLink(JsonNode document, LinkVisitor visitor) {
+        for (int i = 0; i < links.size(); i++) {
+            Link link = links.get(i);
+            visit(document, link, 0, visitor);
+        }
+    }
+
+    private static void visit(JsonNode node, Link link, int depth, LinkVisitor visitor) {
+        if (node == null) {
+            return;
+        }
+        if (node.isArray()) {
+            for (int i = 0; i < node.size(); i++) {
+                visit(node.get(i), link, depth, visitor);
+            }
+            return;
+        }
+        if (!node.isObject()) {
+            return;
+        }
+        JsonNode value = node.get(link.path[depth]);
+        if (depth < link.path.length - 1) {
+            visit(value, link, depth + 1, visitor);
+            return;
+        }
+        if (value == null || value.isNull()) {
+            return;
+        }
+        if (value.isArray()) {
+            for (int i = 0; i < value.size(); i++) {
+                JsonNode item = value.get(i);
+                if (!item.isNull()) {
+                    visitor.visit(link, item.asText());
+                }
+            }
+            return;
+        }
+        visitor.visit(link, value.asText());
+    }
+
+    @FunctionalInterface
+    public interface LinkVisitor {
+        void visit(Link link, String value);
+    }
+
+    public static class Link {
+        private final String[] path;
+        private final Set<String> refTypes;
+        private final boolean array;
+        private final String navigationPath;
+
+        Link(String managedDomain, String[] path, Set<String> refTypes, boolean array) {
+            this.path = path;
+            this.refTypes = refTypes;
+            this.array = array;
+            this.navigationPath = managedDomain + "." + String.join(".", path);
+        }
+
+        /**
+         * @return the property names from the root of the managed document to and including the link property.
+         */
+        public List<String> getPath() {
+            return List.of(path);
+        }
+
+        public String getName() {
+            return path[path.length - 1];
+        }
+
+        public Set<String> getRefTypes() {
+            return refTypes;
+        }
+
+        public boolean isArray() {
+            return array;
+        }
+
+        /**
+         * @return the dot separated path including the managed domain, e.g. "provisionagreement.support.technicalSupport"
+         */
+        public String getNavigationPath() {
+            return navigationPath;
+        }
+
+        @Override
+        public String toString() {
+            return navigationPath + (array ? "[]" : "") + " -> " + refTypes;
+        }
+    }
+}
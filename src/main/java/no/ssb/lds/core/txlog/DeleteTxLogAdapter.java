@@ -23,7 +23,8 @@ public class DeleteTxLogAdapter extends Adapter<JsonNode> {
     public JsonNode executeAction(SagaNode sagaNode, Object input, Map<SagaNode, Object> dependeesOutput) {
         SagaInput sagaInput = new SagaInput((JsonNode) input);
         RawdataProducer producer = pool.producer(sagaInput.source());
-        producer.publishBuilders(TxLogTools.sagaInputToTxEntry(producer.builder(), sagaInput));
+        pool.publish(sagaInput.source(), TxLogTools.sagaInputToTxEntry(producer.builder(), sagaInput)).join();
+        pool.advancePosition(sagaInput);
         return null;
     }
 }
@@ -0,0 +1,53 @@
+package no.ssb.lds.core.txlog;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import no.ssb.lds.core.persistence.PersistenceGroupSagaAdapter;
+import no.ssb.lds.core.saga.SagaInput;
+import no.ssb.rawdata.api.RawdataMessage;
+import no.ssb.saga.api.SagaNode;
+import no.ssb.saga.execution.adapter.Adapter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Appends the tx-log entries of all members of a group saga, with one publish per tx-log topic. Every member gets
+ * the same entry as it would have had when written by its own saga. Members that the persistence node left out are
+ * not published.
+ */
+public class GroupTxLogAdapter extends Adapter<JsonNode> {
+
+    public static final String NAME = "TxLog-group-entries";
+
+    final TxlogRawdataPool pool;
+
+    public GroupTxLogAdapter(TxlogRawdataPool pool) {
+        super(JsonNode.class, NAME);
+        this.pool = pool;
+    }
+
+    @Override
+    public JsonNode executeAction(SagaNode sagaNode, Object input, Map<SagaNode, Object> dependeesOutput) {
+        List<SagaInput> members = PersistenceGroupSagaAdapter.writtenMembers(new SagaInput((JsonNode) input), dependeesOutput);
+        Map<String, List<RawdataMessage.Builder>> buildersByTopic = new LinkedHashMap<>();
+        Map<String, String> sourceByTopic = new LinkedHashMap<>();
+        for (SagaInput member : members) {
+            String topic = pool.topicOf(member.source());
+            sourceByTopic.putIfAbsent(topic, member.source());
+            buildersByTopic.computeIfAbsent(topic, t -> new ArrayList<>())
+                    .add(TxLogTools.sagaInputToTxEntry(pool.producer(member.source()).builder(), member));
+        }
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (Map.Entry<String, List<RawdataMessage.Builder>> entry : buildersByTopic.entrySet()) {
+            futures.add(pool.publish(sourceByTopic.get(entry.getKey()), entry.getValue().toArray(new RawdataMessage.Builder[0])));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        for (SagaInput member : members) {
+            pool.advancePosition(member);
+        }
+        return null;
+    }
+}
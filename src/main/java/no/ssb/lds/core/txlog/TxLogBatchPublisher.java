@@ -0,0 +1,114 @@
+package no.ssb.lds.core.txlog;
+
+import no.ssb.lds.core.utils.Histogram;
+import no.ssb.rawdata.api.RawdataMessage;
+import no.ssb.rawdata.api.RawdataProducer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the tx-log entries of concurrent sagas for one topic, and publishes them with one call to the producer.
+ * A batch is published when it has maxBatchSize entries, or lingerMillis after its first entry. The future of an
+ * entry completes when the batch it was published in has been written, or fails with the publish error.
+ * <p>
+ * Batches are published one at a time and in the order they were collected. Every topic has its own publisher thread,
+ * so that a slow topic does not delay the batches of other topics.
+ */
+class TxLogBatchPublisher {
+
+    private final RawdataProducer producer;
+    private final int maxBatchSize;
+    private final long lingerMillis;
+    private final ScheduledExecutorService scheduler;
+    private final Histogram batchSizes;
+    private final Histogram publishLatenciesMicros;
+
+    private final Object publishLock = new Object();
+
+    // guarded by this
+    private List<RawdataMessage.Builder> pendingBuilders = new ArrayList<>();
+    private List<CompletableFuture<Void>> pendingFutures = new ArrayList<>();
+    private boolean closed;
+
+    TxLogBatchPublisher(String topic, RawdataProducer producer, int maxBatchSize, long lingerMillis,
+                        Histogram batchSizes, Histogram publishLatenciesMicros) {
+        this.producer = producer;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerMillis = lingerMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "txlog-batch-publisher-" + topic);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.batchSizes = batchSizes;
+        this.publishLatenciesMicros = publishLatenciesMicros;
+    }
+
+    CompletableFuture<Void> publish(RawdataMessage.Builder... builders) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        boolean full;
+        synchronized (this) {
+            if (pendingBuilders.isEmpty() && !closed) {
+                scheduler.schedule(this::flush, lingerMillis, TimeUnit.MILLISECONDS);
+            }
+            for (RawdataMessage.Builder builder : builders) {
+                pendingBuilders.add(builder);
+            }
+            pendingFutures.add(future);
+            full = closed || pendingBuilders.size() >= maxBatchSize;
+        }
+        if (full) {
+            flush();
+        }
+        return future;
+    }
+
+    void flush() {
+        synchronized (publishLock) {
+            List<RawdataMessage.Builder> builders;
+            List<CompletableFuture<Void>> futures;
+            synchronized (this) {
+                if (pendingBuilders.isEmpty()) {
+                    return; // published by an earlier flush
+                }
+                builders = pendingBuilders;
+                futures = pendingFutures;
+                pendingBuilders = new ArrayList<>();
+                pendingFutures = new ArrayList<>();
+            }
+            long start = System.nanoTime();
+            try {
+                producer.publishBuilders(builders.toArray(new RawdataMessage.Builder[0]));
+            } catch (Throwable t) {
+                futures.forEach(f -> f.completeExceptionally(t));
+                return;
+            } finally {
+                batchSizes.record(builders.size());
+                publishLatenciesMicros.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+            }
+            futures.forEach(f -> f.complete(null));
+        }
+    }
+
+    /**
+     * Publish the pending batch and stop the publisher thread. Entries that are published after close are published
+     * immediately by the calling thread.
+     */
+    void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        flush();
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(lingerMillis + TimeUnit.SECONDS.toMillis(30), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
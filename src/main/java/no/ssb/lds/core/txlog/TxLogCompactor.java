@@ -0,0 +1,168 @@
+package no.ssb.lds.core.txlog;
+
+import de.huxhorn.sulky.ulid.ULID;
+import no.ssb.rawdata.api.RawdataConsumer;
+import no.ssb.rawdata.api.RawdataMessage;
+import no.ssb.rawdata.api.RawdataProducer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compacts the tx-log of a source into a {@link TxLogSnapshot} that holds only the latest versions of each document.
+ * The tx-log is scanned up to the entry that was last when the compaction started, and for each document the last
+ * versionsToKeep entries are kept. A delete is kept as the tombstone of the document, so that a restore from the
+ * snapshot deletes a document that was restored from an earlier snapshot or from an older tx-log. Batch entries are
+ * kept as they are, since they can not be split without new tx-ids.
+ * <p>
+ * The snapshot covers the tx-log up to and including the last entry that was scanned, in topic order, which is where
+ * a restore from the snapshot continues reading the tx-log. The first scan only holds the tx-ids of the kept entries
+ * in memory, a second scan copies the kept entries to the snapshot topic in tx-log order.
+ */
+public class TxLogCompactor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TxLogCompactor.class);
+
+    static final int PUBLISH_BATCH_SIZE = 1000;
+
+    private static final ULID ulid = new ULID();
+
+    private final TxlogRawdataPool pool;
+    private final String source;
+    private final int versionsToKeep;
+
+    private final AtomicLong entriesScanned = new AtomicLong();
+    private final AtomicLong entriesWritten = new AtomicLong();
+
+    public TxLogCompactor(TxlogRawdataPool pool, String source, int versionsToKeep) {
+        if (versionsToKeep < 1) {
+            throw new IllegalArgumentException("versionsToKeep must be at least 1, was " + versionsToKeep);
+        }
+        this.pool = pool;
+        this.source = source;
+        this.versionsToKeep = versionsToKeep;
+    }
+
+    /**
+     * Scan the tx-log and write the snapshot.
+     *
+     * @return the snapshot, or null if the tx-log is empty.
+     */
+    public TxLogSnapshot compact() throws InterruptedException {
+        String topic = pool.topicOf(source);
+        RawdataMessage lastMessage = pool.getClient().lastMessage(topic);
+        if (lastMessage == null) {
+            return null;
+        }
+
+        Map<String, Deque<ULID.Value>> versionsByDocument = new HashMap<>();
+        Set<ULID.Value> kept = new HashSet<>();
+        ULID.Value covers = null;
+        try (RawdataConsumer consumer = pool.getClient().consumer(topic)) {
+            RawdataMessage message;
+            while ((message = consumer.receive(10, TimeUnit.SECONDS)) != null) {
+                entriesScanned.incrementAndGet();
+                covers = message.ulid();
+                TxLogEntry entry = TxLogEntry.of(message);
+                if (entry.isBatch() || entry.entity() == null || entry.resourceId() == null) {
+                    kept.add(message.ulid());
+                } else {
+                    Deque<ULID.Value> versions = versionsByDocument.computeIfAbsent(
+                            entry.namespace() + "/" + entry.entity() + "/" + entry.resourceId(), k -> new ArrayDeque<>(versionsToKeep));
+                    if (versions.size() == versionsToKeep) {
+                        versions.removeFirst();
+                    }
+                    versions.addLast(message.ulid());
+                }
+                if (message.ulid().equals(lastMessage.ulid())) {
+                    break;
+                }
+            }
+        }
+        if (covers == null) {
+            return null;
+        }
+        if (!covers.equals(lastMessage.ulid())) {
+            LOG.warn("Scan of tx-log {} ended at {} before reaching {}, the snapshot covers the entries that were scanned", topic, covers, lastMessage.ulid());
+        }
+        for (Deque<ULID.Value> versions : versionsByDocument.values()) {
+            kept.addAll(versions);
+        }
+        versionsByDocument = null;
+
+        String snapshotTopic = TxLogSnapshot.snapshotTopicOf(topic, covers);
+        try (RawdataConsumer consumer = pool.getClient().consumer(topic);
+             RawdataProducer producer = pool.getClient().producer(snapshotTopic)) {
+            List<RawdataMessage.Builder> builders = new ArrayList<>(PUBLISH_BATCH_SIZE);
+            RawdataMessage message;
+            do {
+                message = consumer.receive(10, TimeUnit.SECONDS);
+                if (message == null) {
+                    throw new IllegalStateException("Tx-log " + topic + " ended before " + covers + " when copying the kept entries");
+                }
+                if (kept.contains(message.ulid())) {
+                    RawdataMessage.Builder builder = producer.builder();
+                    builder.ulid(message.ulid());
+                    builder.position(message.position());
+                    for (String key : message.keys()) {
+                        builder.put(key, message.get(key));
+                    }
+                    builders.add(builder);
+                    if (builders.size() == PUBLISH_BATCH_SIZE) {
+                        publish(producer, builders);
+                    }
+                }
+            } while (!message.ulid().equals(covers));
+            publish(producer, builders);
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Unable to write tx-log snapshot " + snapshotTopic, e);
+        }
+
+        try (RawdataProducer producer = pool.getClient().producer(TxLogSnapshot.snapshotsTopicOf(topic))) {
+            RawdataMessage.Builder builder = producer.builder();
+            builder.ulid(ulid.nextValue());
+            builder.position(snapshotTopic);
+            builder.put(TxLogSnapshot.TOPIC, snapshotTopic.getBytes(StandardCharsets.UTF_8));
+            builder.put(TxLogSnapshot.COVERS, covers.toString().getBytes(StandardCharsets.UTF_8));
+            producer.publishBuilders(builder);
+        } catch (Exception e) {
+            throw new RuntimeException("Unable to register tx-log snapshot " + snapshotTopic, e);
+        }
+        LOG.info("Compacted {} tx-log entries of source {} into {} entries in snapshot {}", entriesScanned.get(), source, entriesWritten.get(), snapshotTopic);
+        return new TxLogSnapshot(snapshotTopic, covers);
+    }
+
+    private void publish(RawdataProducer producer, List<RawdataMessage.Builder> builders) {
+        if (builders.isEmpty()) {
+            return;
+        }
+        producer.publishBuilders(builders.toArray(new RawdataMessage.Builder[0]));
+        entriesWritten.addAndGet(builders.size());
+        builders.clear();
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public long getEntriesScanned() {
+        return entriesScanned.get();
+    }
+
+    public long getEntriesWritten() {
+        return entriesWritten.get();
+    }
+}
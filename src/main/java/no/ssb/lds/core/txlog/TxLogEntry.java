@@ -0,0 +1,354 @@
+package no.ssb.lds.core.txlog;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import de.huxhorn.sulky.ulid.ULID;
+import no.ssb.lds.core.saga.SagaInput;
+import no.ssb.rawdata.api.RawdataMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static java.util.Optional.ofNullable;
+
+/**
+ * A decoded tx-log entry. The fields that restore and source lookups need are read from a small binary header, while
+ * the document or batch payload is only decoded, and decompressed, when {@link #data()}, {@link #batch()} or
+ * {@link #toSagaInput()} is called.
+ * <p>
+ * Entries are written with the header in the {@value #HEADER} key and the msgpack payload in the {@value #PAYLOAD}
+ * key. The header holds a format version, flags, the method, schema and namespace, the entity, id and version as
+ * epoch-millis with the nanos and zone of the version for single-document entries, and the source and source-id.
+ * Payloads of at least {@value #COMPRESSION_THRESHOLD} bytes are deflated when that makes them smaller. Entries
+ * written before this format, with a msgpack {@value #LEGACY_META} key, are still read.
+ */
+public class TxLogEntry {
+
+    static final String HEADER = "entry";
+    static final String PAYLOAD = "payload";
+    static final String LEGACY_META = "meta";
+    static final String LEGACY_DATA = "data";
+    static final String LEGACY_BATCH = "batch";
+
+    static final byte FORMAT_VERSION = 1;
+    static final int COMPRESSION_THRESHOLD = 4096;
+
+    static final int FLAG_BATCH = 1;
+    static final int FLAG_PAYLOAD = 2;
+    static final int FLAG_DEFLATED = 4;
+
+    private final ULID.Value txId;
+    private final String method;
+    private final String schema;
+    private final String namespace;
+    private final String entity;
+    private final String id;
+    private final long versionEpochMillis;
+    private final int versionNanoOfMilli;
+    private final String versionZone;
+    private final String legacyVersion;
+    private final String source;
+    private final String sourceId;
+    private final boolean batch;
+    private final byte[] payload;
+    private final boolean deflated;
+
+    private JsonNode decodedPayload;
+
+    private TxLogEntry(ULID.Value txId, String method, String schema, String namespace, String entity, String id,
+                       long versionEpochMillis, int versionNanoOfMilli, String versionZone, String legacyVersion,
+                       String source, String sourceId, boolean batch, byte[] payload, boolean deflated) {
+        this.txId = txId;
+        this.method = method;
+        this.schema = schema;
+        this.namespace = namespace;
+        this.entity = entity;
+        this.id = id;
+        this.versionEpochMillis = versionEpochMillis;
+        this.versionNanoOfMilli = versionNanoOfMilli;
+        this.versionZone = versionZone;
+        this.legacyVersion = legacyVersion;
+        this.source = source;
+        this.sourceId = sourceId;
+        this.batch = batch;
+        this.payload = payload;
+        this.deflated = deflated;
+    }
+
+    /**
+     * Read the entry of a tx-log message in either the compact or the legacy format. Only the header is decoded.
+     */
+    public static TxLogEntry of(RawdataMessage message) {
+        if (message.keys().contains(HEADER)) {
+            return decode(message.ulid(), message.get(HEADER), message.keys().contains(PAYLOAD) ? message.get(PAYLOAD) : null);
+        }
+        return decodeLegacy(message.ulid(), message.get(LEGACY_META),
+                message.keys().contains(LEGACY_DATA) ? message.get(LEGACY_DATA) : null,
+                message.keys().contains(LEGACY_BATCH) ? message.get(LEGACY_BATCH) : null);
+    }
+
+    static TxLogEntry decode(ULID.Value txId, byte[] header, byte[] payload) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(header))) {
+            byte formatVersion = in.readByte();
+            if (formatVersion != FORMAT_VERSION) {
+                throw new IllegalArgumentException("Unsupported tx-log entry format version: " + formatVersion);
+            }
+            int flags = in.readUnsignedByte();
+            String method = in.readUTF();
+            String schema = in.readUTF();
+            String namespace = in.readUTF();
+            boolean batch = (flags & FLAG_BATCH) != 0;
+            String entity = null;
+            String id = null;
+            long versionEpochMillis = 0;
+            int versionNanoOfMilli = 0;
+            String versionZone = null;
+            if (!batch) {
+                entity = in.readUTF();
+                id = in.readUTF();
+                versionEpochMillis = in.readLong();
+                versionNanoOfMilli = in.readInt();
+                versionZone = in.readUTF();
+            }
+            String source = readNullableUTF(in);
+            String sourceId = readNullableUTF(in);
+            return new TxLogEntry(txId, method, schema, namespace, entity, id, versionEpochMillis, versionNanoOfMilli,
+                    versionZone, null, source, sourceId, batch, (flags & FLAG_PAYLOAD) != 0 ? payload : null,
+                    (flags & FLAG_DEFLATED) != 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static TxLogEntry decodeLegacy(ULID.Value txId, byte[] metaBytes, byte[] data, byte[] batch) {
+        JsonNode meta = TxLogTools.toJson(metaBytes);
+        return new TxLogEntry(txId,
+                meta.get("method").textValue(),
+                meta.get("schema").textValue(),
+                meta.get("namespace").textValue(),
+                ofNullable(meta.get("entity")).map(JsonNode::textValue).orElse(null),
+                ofNullable(meta.get("id")).map(JsonNode::textValue).orElse(null),
+                0, 0, null,
+                ofNullable(meta.get("version")).map(JsonNode::textValue).orElse(null),
+                ofNullable(meta.get("source")).map(JsonNode::textValue).orElse(null),
+                ofNullable(meta.get("sourceId")).map(JsonNode::textValue).orElse(null),
+                batch != null,
+                batch != null ? batch : data,
+                false);
+    }
+
+    /**
+     * Write the header and payload of the saga input to the message builder.
+     */
+    static RawdataMessage.Builder encode(RawdataMessage.Builder builder, SagaInput sagaInput) {
+        JsonNode payloadNode = sagaInput.batch() != null ? sagaInput.batch() : sagaInput.data();
+        byte[] payload = payloadNode == null ? null : TxLogTools.toBytes(payloadNode);
+        byte[] deflated = payload == null ? null : deflate(payload);
+        builder.put(HEADER, encodeHeader(sagaInput, payload != null, deflated != null));
+        if (payload != null) {
+            builder.put(PAYLOAD, deflated != null ? deflated : payload);
+        }
+        return builder;
+    }
+
+    static byte[] encodeHeader(SagaInput sagaInput, boolean hasPayload, boolean deflated) {
+        boolean batch = sagaInput.batch() != null;
+        int flags = (batch ? FLAG_BATCH : 0) | (hasPayload ? FLAG_PAYLOAD : 0) | (deflated ? FLAG_DEFLATED : 0);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            out.writeByte(flags);
+            out.writeUTF(sagaInput.method());
+            out.writeUTF(sagaInput.schema());
+            out.writeUTF(sagaInput.namespace());
+            if (!batch) {
+                ZonedDateTime version = sagaInput.version();
+                Instant instant = version.toInstant();
+                out.writeUTF(sagaInput.entity());
+                out.writeUTF(sagaInput.resourceId());
+                out.writeLong(instant.toEpochMilli());
+                out.writeInt(instant.getNano() % 1_000_000);
+                out.writeUTF(version.getZone().getId());
+            }
+            writeNullableUTF(out, sagaInput.source());
+            writeNullableUTF(out, sagaInput.sourceId());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the deflated payload, or null if the payload is small or does not compress.
+     */
+    static byte[] deflate(byte[] payload) {
+        if (payload.length < COMPRESSION_THRESHOLD) {
+            return null;
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(payload);
+            deflater.finish();
+            byte[] buffer = new byte[payload.length];
+            int length = 0;
+            while (!deflater.finished() && length < buffer.length) {
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            if (!deflater.finished()) {
+                return null;
+            }
+            // the inflated length is written first, so that the payload can be inflated into an exact buffer
+            byte[] result = new byte[4 + length];
+            result[0] = (byte) (payload.length >>> 24);
+            result[1] = (byte) (payload.length >>> 16);
+            result[2] = (byte) (payload.length >>> 8);
+            result[3] = (byte) payload.length;
+            System.arraycopy(buffer, 0, result, 4, length);
+            return result;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static byte[] inflate(byte[] deflated) {
+        int length = ((deflated[0] & 0xff) << 24) | ((deflated[1] & 0xff) << 16) | ((deflated[2] & 0xff) << 8) | (deflated[3] & 0xff);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(deflated, 4, deflated.length - 4);
+            byte[] result = new byte[length];
+            int read = 0;
+            while (read < length && !inflater.finished()) {
+                int n = inflater.inflate(result, read, length - read);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                read += n;
+            }
+            if (read != length) {
+                throw new IllegalArgumentException("Truncated tx-log entry payload, inflated " + read + " of " + length + " bytes");
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupt tx-log entry payload", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void writeNullableUTF(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullableUTF(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    public ULID.Value txId() {
+        return txId;
+    }
+
+    public String method() {
+        return method;
+    }
+
+    public String schema() {
+        return schema;
+    }
+
+    public String namespace() {
+        return namespace;
+    }
+
+    public String entity() {
+        return entity;
+    }
+
+    public String resourceId() {
+        return id;
+    }
+
+    public boolean isBatch() {
+        return batch;
+    }
+
+    public String source() {
+        return source;
+    }
+
+    public String sourceId() {
+        return sourceId;
+    }
+
+    /**
+     * @return the version of a single-document entry, or null for a batch.
+     */
+    public ZonedDateTime version() {
+        if (legacyVersion != null) {
+            return ZonedDateTime.parse(legacyVersion, DateTimeFormatter.ISO_ZONED_DATE_TIME);
+        }
+        if (versionZone == null) {
+            return null;
+        }
+        return Instant.ofEpochMilli(versionEpochMillis).plusNanos(versionNanoOfMilli).atZone(ZoneId.of(versionZone));
+    }
+
+    /**
+     * @return the version of a single-document entry as epoch-millis, without building a date-time when it was
+     * written in the compact format.
+     */
+    public long versionEpochMillis() {
+        if (legacyVersion != null) {
+            return version().toInstant().toEpochMilli();
+        }
+        return versionEpochMillis;
+    }
+
+    public String versionAsString() {
+        if (legacyVersion != null) {
+            return legacyVersion;
+        }
+        ZonedDateTime version = version();
+        return version == null ? null : DateTimeFormatter.ISO_ZONED_DATE_TIME.format(version);
+    }
+
+    /**
+     * @return the document of a single-document entry, or null for a delete or a batch. Decoded on first use.
+     */
+    public JsonNode data() {
+        return batch ? null : payload();
+    }
+
+    /**
+     * @return the batch of a batch entry, or null if this is not a batch. Decoded on first use.
+     */
+    public JsonNode batch() {
+        return batch ? payload() : null;
+    }
+
+    private synchronized JsonNode payload() {
+        if (decodedPayload == null && payload != null) {
+            decodedPayload = TxLogTools.toJson(deflated ? inflate(payload) : payload);
+        }
+        return decodedPayload;
+    }
+
+    public SagaInput toSagaInput() {
+        if (batch) {
+            return new SagaInput(txId, method, schema, namespace, source, sourceId, batch());
+        }
+        return new SagaInput(txId, method, schema, namespace, entity, id, version(), source, sourceId, data());
+    }
+}
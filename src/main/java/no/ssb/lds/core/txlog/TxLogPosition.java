@@ -0,0 +1,40 @@
+package no.ssb.lds.core.txlog;
+
+import de.huxhorn.sulky.ulid.ULID;
+
+/**
+ * The source, source-id and tx-id of the last entry that was written to a tx-log topic.
+ */
+public class TxLogPosition {
+
+    private final String source;
+    private final String sourceId;
+    private final ULID.Value txId;
+
+    public TxLogPosition(String source, String sourceId, ULID.Value txId) {
+        this.source = source;
+        this.sourceId = sourceId;
+        this.txId = txId;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public String getSourceId() {
+        return sourceId;
+    }
+
+    public ULID.Value getTxId() {
+        return txId;
+    }
+
+    @Override
+    public String toString() {
+        return "TxLogPosition{" +
+                "source='" + source + '\'' +
+                ", sourceId='" + sourceId + '\'' +
+                ", txId=" + txId +
+                '}';
+    }
+}
@@ -0,0 +1,72 @@
+package no.ssb.lds.core.txlog;
+
+import de.huxhorn.sulky.ulid.ULID;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The last position of one tx-log topic, and the callers that wait for it to advance. The position only moves
+ * forward in tx-id order, so that sagas that complete out of order do not move it back.
+ */
+class TxLogPositionTracker {
+
+    // guarded by this
+    private TxLogPosition position;
+    private final List<Waiter> waiters = new ArrayList<>();
+
+    TxLogPositionTracker(TxLogPosition initial) {
+        this.position = initial;
+    }
+
+    synchronized TxLogPosition get() {
+        return position;
+    }
+
+    void advance(TxLogPosition next) {
+        List<Waiter> advanced = new ArrayList<>();
+        synchronized (this) {
+            if (position != null && position.getTxId().compareTo(next.getTxId()) >= 0) {
+                return;
+            }
+            position = next;
+            waiters.removeIf(waiter -> {
+                if (waiter.future.isDone() || waiter.isAdvancedBy(next)) {
+                    advanced.add(waiter);
+                    return true;
+                }
+                return false;
+            });
+        }
+        for (Waiter waiter : advanced) {
+            waiter.future.complete(next);
+        }
+    }
+
+    /**
+     * @return a future that completes with the position when it is after the tx-id, immediately if it already is.
+     */
+    synchronized CompletableFuture<TxLogPosition> awaitAfter(ULID.Value txId) {
+        Waiter waiter = new Waiter(txId);
+        if (position != null && waiter.isAdvancedBy(position)) {
+            return CompletableFuture.completedFuture(position);
+        }
+        waiters.removeIf(w -> w.future.isDone()); // timed out
+        waiters.add(waiter);
+        return waiter.future;
+    }
+
+    static class Waiter {
+        final ULID.Value after;
+        final CompletableFuture<TxLogPosition> future = new CompletableFuture<>();
+
+        Waiter(ULID.Value after) {
+            this.after = after;
+        }
+
+        boolean isAdvancedBy(TxLogPosition position) {
+            return after == null || position.getTxId().compareTo(after) > 0;
+        }
+    }
+}
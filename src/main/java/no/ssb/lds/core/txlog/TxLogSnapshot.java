@@ -0,0 +1,57 @@
+package no.ssb.lds.core.txlog;
+
+import de.huxhorn.sulky.ulid.ULID;
+import no.ssb.rawdata.api.RawdataMessage;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A compacted copy of the tx-log of a source, written by {@link TxLogCompactor}. The snapshot topic holds the entries
+ * that the compaction kept, in tx-log order, and covers the tx-log up to and including the covered tx-id. A restore
+ * that replays the snapshot topic and then the tx-log after the covered tx-id ends in the same state as a replay of
+ * the whole tx-log.
+ * <p>
+ * The snapshots of a source are listed in the snapshots topic of its tx-log topic, one message per snapshot, and the
+ * last message is the latest snapshot.
+ */
+public class TxLogSnapshot {
+
+    static final String TOPIC = "topic";
+    static final String COVERS = "covers";
+
+    private final String topic;
+    private final ULID.Value coversTxId;
+
+    TxLogSnapshot(String topic, ULID.Value coversTxId) {
+        this.topic = topic;
+        this.coversTxId = coversTxId;
+    }
+
+    /**
+     * @return the latest snapshot of the source, or null if there is none.
+     */
+    public static TxLogSnapshot latest(TxlogRawdataPool pool, String source) {
+        RawdataMessage message = pool.getClient().lastMessage(snapshotsTopicOf(pool.topicOf(source)));
+        if (message == null) {
+            return null;
+        }
+        return new TxLogSnapshot(new String(message.get(TOPIC), StandardCharsets.UTF_8),
+                ULID.parseULID(new String(message.get(COVERS), StandardCharsets.UTF_8)));
+    }
+
+    static String snapshotsTopicOf(String txLogTopic) {
+        return txLogTopic + "-snapshots";
+    }
+
+    static String snapshotTopicOf(String txLogTopic, ULID.Value coversTxId) {
+        return txLogTopic + "-snapshot-" + coversTxId.toString();
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public ULID.Value getCoversTxId() {
+        return coversTxId;
+    }
+}
@@ -10,17 +10,35 @@ import no.ssb.rawdata.api.RawdataMessage;
 import org.msgpack.jackson.dataformat.MessagePackFactory;
 
 import java.io.IOException;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.Date;
 
-import static java.util.Optional.ofNullable;
-
 public class TxLogTools {
 
     static final ObjectMapper mapper = new ObjectMapper(new MessagePackFactory());
 
+    /**
+     * Write the saga input as a tx-log entry in the compact format of {@link TxLogEntry}.
+     */
     public static RawdataMessage.Builder sagaInputToTxEntry(RawdataMessage.Builder builder, SagaInput sagaInput) {
+        builder.ulid(ULID.parseULID(sagaInput.txId()));
+        builder.position(positionOf(sagaInput));
+        return TxLogEntry.encode(builder, sagaInput);
+    }
+
+    static String positionOf(SagaInput sagaInput) {
+        if (sagaInput.batch() == null) {
+            return String.format("%s/%s/%s", sagaInput.entity(), sagaInput.resourceId(), Date.from(sagaInput.version().toInstant()).getTime());
+        }
+        if (sagaInput.source() != null && sagaInput.sourceId() != null) {
+            return sagaInput.source() + "::" + sagaInput.sourceId();
+        }
+        return sagaInput.txId();
+    }
+
+    /**
+     * Write the saga input in the format used before {@link TxLogEntry}, with msgpack meta, data and batch keys.
+     */
+    static RawdataMessage.Builder sagaInputToLegacyTxEntry(RawdataMessage.Builder builder, SagaInput sagaInput) {
         ObjectNode meta = mapper.createObjectNode();
         meta.put("method", sagaInput.method());
         meta.put("schema", sagaInput.schema());
@@ -37,46 +55,20 @@ public class TxLogTools {
             meta.put("sourceId", sagaInput.sourceId());
         }
         builder.ulid(ULID.parseULID(sagaInput.txId()));
-        if (sagaInput.batch() == null) {
-            String uri = String.format("%s/%s/%s", sagaInput.entity(), sagaInput.resourceId(), Date.from(sagaInput.version().toInstant()).getTime());
-            builder.position(uri);
-            if (sagaInput.data() != null) {
-                builder.put("data", toBytes(sagaInput.data()));
-            }
-        } else {
-            if (sagaInput.source() != null && sagaInput.sourceId() != null) {
-                builder.position(sagaInput.source() + "::" + sagaInput.sourceId());
-            } else {
-                builder.position(sagaInput.txId());
-            }
+        builder.position(positionOf(sagaInput));
+        if (sagaInput.batch() != null) {
             builder.put("batch", toBytes(sagaInput.batch()));
+        } else if (sagaInput.data() != null) {
+            builder.put("data", toBytes(sagaInput.data()));
         }
         return builder.put("meta", toBytes(meta));
     }
 
+    /**
+     * Read a tx-log entry in either the compact or the legacy format.
+     */
     public static SagaInput txEntryToSagaInput(RawdataMessage message) {
-        JsonNode meta = toJson(message.get("meta"));
-        if (message.keys().contains("batch")) {
-            JsonNode batch = toJson(message.get("batch"));
-            return new SagaInput(message.ulid(),
-                    meta.get("method").textValue(),
-                    meta.get("schema").textValue(),
-                    meta.get("namespace").textValue(),
-                    ofNullable(meta.get("source")).map(JsonNode::textValue).orElse(null),
-                    ofNullable(meta.get("sourceId")).map(JsonNode::textValue).orElse(null),
-                    batch);
-        }
-        JsonNode data = message.keys().contains("data") ? toJson(message.get("data")) : null;
-        return new SagaInput(message.ulid(),
-                meta.get("method").textValue(),
-                meta.get("schema").textValue(),
-                meta.get("namespace").textValue(),
-                meta.get("entity").textValue(),
-                meta.get("id").textValue(),
-                ZonedDateTime.parse(meta.get("version").textValue(), DateTimeFormatter.ISO_ZONED_DATE_TIME),
-                ofNullable(meta.get("source")).map(JsonNode::textValue).orElse(null),
-                ofNullable(meta.get("sourceId")).map(JsonNode::textValue).orElse(null),
-                data);
+        return TxLogEntry.of(message).toSagaInput();
     }
 
     public static byte[] toBytes(JsonNode node) {
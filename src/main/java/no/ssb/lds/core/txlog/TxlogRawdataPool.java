@@ -1,15 +1,19 @@
 package no.ssb.lds.core.txlog;
 
+import de.huxhorn.sulky.ulid.ULID;
+import no.ssb.lds.core.saga.SagaInput;
+import no.ssb.lds.core.utils.Histogram;
 import no.ssb.rawdata.api.RawdataClient;
 import no.ssb.rawdata.api.RawdataMessage;
 import no.ssb.rawdata.api.RawdataProducer;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
 import static java.util.Optional.ofNullable;
 
-public class TxlogRawdataPool {
+public class TxlogRawdataPool implements AutoCloseable {
 
     private final RawdataClient client;
     private final boolean splitSources;
@@ -17,6 +21,15 @@ public class TxlogRawdataPool {
     private final String txLogTopicPrefix;
 
     private final Map<String, RawdataProducer> producerByTopic = new ConcurrentHashMap<>();
+    private final Map<String, TxLogBatchPublisher> batchPublisherByTopic = new ConcurrentHashMap<>();
+    private final Map<String, TxLogPositionTracker> positionByTopic = new ConcurrentHashMap<>();
+
+    private final Histogram publishBatchSizes = new Histogram();
+    private final Histogram publishLatenciesMicros = new Histogram();
+
+    private volatile int maxBatchSize = 1;
+    private volatile long lingerMillis;
+    private volatile boolean batching;
 
     public TxlogRawdataPool(RawdataClient client, boolean splitSources, String defaultSource, String txLogTopicPrefix) {
         this.client = client;
@@ -41,6 +54,67 @@ public class TxlogRawdataPool {
         return txLogTopicPrefix;
     }
 
+    /**
+     * Publish the entries of concurrent sagas to the same topic together, in batches of at most maxBatchSize entries
+     * that are published at most lingerMillis after their first entry.
+     */
+    public void enableBatching(int maxBatchSize, long lingerMillis) {
+        this.maxBatchSize = maxBatchSize;
+        this.lingerMillis = lingerMillis;
+        this.batching = true;
+    }
+
+    /**
+     * Publish the pending batches and stop the batch publishers. Entries that are published after close are not
+     * batched.
+     */
+    @Override
+    public void close() {
+        batching = false;
+        for (TxLogBatchPublisher batchPublisher : batchPublisherByTopic.values()) {
+            batchPublisher.close();
+        }
+    }
+
+    /**
+     * Publish the entries to the tx-log topic of the source, batched with the entries of other sagas if batching is
+     * enabled.
+     *
+     * @return a future that completes when the entries have been written.
+     */
+    public CompletableFuture<Void> publish(String source, RawdataMessage.Builder... builders) {
+        String topic = topicOf(source);
+        RawdataProducer producer = producerByTopic.computeIfAbsent(topic, client::producer);
+        if (!batching) {
+            long start = System.nanoTime();
+            try {
+                producer.publishBuilders(builders);
+            } catch (Throwable t) {
+                return CompletableFuture.failedFuture(t);
+            } finally {
+                publishBatchSizes.record(builders.length);
+                publishLatenciesMicros.record((System.nanoTime() - start) / 1000);
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+        return batchPublisherByTopic.computeIfAbsent(topic, t -> new TxLogBatchPublisher(t, producer, maxBatchSize, lingerMillis,
+                publishBatchSizes, publishLatenciesMicros)).publish(builders);
+    }
+
+    /**
+     * @return the number of entries per call to the producer.
+     */
+    public Histogram getPublishBatchSizes() {
+        return publishBatchSizes;
+    }
+
+    /**
+     * @return the duration of calls to the producer, in microseconds.
+     */
+    public Histogram getPublishLatenciesMicros() {
+        return publishLatenciesMicros;
+    }
+
     public RawdataProducer producer(String source) {
         String topic = topicOf(source);
         return producerByTopic.computeIfAbsent(topic, client::producer);
@@ -55,6 +129,92 @@ public class TxlogRawdataPool {
         return txLogTopicPrefix + defaultSource;
     }
 
+    /**
+     * Read the last position of the tx-log topic of the source into memory, if it has not been read.
+     */
+    public void seedLastPosition(String source) {
+        positionTracker(topicOf(source));
+    }
+
+    /**
+     * The tracker of the topic, created from the last message of the topic if the topic is not tracked. Only called
+     * for topics that are written or seeded, so that the trackers are bounded by the sources that are in use.
+     */
+    private TxLogPositionTracker positionTracker(String topic) {
+        TxLogPositionTracker tracker = positionByTopic.get(topic);
+        if (tracker != null) {
+            return tracker;
+        }
+        // read outside of the map, lastMessage blocks on the rawdata provider
+        TxLogPosition position = readLastPosition(topic);
+        TxLogPositionTracker seeded = new TxLogPositionTracker(position);
+        TxLogPositionTracker existing = positionByTopic.putIfAbsent(topic, seeded);
+        if (existing == null) {
+            return seeded;
+        }
+        if (position != null) {
+            existing.advance(position); // no-op unless this read saw a later entry
+        }
+        return existing;
+    }
+
+    private TxLogPosition readLastPosition(String topic) {
+        RawdataMessage lastMessage = client.lastMessage(topic);
+        if (lastMessage == null) {
+            return null;
+        }
+        TxLogEntry entry = TxLogEntry.of(lastMessage);
+        return new TxLogPosition(entry.source(), entry.sourceId(), lastMessage.ulid());
+    }
+
+    /**
+     * Record the entry of the saga input as the last position of its tx-log topic, unless a later entry has been
+     * recorded. Called by the tx-log adapters when the entry has been written.
+     */
+    public void advancePosition(SagaInput sagaInput) {
+        positionTracker(topicOf(sagaInput.source()))
+                .advance(new TxLogPosition(sagaInput.source(), sagaInput.sourceId(), ULID.parseULID(sagaInput.txId())));
+    }
+
+    /**
+     * @return the position of the last entry written to the tx-log of the source, or null if the tx-log is empty or
+     * the source does not have its own tx-log. Read from memory if the source has been written or seeded, else from
+     * the tx-log without keeping it in memory.
+     */
+    public TxLogPosition getLastPosition(String source) {
+        if (!splitSources && !source.equals(defaultSource)) {
+            return null;
+        }
+        String topic = topicOf(source);
+        TxLogPositionTracker tracker = positionByTopic.get(topic);
+        return tracker != null ? tracker.get() : readLastPosition(topic);
+    }
+
+    /**
+     * @return a future that completes with the last position of the tx-log of the source when it is after the
+     * tx-id, or immediately if it already is or the tx-id is null. Completes with null if the source does not have
+     * its own tx-log. A source that has not been written or seeded is not tracked, and the future completes
+     * immediately with its last position.
+     */
+    public CompletableFuture<TxLogPosition> awaitPositionAfter(String source, ULID.Value txId) {
+        if (!splitSources && !source.equals(defaultSource)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        String topic = topicOf(source);
+        TxLogPositionTracker tracker = positionByTopic.get(topic);
+        if (tracker == null) {
+            return CompletableFuture.completedFuture(readLastPosition(topic));
+        }
+        return tracker.awaitAfter(txId);
+    }
+
+    /**
+     * @return the number of tx-log topics whose last position is held in memory.
+     */
+    public int getTrackedSourceCount() {
+        return positionByTopic.size();
+    }
+
     public RawdataMessage getLastMessage(String source) {
         if (!splitSources && !source.equals(defaultSource)) {
             return null;
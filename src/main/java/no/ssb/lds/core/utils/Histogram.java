@@ -0,0 +1,69 @@
+package no.ssb.lds.core.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative values with power-of-two buckets. Bucket i counts the values that are at most
+ * 2^i and greater than 2^(i-1), and bucket 0 counts the values that are at most 1.
+ */
+public class Histogram {
+
+    static final int BUCKETS = 64;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public Histogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long value) {
+        long v = Math.max(0, value);
+        int bucket = v <= 1 ? 0 : BUCKETS - Long.numberOfLeadingZeros(v - 1);
+        buckets[Math.min(bucket, BUCKETS - 1)].increment();
+        count.increment();
+        sum.add(v);
+        max.accumulateAndGet(v, Math::max);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return the count of each bucket, up to and including the highest bucket with a value.
+     */
+    public long[] getBucketCounts() {
+        long[] counts = new long[BUCKETS];
+        int highest = -1;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            if (counts[i] > 0) {
+                highest = i;
+            }
+        }
+        long[] result = new long[highest + 1];
+        System.arraycopy(counts, 0, result, 0, result.length);
+        return result;
+    }
+
+    /**
+     * @return the largest value that is counted in the bucket.
+     */
+    public static long getBucketUpperBound(int bucket) {
+        return bucket >= 63 ? Long.MAX_VALUE : 1L << bucket;
+    }
+}
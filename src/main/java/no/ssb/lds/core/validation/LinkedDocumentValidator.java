@@ -1,22 +1,15 @@
 package no.ssb.lds.core.validation;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import no.ssb.lds.api.persistence.json.JsonTools;
 import no.ssb.lds.api.specification.Specification;
-import no.ssb.lds.api.specification.SpecificationElement;
-import no.ssb.lds.api.specification.SpecificationElementType;
-import no.ssb.lds.api.specification.SpecificationTraversal;
 import no.ssb.lds.core.schema.SchemaRepository;
-import org.everit.json.schema.Schema;
-import org.everit.json.schema.ValidationException;
-import org.json.JSONArray;
-import org.json.JSONObject;
+import no.ssb.lds.core.specification.LinkPlan;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Deque;
-import java.util.LinkedList;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.io.IOException;
+import java.util.List;
 
 public class LinkedDocumentValidator {
 
@@ -24,7 +17,6 @@ public class LinkedDocumentValidator {
 
     private final Specification specification;
     private final SchemaRepository schemaRepository;
-    private final Pattern linkPattern = Pattern.compile("/([^/]+)/([^/]+)");
 
     public LinkedDocumentValidator(Specification specification, SchemaRepository schemaRepository) {
         this.specification = specification;
@@ -32,71 +24,34 @@ public class LinkedDocumentValidator {
     }
 
     public void validate(String managedDomain, String document) throws LinkedDocumentValidationException {
-
-        // TODO Use already parsed Jackson instead of org.json. Requires a change of json-schema validation library
-        JSONObject linkedDocument = new JSONObject(document);
-
-        Schema schema = schemaRepository.getJsonSchema().getSchema(managedDomain);
+        JsonNode linkedDocument;
         try {
-            schema.validate(linkedDocument);
-        } catch (ValidationException e) {
-            e.getAllMessages().forEach(m -> LOG.debug("{}", m));
-            throw new LinkedDocumentValidationException(e.getAllMessages().toString(), e);
+            linkedDocument = JsonTools.mapper.readTree(document);
+        } catch (IOException e) {
+            throw new LinkedDocumentValidationException("Not a valid json document: " + e.getMessage(), e);
         }
-        SpecificationElement managedDomainElement = specification.getRootElement().getProperties().get(managedDomain);
-        SpecificationTraversal.depthFirstPreOrderFullTraversal(managedDomainElement, (ancestors, te) -> {
-            if (SpecificationElementType.REF != te.getSpecificationElementType()) {
-                return;
-            }
-            JSONObject context = linkedDocument;
-            for (SpecificationElement ancestor : ancestors) {
-                if (SpecificationElementType.ROOT == ancestor.getSpecificationElementType()) {
-                    continue;
-                }
-                if (SpecificationElementType.MANAGED == ancestor.getSpecificationElementType()) {
-                    continue;
-                }
-                if (!context.has(ancestor.getName())) {
-                    return;
-                }
-                context = context.getJSONObject(ancestor.getName());
-            }
-            if (!context.has(te.getName())) {
-                return;
-            }
-            if (te.getJsonTypes().contains("array")) {
-                if (context.isNull(te.getName())) {
-                    return; // null instead of an array, no links to validate
-                }
-                JSONArray linkArray = context.getJSONArray(te.getName());
-                for (int i = 0; i < linkArray.length(); i++) {
-                    String link = linkArray.getString(i);
-                    validateLink(ancestors, te, link);
-                }
-            } else {
-                String link = context.optString(te.getName(), null);
-                if (link != null) {
-                    validateLink(ancestors, te, link);
-                }
-            }
-        });
+        validate(managedDomain, linkedDocument);
     }
 
-    private void validateLink(Deque<SpecificationElement> ancestors, SpecificationElement te, String link) throws LinkedDocumentValidationException {
-        Matcher m = linkPattern.matcher(link);
-        if (!m.matches()) {
-            throw new LinkedDocumentValidationException(String.format("Not a valid link. Navigation: %s: \"%s\"", printNavigationPath(ancestors, te), link));
+    public void validate(String managedDomain, JsonNode linkedDocument) throws LinkedDocumentValidationException {
+        List<String> violations = schemaRepository.getJsonSchema().getValidator(managedDomain).validate(linkedDocument);
+        if (!violations.isEmpty()) {
+            violations.forEach(m -> LOG.debug("{}", m));
+            throw new LinkedDocumentValidationException(violations.toString());
         }
-        String linkedDomain = m.group(1);
-        if (!te.getRefTypes().contains(linkedDomain)) {
-            throw new LinkedDocumentValidationException(String.format("Illegal linked-domain: \"%s\". Navigation: %s: \"%s\"", linkedDomain, printNavigationPath(ancestors, te), link));
+        LinkPlan linkPlan = LinkPlan.of(specification, managedDomain);
+        if (linkPlan != null) {
+            linkPlan.forEachLink(linkedDocument, this::validateLink);
         }
     }
 
-    private String printNavigationPath(Deque<SpecificationElement> ancestors, SpecificationElement te) {
-        Deque<SpecificationElement> debugListing = new LinkedList<>(ancestors);
-        debugListing.removeFirst();
-        debugListing.addLast(te);
-        return debugListing.stream().map(e -> e.getName()).collect(Collectors.joining("."));
+    private void validateLink(LinkPlan.Link link, String value) throws LinkedDocumentValidationException {
+        if (!LinkPlan.isWellFormed(value)) {
+            throw new LinkedDocumentValidationException(String.format("Not a valid link. Navigation: %s: \"%s\"", link.getNavigationPath(), value));
+        }
+        String linkedDomain = LinkPlan.linkedDomain(value);
+        if (!link.getRefTypes().contains(linkedDomain)) {
+            throw new LinkedDocumentValidationException(String.format("Illegal linked-domain: \"%s\". Navigation: %s: \"%s\"", linkedDomain, link.getNavigationPath(), value));
+        }
     }
 }
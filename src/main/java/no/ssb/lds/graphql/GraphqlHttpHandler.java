@@ -14,6 +14,7 @@ import io.undertow.util.Headers;
 import io.undertow.util.HttpString;
 import io.undertow.util.StatusCodes;
 import no.ssb.lds.api.persistence.json.JsonTools;
+import no.ssb.lds.core.domain.ResponseFormat;
 
 import java.io.BufferedInputStream;
 import java.io.IOException;
@@ -153,11 +154,8 @@ public class GraphqlHttpHandler implements HttpHandler {
 
         // Serialize
         Map<String, Object> resultMap = result.toSpecification();
-        String jsonResult = JsonTools.toJson(JsonTools.toJsonNode(resultMap));
 
-        exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/json");
         exchange.setStatusCode(StatusCodes.OK);
-        exchange.getResponseSender().send(jsonResult);
-
+        ResponseFormat.negotiate(exchange).send(exchange, JsonTools.toJsonNode(resultMap));
     }
 }
@@ -5,25 +5,25 @@ import graphql.schema.DataFetchingEnvironment;
 import no.ssb.lds.api.persistence.Transaction;
 import no.ssb.lds.api.persistence.json.JsonDocument;
 import no.ssb.lds.api.persistence.reactivex.RxJsonPersistence;
+import no.ssb.lds.core.specification.LinkPlan;
 import no.ssb.lds.graphql.GraphQLContext;
 
 import java.time.ZonedDateTime;
 import java.util.Map;
 import java.util.Objects;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
 
 public class PersistenceLinkFetcher implements DataFetcher<Map<String, Object>> {
 
     private final String field;
     private final RxJsonPersistence persistence;
-    private final Pattern pattern;
+    private final Set<String> targets;
     private final String namespace;
 
-    public PersistenceLinkFetcher(RxJsonPersistence persistence, String namespace, String field, String target) {
+    public PersistenceLinkFetcher(RxJsonPersistence persistence, String namespace, String field, Set<String> targets) {
         this.field = Objects.requireNonNull(field);
         this.persistence = Objects.requireNonNull(persistence);
-        this.pattern = Pattern.compile("/(?<type>" + Objects.requireNonNull(target) + ")/(?<id>.*)");
+        this.targets = Set.copyOf(targets);
         this.namespace = Objects.requireNonNull(namespace);
     }
 
@@ -31,10 +31,9 @@ public class PersistenceLinkFetcher implements DataFetcher<Map<String, Object>>
     public Map<String, Object> get(DataFetchingEnvironment environment) {
         Map<String, Object> source = environment.getSource();
         String link = (String) source.get(field);
-        Matcher matcher = pattern.matcher(link);
-        if (matcher.matches()) {
-            String id = matcher.group("id");
-            String type = matcher.group("type");
+        String type = LinkPlan.linkedDomain(link);
+        if (type != null && targets.contains(type)) {
+            String id = LinkPlan.linkedId(link);
             GraphQLContext context = environment.getContext();
             JsonDocument document = readDocument(type, id, context.getSnapshot());
             if (document != null) {
@@ -6,6 +6,7 @@ import io.reactivex.Maybe;
 import no.ssb.lds.api.persistence.Transaction;
 import no.ssb.lds.api.persistence.json.JsonDocument;
 import no.ssb.lds.api.persistence.reactivex.RxJsonPersistence;
+import no.ssb.lds.core.specification.LinkPlan;
 import no.ssb.lds.graphql.GraphQLContext;
 
 import java.time.ZonedDateTime;
@@ -13,22 +14,18 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class PersistenceLinksFetcher implements DataFetcher<List<Map<String, Object>>> {
 
     private final String field;
     private final String target;
     private final RxJsonPersistence persistence;
-    private final Pattern pattern;
     private final String namespace;
 
     public PersistenceLinksFetcher(RxJsonPersistence persistence, String namespace, String field, String target) {
         this.field = Objects.requireNonNull(field);
         this.target = Objects.requireNonNull(target);
         this.persistence = Objects.requireNonNull(persistence);
-        this.pattern = Pattern.compile("/" + Objects.requireNonNull(target) + "/(?<id>.*)");
         this.namespace = Objects.requireNonNull(namespace);
     }
 
@@ -41,9 +38,8 @@ public class PersistenceLinksFetcher implements DataFetcher<List<Map<String, Obj
             return null;
         }
         for (String link : links) {
-            Matcher matcher = pattern.matcher(link);
-            if (matcher.matches()) {
-                String id = matcher.group("id");
+            if (target.equals(LinkPlan.linkedDomain(link))) {
+                String id = LinkPlan.linkedId(link);
                 GraphQLContext context = environment.getContext();
                 JsonDocument document = readDocument(id, context.getSnapshot());
                 results.add(document != null ? document.toMap() : null);
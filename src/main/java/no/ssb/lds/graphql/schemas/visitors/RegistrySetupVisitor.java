@@ -35,7 +35,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
 import java.util.stream.Collectors;
 
@@ -222,7 +224,7 @@ public class RegistrySetupVisitor extends GraphQLTypeVisitorStub {
                     simplePrint(unwrapAll(targetType))
             );
             registry.dataFetcher(FieldCoordinates.coordinates(sourceObject, field),
-                    new PersistenceLinkFetcher(persistence, namespace, field.getName(), unwrapAll(targetType).getName()));
+                    new PersistenceLinkFetcher(persistence, namespace, field.getName(), Set.of(unwrapAll(targetType).getName())));
         } else {
             if (hasReverseLinkDirective(field)) {
                 log.trace("ManyToOne: {} -> {} -> {}",
@@ -250,12 +252,15 @@ public class RegistrySetupVisitor extends GraphQLTypeVisitorStub {
 
         // TODO: Factorize the logic in PersistenceLinksConnectionFetcher.
         String targetTypeName;
+        Set<String> targetTypeNames;
         if (targetType instanceof GraphQLUnionType) {
-            targetTypeName = ((GraphQLUnionType) targetType).getTypes().stream()
+            targetTypeNames = ((GraphQLUnionType) targetType).getTypes().stream()
                     .map(GraphQLNamedOutputType::getName)
-                    .collect(Collectors.joining("|", "(", ")"));
+                    .collect(Collectors.toCollection(LinkedHashSet::new));
+            targetTypeName = "(" + String.join("|", targetTypeNames) + ")";
         } else {
             targetTypeName = targetType.getName();
+            targetTypeNames = Set.of(targetTypeName);
         }
         if (sourceObject.getName().equals("Query")) {
             log.trace("RootOneToOne: {} -> {} -> {} ",
@@ -272,7 +277,7 @@ public class RegistrySetupVisitor extends GraphQLTypeVisitorStub {
                     simplePrint(unwrapAll(targetType))
             );
             registry.dataFetcher(FieldCoordinates.coordinates(sourceObject, field), new PersistenceLinkFetcher(
-                    persistence, namespace, field.getName(), targetTypeName));
+                    persistence, namespace, field.getName(), targetTypeNames));
         }
         return TraversalControl.CONTINUE;
     }
@@ -1,7 +1,7 @@
 package no.ssb.lds.core.controller;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import de.huxhorn.sulky.ulid.ULID;
 import no.ssb.lds.api.persistence.json.JsonTools;
 import no.ssb.lds.test.ConfigurationOverride;
 import no.ssb.lds.test.client.TestClient;
@@ -11,9 +11,14 @@ import org.testng.annotations.Listeners;
 import org.testng.annotations.Test;
 
 import javax.inject.Inject;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import static no.ssb.lds.core.utils.FileAndClasspathReaderUtils.readFileOrClasspathResource;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
 
 @Listeners(TestServerListener.class)
 @Test(singleThreaded = true)
@@ -33,12 +38,11 @@ public class SourceTest {
             "txlog.rawdata.provider", "memory"
     })
     public void thatLastSourceIdIsNullWhenNoDataHasBeenReceivedForSource() {
-        ObjectNode expected = JsonTools.mapper.createObjectNode();
-        expected.putNull("lastSourceId");
-
-        String response = client.get("/source/MyEmptySource").expect200Ok().body();
-        JsonNode actual = JsonTools.toJsonNode(response);
-        assertEquals(actual, expected);
+        int trackedSources = server.getApplication().getTxlogRawdataPool().getTrackedSourceCount();
+        assertLastSourceId("/source/MyEmptySource", null);
+        client.get("/source/MyOtherEmptySource?after=" + new ULID().nextULID() + "&timeoutMs=100").expect200Ok();
+        // sources that have not been written are looked up without being tracked
+        assertEquals(server.getApplication().getTxlogRawdataPool().getTrackedSourceCount(), trackedSources);
     }
 
     @Test
@@ -57,20 +61,8 @@ public class SourceTest {
         client.put("/data/provisionagreement/2a41c/contacts/contact/821aa?sync=true&source=B&sourceId=b3").expect200Ok();
         client.delete("/data/provisionagreement/2a41c/contacts/contact/4b2ef?sync=true&source=B&sourceId=b4").expect200Ok();
 
-        {
-            ObjectNode expected = JsonTools.mapper.createObjectNode();
-            expected.put("lastSourceId", "a3");
-            String response = client.get("/source/A").expect200Ok().body();
-            JsonNode actual = JsonTools.toJsonNode(response);
-            assertEquals(actual, expected);
-        }
-        {
-            ObjectNode expected = JsonTools.mapper.createObjectNode();
-            expected.put("lastSourceId", "b4");
-            String response = client.get("/source/B").expect200Ok().body();
-            JsonNode actual = JsonTools.toJsonNode(response);
-            assertEquals(actual, expected);
-        }
+        assertLastSourceId("/source/A", "a3");
+        assertLastSourceId("/source/B", "b4");
     }
 
     @Test
@@ -89,26 +81,47 @@ public class SourceTest {
         client.put("/data/provisionagreement/2a41c/contacts/contact/821aa?sync=true&source=B&sourceId=b3").expect200Ok();
         client.delete("/data/provisionagreement/2a41c/contacts/contact/4b2ef?sync=true&source=B&sourceId=b4").expect200Ok();
 
-        {
-            ObjectNode expected = JsonTools.mapper.createObjectNode();
-            expected.putNull("lastSourceId");
-            String response = client.get("/source/A").expect200Ok().body();
-            JsonNode actual = JsonTools.toJsonNode(response);
-            assertEquals(actual, expected);
-        }
-        {
-            ObjectNode expected = JsonTools.mapper.createObjectNode();
-            expected.putNull("lastSourceId");
-            String response = client.get("/source/B").expect200Ok().body();
-            JsonNode actual = JsonTools.toJsonNode(response);
-            assertEquals(actual, expected);
-        }
-        {
-            ObjectNode expected = JsonTools.mapper.createObjectNode();
-            expected.put("lastSourceId", "b4");
-            String response = client.get("/source/default").expect200Ok().body();
-            JsonNode actual = JsonTools.toJsonNode(response);
-            assertEquals(actual, expected);
+        assertLastSourceId("/source/A", null);
+        assertLastSourceId("/source/B", null);
+        assertLastSourceId("/source/default", "b4");
+    }
+
+    @Test
+    @ConfigurationOverride({
+            "txlog.split.sources", "true",
+            "txlog.default-source", "default",
+            "txlog.rawdata.topic-prefix", "tx-poll-",
+            "txlog.rawdata.provider", "memory"
+    })
+    public void thatLongPollReturnsWhenSourcePositionAdvances() throws Exception {
+        client.put("/data/contact/4b2ef?sync=true&source=C&sourceId=c1", readFileOrClasspathResource("demo/3-skrue.json")).expect201Created();
+        String lastTxId = assertLastSourceId("/source/C", "c1").get("lastTxId").textValue();
+
+        // nothing is written after lastTxId, so the long-poll times out with the same position
+        JsonNode timedOut = JsonTools.toJsonNode(client.get("/source/C?after=" + lastTxId + "&timeoutMs=100").expect200Ok().body());
+        assertEquals(timedOut.get("lastTxId").textValue(), lastTxId);
+
+        CompletableFuture<JsonNode> poll = CompletableFuture.supplyAsync(() ->
+                JsonTools.toJsonNode(client.get("/source/C?after=" + lastTxId + "&timeoutMs=30000").expect200Ok().body()));
+        Thread.sleep(200);
+        assertFalse(poll.isDone());
+
+        client.put("/data/contact/821aa?sync=true&source=C&sourceId=c2", readFileOrClasspathResource("demo/4-donald.json")).expect201Created();
+
+        JsonNode advanced = poll.get(10, TimeUnit.SECONDS);
+        assertEquals(advanced.get("lastSourceId").textValue(), "c2");
+        assertNotEquals(advanced.get("lastTxId").textValue(), lastTxId);
+    }
+
+    private JsonNode assertLastSourceId(String path, String expectedSourceId) {
+        JsonNode actual = JsonTools.toJsonNode(client.get(path).expect200Ok().body());
+        if (expectedSourceId == null) {
+            assertTrue(actual.get("lastSourceId").isNull());
+            assertTrue(actual.get("lastTxId").isNull());
+        } else {
+            assertEquals(actual.get("lastSourceId").textValue(), expectedSourceId);
+            assertTrue(actual.get("lastTxId").isTextual());
         }
+        return actual;
     }
 }
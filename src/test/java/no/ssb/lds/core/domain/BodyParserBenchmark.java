@@ -0,0 +1,95 @@
+package no.ssb.lds.core.domain;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures allocation when ingesting a document of one MiB of json, or the same document as msgpack, comparing the
+ * former decode-to-string path with parsing directly from bytes and from an input-stream. Run with the main method
+ * from the test class-path, the gc profiler reports allocation per operation (gc.alloc.rate.norm), i.e. per MiB.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BodyParserBenchmark {
+
+    static final int MiB = 1024 * 1024;
+
+    byte[] json;
+    byte[] msgpack;
+
+    @Setup
+    public void setup() throws IOException {
+        ObjectNode document = BodyParser.jsonMapper.createObjectNode();
+        ArrayNode items = document.putArray("items");
+        int i = 0;
+        while (BodyParser.jsonMapper.writeValueAsBytes(document).length < MiB) {
+            for (int j = 0; j < 100; j++, i++) {
+                ObjectNode item = items.addObject();
+                item.put("id", "item-" + i);
+                item.put("name", "Name of item " + i + " with some non-ascii characters æøå");
+                item.put("value", i * 31L);
+                item.put("valid", i % 2 == 0);
+                item.putArray("links").add("/contact/c" + i).add("/contact/c" + (i + 1));
+            }
+        }
+        json = BodyParser.jsonMapper.writeValueAsBytes(document);
+        msgpack = BodyParser.msgPackMapper.writeValueAsBytes(document);
+    }
+
+    @Benchmark
+    public JsonNode jsonDecodeStringThenParse() throws IOException {
+        // the former ingestion path
+        return BodyParser.jsonMapper.readTree(new String(json, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public JsonNode jsonParseBytes() {
+        return BodyParser.deserializeBody("application/json", json);
+    }
+
+    @Benchmark
+    public JsonNode jsonParseStream() throws IOException {
+        return BodyParser.deserializeBody("application/json", new ByteArrayInputStream(json));
+    }
+
+    @Benchmark
+    public JsonNode msgpackParseBytes() {
+        return BodyParser.deserializeBody("application/msgpack", msgpack);
+    }
+
+    @Benchmark
+    public JsonNode msgpackParseStream() throws IOException {
+        return BodyParser.deserializeBody("application/msgpack", new ByteArrayInputStream(msgpack));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(BodyParserBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
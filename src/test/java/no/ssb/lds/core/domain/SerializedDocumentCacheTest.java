@@ -0,0 +1,81 @@
+package no.ssb.lds.core.domain;
+
+import no.ssb.lds.api.persistence.DocumentKey;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+public class SerializedDocumentCacheTest {
+
+    static final ZonedDateTime T1 = ZonedDateTime.of(2018, 1, 1, 12, 0, 0, 0, ZoneId.of("Etc/UTC"));
+
+    static DocumentKey key(String id, ZonedDateTime version) {
+        return new DocumentKey("ns", "Entity", id, version);
+    }
+
+    static String content(SerializedDocumentCache cache, SerializedDocumentCache.Entry entry) {
+        StringBuilder sb = new StringBuilder();
+        for (ByteBuffer buffer : cache.buffers(entry)) {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            sb.append(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return sb.toString();
+    }
+
+    SerializedDocumentCache.Entry put(SerializedDocumentCache cache, DocumentKey key, String content) {
+        return cache.put(cache.stamp(key.namespace(), key.entity(), key.id()), key, ResponseFormat.JSON, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void thatContentSpanningPagesIsSentFromTheCache() {
+        SerializedDocumentCache cache = new SerializedDocumentCache(1024, 8);
+        String json = "{\"id\":\"1\",\"name\":\"a name that does not fit in one page\"}";
+        cache.release(put(cache, key("1", T1), json));
+
+        SerializedDocumentCache.Entry entry = cache.acquire(key("1", T1), ResponseFormat.JSON);
+        assertNotNull(entry);
+        assertEquals(content(cache, entry), json);
+        cache.release(entry);
+
+        assertNull(cache.acquire(key("1", T1.plusSeconds(1)), ResponseFormat.JSON));
+        assertNull(cache.acquire(key("1", T1), ResponseFormat.MSGPACK));
+    }
+
+    @Test
+    public void thatInvalidatedEntryIsNotServed() {
+        SerializedDocumentCache cache = new SerializedDocumentCache(1024, 8);
+        cache.release(put(cache, key("1", T1), "{\"id\":\"1\"}"));
+        cache.invalidate("ns", "Entity", "1");
+        assertNull(cache.acquire(key("1", T1), ResponseFormat.JSON));
+        assertEquals(cache.getUsedBytes(), 0);
+
+        cache.release(put(cache, key("2", T1), "{\"id\":\"2\"}"));
+        cache.invalidateEntity("ns", "Entity");
+        assertNull(cache.acquire(key("2", T1), ResponseFormat.JSON));
+    }
+
+    @Test
+    public void thatPagesOfEvictedEntryAreKeptUntilReleased() {
+        SerializedDocumentCache cache = new SerializedDocumentCache(32, 8);
+        SerializedDocumentCache.Entry sending = put(cache, key("1", T1), "0123456789abcdef");
+        SerializedDocumentCache.Entry second = put(cache, key("2", T1), "0123456789ABCDEF");
+        cache.release(second);
+
+        // evicts both entries, but only the pages of the second entry can be reused
+        assertNull(put(cache, key("3", T1), "0123456789abcdef0123456789abcdef"));
+        assertEquals(cache.getEvictionCount(), 2);
+        assertEquals(content(cache, sending), "0123456789abcdef");
+
+        cache.release(sending);
+        assertEquals(cache.getUsedBytes(), 0);
+        assertNotNull(put(cache, key("3", T1), "0123456789abcdef0123456789abcdef"));
+    }
+}
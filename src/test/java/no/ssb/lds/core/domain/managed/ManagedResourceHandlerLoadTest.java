@@ -0,0 +1,138 @@
+package no.ssb.lds.core.domain.managed;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import no.ssb.lds.core.persistence.PersistenceCreateOrOverwriteSagaAdapter;
+import no.ssb.lds.core.persistence.SlowPersistenceInitializer;
+import no.ssb.lds.core.saga.SagaRepository;
+import no.ssb.lds.test.ConfigurationOverride;
+import no.ssb.lds.test.client.TestClient;
+import no.ssb.lds.test.server.TestServer;
+import no.ssb.lds.test.server.TestServerListener;
+import no.ssb.saga.api.Saga;
+import no.ssb.saga.execution.adapter.Adapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Listeners;
+import org.testng.annotations.Test;
+
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static no.ssb.lds.api.persistence.json.JsonTools.mapper;
+import static org.testng.Assert.assertTrue;
+
+@Listeners(TestServerListener.class)
+public class ManagedResourceHandlerLoadTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ManagedResourceHandlerLoadTest.class);
+
+    static final int WORKER_THREADS = 4;
+    static final int CONCURRENT_REQUESTS = 64;
+    static final int CONCURRENT_READS = 8;
+    static final long READ_DELAY_MS = 500;
+
+    @Inject
+    TestServer server;
+
+    @Inject
+    TestClient client;
+
+    /**
+     * Synchronous PUT requests are held open until their saga completes. When the request pipeline is non-blocking,
+     * the number of sagas in flight is bounded by saga capacity and not by the number of http worker threads.
+     */
+    @Test
+    @ConfigurationOverride({
+            "persistence.provider", "mem",
+            "sagalog.provider", "no.ssb.sagalog.memory.MemorySagaLogInitializer",
+            "saga.number-of-logs", "100",
+            "specification.schema", "spec/schemas/contact.json,spec/schemas/provisionagreement.json",
+            "saga.threadpool.core", "150",
+            "saga.threadpool.max", "300",
+            "saga.threadpool.queue.capacity", "20",
+            "http.worker-threads", String.valueOf(WORKER_THREADS),
+    })
+    public void thatConcurrentRequestsAreNotBoundedByWorkerThreads() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peakInFlight = new AtomicInteger();
+        {
+            final ObjectNode empty = mapper.createObjectNode();
+            SagaRepository sagaRepository = server.getApplication().getSagaRepository();
+            sagaRepository.getAdapterLoader().register(new Adapter<>(JsonNode.class, "SlowNodeAdapter", (i, d) -> {
+                int current = inFlight.incrementAndGet();
+                peakInFlight.accumulateAndGet(current, Math::max);
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+                return empty;
+            }));
+            sagaRepository.register(Saga
+                    .start(SagaRepository.SAGA_CREATE_OR_UPDATE_MANAGED_RESOURCE).linkTo("slownode")
+                    .id("slownode").adapter("SlowNodeAdapter").linkTo("persistence")
+                    .id("persistence").adapter(PersistenceCreateOrOverwriteSagaAdapter.NAME).linkToEnd()
+                    .end());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_REQUESTS);
+        try {
+            long start = System.currentTimeMillis();
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < CONCURRENT_REQUESTS; i++) {
+                String id = "load-" + i;
+                futures.add(CompletableFuture.runAsync(() ->
+                        client.put("/data/contact/" + id + "?sync=true", "{\"name\":\"" + id + "\",\"email\":\"" + id + "@example.com\"}").expect201Created(), executor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(60, TimeUnit.SECONDS);
+            LOG.info("{} concurrent requests completed in {} ms with a peak of {} sagas in flight", CONCURRENT_REQUESTS, System.currentTimeMillis() - start, peakInFlight.get());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(peakInFlight.get() > 2 * WORKER_THREADS, "Peak concurrency " + peakInFlight.get() + " was bounded by worker threads");
+    }
+
+    /**
+     * Persistence reads block the calling thread. With a single io-thread, concurrent GET requests only overlap when
+     * the reads run on worker threads; if they ran on the io-thread they would be served one at a time.
+     */
+    @Test
+    @ConfigurationOverride({
+            "persistence.provider", "slow-mem",
+            "persistence.cache.enabled", "false",
+            "specification.schema", "spec/schemas/contact.json,spec/schemas/provisionagreement.json",
+            "http.io-threads", "1",
+            "http.worker-threads", "16",
+    })
+    public void thatSlowReadsDoNotBlockIoThreads() throws Exception {
+        client.put("/data/contact/slow-read?sync=true", "{\"name\":\"slow-read\",\"email\":\"slow-read@example.com\"}").expect201Created();
+
+        ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_READS);
+        SlowPersistenceInitializer.readDelayMillis = READ_DELAY_MS;
+        try {
+            long start = System.currentTimeMillis();
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < CONCURRENT_READS; i++) {
+                futures.add(CompletableFuture.runAsync(() -> client.get("/data/contact/slow-read").expect200Ok(), executor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(60, TimeUnit.SECONDS);
+            long durationMs = System.currentTimeMillis() - start;
+            LOG.info("{} concurrent reads of {} ms each completed in {} ms", CONCURRENT_READS, READ_DELAY_MS, durationMs);
+
+            assertTrue(durationMs < CONCURRENT_READS * READ_DELAY_MS / 2, "Reads were serialized on the io-thread, took " + durationMs + " ms");
+        } finally {
+            SlowPersistenceInitializer.readDelayMillis = 0;
+            executor.shutdownNow();
+        }
+    }
+}
@@ -1,24 +1,48 @@
 package no.ssb.lds.core.domain.managed;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import no.ssb.lds.api.persistence.DocumentKey;
 import no.ssb.lds.api.persistence.Transaction;
 import no.ssb.lds.api.persistence.json.JsonDocument;
 import no.ssb.lds.api.persistence.json.JsonTools;
 import no.ssb.lds.api.persistence.reactivex.RxJsonPersistence;
+import no.ssb.lds.api.search.SearchIndex;
+import no.ssb.lds.core.persistence.PersistenceGroupSagaAdapter;
+import no.ssb.lds.core.saga.SagaInput;
+import no.ssb.lds.core.saga.SagaRepository;
+import no.ssb.lds.core.txlog.TxLogEntry;
+import no.ssb.lds.core.txlog.TxlogRawdataPool;
+import no.ssb.lds.test.ConfigurationOverride;
 import no.ssb.lds.test.client.ResponseHelper;
 import no.ssb.lds.test.client.TestClient;
 import no.ssb.lds.test.server.TestServer;
 import no.ssb.lds.test.server.TestServerListener;
+import no.ssb.rawdata.api.RawdataConsumer;
+import no.ssb.rawdata.api.RawdataMessage;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
 import org.skyscreamer.jsonassert.JSONAssert;
 import org.testng.annotations.Listeners;
 import org.testng.annotations.Test;
 
 import javax.inject.Inject;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
@@ -116,4 +140,280 @@ public class ManagedResourceHandlerTest {
     public void thatTimelineReturns404ForNonExistentResource() {
         client.get("/data/provisionagreement/non-existent-resource?timeline").expect404NotFound();
     }
+
+    @Test
+    public void thatTimelineIsBoundedByVersionRangeAndLimit() {
+        String id = "timeline-range-1";
+        createTestResource("provisionagreement", id, ZonedDateTime.of(2018, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC), "{\"name\":\"first\"}");
+        createTestResource("provisionagreement", id, ZonedDateTime.of(2019, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC), "{\"name\":\"second\"}");
+        createTestResource("provisionagreement", id, ZonedDateTime.of(2020, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC), "{\"name\":\"third\"}");
+
+        JsonNode bounded = JsonTools.toJsonNode(client.get("/data/provisionagreement/" + id + "?timeline&from=2019-01-01T00:00Z&to=2020-01-01T00:00Z").expect200Ok().body());
+        assertEquals(bounded.size(), 1);
+        assertEquals(bounded.get(0).get("document").get("name").textValue(), "second");
+
+        ResponseHelper<String> firstPage = client.get("/data/provisionagreement/" + id + "?timeline&limit=2").expect200Ok();
+        JsonNode firstPageResult = JsonTools.toJsonNode(firstPage.body());
+        assertEquals(firstPageResult.size(), 2);
+        assertEquals(firstPageResult.get(1).get("document").get("name").textValue(), "second");
+        assertTrue(firstPage.response().headers().firstValue("Link").isPresent());
+
+        JsonNode secondPageResult = JsonTools.toJsonNode(client.get("/data/provisionagreement/" + id + "?timeline&limit=2&after=" + URLEncoder.encode(firstPageResult.get(1).get("version").textValue(), StandardCharsets.UTF_8)).expect200Ok().body());
+        assertEquals(secondPageResult.size(), 1);
+        assertEquals(secondPageResult.get(0).get("document").get("name").textValue(), "third");
+    }
+
+    @Test
+    public void thatManagedListIsPaginatedWithCursors() {
+        createTestResource("contact", "page-c1", "{\"name\":\"c1\",\"email\":\"c1@example.com\"}");
+        createTestResource("contact", "page-c2", "{\"name\":\"c2\",\"email\":\"c2@example.com\"}");
+        createTestResource("contact", "page-c3", "{\"name\":\"c3\",\"email\":\"c3@example.com\"}");
+
+        ResponseHelper<String> firstPage = client.get("/data/contact?limit=2&after=page-c0").expect200Ok();
+        JsonNode firstPageResult = JsonTools.toJsonNode(firstPage.body());
+        assertTrue(firstPageResult.isArray());
+        assertEquals(firstPageResult.size(), 2);
+        assertEquals(firstPageResult.get(0).get("name").textValue(), "c1");
+        assertEquals(firstPageResult.get(1).get("name").textValue(), "c2");
+        assertTrue(firstPage.response().headers().firstValue("Link").orElseThrow().contains("after=page-c2"));
+
+        JsonNode secondPageResult = JsonTools.toJsonNode(client.get("/data/contact?limit=2&after=page-c2").expect200Ok().body());
+        assertEquals(secondPageResult.get(0).get("name").textValue(), "c3");
+    }
+
+    @Test
+    public void thatManagedListPageIsFilledPastDeletedDocuments() {
+        createTestResource("contact", "del-c1", "{\"name\":\"c1\",\"email\":\"c1@example.com\"}");
+        createTestResource("contact", "del-c2", "{\"name\":\"c2\",\"email\":\"c2@example.com\"}");
+        createTestResource("contact", "del-c3", "{\"name\":\"c3\",\"email\":\"c3@example.com\"}");
+        createTestResource("contact", "del-c4", "{\"name\":\"c4\",\"email\":\"c4@example.com\"}");
+        client.delete("/data/contact/del-c2?sync=true").expect204NoContent();
+
+        ResponseHelper<String> firstPage = client.get("/data/contact?limit=2&after=del-c0&before=del-c9").expect200Ok();
+        JsonNode firstPageResult = JsonTools.toJsonNode(firstPage.body());
+        assertEquals(firstPageResult.size(), 2);
+        assertEquals(firstPageResult.get(0).get("name").textValue(), "c1");
+        assertEquals(firstPageResult.get(1).get("name").textValue(), "c3");
+        String link = firstPage.response().headers().firstValue("Link").orElseThrow();
+        assertTrue(link.contains("after=del-c3&before=del-c9>; rel=\"next\""), link);
+
+        // the links keep the bounds of the requested range
+        String boundedLink = client.get("/data/contact?limit=1&after=del-c1&before=del-c9").expect200Ok()
+                .response().headers().firstValue("Link").orElseThrow();
+        assertTrue(boundedLink.contains("before=del-c3&after=del-c1>; rel=\"prev\""), boundedLink);
+
+        JsonNode backwardPageResult = JsonTools.toJsonNode(client.get("/data/contact?limit=2&before=del-c4").expect200Ok().body());
+        assertEquals(backwardPageResult.size(), 2);
+        assertEquals(backwardPageResult.get(0).get("name").textValue(), "c1");
+        assertEquals(backwardPageResult.get(1).get("name").textValue(), "c3");
+    }
+
+    @Test
+    public void thatManagedListRejectsInvalidLimit() {
+        client.get("/data/contact?limit=-1").expect400BadRequest();
+        client.get("/data/contact?limit=abc").expect400BadRequest();
+    }
+
+    @Test
+    public void thatMessagePackPUTIsParsedFromBytes() throws IOException {
+        String body = "{\"name\":\"pa-msgpack-\u00e6\u00f8\u00e5\",\"contacts\":[\"/contact/c1\"]}";
+        byte[] msgpack = new ObjectMapper(new MessagePackFactory()).writeValueAsBytes(JsonTools.toJsonNode(body));
+        client.put("/data/provisionagreement/msgpack1?sync=true", msgpack, "Content-Type", "application/msgpack").expect201Created();
+        String actual = client.get("/data/provisionagreement/msgpack1").expect200Ok().body();
+        JSONAssert.assertEquals(body, actual, false);
+    }
+
+    @Test
+    public void thatGETHonoursMessagePackAccept() throws IOException {
+        String body = "{\"name\":\"pa-msgpack-get\",\"contacts\":[\"/contact/c1\"]}";
+        createTestResource("provisionagreement", "msgpack2", body);
+        ObjectMapper msgpackMapper = new ObjectMapper(new MessagePackFactory());
+
+        ResponseHelper<byte[]> document = client.get("/data/provisionagreement/msgpack2", HttpResponse.BodyHandlers.ofByteArray(), "Accept", "application/msgpack").expect200Ok();
+        assertEquals(document.response().headers().firstValue("Content-Type").orElseThrow(), "application/msgpack");
+        JSONAssert.assertEquals(body, JsonTools.toJson(msgpackMapper.readTree(document.body())), false);
+
+        ResponseHelper<byte[]> list = client.get("/data/provisionagreement", HttpResponse.BodyHandlers.ofByteArray(), "Accept", "application/msgpack").expect200Ok();
+        assertTrue(msgpackMapper.readTree(list.body()).isArray());
+
+        String json = client.get("/data/provisionagreement/msgpack2", HttpResponse.BodyHandlers.ofString(), "Accept", "text/html, */*;q=0.1").expect200Ok().body();
+        JSONAssert.assertEquals(body, json, false);
+    }
+
+    @Test
+    public void thatConditionalGETUsesDocumentVersion() {
+        ZonedDateTime version = ZonedDateTime.of(2018, 1, 1, 12, 0, 0, 0, ZoneId.of("Etc/UTC"));
+        createTestResource("provisionagreement", "conditional1", version, "{\"name\":\"pa-conditional\",\"contacts\":[\"/contact/c1\"]}");
+
+        ResponseHelper<String> response = client.get("/data/provisionagreement/conditional1").expect200Ok();
+        String etag = response.response().headers().firstValue("ETag").orElseThrow();
+        assertEquals(etag, "W/\"2018-01-01T12:00:00Z\"");
+        assertEquals(response.response().headers().firstValue("Last-Modified").orElseThrow(), "Mon, 01 Jan 2018 12:00:00 GMT");
+
+        client.get("/data/provisionagreement/conditional1", HttpResponse.BodyHandlers.ofString(), "If-None-Match", etag).expectAnyOf(304);
+        client.get("/data/provisionagreement/conditional1", HttpResponse.BodyHandlers.ofString(), "If-None-Match", "W/\"2017-01-01T12:00:00Z\"").expect200Ok();
+        client.get("/data/provisionagreement/conditional1", HttpResponse.BodyHandlers.ofString(), "If-Modified-Since", "Mon, 01 Jan 2018 12:00:00 GMT").expectAnyOf(304);
+        client.get("/data/provisionagreement/conditional1", HttpResponse.BodyHandlers.ofString(), "If-Modified-Since", "Sun, 31 Dec 2017 12:00:00 GMT").expect200Ok();
+        client.get("/data/provisionagreement/conditional1/name", HttpResponse.BodyHandlers.ofString(), "If-None-Match", etag).expectAnyOf(304);
+    }
+
+    @Test
+    public void thatHEADChecksExistenceWithoutBody() {
+        createTestResource("provisionagreement", "head1", "{\"name\":\"pa-head\",\"contacts\":[\"/contact/c1\"]}");
+        ResponseHelper<String> response = client.head("/data/provisionagreement/head1").expect200Ok();
+        assertTrue(response.response().headers().firstValue("ETag").isPresent());
+        assertEquals(response.body(), "");
+        client.head("/data/provisionagreement/head2").expect404NotFound();
+        client.head("/data/provisionagreement/head1/name").expect200Ok();
+    }
+
+    @Test
+    public void thatMalformedPUTIsRejectedWith400() {
+        client.put("/data/provisionagreement/malformed1?sync=true", "{\"name\":").expect400BadRequest();
+    }
+
+    @Test
+    @ConfigurationOverride({
+            "http.max-entity-size", "64"
+    })
+    public void thatPUTLargerThanMaxEntitySizeIsRejectedWith413() {
+        String body = "{\"name\":\"pa-test-name-that-makes-this-body-larger-than-the-limit\",\"contacts\":[\"/contact/c1\"]}";
+        client.put("/data/provisionagreement/large1?sync=true", body).expectAnyOf(413);
+        client.get("/data/provisionagreement/large1").expect404NotFound();
+    }
+
+    @Test
+    @ConfigurationOverride({
+            "persistence.cache.enabled", "true"
+    })
+    public void thatCachedGETIsInvalidatedByPUTAndDELETE() {
+        client.get("/data/provisionagreement/cached1").expect404NotFound();
+        String body1 = "{\"name\":\"pa-cached-1\",\"contacts\":[\"/contact/c1\"]}";
+        client.put("/data/provisionagreement/cached1?sync=true", body1).expectAnyOf(200, 201);
+        JSONAssert.assertEquals(body1, client.get("/data/provisionagreement/cached1").expect200Ok().body(), false);
+        JSONAssert.assertEquals(body1, client.get("/data/provisionagreement/cached1").expect200Ok().body(), false);
+        String body2 = "{\"name\":\"pa-cached-2\",\"contacts\":[\"/contact/c2\"]}";
+        client.put("/data/provisionagreement/cached1?sync=true", body2).expectAnyOf(200, 201);
+        JSONAssert.assertEquals(body2, client.get("/data/provisionagreement/cached1").expect200Ok().body(), false);
+        client.delete("/data/provisionagreement/cached1?sync=true").expect204NoContent();
+        client.get("/data/provisionagreement/cached1").expect404NotFound();
+    }
+
+    @Test
+    @ConfigurationOverride({
+            "http.response-cache.enabled", "true",
+            "http.response-cache.max-size-bytes", "65536",
+            "http.response-cache.page-size", "16"
+    })
+    public void thatSerializedDocumentCacheServesCurrentVersionInEachFormat() throws IOException {
+        ObjectMapper msgpackMapper = new ObjectMapper(new MessagePackFactory());
+        String body1 = "{\"name\":\"pa-serialized-1\",\"contacts\":[\"/contact/c1\"]}";
+        client.put("/data/provisionagreement/serialized1?sync=true", body1).expectAnyOf(200, 201);
+        for (int i = 0; i < 2; i++) {
+            JSONAssert.assertEquals(body1, client.get("/data/provisionagreement/serialized1").expect200Ok().body(), false);
+            byte[] msgpack = client.get("/data/provisionagreement/serialized1", HttpResponse.BodyHandlers.ofByteArray(), "Accept", "application/msgpack").expect200Ok().body();
+            JSONAssert.assertEquals(body1, JsonTools.toJson(msgpackMapper.readTree(msgpack)), false);
+        }
+        String body2 = "{\"name\":\"pa-serialized-2\",\"contacts\":[\"/contact/c2\"]}";
+        client.put("/data/provisionagreement/serialized1?sync=true", body2).expectAnyOf(200, 201);
+        JSONAssert.assertEquals(body2, client.get("/data/provisionagreement/serialized1").expect200Ok().body(), false);
+    }
+
+    @Test
+    @ConfigurationOverride({
+            "saga.group-commit.enabled", "true",
+            "saga.group-commit.max-size", "8",
+            "saga.group-commit.linger-ms", "20"
+    })
+    public void thatConcurrentPUTAndDELETEAreGroupCommitted() {
+        ExecutorService executor = Executors.newFixedThreadPool(20);
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                String id = "grouped" + i;
+                futures.add(CompletableFuture.runAsync(() -> {
+                    String body = "{\"name\":\"" + id + "\",\"contacts\":[\"/contact/c1\"]}";
+                    client.put("/data/provisionagreement/" + id + "?sync=true", body).expectAnyOf(200, 201);
+                    JSONAssert.assertEquals(body, client.get("/data/provisionagreement/" + id).expect200Ok().body(), false);
+                    client.delete("/data/provisionagreement/" + id + "?sync=true").expect204NoContent();
+                    client.get("/data/provisionagreement/" + id).expect404NotFound();
+                }, executor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    @ConfigurationOverride({
+            "saga.group-commit.enabled", "true",
+            "saga.group-commit.max-size", "64",
+            "saga.group-commit.linger-ms", "1000"
+    })
+    public void thatFailingMemberIsLeftOutOfMixedGroup() throws Exception {
+        SagaRepository sagaRepository = server.getApplication().getSagaRepository();
+        sagaRepository.getAdapterLoader().register(new PersistenceGroupSagaAdapter(server.getApplication().getPersistence(),
+                server.getApplication().getSpecification(), List.of(), sagaRepository.getGroupSagaOutcomes()) {
+            @Override
+            protected void write(Transaction tx, SagaInput member) {
+                if ("gfail-bad".equals(member.resourceId())) {
+                    throw new RuntimeException("Write of gfail-bad failed on purpose");
+                }
+                super.write(tx, member);
+            }
+        });
+        List<String> ids = List.of("gfail-sync1", "gfail-async1", "gfail-bad", "gfail-sync2", "gfail-async2");
+        ExecutorService executor = Executors.newFixedThreadPool(ids.size());
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (String id : ids) {
+                futures.add(CompletableFuture.runAsync(() -> {
+                    String body = "{\"name\":\"" + id + "\",\"contacts\":[\"/contact/c1\"]}";
+                    String query = id.contains("async") ? "" : "?sync=true";
+                    ResponseHelper<String> response = client.put("/data/provisionagreement/" + id + query, body);
+                    if ("gfail-bad".equals(id)) {
+                        response.expectAnyOf(500);
+                    } else {
+                        response.expectAnyOf(200, 201);
+                    }
+                }, executor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } finally {
+            executor.shutdown();
+        }
+
+        for (String id : ids) {
+            if ("gfail-bad".equals(id)) {
+                client.get("/data/provisionagreement/" + id).expect404NotFound();
+                continue;
+            }
+            long deadline = System.currentTimeMillis() + 5000;
+            while (client.get("/data/provisionagreement/" + id).response().statusCode() != 200) {
+                assertTrue(System.currentTimeMillis() < deadline, "Document was not written: " + id);
+                Thread.sleep(20);
+            }
+        }
+
+        Map<String, Integer> txLogEntriesByResourceId = new HashMap<>();
+        TxlogRawdataPool txlogRawdataPool = server.getApplication().getTxlogRawdataPool();
+        try (RawdataConsumer consumer = txlogRawdataPool.getClient().consumer(txlogRawdataPool.topicOf(null))) {
+            RawdataMessage message;
+            while ((message = consumer.receive(0, TimeUnit.MILLISECONDS)) != null) {
+                txLogEntriesByResourceId.merge(TxLogEntry.of(message).resourceId(), 1, Integer::sum);
+            }
+        }
+        for (String id : ids) {
+            if ("gfail-bad".equals(id)) {
+                assertFalse(txLogEntriesByResourceId.containsKey(id), "failed write was published to the tx-log");
+            } else {
+                assertEquals(txLogEntriesByResourceId.get(id), Integer.valueOf(1), "tx-log entries of " + id);
+            }
+        }
+
+        SearchIndex searchIndex = server.getApplication().getSearchIndex();
+        assertEquals(searchIndex.search("gfail sync1", Set.of(), 0, 10).blockingGet().getTotalHits(), 1);
+        assertEquals(searchIndex.search("gfail bad", Set.of(), 0, 10).blockingGet().getTotalHits(), 0);
+    }
 }
@@ -0,0 +1,123 @@
+package no.ssb.lds.core.domain.managed;
+
+import no.ssb.config.DynamicConfiguration;
+import no.ssb.config.StoreBasedDynamicConfiguration;
+import no.ssb.lds.core.UndertowApplication;
+import no.ssb.lds.core.saga.SagaExecutionCoordinator;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the throughput of synchronous managed PUT requests (sync=true, the response is sent when the saga has
+ * completed) with a fixed number of concurrent clients against a server with in-memory persistence and saga-log.
+ * Each client sends its next request as soon as the previous response is received. The saga-log reads and
+ * truncations per write are reported along with the throughput.
+ * <p>
+ * Run with the main method from the test class-path. The number of clients, the duration in seconds of the warmup
+ * and measurement, and the saga.executor mode can be given as arguments, and default to 1000, 10, 30 and auto. Run
+ * once for each mode to compare them.
+ */
+public class SyncWriteBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int warmupSeconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int measurementSeconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        String sagaExecutor = args.length > 3 ? args[3] : "auto";
+
+        DynamicConfiguration configuration = new StoreBasedDynamicConfiguration.Builder()
+                .propertiesResource(UndertowApplication.getDefaultConfigurationResourcePath())
+                .values("persistence.provider", "mem",
+                        "persistence.mem.wait.min", "0",
+                        "persistence.mem.wait.max", "0",
+                        "persistence.fragment.capacity", "8192",
+                        "namespace.default", "data",
+                        "specification.schema", "spec/schemas/contact.json,spec/schemas/provisionagreement.json",
+                        "sagalog.provider", "no.ssb.sagalog.memory.MemorySagaLogInitializer",
+                        "txlog.rawdata.provider", "memory",
+                        "http.access-log.enabled", "false",
+                        "saga.recovery.enabled", "false",
+                        "saga.executor", sagaExecutor)
+                .build();
+        UndertowApplication application = UndertowApplication.initializeUndertowApplication(configuration);
+        application.start();
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(30)).build();
+        try {
+            String baseUri = "http://" + application.getHost() + ":" + application.getPort() + "/data/contact/";
+            System.out.printf("Warming up %d clients for %d seconds with saga.executor=%s%n", clients, warmupSeconds, sagaExecutor);
+            run(client, baseUri, clients, warmupSeconds);
+            System.out.printf("Measuring %d clients for %d seconds%n", clients, measurementSeconds);
+            SagaExecutionCoordinator sec = application.getSec();
+            long scansBefore = sec.getSagaLogScanCount();
+            long truncationsBefore = sec.getSagaLogTruncationCount();
+            Result result = run(client, baseUri, clients, measurementSeconds);
+            long writes = Math.max(1, result.completed.get());
+            System.out.printf("saga-log scans per write %.3f, truncations per write %.3f%n",
+                    (sec.getSagaLogScanCount() - scansBefore) / (double) writes,
+                    (sec.getSagaLogTruncationCount() - truncationsBefore) / (double) writes);
+            long[] latencies = result.latenciesMicros.stream().mapToLong(Long::longValue).sorted().toArray();
+            System.out.printf("%d requests, %d failed, %.1f req/s, latency p50 %.1f ms, p99 %.1f ms, max %.1f ms%n",
+                    result.completed.get(), result.failed.get(), result.completed.get() / (double) measurementSeconds,
+                    percentile(latencies, 0.50) / 1000.0, percentile(latencies, 0.99) / 1000.0, percentile(latencies, 1.0) / 1000.0);
+        } finally {
+            application.stop();
+        }
+    }
+
+    static class Result {
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final ConcurrentLinkedQueue<Long> latenciesMicros = new ConcurrentLinkedQueue<>();
+    }
+
+    static Result run(HttpClient client, String baseUri, int clients, int seconds) {
+        Result result = new Result();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        CompletableFuture<?>[] loops = new CompletableFuture[clients];
+        for (int i = 0; i < clients; i++) {
+            loops[i] = loop(client, baseUri, "bench-" + i, new AtomicLong(), deadline, result);
+        }
+        CompletableFuture.allOf(loops).join();
+        return result;
+    }
+
+    static CompletableFuture<Void> loop(HttpClient client, String baseUri, String clientId, AtomicLong sequence, long deadline, Result result) {
+        if (System.nanoTime() >= deadline) {
+            return CompletableFuture.completedFuture(null);
+        }
+        String id = clientId + "-" + sequence.incrementAndGet();
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUri + id + "?sync=true"))
+                .PUT(HttpRequest.BodyPublishers.ofString("{\"name\":\"" + id + "\",\"email\":\"" + id + "@example.com\"}", StandardCharsets.UTF_8))
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofSeconds(60))
+                .build();
+        long start = System.nanoTime();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .handle((response, throwable) -> {
+                    if (throwable != null || response.statusCode() >= 300) {
+                        result.failed.incrementAndGet();
+                    } else if (System.nanoTime() < deadline) {
+                        result.completed.incrementAndGet();
+                        result.latenciesMicros.add((System.nanoTime() - start) / 1000);
+                    }
+                    return null;
+                })
+                .thenCompose(v -> loop(client, baseUri, clientId, sequence, deadline, result));
+    }
+
+    static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
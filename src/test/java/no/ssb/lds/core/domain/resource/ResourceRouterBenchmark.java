@@ -0,0 +1,76 @@
+package no.ssb.lds.core.domain.resource;
+
+import no.ssb.config.DynamicConfiguration;
+import no.ssb.config.StoreBasedDynamicConfiguration;
+import no.ssb.lds.api.specification.Specification;
+import no.ssb.lds.core.UndertowApplication;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares resolution of request paths with the routing trie against {@link ResourceContext#createResourceContext}
+ * on the gsim schema. Run with the main method from the test class-path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResourceRouterBenchmark {
+
+    @Param({
+            "/data/AgentInRole",
+            "/data/AgentInRole/0cc4e9a1-2a2b-4f33-b5c0-1b2ab8f6c6e1",
+            "/data/AgentInRole/0cc4e9a1-2a2b-4f33-b5c0-1b2ab8f6c6e1/administrativeDetails",
+            "/data/AgentInRole/0cc4e9a1-2a2b-4f33-b5c0-1b2ab8f6c6e1/role/Role/1a2b8b8c-7a5f-4d0e-9e8b-2f1f0b3e8d1a"
+    })
+    String path;
+
+    Specification specification;
+    ResourceRouter router;
+    ZonedDateTime timestamp;
+
+    @Setup
+    public void setup() {
+        DynamicConfiguration configuration = new StoreBasedDynamicConfiguration.Builder()
+                .values("graphql.schema", "src/test/resources/gsim/schema.graphql",
+                        "persistence.provider", "mem")
+                .build();
+        specification = UndertowApplication.initializeSpecification(configuration);
+        router = ResourceRouter.create(specification);
+        timestamp = ZonedDateTime.now(ZoneId.of("Etc/UTC"));
+    }
+
+    @Benchmark
+    public ResourceContext createResourceContext() {
+        return ResourceContext.createResourceContext(specification, path, timestamp);
+    }
+
+    @Benchmark
+    public ResourceContext routerResolve() {
+        return router.resolve(path, timestamp);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ResourceRouterBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,109 @@
+package no.ssb.lds.core.domain.resource;
+
+import no.ssb.lds.api.specification.Specification;
+import no.ssb.lds.core.specification.JsonSchemaBasedSpecification;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ResourceRouterTest {
+
+    @DataProvider
+    public static Object[][] resourcePaths() {
+        return new Object[][]{
+                {"/ns/SomeEntity"},
+                {"/ns/SomeEntity/"},
+                {"/ns/SomeEntity/123"},
+                {"/ns/SomeEntity/123//"},
+                {"/ns/SomeEntity/12%203"},
+                {"/n%20s/SomeEntity/123"},
+                {"/ns/SomeEntity/123/object1"},
+                {"/ns/SomeEntity/123/ref"},
+                {"/ns/SomeEntity/123/object1/object2"},
+                {"/ns/SomeEntity/123/ref/OtherEntity/456"},
+                {"/ns/SomeEntity/123/object1/ref/OtherEntity/456"},
+                {"/ns/SomeEntity/123/object1/object2/refs/OtherEntity/456"},
+                {"/ns/SomeEntity/123/object1/object2/refs/OtherEntity/4%2F56"},
+                // invalid paths
+                {"/"},
+                {"/ns"},
+                {"/ns/"},
+                {"/ns/Unknown/123"},
+                {"/ns//123"},
+                {"/ns/SomeEntity/%20"},
+                {"/ns/SomeEntity//object1"},
+                {"/ns/SomeEntity/123/unknown"},
+                {"/ns/SomeEntity/123/aString/unknown"},
+                {"/ns/SomeEntity/123/ref/OtherEntity"},
+                {"/ns/SomeEntity/123/ref/SomeEntity/456"},
+                {"/ns/SomeEntity/123/ref/OtherEntity/456/aString"},
+        };
+    }
+
+    @Test(dataProvider = "resourcePaths")
+    public void thatRouterResolvesSameContextAsCreateResourceContext(String path) {
+        Specification specification = ResourceContextTest.specification();
+        assertSameResolution(specification, ResourceRouter.create(specification), path);
+    }
+
+    @Test
+    public void thatRouterResolvesSameContextAsCreateResourceContextOnJsonSchemaSpecification() {
+        Specification specification = JsonSchemaBasedSpecification.create(
+                "spec/schemas/contact.json",
+                "spec/schemas/provisionagreement.json"
+        );
+        ResourceRouter router = ResourceRouter.create(specification);
+        assertSameResolution(specification, router, "/ns/contact");
+        assertSameResolution(specification, router, "/ns/unmanaged");
+        assertSameResolution(specification, router, "/ns/contact/%20");
+        assertSameResolution(specification, router, "/ns/contact/1/bad");
+        assertSameResolution(specification, router, "/ns/provisionagreement/1/friend/contact");
+        assertSameResolution(specification, router, "/ns/provisionagreement/1/friend/contact/1");
+        assertSameResolution(specification, router, "/ns/provisionagreement/1/friend/contact/1/name");
+    }
+
+    private static void assertSameResolution(Specification specification, ResourceRouter router, String path) {
+        ZonedDateTime timestamp = ZonedDateTime.now(ZoneId.of("Etc/UTC"));
+        ResourceContext expected = null;
+        String expectedError = null;
+        try {
+            expected = ResourceContext.createResourceContext(specification, path, timestamp);
+        } catch (ResourceException e) {
+            expectedError = e.getMessage();
+        }
+        ResourceContext actual = null;
+        String actualError = null;
+        try {
+            actual = router.resolve(path, timestamp);
+        } catch (ResourceException e) {
+            actualError = e.getMessage();
+        }
+        Assert.assertEquals(actualError, expectedError, path);
+        if (expected == null) {
+            return;
+        }
+        Assert.assertEquals(actual.getNamespace(), expected.getNamespace(), path);
+        Assert.assertEquals(actual.getTimestamp(), expected.getTimestamp(), path);
+        Assert.assertEquals(actual.isManaged(), expected.isManaged(), path);
+        Assert.assertEquals(actual.isEmbedded(), expected.isEmbedded(), path);
+        Assert.assertEquals(actual.isReference(), expected.isReference(), path);
+        Assert.assertEquals(elements(actual), elements(expected), path);
+    }
+
+    private static List<ResourceElement> elements(ResourceContext context) {
+        List<ResourceElement> elements = new ArrayList<>();
+        ResourceElement element = context.getFirstElement();
+        elements.add(element);
+        while (element.hasNext()) {
+            element = element.next();
+            Assert.assertNotNull(element.getSpecificationElement());
+            elements.add(element);
+        }
+        return elements;
+    }
+}
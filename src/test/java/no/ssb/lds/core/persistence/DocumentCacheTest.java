@@ -0,0 +1,88 @@
+package no.ssb.lds.core.persistence;
+
+import no.ssb.lds.api.persistence.DocumentKey;
+import no.ssb.lds.api.persistence.json.JsonDocument;
+import no.ssb.lds.api.persistence.json.JsonTools;
+import org.testng.annotations.Test;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class DocumentCacheTest {
+
+    static final ZonedDateTime T1 = ZonedDateTime.of(2018, 1, 1, 12, 0, 0, 0, ZoneId.of("Etc/UTC"));
+    static final ZonedDateTime T2 = T1.plusHours(1);
+
+    static JsonDocument document(String id, ZonedDateTime version) {
+        return new JsonDocument(new DocumentKey("ns", "Entity", id, version), JsonTools.toJsonNode("{\"id\":\"" + id + "\"}"));
+    }
+
+    @Test
+    public void thatEntryIsOnlyValidBetweenVersions() {
+        DocumentCache cache = new DocumentCache(1024 * 1024);
+        cache.put(cache.stamp("ns", "Entity", "1"), document("1", T1), T2);
+
+        assertNull(cache.get("ns", "Entity", "1", T1.minusSeconds(1)));
+        assertNotNull(cache.get("ns", "Entity", "1", T1).getDocument());
+        assertNotNull(cache.get("ns", "Entity", "1", T2.minusSeconds(1)).getDocument());
+        assertNull(cache.get("ns", "Entity", "1", T2));
+        assertEquals(cache.getHitCount(), 2);
+        assertEquals(cache.getMissCount(), 2);
+    }
+
+    @Test
+    public void thatAbsentDocumentIsCached() {
+        DocumentCache cache = new DocumentCache(1024 * 1024);
+        cache.put(cache.stamp("ns", "Entity", "1"), null, null);
+
+        DocumentCache.Entry entry = cache.get("ns", "Entity", "1", T1);
+        assertNotNull(entry);
+        assertNull(entry.getDocument());
+    }
+
+    @Test
+    public void thatInvalidationRemovesEntries() {
+        DocumentCache cache = new DocumentCache(1024 * 1024);
+        cache.put(cache.stamp("ns", "Entity", "1"), document("1", T1), null);
+        cache.put(cache.stamp("ns", "Entity", "2"), document("2", T1), null);
+        cache.put(cache.stamp("ns", "Other", "1"), document("1", T1), null);
+
+        cache.invalidate("ns", "Entity", "1");
+        assertNull(cache.get("ns", "Entity", "1", T2));
+        assertNotNull(cache.get("ns", "Entity", "2", T2));
+
+        cache.invalidateEntity("ns", "Entity");
+        assertNull(cache.get("ns", "Entity", "2", T2));
+        assertNotNull(cache.get("ns", "Other", "1", T2));
+    }
+
+    @Test
+    public void thatReadStartedBeforeInvalidationIsNotCached() {
+        DocumentCache cache = new DocumentCache(1024 * 1024);
+        DocumentGenerations.Stamp documentStamp = cache.stamp("ns", "Entity", "1");
+        cache.invalidate("ns", "Entity", "1");
+        cache.put(documentStamp, document("1", T1), null);
+        assertNull(cache.get("ns", "Entity", "1", T2));
+
+        DocumentGenerations.Stamp entityStamp = cache.stamp("ns", "Entity", "2");
+        cache.invalidateEntity("ns", "Entity");
+        cache.put(entityStamp, document("2", T1), null);
+        assertNull(cache.get("ns", "Entity", "2", T2));
+    }
+
+    @Test
+    public void thatLeastRecentlyUsedEntriesAreEvicted() {
+        DocumentCache cache = new DocumentCache(16 * 1024);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(cache.stamp("ns", "Entity", String.valueOf(i)), document(String.valueOf(i), T1), null);
+        }
+        assertEquals(cache.getSize() + cache.getEvictionCount(), 1000);
+        assertTrue(cache.getWeight() <= 16 * 1024);
+        assertNotNull(cache.get("ns", "Entity", "999", T2));
+    }
+}
@@ -0,0 +1,55 @@
+package no.ssb.lds.core.persistence;
+
+import no.ssb.lds.api.persistence.PersistenceInitializer;
+import no.ssb.lds.api.persistence.ProviderName;
+import no.ssb.lds.api.persistence.reactivex.RxJsonPersistence;
+import no.ssb.lds.api.specification.Specification;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+/**
+ * Test persistence that delegates to the in-memory provider, and blocks the calling thread for {@link #readDelayMillis}
+ * in every readDocument call, like a provider that reads from a slow remote database.
+ */
+@ProviderName("slow-mem")
+public class SlowPersistenceInitializer implements PersistenceInitializer {
+
+    public static volatile long readDelayMillis = 0;
+
+    @Override
+    public String persistenceProviderId() {
+        return "slow-mem";
+    }
+
+    @Override
+    public Set<String> configurationKeys() {
+        return delegate().configurationKeys();
+    }
+
+    @Override
+    public RxJsonPersistence initialize(String defaultNamespace, Map<String, String> configuration, Set<String> managedDomains, Specification specification) {
+        RxJsonPersistence persistence = delegate().initialize(defaultNamespace, configuration, managedDomains, specification);
+        return (RxJsonPersistence) Proxy.newProxyInstance(RxJsonPersistence.class.getClassLoader(), new Class[]{RxJsonPersistence.class}, (proxy, method, args) -> {
+            if (method.getName().equals("readDocument") && readDelayMillis > 0) {
+                Thread.sleep(readDelayMillis);
+            }
+            try {
+                return method.invoke(persistence, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+    }
+
+    private static PersistenceInitializer delegate() {
+        return ServiceLoader.load(PersistenceInitializer.class).stream()
+                .filter(provider -> "mem".equals(provider.type().getDeclaredAnnotation(ProviderName.class).value()))
+                .map(ServiceLoader.Provider::get)
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("The in-memory persistence provider is not on the class-path"));
+    }
+}
@@ -0,0 +1,33 @@
+package no.ssb.lds.core.restore;
+
+import de.huxhorn.sulky.ulid.ULID;
+import org.testng.annotations.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+
+public class RestoreCheckpointTest {
+
+    @Test
+    public void thatCheckpointIsWrittenReadAndDeleted() throws Exception {
+        Path directory = Files.createTempDirectory("restore-checkpoint");
+        RestoreCheckpoint checkpoint = new RestoreCheckpoint(directory.resolve("sub"), "source/with:chars");
+        assertNull(checkpoint.read());
+
+        ULID ulid = new ULID();
+        ULID.Value first = ulid.nextValue();
+        ULID.Value second = ulid.nextValue();
+        checkpoint.write(first);
+        assertEquals(checkpoint.read(), first);
+        checkpoint.write(second);
+        assertEquals(new RestoreCheckpoint(directory.resolve("sub"), "source/with:chars").read(), second);
+
+        checkpoint.delete();
+        assertFalse(Files.exists(checkpoint.getFile()));
+        assertNull(checkpoint.read());
+    }
+}
@@ -16,10 +16,13 @@ import org.testng.annotations.Listeners;
 import org.testng.annotations.Test;
 
 import javax.inject.Inject;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.concurrent.TimeUnit;
 
 import static no.ssb.lds.core.utils.FileAndClasspathReaderUtils.readFileOrClasspathResource;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 
 @Listeners(TestServerListener.class)
 public class RestoreTest {
@@ -47,6 +50,82 @@ public class RestoreTest {
         client.get("/data/provisionagreement/2a41c").expect200Ok();
     }
 
+    @Test
+    @ConfigurationOverride({
+            "dummy.with.unique.test.value", "restoreTxLogInPartitionsAndVerify",
+            "txlog.rawdata.provider", "memory",
+            "specification.schema", "spec/demo/contact.json,spec/demo/provisionagreement.json"
+    })
+    public void restoreTxLogInPartitionsAndVerify() throws Exception {
+        produceSevenEntriesAndWipePersistence();
+        JsonNode ctx = initiateRestoreAndWaitForCompletion("default", "partitions=3");
+
+        // Verify
+        assertEquals(ctx.get("messagesRestored").longValue(), 7);
+        assertEquals(ctx.get("partitions").size(), 3);
+        long restoredByPartitions = 0;
+        for (JsonNode partition : ctx.get("partitions")) {
+            assertEquals(partition.get("lag").intValue(), 0);
+            restoredByPartitions += partition.get("restored").longValue();
+        }
+        assertEquals(restoredByPartitions, 7);
+        assertEquals(ctx.get("lowWatermarkTxId").textValue(), ctx.get("lastMessageTxId").textValue());
+        assertEquals(ctx.get("etaSeconds").longValue(), 0);
+        client.get("/data/contact/4b2ef").expect200Ok();
+        client.get("/data/contact/821aa").expect404NotFound();
+        client.get("/data/provisionagreement/2a41c").expect200Ok();
+    }
+
+    @Test
+    @ConfigurationOverride({
+            "dummy.with.unique.test.value", "bulkImportTxLogAndVerify",
+            "txlog.rawdata.provider", "memory",
+            "restore.bulk.transaction-size", "2",
+            "specification.schema", "spec/demo/contact.json,spec/demo/provisionagreement.json"
+    })
+    public void bulkImportTxLogAndVerify() throws Exception {
+        produceSevenEntriesAndWipePersistence();
+        JsonNode ctx = initiateRestoreAndWaitForCompletion("default", "mode=bulk");
+
+        // Verify
+        assertEquals(ctx.get("mode").textValue(), "bulk");
+        assertEquals(ctx.get("messagesRestored").longValue(), 7);
+        assertEquals(ctx.get("messagesFailed").longValue(), 0);
+        assertEquals(ctx.get("lowWatermarkTxId").textValue(), ctx.get("lastMessageTxId").textValue());
+        assertFalse(Files.exists(Paths.get(ctx.get("checkpoint").textValue())), "checkpoint is removed when the import completes");
+        client.get("/data/contact/4b2ef").expect200Ok();
+        client.get("/data/contact/821aa").expect404NotFound();
+        client.get("/data/provisionagreement/2a41c").expect200Ok();
+    }
+
+    @Test
+    @ConfigurationOverride({
+            "dummy.with.unique.test.value", "compactTxLogAndRestoreFromSnapshot",
+            "txlog.rawdata.provider", "memory",
+            "specification.schema", "spec/demo/contact.json,spec/demo/provisionagreement.json"
+    })
+    public void compactTxLogAndRestoreFromSnapshot() throws Exception {
+        produceSevenEntriesAndWipePersistence();
+        JsonNode compaction = JsonTools.toJsonNode(client.post("/compact/default?versions=1").expect200Ok().body());
+        while (!compaction.get("done").booleanValue()) {
+            Thread.sleep(100);
+            compaction = JsonTools.toJsonNode(client.get("/compact/default").expect200Ok().body());
+        }
+        assertFalse(compaction.get("failed").booleanValue());
+        assertEquals(compaction.get("entriesScanned").longValue(), 7);
+        // the latest version of each of the three documents, with the delete of 821aa as its tombstone
+        assertEquals(compaction.get("entriesWritten").longValue(), 3);
+
+        JsonNode ctx = initiateRestoreAndWaitForCompletion("default", "snapshot=true");
+
+        // Verify
+        assertEquals(ctx.get("snapshotTopic").textValue(), compaction.get("snapshotTopic").textValue());
+        assertEquals(ctx.get("messagesRestored").longValue(), 3);
+        client.get("/data/contact/4b2ef").expect200Ok();
+        client.get("/data/contact/821aa").expect404NotFound();
+        client.get("/data/provisionagreement/2a41c").expect200Ok();
+    }
+
     @Test
     @ConfigurationOverride({
             "dummy.with.unique.test.value", "restoreFromThirdElementInclusive",
@@ -0,0 +1,97 @@
+package no.ssb.lds.core.saga;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class PendingHandoffQueueTest {
+
+    @Test
+    public void thatHandoffsBeyondCapacityAreRejected() {
+        PendingHandoffQueue queue = new PendingHandoffQueue(2);
+        AtomicInteger started = new AtomicInteger();
+        assertTrue(queue.offer(started::incrementAndGet));
+        assertTrue(queue.offer(started::incrementAndGet));
+        assertFalse(queue.offer(started::incrementAndGet));
+        assertEquals(queue.size(), 2);
+
+        AtomicLong waiting = new AtomicLong();
+        queue.drain(() -> false, () -> {
+        }, waiting::addAndGet, Runnable::run);
+        assertEquals(started.get(), 0); // no permits
+        assertEquals(waiting.get(), 2);
+
+        queue.drain(() -> false, () -> {
+        }, waiting::addAndGet, Runnable::run);
+        assertEquals(waiting.get(), 2); // a handoff is counted once while it waits
+
+        queue.drain(() -> true, () -> {
+        }, waiting::addAndGet, Runnable::run);
+        assertEquals(started.get(), 2);
+        assertEquals(queue.size(), 0);
+        assertTrue(queue.offer(started::incrementAndGet));
+    }
+
+    /**
+     * A handoff that fails to start releases its permit, and the release drains the queue again. The drain must not
+     * recurse into the next handoff, which would use a stack frame per queued handoff.
+     */
+    @Test
+    public void thatHandoffsThatReleaseTheirPermitDoNotRecurse() {
+        int handoffs = 100_000;
+        PendingHandoffQueue queue = new PendingHandoffQueue(handoffs);
+        AtomicInteger permits = new AtomicInteger(1);
+        AtomicInteger depth = new AtomicInteger();
+        AtomicInteger maxDepth = new AtomicInteger();
+        AtomicInteger started = new AtomicInteger();
+        Runnable releasePermit = permits::incrementAndGet;
+        Runnable[] drain = new Runnable[1];
+        drain[0] = () -> queue.drain(() -> permits.getAndUpdate(p -> p > 0 ? p - 1 : p) > 0, releasePermit, n -> {
+        }, Runnable::run);
+        for (int i = 0; i < handoffs; i++) {
+            assertTrue(queue.offer(() -> {
+                maxDepth.accumulateAndGet(depth.incrementAndGet(), Math::max);
+                try {
+                    started.incrementAndGet();
+                    releasePermit.run(); // failed to start
+                    drain[0].run();
+                } finally {
+                    depth.decrementAndGet();
+                }
+            }));
+        }
+
+        drain[0].run();
+
+        assertEquals(started.get(), handoffs);
+        assertEquals(maxDepth.get(), 1);
+        assertEquals(queue.size(), 0);
+        assertEquals(permits.get(), 1);
+    }
+
+    @Test
+    public void thatHandoffsAreStartedOnTheExecutor() {
+        PendingHandoffQueue queue = new PendingHandoffQueue(10);
+        List<Runnable> submitted = new ArrayList<>();
+        AtomicInteger started = new AtomicInteger();
+        assertTrue(queue.offer(started::incrementAndGet));
+        assertTrue(queue.offer(started::incrementAndGet));
+
+        queue.drain(() -> true, () -> {
+        }, n -> {
+        }, submitted::add);
+        assertEquals(submitted.size(), 2);
+        assertEquals(started.get(), 0); // the draining thread does not start them
+        assertEquals(queue.size(), 0);
+
+        submitted.forEach(Runnable::run);
+        assertEquals(started.get(), 2);
+    }
+}
@@ -0,0 +1,66 @@
+package no.ssb.lds.core.saga;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class SagaConcurrencyLimiterTest {
+
+    /**
+     * Keep the limiter saturated and complete one execution at a time with the given latency, as a backend with that
+     * latency would.
+     */
+    static void simulate(SagaConcurrencyLimiter limiter, long latencyMillis, int executions) {
+        while (limiter.tryAcquire()) {
+        }
+        for (int i = 0; i < executions; i++) {
+            limiter.release(TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+            while (limiter.tryAcquire()) {
+            }
+        }
+    }
+
+    @Test
+    public void thatFixedLimitIsTheMaximum() {
+        SagaConcurrencyLimiter limiter = new SagaConcurrencyLimiter(3);
+        simulate(limiter, 100, 50);
+        assertEquals(limiter.getLimit(), 3);
+        assertEquals(limiter.getInFlight(), 3);
+        assertFalse(limiter.tryAcquire());
+        assertTrue(limiter.getRejectionCount() > 0);
+    }
+
+    @Test
+    public void thatLimitTracksSlowingBackend() {
+        SagaConcurrencyLimiter limiter = new SagaConcurrencyLimiter(200);
+        limiter.adapt(4, 20);
+
+        simulate(limiter, 5, 500);
+        int fastLimit = limiter.getLimit();
+        assertTrue(fastLimit > 100, "limit should grow while latency is stable, was " + fastLimit);
+
+        simulate(limiter, 50, 50);
+        int slowLimit = limiter.getLimit();
+        assertTrue(slowLimit < fastLimit / 2, "limit should shrink when the backend slows down, was " + slowLimit + " from " + fastLimit);
+        assertTrue(slowLimit >= 4);
+
+        simulate(limiter, 5, 500);
+        assertTrue(limiter.getLimit() > slowLimit, "limit should recover when the backend is fast again, was " + limiter.getLimit());
+    }
+
+    @Test
+    public void thatLimitDoesNotGrowWhenItIsNotReached() {
+        SagaConcurrencyLimiter limiter = new SagaConcurrencyLimiter(200);
+        limiter.adapt(4, 20);
+        for (int i = 0; i < 500; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.release(TimeUnit.MILLISECONDS.toNanos(5));
+        }
+        assertEquals(limiter.getLimit(), 20);
+        assertEquals(limiter.getInFlight(), 0);
+    }
+}
@@ -13,6 +13,11 @@ import org.testng.annotations.Listeners;
 import org.testng.annotations.Test;
 
 import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
@@ -124,6 +129,102 @@ public class SagaExecutionCoordinatorTest {
         }
     }
 
+    @Test
+    @ConfigurationOverride({
+            "saga.recovery.enabled", "false",
+            "sagalog.provider", "no.ssb.sagalog.memory.MemorySagaLogInitializer",
+            "saga.number-of-logs", "1",
+            "saga.log.truncate.batch-size", "3",
+            "saga.log.truncate.interval-ms", "3600000"
+    })
+    public void thatCleanSagaLogIsNotScannedAndIsTruncatedInBatches() throws InterruptedException {
+        SagaExecutionCoordinator sec = server.getApplication().getSec();
+        for (int i = 0; i < 7; i++) {
+            client.put("/data/provisionagreement/batched" + i + "?sync=true", "{\"name\":\"batched-truncation\",\"contacts\":[]}").expect201Created();
+        }
+        Assert.assertEquals(sec.getSagaLogScanCount(), 1);
+        // full batches are truncated in the background
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sec.getSagaLogTruncationCount() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(sec.getSagaLogTruncationCount(), 2);
+
+        SagaLogPool pool = sec.getSagaLogPool();
+        SagaLog sagaLog = pool.tryAcquire(new SagaLogOwner("core-sec-test"));
+        try {
+            assertFalse(sagaLog.readIncompleteSagas().anyMatch(e -> true)); // completed sagas are not incomplete
+        } finally {
+            pool.release(sagaLog.id());
+        }
+
+        sec.truncateIdleSagaLogs();
+        Assert.assertEquals(sec.getSagaLogTruncationCount(), 3);
+    }
+
+    @Test
+    @ConfigurationOverride({
+            "saga.recovery.enabled", "false",
+            "sagalog.provider", "no.ssb.sagalog.memory.MemorySagaLogInitializer",
+            "saga.number-of-logs", "1",
+            "saga.commands.enabled", "true",
+            "saga.log.truncate.batch-size", "10",
+            "saga.log.truncate.interval-ms", "3600000"
+    })
+    public void thatSagaLogWithFailedSagaIsNotTruncatedWhenIdle() {
+        SagaExecutionCoordinator sec = server.getApplication().getSec();
+        SagaLogPool pool = sec.getSagaLogPool();
+        SagaLog deadSagaLog = pool.connect(sec.deadSagaLogId);
+        deadSagaLog.truncate();
+
+        for (int i = 0; i < 2; i++) {
+            client.put("/data/provisionagreement/untruncated" + i + "?sync=true", "{"name":"untruncated","contacts":[]}").expect201Created();
+        }
+        client.put("/data/provisionagreement/untruncated-failed?sync=true&saga=failAfter%20S", "{"name":"untruncated","contacts":[]}").expectAnyOf(500);
+
+        sec.truncateIdleSagaLogs();
+        Assert.assertEquals(sec.getSagaLogTruncationCount(), 0);
+
+        SagaLog sagaLog = pool.tryAcquire(new SagaLogOwner("core-sec-test"));
+        try {
+            assertTrue(sagaLog.readIncompleteSagas().anyMatch(e -> true)); // the failed saga is left for recovery
+        } finally {
+            pool.release(sagaLog.id());
+        }
+    }
+
+    @Test
+    @ConfigurationOverride({
+            "saga.recovery.enabled", "false",
+            "sagalog.provider", "no.ssb.sagalog.memory.MemorySagaLogInitializer",
+            "saga.number-of-logs", "1",
+            "saga.executions-per-log", "16"
+    })
+    public void thatConcurrentSagaExecutionsShareOneSagaLog() {
+        SagaExecutionCoordinator sec = server.getApplication().getSec();
+        Assert.assertTrue(sec.getConcurrencyLimiter().getMaxLimit() > 1);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                String id = "shared" + i;
+                futures.add(CompletableFuture.runAsync(() -> client.put("/data/provisionagreement/" + id + "?sync=true",
+                        "{\"name\":\"shared-saga-log\",\"contacts\":[]}").expect201Created(), executor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } finally {
+            executor.shutdown();
+        }
+
+        SagaLogPool pool = sec.getSagaLogPool();
+        SagaLog sagaLog = pool.tryAcquire(new SagaLogOwner("core-sec-test"));
+        try {
+            assertFalse(sagaLog.readIncompleteSagas().anyMatch(e -> true)); // check that saga-log has no incomplete sagas
+        } finally {
+            pool.release(sagaLog.id());
+        }
+    }
+
     private Consumer<SagaExecutionTraversalContext> failOnce() {
         AtomicBoolean failedOnce = new AtomicBoolean();
         return c -> {
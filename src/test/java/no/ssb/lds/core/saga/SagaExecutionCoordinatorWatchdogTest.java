@@ -49,6 +49,7 @@ public class SagaExecutionCoordinatorWatchdogTest {
             "sagalog.provider", "no.ssb.sagalog.memory.MemorySagaLogInitializer",
             "saga.number-of-logs", "50",
             "specification.schema", "spec/schemas/contact.json,spec/schemas/provisionagreement.json",
+            "saga.executor", "pool",
             "saga.threadpool.core", "15",
             "saga.threadpool.max", "50",
             "saga.threadpool.queue.capacity", "100",
@@ -0,0 +1,50 @@
+package no.ssb.lds.core.saga;
+
+import no.ssb.concurrent.futureselector.SelectableThreadPoolExectutor;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class SagaThreadPoolsTest {
+
+    @Test
+    public void thatElasticPoolDoesNotDeadlockWhenAllThreadsBlock() throws InterruptedException {
+        SelectableThreadPoolExectutor pool = SagaThreadPools.create(SagaThreadPools.Mode.ELASTIC, 0, 0, 0, 0);
+        try {
+            // every task blocks until all have started, which a pool bounded below the number of tasks never does
+            int tasks = Runtime.getRuntime().availableProcessors() * 4;
+            CountDownLatch started = new CountDownLatch(tasks);
+            CountDownLatch completed = new CountDownLatch(tasks);
+            for (int i = 0; i < tasks; i++) {
+                pool.submit(() -> {
+                    started.countDown();
+                    try {
+                        started.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    completed.countDown();
+                });
+            }
+            assertTrue(completed.await(10, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void thatAutoSelectsVirtualThreadsOnlyWhenSupported() {
+        boolean supported = Runtime.version().feature() >= 21;
+        assertEquals(SagaThreadPools.virtualThreadFactory("test-") != null, supported);
+        SelectableThreadPoolExectutor pool = SagaThreadPools.create(SagaThreadPools.Mode.AUTO, 0, 0, 0, 0);
+        try {
+            assertEquals(pool.getMaximumPoolSize(), Integer.MAX_VALUE);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package no.ssb.lds.core.schema;
+
+import no.ssb.lds.api.persistence.json.JsonTools;
+import no.ssb.lds.core.specification.JsonSchemaBasedSpecification;
+import org.everit.json.schema.ValidationException;
+import org.json.JSONObject;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class JacksonSchemaValidatorTest {
+
+    static JsonSchema jsonSchema() {
+        return JsonSchemaBasedSpecification.create("spec/schemas/contact.json", "spec/schemas/provisionagreement.json").getJsonSchema();
+    }
+
+    @DataProvider
+    public static Object[][] documents() {
+        return new Object[][]{
+                {"contact", "{\"name\":\"c1\",\"email\":\"c1@example.com\"}"},
+                {"contact", "{\"name\":\"c1\",\"email\":\"c1@example.com\",\"age\":42,\"unknown\":[1,2]}"},
+                {"contact", "{\"name\":\"c1\",\"email\":\"c1@example.com\",\"age\":4.2}"},
+                {"contact", "{\"name\":\"c1\"}"},
+                {"contact", "{\"name\":1,\"email\":\"c1@example.com\"}"},
+                {"contact", "{\"name\":\"c1\",\"email\":\"c1@example.com\",\"age\":\"42\"}"},
+                {"contact", "[]"},
+                {"provisionagreement", "{\"name\":\"pa\",\"friend\":\"/contact/f1\",\"support\":{\"technicalSupport\":[\"/contact/s1\"]}}"},
+                {"provisionagreement", "{\"name\":null,\"friend\":null}"},
+                {"provisionagreement", "{\"name\":true}"},
+                {"provisionagreement", "{\"address\":{\"street\":\"s\"}}"},
+                {"provisionagreement", "{\"contacts\":[\"/contact/c1\",2]}"},
+                {"provisionagreement", "{\"support\":{\"technicalSupport\":\"/contact/s1\"}}"},
+        };
+    }
+
+    @Test(dataProvider = "documents")
+    public void thatValidationOutcomeIsSameAsEverit(String managedDomain, String document) {
+        JsonSchema jsonSchema = jsonSchema();
+        boolean everitValid;
+        try {
+            jsonSchema.getSchema(managedDomain).validate(document.startsWith("[") ? new org.json.JSONArray(document) : new JSONObject(document));
+            everitValid = true;
+        } catch (ValidationException e) {
+            everitValid = false;
+        }
+        JacksonSchemaValidator validator = jsonSchema.getValidator(managedDomain);
+        List<String> violations = validator.validate(JsonTools.toJsonNode(document));
+        assertEquals(violations.isEmpty(), everitValid, violations.toString());
+        assertEquals(validator.isValid(JsonTools.toJsonNode(document)), everitValid);
+    }
+
+    @Test
+    public void thatViolationsArePointedToOffendingProperty() {
+        List<String> violations = jsonSchema().getValidator("provisionagreement").validate(JsonTools.toJsonNode("{\"address\":{\"street\":1,\"country\":\"no\"}}"));
+        assertEquals(violations.size(), 1);
+        assertTrue(violations.get(0).startsWith("#/address/street: "), violations.get(0));
+    }
+
+    @Test
+    public void thatMissingRequiredPropertyIsReported() {
+        List<String> violations = jsonSchema().getValidator("contact").validate(JsonTools.toJsonNode("{\"name\":\"c1\"}"));
+        assertFalse(violations.isEmpty());
+        assertEquals(violations.get(0), "#: required key [email] not found");
+    }
+}
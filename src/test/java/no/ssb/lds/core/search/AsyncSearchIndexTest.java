@@ -0,0 +1,105 @@
+package no.ssb.lds.core.search;
+
+import io.reactivex.Completable;
+import no.ssb.lds.api.persistence.DocumentKey;
+import no.ssb.lds.api.persistence.json.JsonDocument;
+import no.ssb.lds.api.persistence.json.JsonTools;
+import org.testng.annotations.Test;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class AsyncSearchIndexTest {
+
+    static JsonDocument document(String id, String name) {
+        return new JsonDocument(new DocumentKey("data", "contact", id, ZonedDateTime.now(ZoneId.of("Etc/UTC"))),
+                JsonTools.toJsonNode("{\"name\":\"" + name + "\"}"));
+    }
+
+    static class RecordingSearchIndex extends InvertedSearchIndex {
+        final CopyOnWriteArrayList<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        final AtomicInteger failuresLeft;
+        final CountDownLatch gate;
+
+        RecordingSearchIndex(int failures, CountDownLatch gate) {
+            this.failuresLeft = new AtomicInteger(failures);
+            this.gate = gate;
+        }
+
+        @Override
+        public Completable createOrOverwrite(Collection<JsonDocument> collection) {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            if (failuresLeft.getAndDecrement() > 0) {
+                return Completable.error(new RuntimeException("search-index is unavailable"));
+            }
+            batchSizes.add(collection.size());
+            return super.createOrOverwrite(collection);
+        }
+    }
+
+    @Test
+    public void thatUpdatesAreWrittenInBatchesAndInOrder() throws InterruptedException {
+        CountDownLatch gate = new CountDownLatch(1);
+        RecordingSearchIndex delegate = new RecordingSearchIndex(0, gate);
+        AsyncSearchIndex searchIndex = new AsyncSearchIndex(delegate, 1000, 100, 0);
+        try {
+            for (int i = 0; i < 300; i++) {
+                searchIndex.createOrOverwrite(document("c" + i, "Donald " + i)).blockingAwait();
+            }
+            searchIndex.delete(document("c0", "Donald 0")).blockingAwait();
+            assertTrue(searchIndex.getPendingCount() >= 200);
+            gate.countDown(); // the writer has been held in the first write while the rest were queued
+            assertTrue(searchIndex.awaitWritten(10, TimeUnit.SECONDS));
+
+            assertEquals(searchIndex.getWrittenCount(), 301);
+            assertEquals(searchIndex.getLagMillis(), 0);
+            assertEquals(delegate.batchSizes.stream().mapToInt(Integer::intValue).sum(), 300);
+            assertTrue(delegate.batchSizes.size() <= 5, "updates should be batched: " + delegate.batchSizes);
+            assertEquals(searchIndex.search("Donald", Set.of(), 0, 1000).blockingGet().getResults().size(), 299);
+        } finally {
+            searchIndex.close();
+        }
+    }
+
+    @Test
+    public void thatFailedBatchIsRetried() throws InterruptedException {
+        RecordingSearchIndex delegate = new RecordingSearchIndex(2, new CountDownLatch(0));
+        AsyncSearchIndex searchIndex = new AsyncSearchIndex(delegate, 1000, 100, 3);
+        try {
+            searchIndex.createOrOverwrite(document("c1", "Dolly")).blockingAwait();
+            assertTrue(searchIndex.awaitWritten(10, TimeUnit.SECONDS));
+            assertEquals(searchIndex.getRetryCount(), 2);
+            assertEquals(searchIndex.getFailedCount(), 0);
+            assertEquals(searchIndex.getWrittenCount(), 1);
+        } finally {
+            searchIndex.close();
+        }
+    }
+
+    @Test
+    public void thatBatchIsDroppedWhenRetriesAreExhausted() throws InterruptedException {
+        RecordingSearchIndex delegate = new RecordingSearchIndex(10, new CountDownLatch(0));
+        AsyncSearchIndex searchIndex = new AsyncSearchIndex(delegate, 1000, 100, 1);
+        try {
+            searchIndex.createOrOverwrite(document("c1", "Dolly")).blockingAwait();
+            assertTrue(searchIndex.awaitWritten(10, TimeUnit.SECONDS));
+            assertEquals(searchIndex.getFailedCount(), 1);
+            assertEquals(searchIndex.getWrittenCount(), 0);
+        } finally {
+            searchIndex.close();
+        }
+    }
+}
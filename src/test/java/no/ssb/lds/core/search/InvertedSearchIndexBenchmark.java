@@ -0,0 +1,111 @@
+package no.ssb.lds.core.search;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import no.ssb.lds.api.persistence.DocumentKey;
+import no.ssb.lds.api.persistence.json.JsonDocument;
+import no.ssb.lds.api.persistence.json.JsonTools;
+import no.ssb.lds.api.search.SearchResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures search latency over one million flattened documents of three entities: a rare term, a common term, a
+ * conjunction of a common and a rare term, a short prefix, a type-filtered query and a deep page. Searches run on four
+ * threads against the shared index. Run with the main method from the test class-path, with a heap of at least 4 GiB.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Threads(4)
+public class InvertedSearchIndexBenchmark {
+
+    static final int DOCUMENTS = 1_000_000;
+    static final String[] ENTITIES = {"contact", "provisionagreement", "address"};
+    static final String[] FIRST_NAMES = {"Donald", "Dolly", "Skrue", "Anton", "Gulbrand", "Petter", "Mikke", "Minni"};
+    static final String[] CITIES = {"Andeby", "Oslo", "Bergen", "Trondheim", "Tromsø", "Kristiansand"};
+
+    InvertedSearchIndex index;
+
+    @Setup
+    public void setup() {
+        index = new InvertedSearchIndex();
+        Random random = new Random(42);
+        ZonedDateTime timestamp = ZonedDateTime.now(ZoneId.of("Etc/UTC"));
+        List<JsonDocument> batch = new ArrayList<>(10000);
+        for (int i = 0; i < DOCUMENTS; i++) {
+            String entity = ENTITIES[i % ENTITIES.length];
+            ObjectNode document = JsonTools.mapper.createObjectNode();
+            document.put("name", FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " Duck " + i);
+            document.put("description", "Document number " + i + " of entity " + entity);
+            ObjectNode address = document.putObject("address");
+            address.put("street", "Street " + random.nextInt(10000));
+            address.put("city", CITIES[random.nextInt(CITIES.length)]);
+            document.putArray("tags").add("tag" + random.nextInt(1000)).add("tag" + random.nextInt(1000));
+            batch.add(new JsonDocument(new DocumentKey("data", entity, "id" + i, timestamp), document));
+            if (batch.size() == 10000) {
+                index.createOrOverwrite(batch).blockingAwait();
+                batch = new ArrayList<>(10000);
+            }
+        }
+        index.createOrOverwrite(batch).blockingAwait();
+    }
+
+    @Benchmark
+    public SearchResponse rareTerm() {
+        return index.search("tag17", Set.of(), 0, 100).blockingGet();
+    }
+
+    @Benchmark
+    public SearchResponse commonTerm() {
+        return index.search("duck", Set.of(), 0, 100).blockingGet();
+    }
+
+    @Benchmark
+    public SearchResponse commonAndRareTerm() {
+        return index.search("andeby tag17", Set.of(), 0, 100).blockingGet();
+    }
+
+    @Benchmark
+    public SearchResponse prefix() {
+        return index.search("tro", Set.of(), 0, 100).blockingGet();
+    }
+
+    @Benchmark
+    public SearchResponse filteredByEntity() {
+        return index.search("dolly andeby", Set.of("address"), 0, 100).blockingGet();
+    }
+
+    @Benchmark
+    public SearchResponse deepPage() {
+        return index.search("duck", Set.of(), 900000, 100).blockingGet();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(InvertedSearchIndexBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,112 @@
+package no.ssb.lds.core.search;
+
+import no.ssb.lds.api.persistence.DocumentKey;
+import no.ssb.lds.api.persistence.json.JsonDocument;
+import no.ssb.lds.api.persistence.json.JsonTools;
+import no.ssb.lds.api.search.SearchResponse;
+import no.ssb.lds.api.search.SearchResult;
+import org.testng.annotations.Test;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.testng.Assert.assertEquals;
+
+public class InvertedSearchIndexTest {
+
+    static JsonDocument document(String entity, String id, String json) {
+        return new JsonDocument(new DocumentKey("data", entity, id, ZonedDateTime.now(ZoneId.of("Etc/UTC"))),
+                JsonTools.toJsonNode(json));
+    }
+
+    static List<String> ids(SearchResponse response) {
+        return response.getResults().stream()
+                .map(SearchResult::getDocumentKey)
+                .map(DocumentKey::id)
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void thatTextIsSplitIntoCaseFoldedTerms() {
+        assertEquals(InvertedSearchIndex.tokenize("Donald Duck, 1313 Webfoot-Walk; DUCK"),
+                new String[]{"donald", "duck", "1313", "webfoot", "walk"});
+        assertEquals(InvertedSearchIndex.tokenize(" -- "), new String[0]);
+    }
+
+    @Test
+    public void thatAllTermsMustMatchAndLastTermMatchesAsPrefix() {
+        InvertedSearchIndex index = new InvertedSearchIndex();
+        index.createOrOverwrite(List.of(
+                document("contact", "c1", "{\"name\":\"Donald Duck\",\"address\":{\"city\":\"Andeby\"}}"),
+                document("contact", "c2", "{\"name\":\"Dolly Duck\"}"),
+                document("contact", "c3", "{\"name\":\"Skrue McDuck\",\"tags\":[\"rich\",\"Andeby\"]}")
+        )).blockingAwait();
+
+        assertEquals(ids(index.search("duck", Set.of(), 0, 10).blockingGet()), List.of("c1", "c2"));
+        assertEquals(ids(index.search("DUCK don", Set.of(), 0, 10).blockingGet()), List.of("c1"));
+        assertEquals(ids(index.search("andeby", Set.of(), 0, 10).blockingGet()), List.of("c1", "c3"));
+        assertEquals(ids(index.search("d", Set.of(), 0, 10).blockingGet()), List.of("c1", "c2"));
+        assertEquals(ids(index.search("mcduck rich", Set.of(), 0, 10).blockingGet()), List.of("c3"));
+        assertEquals(ids(index.search("goofy", Set.of(), 0, 10).blockingGet()), List.of());
+        assertEquals(ids(index.search("", Set.of(), 0, 10).blockingGet()), List.of("c1", "c2", "c3"));
+    }
+
+    @Test
+    public void thatHitsAreFilteredByEntity() {
+        InvertedSearchIndex index = new InvertedSearchIndex();
+        index.createOrOverwrite(List.of(
+                document("contact", "c1", "{\"name\":\"Sirius\"}"),
+                document("provisionagreement", "p1", "{\"name\":\"Sirius\"}"),
+                document("contact", "p1", "{\"name\":\"Sirius\"}")
+        )).blockingAwait();
+
+        SearchResponse response = index.search("sirius", Set.of("provisionagreement"), 0, 10).blockingGet();
+        assertEquals(response.getTotalHits(), 1);
+        assertEquals(response.getResults().get(0).getDocumentKey().entity(), "provisionagreement");
+        assertEquals(index.search("sirius", null, 0, 10).blockingGet().getTotalHits(), 3);
+    }
+
+    @Test
+    public void thatOnlyTheRequestedPageIsReturned() {
+        InvertedSearchIndex index = new InvertedSearchIndex();
+        List<JsonDocument> documents = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            documents.add(document("contact", "c" + i, "{\"name\":\"Donald " + i + "\"}"));
+        }
+        index.createOrOverwrite(documents).blockingAwait();
+
+        SearchResponse response = index.search("donald", Set.of(), 40, 5).blockingGet();
+        assertEquals(response.getTotalHits(), 100);
+        assertEquals(ids(response), List.of("c40", "c41", "c42", "c43", "c44"));
+        assertEquals(ids(index.search("donald", Set.of(), 98, 5).blockingGet()), List.of("c98", "c99"));
+    }
+
+    @Test
+    public void thatOverwriteAndDeleteUpdateThePostings() {
+        InvertedSearchIndex index = new InvertedSearchIndex();
+        index.createOrOverwrite(List.of(
+                document("contact", "c1", "{\"name\":\"Donald Duck\"}"),
+                document("contact", "c2", "{\"name\":\"Dolly Duck\"}")
+        )).blockingAwait();
+
+        index.createOrOverwrite(document("contact", "c1", "{\"name\":\"Donald Jupiter\"}")).blockingAwait();
+        assertEquals(ids(index.search("duck", Set.of(), 0, 10).blockingGet()), List.of("c2"));
+        assertEquals(ids(index.search("jupiter", Set.of(), 0, 10).blockingGet()), List.of("c1"));
+
+        index.delete(document("contact", "c2", "{}")).blockingAwait();
+        assertEquals(ids(index.search("duck", Set.of(), 0, 10).blockingGet()), List.of());
+        assertEquals(index.getDocumentCount(), 1);
+        assertEquals(index.getTermCount(), 2);
+
+        // the freed ordinal is reused, and the document is found in ordinal order
+        index.createOrOverwrite(document("contact", "c3", "{\"name\":\"Donald\"}")).blockingAwait();
+        assertEquals(ids(index.search("donald", Set.of(), 0, 10).blockingGet()), List.of("c1", "c3"));
+
+        index.deleteAll().blockingAwait();
+        assertEquals(index.search("", Set.of(), 0, 10).blockingGet().getTotalHits(), 0);
+    }
+}
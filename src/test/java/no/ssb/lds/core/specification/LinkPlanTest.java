@@ -0,0 +1,71 @@
+package no.ssb.lds.core.specification;
+
+import no.ssb.lds.api.persistence.json.JsonTools;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class LinkPlanTest {
+
+    static JsonSchemaBasedSpecification specification() {
+        return JsonSchemaBasedSpecification.create("spec/schemas/contact.json", "spec/schemas/provisionagreement.json");
+    }
+
+    @Test
+    public void thatLinkPlanContainsAllReferenceProperties() {
+        LinkPlan linkPlan = specification().getLinkPlan("provisionagreement");
+        Map<String, LinkPlan.Link> linkByPath = linkPlan.getLinks().stream()
+                .collect(Collectors.toMap(LinkPlan.Link::getNavigationPath, l -> l, (a, b) -> a, TreeMap::new));
+        assertEquals(linkByPath.keySet(), Set.of(
+                "provisionagreement.contacts",
+                "provisionagreement.friend",
+                "provisionagreement.support.technicalSupport",
+                "provisionagreement.support.businessSupport",
+                "provisionagreement.support.otherSupport"
+        ));
+        assertTrue(linkByPath.get("provisionagreement.contacts").isArray());
+        assertFalse(linkByPath.get("provisionagreement.friend").isArray());
+        assertEquals(linkByPath.get("provisionagreement.support.technicalSupport").getPath(), List.of("support", "technicalSupport"));
+        assertEquals(linkByPath.get("provisionagreement.friend").getRefTypes(), Set.of("contact"));
+    }
+
+    @Test
+    public void thatManagedDomainWithoutLinksHasEmptyPlan() {
+        JsonSchemaBasedSpecification specification = specification();
+        assertTrue(specification.getLinkPlan("contact").getLinks().isEmpty());
+        assertNull(specification.getLinkPlan("unknown"));
+    }
+
+    @Test
+    public void thatForEachLinkVisitsPresentLinkValues() {
+        LinkPlan linkPlan = specification().getLinkPlan("provisionagreement");
+        List<String> visited = new ArrayList<>();
+        linkPlan.forEachLink(JsonTools.toJsonNode("{\"friend\":\"/contact/f1\",\"contacts\":null,\"support\":{\"technicalSupport\":[\"/contact/s1\",null,\"/contact/s2\"]}}"),
+                (link, value) -> visited.add(link.getName() + "=" + value));
+        visited.sort(String::compareTo);
+        assertEquals(visited, List.of("friend=/contact/f1", "technicalSupport=/contact/s1", "technicalSupport=/contact/s2"));
+    }
+
+    @Test
+    public void thatLinksAreParsed() {
+        assertEquals(LinkPlan.linkedDomain("/contact/c1"), "contact");
+        assertEquals(LinkPlan.linkedId("/contact/c1"), "c1");
+        assertEquals(LinkPlan.linkedId("/contact/c/1"), "c/1");
+        assertNull(LinkPlan.linkedDomain("contact"));
+        assertNull(LinkPlan.linkedDomain("//c1"));
+        assertTrue(LinkPlan.isWellFormed("/contact/c1"));
+        assertFalse(LinkPlan.isWellFormed("/contact/"));
+        assertFalse(LinkPlan.isWellFormed("/contact/c/1"));
+        assertFalse(LinkPlan.isWellFormed("/contact"));
+    }
+}
@@ -0,0 +1,120 @@
+package no.ssb.lds.core.txlog;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import de.huxhorn.sulky.ulid.ULID;
+import no.ssb.lds.core.saga.SagaInput;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares encoding and decoding of tx-log entries in the legacy msgpack meta format with the compact format of
+ * {@link TxLogEntry}, for a document of the given number of properties. The header-only benchmarks are what restore
+ * and source lookups pay before deciding to decode the payload. Run with the main method from the test class-path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TxLogCodecBenchmark {
+
+    @Param({"10", "1000"})
+    int properties;
+
+    final ULID.Value txId = new ULID().nextValue();
+    SagaInput sagaInput;
+    byte[] legacyMeta;
+    byte[] legacyData;
+    byte[] header;
+    byte[] payload;
+
+    @Setup
+    public void setup() {
+        ObjectNode data = TxLogTools.mapper.createObjectNode();
+        for (int i = 0; i < properties; i++) {
+            data.put("property-" + i, "value of property " + i);
+        }
+        sagaInput = new SagaInput(txId, "PUT", "contact", "data", "contact", "c1",
+                ZonedDateTime.now(ZoneId.of("Etc/UTC")), "source", "source-1", data);
+        legacyMeta = encodeLegacyMeta();
+        legacyData = TxLogTools.toBytes(data);
+        byte[] raw = TxLogTools.toBytes(data);
+        byte[] deflated = TxLogEntry.deflate(raw);
+        payload = deflated != null ? deflated : raw;
+        header = TxLogEntry.encodeHeader(sagaInput, true, deflated != null);
+    }
+
+    byte[] encodeLegacyMeta() {
+        ObjectNode meta = TxLogTools.mapper.createObjectNode();
+        meta.put("method", sagaInput.method());
+        meta.put("schema", sagaInput.schema());
+        meta.put("namespace", sagaInput.namespace());
+        meta.put("entity", sagaInput.entity());
+        meta.put("id", sagaInput.resourceId());
+        meta.put("version", sagaInput.versionAsString());
+        meta.put("source", sagaInput.source());
+        meta.put("sourceId", sagaInput.sourceId());
+        return TxLogTools.toBytes(meta);
+    }
+
+    @Benchmark
+    public Object legacyEncode() {
+        return new byte[][]{encodeLegacyMeta(), TxLogTools.toBytes(sagaInput.data())};
+    }
+
+    @Benchmark
+    public Object compactEncode() {
+        byte[] raw = TxLogTools.toBytes(sagaInput.data());
+        byte[] deflated = TxLogEntry.deflate(raw);
+        return new byte[][]{TxLogEntry.encodeHeader(sagaInput, true, deflated != null), deflated != null ? deflated : raw};
+    }
+
+    @Benchmark
+    public Object legacyDecodeHeader() {
+        // the former eager decoding of the meta, including parsing of the version
+        JsonNode meta = TxLogTools.toJson(legacyMeta);
+        return ZonedDateTime.parse(meta.get("version").textValue(), DateTimeFormatter.ISO_ZONED_DATE_TIME);
+    }
+
+    @Benchmark
+    public long compactDecodeHeader() {
+        return TxLogEntry.decode(txId, header, payload).versionEpochMillis();
+    }
+
+    @Benchmark
+    public SagaInput legacyDecodeAll() {
+        return TxLogEntry.decodeLegacy(txId, legacyMeta, legacyData, null).toSagaInput();
+    }
+
+    @Benchmark
+    public SagaInput compactDecodeAll() {
+        return TxLogEntry.decode(txId, header, payload).toSagaInput();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TxLogCodecBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,104 @@
+package no.ssb.lds.core.txlog;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import de.huxhorn.sulky.ulid.ULID;
+import no.ssb.lds.api.persistence.json.JsonTools;
+import no.ssb.lds.core.saga.SagaInput;
+import org.testng.annotations.Test;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class TxLogEntryTest {
+
+    static final ULID.Value TX_ID = new ULID().nextValue();
+    static final ZonedDateTime VERSION = ZonedDateTime.of(2020, 3, 4, 5, 6, 7, 123_456_789, ZoneId.of("Etc/UTC"));
+
+    static TxLogEntry roundTrip(SagaInput sagaInput) {
+        JsonNode payloadNode = sagaInput.batch() != null ? sagaInput.batch() : sagaInput.data();
+        byte[] payload = payloadNode == null ? null : TxLogTools.toBytes(payloadNode);
+        byte[] deflated = payload == null ? null : TxLogEntry.deflate(payload);
+        byte[] header = TxLogEntry.encodeHeader(sagaInput, payload != null, deflated != null);
+        return TxLogEntry.decode(TX_ID, header, deflated != null ? deflated : payload);
+    }
+
+    @Test
+    public void thatDocumentEntryIsReadFromHeaderWithoutLosingPrecision() {
+        JsonNode data = JsonTools.toJsonNode("{\"name\":\"Donald\"}");
+        SagaInput sagaInput = new SagaInput(TX_ID, "PUT", "contact", "data", "contact", "c1", VERSION, "src", "src-1", data);
+        TxLogEntry entry = roundTrip(sagaInput);
+        assertEquals(entry.method(), "PUT");
+        assertEquals(entry.entity(), "contact");
+        assertEquals(entry.resourceId(), "c1");
+        assertEquals(entry.source(), "src");
+        assertEquals(entry.sourceId(), "src-1");
+        assertEquals(entry.versionEpochMillis(), VERSION.toInstant().toEpochMilli());
+        assertEquals(entry.version(), VERSION);
+        assertEquals(entry.versionAsString(), sagaInput.versionAsString());
+        assertEquals(entry.data(), data);
+        assertNull(entry.batch());
+        assertEquals(entry.toSagaInput().toString(), sagaInput.toString());
+    }
+
+    @Test
+    public void thatDeleteEntryHasNoPayload() {
+        SagaInput sagaInput = new SagaInput(TX_ID, "DELETE", "contact", "data", "contact", "c1", VERSION, null, null, null);
+        TxLogEntry entry = roundTrip(sagaInput);
+        assertNull(entry.data());
+        assertNull(entry.source());
+        assertEquals(entry.toSagaInput().toString(), sagaInput.toString());
+    }
+
+    @Test
+    public void thatLargeBatchIsCompressedAndDecodedOnDemand() {
+        ArrayNode batch = JsonTools.mapper.createArrayNode();
+        for (int i = 0; i < 500; i++) {
+            ObjectNode document = batch.addObject();
+            document.put("id", "c" + i);
+            document.put("name", "Contact number " + i);
+        }
+        byte[] payload = TxLogTools.toBytes(batch);
+        byte[] deflated = TxLogEntry.deflate(payload);
+        assertNotNull(deflated);
+        assertTrue(deflated.length < payload.length);
+        assertEquals(TxLogEntry.inflate(deflated), payload);
+
+        SagaInput sagaInput = new SagaInput(TX_ID, "BATCH", "contact", "data", "src", "src-2", batch);
+        TxLogEntry entry = roundTrip(sagaInput);
+        assertTrue(entry.isBatch());
+        assertNull(entry.version());
+        assertEquals(entry.batch(), batch);
+        assertEquals(entry.toSagaInput().toString(), sagaInput.toString());
+    }
+
+    @Test
+    public void thatSmallPayloadIsNotCompressed() {
+        assertNull(TxLogEntry.deflate(TxLogTools.toBytes(JsonTools.toJsonNode("{\"name\":\"Donald\"}"))));
+    }
+
+    @Test
+    public void thatLegacyEntryIsRead() {
+        JsonNode data = JsonTools.toJsonNode("{\"name\":\"Donald\"}");
+        SagaInput sagaInput = new SagaInput(TX_ID, "PUT", "contact", "data", "contact", "c1", VERSION, null, "src-1", data);
+        ObjectNode meta = TxLogTools.mapper.createObjectNode();
+        meta.put("method", "PUT");
+        meta.put("schema", "contact");
+        meta.put("namespace", "data");
+        meta.put("entity", "contact");
+        meta.put("id", "c1");
+        meta.put("version", sagaInput.versionAsString());
+        meta.put("sourceId", "src-1");
+        TxLogEntry entry = TxLogEntry.decodeLegacy(TX_ID, TxLogTools.toBytes(meta), TxLogTools.toBytes(data), null);
+        assertEquals(entry.sourceId(), "src-1");
+        assertEquals(entry.version(), VERSION);
+        assertEquals(entry.data(), data);
+        assertEquals(entry.toSagaInput().toString(), sagaInput.toString());
+    }
+}
@@ -0,0 +1,33 @@
+package no.ssb.lds.core.utils;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+public class HistogramTest {
+
+    @Test
+    public void thatValuesAreCountedInPowerOfTwoBuckets() {
+        Histogram histogram = new Histogram();
+        for (long value : new long[]{0, 1, 2, 3, 4, 5, 8, 9, 500}) {
+            histogram.record(value);
+        }
+        assertEquals(histogram.getCount(), 9);
+        assertEquals(histogram.getSum(), 532);
+        assertEquals(histogram.getMax(), 500);
+        long[] buckets = histogram.getBucketCounts();
+        assertEquals(buckets.length, 10); // 500 is counted in the bucket of values up to 512
+        assertEquals(buckets[0], 2); // 0 and 1
+        assertEquals(buckets[1], 1); // 2
+        assertEquals(buckets[2], 2); // 3 and 4
+        assertEquals(buckets[3], 2); // 5 and 8
+        assertEquals(buckets[4], 1); // 9
+        assertEquals(buckets[9], 1);
+        assertEquals(Histogram.getBucketUpperBound(9), 512);
+    }
+
+    @Test
+    public void thatEmptyHistogramHasNoBuckets() {
+        assertEquals(new Histogram().getBucketCounts().length, 0);
+    }
+}
@@ -0,0 +1,79 @@
+package no.ssb.lds.core.validation;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import no.ssb.config.DynamicConfiguration;
+import no.ssb.config.StoreBasedDynamicConfiguration;
+import no.ssb.lds.api.persistence.json.JsonTools;
+import no.ssb.lds.core.UndertowApplication;
+import no.ssb.lds.core.schema.JacksonSchemaValidator;
+import no.ssb.lds.core.specification.JsonSchemaBasedSpecification;
+import no.ssb.lds.core.utils.FileAndClasspathReaderUtils;
+import org.everit.json.schema.Schema;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the write-path cost of validating a gsim document with everit, which requires a second parse of the
+ * request body into org.json, against validating the already parsed Jackson tree. Run with the main method from the
+ * test class-path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchemaValidationBenchmark {
+
+    static final String MANAGED_DOMAIN = "DataResource";
+
+    String body;
+    Schema everitSchema;
+    JacksonSchemaValidator jacksonValidator;
+
+    @Setup
+    public void setup() {
+        DynamicConfiguration configuration = new StoreBasedDynamicConfiguration.Builder()
+                .values("graphql.schema", "src/test/resources/gsim/schema.graphql",
+                        "persistence.provider", "mem")
+                .build();
+        JsonSchemaBasedSpecification specification = UndertowApplication.initializeSpecification(configuration);
+        body = FileAndClasspathReaderUtils.readFileAsUtf8("src/test/resources/gsim/examples/DataResource_PersonsFamily.json");
+        everitSchema = specification.getJsonSchema().getSchema(MANAGED_DOMAIN);
+        jacksonValidator = specification.getJsonSchema().getValidator(MANAGED_DOMAIN);
+    }
+
+    @Benchmark
+    public JsonNode parseAndValidateWithEverit() {
+        JsonNode requestData = JsonTools.toJsonNode(body);
+        everitSchema.validate(new JSONObject(body));
+        return requestData;
+    }
+
+    @Benchmark
+    public List<String> parseAndValidateWithJackson() {
+        JsonNode requestData = JsonTools.toJsonNode(body);
+        return jacksonValidator.validate(requestData);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(SchemaValidationBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -1,6 +1,8 @@
 package no.ssb.lds.graphql;
 
 import com.damnhandy.uri.template.UriTemplate;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import graphql.GraphQL;
 import graphql.schema.GraphQLSchema;
@@ -11,6 +13,7 @@ import graphql.schema.idl.SchemaParser;
 import graphql.schema.idl.TypeDefinitionRegistry;
 import io.undertow.Undertow;
 import no.ssb.lds.api.persistence.json.JsonTools;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -226,4 +229,19 @@ public class GraphqlHttpHandlerTest {
         assertEquals(response.body(), "{\"data\":{\"me\":{\"name\":\"Hadrien\"}}}");
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testGetWithMessagePackAccept() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(
+                URI.create(uriTemplate.set("query", "{me{name}}").expand()))
+                .header("Accept", "application/msgpack, application/json;q=0.5")
+                .build();
+
+        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+
+        assertEquals(response.statusCode(), 200);
+        assertEquals(response.headers().firstValue("Content-Type").orElseThrow(), "application/msgpack");
+        JsonNode body = new ObjectMapper(new MessagePackFactory()).readTree(response.body());
+        assertEquals(JsonTools.toJson(body), "{\"data\":{\"me\":{\"name\":\"Hadrien\"}}}");
+    }
+}
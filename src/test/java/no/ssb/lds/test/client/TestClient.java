@@ -94,9 +94,17 @@ public final class TestClient {
         return put(uri, HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8), HttpResponse.BodyHandlers.ofString());
     }
 
-    public <R> ResponseHelper<R> put(String uri, HttpRequest.BodyPublisher bodyPublisher, HttpResponse.BodyHandler<R> bodyHandler) {
+    public ResponseHelper<String> put(String uri, byte[] body, String... headersKeyAndValue) {
+        return put(uri, HttpRequest.BodyPublishers.ofByteArray(body), HttpResponse.BodyHandlers.ofString(), headersKeyAndValue);
+    }
+
+    public <R> ResponseHelper<R> put(String uri, HttpRequest.BodyPublisher bodyPublisher, HttpResponse.BodyHandler<R> bodyHandler, String... headersKeyAndValue) {
         try {
-            HttpRequest request = HttpRequest.newBuilder(URI.create(server.testURL(uri)))
+            HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(server.testURL(uri)));
+            if (headersKeyAndValue.length > 0) {
+                builder.headers(headersKeyAndValue);
+            }
+            HttpRequest request = builder
                     .PUT(bodyPublisher)
                     .header("Origin", "localhost")
                     .build();
@@ -164,9 +172,13 @@ public final class TestClient {
         return get(uri, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
     }
 
-    public <R> ResponseHelper<R> get(String uri, HttpResponse.BodyHandler<R> bodyHandler) {
+    public <R> ResponseHelper<R> get(String uri, HttpResponse.BodyHandler<R> bodyHandler, String... headersKeyAndValue) {
         try {
-            HttpRequest request = HttpRequest.newBuilder(URI.create(server.testURL(uri)))
+            HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(server.testURL(uri)));
+            if (headersKeyAndValue.length > 0) {
+                builder.headers(headersKeyAndValue);
+            }
+            HttpRequest request = builder
                     .GET()
                     .header("Origin", "localhost")
                     .build();